@@ -0,0 +1,24 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb;
+
+/**
+ * ActorContinuation is the protocol by which an actor of the store sends
+ * itself the rest of a request whose result arrives on another thread, such
+ * as that of the DynamoDB client, so that it runs on the actor.
+ * <p>
+ * Only the actor itself holds this protocol, obtained through {@code selfAs}.
+ */
+public interface ActorContinuation {
+  /**
+   * Run {@code continuation} on the actor.
+   *
+   * @param continuation the Runnable to run on the actor
+   */
+  void continueWith(final Runnable continuation);
+}
@@ -8,7 +8,7 @@ package io.vlingo.xoom.symbio.store.state.dynamodb;
 
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
 import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
-import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
 import io.vlingo.xoom.actors.Actor;
 import io.vlingo.xoom.actors.ActorInstantiator;
 import io.vlingo.xoom.common.Cancellable;
@@ -20,8 +20,16 @@ import io.vlingo.xoom.symbio.store.dispatch.Dispatchable;
 import io.vlingo.xoom.symbio.store.dispatch.Dispatcher;
 import io.vlingo.xoom.symbio.store.dispatch.DispatcherControl;
 import io.vlingo.xoom.symbio.store.state.dynamodb.adapters.RecordAdapter;
+import io.vlingo.xoom.symbio.store.state.dynamodb.capacity.CapacityLimiter;
 import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.ConfirmDispatchableAsyncHandler;
-import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.DispatchAsyncHandler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryScheduler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.CapacityAccounting;
+import io.vlingo.xoom.symbio.store.state.dynamodb.outbox.ConfirmationBatcher;
+import io.vlingo.xoom.symbio.store.state.dynamodb.outbox.DispatchableOutbox;
+import io.vlingo.xoom.symbio.store.state.dynamodb.outbox.RedispatchSweep;
+import io.vlingo.xoom.symbio.store.state.dynamodb.outbox.ShardLeases;
+import io.vlingo.xoom.symbio.store.state.dynamodb.outbox.ShardOwnership;
+import io.vlingo.xoom.symbio.store.state.dynamodb.outbox.StateReferences;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
@@ -30,60 +38,137 @@ import java.util.List;
 /**
  * DynamoDBDispatcherControlActor is responsible for ensuring that
  * dispatching of {@link Dispatchable dispatchables} occurs and
- * is confirmed.
+ * is confirmed. When several nodes share the outbox, configure
+ * {@code withShardLeases(...)} so that each shard is swept by one node.
  */
 public class DynamoDBDispatcherControlActor<RS extends State<?>>  extends Actor
 implements DispatcherControl,Scheduled<Object> {
 
   public final static long DEFAULT_REDISPATCH_DELAY = 2000L;
 
+  private static final Object FLUSH_CONFIRMATIONS = new Object();
+  private static final Object RENEW_LEASES = new Object();
+
   private final List<Dispatcher<Dispatchable<Entry<?>, RS>>> dispatchers;
   private final AmazonDynamoDBAsync dynamodb;
   private final RecordAdapter<RS> recordAdapter;
   private final long confirmationExpiration;
+  private final CapacityAccounting accounting;
+  private final ShardLeases leases;
+  private final RedispatchSweep<RS> sweep;
+  private final ConfirmationBatcher confirmations;
+  private final long confirmationLingerMillis;
+  private final Scheduled<Object> scheduled;
   private final Cancellable cancellable;
+  private final Cancellable leaseRenewal;
 
-  @SuppressWarnings("unchecked")
   public DynamoDBDispatcherControlActor(
     final List<Dispatcher<Dispatchable<Entry<?>, RS>>> dispatchers,
     final AmazonDynamoDBAsync dynamodb,
     final RecordAdapter<RS> recordAdapter,
     final long checkConfirmationExpirationInterval,
     final long confirmationExpiration)
+  {
+    this(dispatchers, dynamodb, recordAdapter, checkConfirmationExpirationInterval, confirmationExpiration, DynamoDBDispatcherControlConfiguration.defaults());
+  }
+
+  @SuppressWarnings("unchecked")
+  public DynamoDBDispatcherControlActor(
+    final List<Dispatcher<Dispatchable<Entry<?>, RS>>> dispatchers,
+    final AmazonDynamoDBAsync dynamodb,
+    final RecordAdapter<RS> recordAdapter,
+    final long checkConfirmationExpirationInterval,
+    final long confirmationExpiration,
+    final DynamoDBDispatcherControlConfiguration configuration)
   {
     super();
     this.dispatchers = dispatchers;
     this.dynamodb = dynamodb;
     this.recordAdapter = recordAdapter;
     this.confirmationExpiration = confirmationExpiration;
+    this.accounting = configuration.capacityAccounting();
+    final RetryScheduler retries = new RetryScheduler(scheduler(), configuration.retryPolicy(), configuration.metrics());
+    this.leases = configuration.isLeasingShards() ?
+      new ShardLeases(dynamodb, configuration.leaseTableName(), configuration.sweepName(), configuration.outbox().shards(), configuration.leaseDurationMillis(), configuration.metrics(), logger(), accounting) :
+      null;
+    this.sweep = new RedispatchSweep<>(
+      dynamodb,
+      DynamoDBStateActor.DISPATCHABLE_TABLE_NAME,
+      configuration.sweepName(),
+      configuration.outbox(),
+      configuration.redispatchItemsPerSecond(),
+      configuration.redispatchPageLimit(),
+      new StateReferences<>(dynamodb, recordAdapter, retries, CapacityLimiter.unlimited(accounting)),
+      this::doDispatch,
+      scheduler(),
+      retries,
+      logger(),
+      leases == null ? ShardOwnership.all() : leases,
+      accounting);
+    this.confirmations = configuration.confirmationBatchSize() > 1 ?
+      new ConfirmationBatcher(dynamodb, DynamoDBStateActor.DISPATCHABLE_TABLE_NAME, recordAdapter::marshallForQuery, configuration.confirmationBatchSize(), retries, accounting) :
+      null;
+    this.confirmationLingerMillis = configuration.confirmationLingerMillis();
+    this.scheduled = selfAs(Scheduled.class);
     this.cancellable = scheduler().schedule(
-      selfAs(Scheduled.class),
+      scheduled,
       null,
       DEFAULT_REDISPATCH_DELAY,
       checkConfirmationExpirationInterval);
+    this.leaseRenewal = leases == null ? null : scheduler().schedule(
+      scheduled,
+      RENEW_LEASES,
+      0L,
+      configuration.leaseDurationMillis() / 3);
   }
 
   @Override
   public void intervalSignal(Scheduled<Object> scheduled, Object data) {
-    dispatchUnconfirmed();
+    if (data == FLUSH_CONFIRMATIONS) {
+      confirmations.flush();
+    } else if (data == RENEW_LEASES) {
+      leases.tick();
+    } else {
+      dispatchUnconfirmed();
+    }
   }
 
   @Override
   public void confirmDispatched(String dispatchId, ConfirmDispatchedResultInterest interest) {
+    if (confirmations != null) {
+      if (confirmations.confirm(dispatchId, interest)) {
+        confirmations.flush();
+      } else if (confirmations.isFirst()) {
+        scheduler().scheduleOnce(scheduled, FLUSH_CONFIRMATIONS, 0L, confirmationLingerMillis);
+      }
+      return;
+    }
+
     dynamodb.deleteItemAsync(
       new DeleteItemRequest(
         DynamoDBStateActor.DISPATCHABLE_TABLE_NAME,
-        recordAdapter.marshallForQuery(dispatchId)),
-      new ConfirmDispatchableAsyncHandler(dispatchId, interest)
+        recordAdapter.marshallForQuery(dispatchId))
+        .withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES),
+      new ConfirmDispatchableAsyncHandler(dispatchId, interest, accounting)
     );
   }
 
   @Override
   public void dispatchUnconfirmed() {
-    dynamodb.scanAsync(
-      new ScanRequest(DynamoDBStateActor.DISPATCHABLE_TABLE_NAME).withLimit(100),
-            new DispatchAsyncHandler<>(recordAdapter::unmarshallDispatchable, this::doDispatch)
-    );
+    final long expiredAtMillis = DispatchableOutbox.millisOf(LocalDateTime.now()) - confirmationExpiration;
+    if (!sweep.start(expiredAtMillis)) {
+      logger().debug("Redispatch sweep still in progress; skipping this interval.");
+    }
+  }
+
+  /**
+   * Answer the shards of the outbox owned by this node, which are all of
+   * them unless the shards are leased.
+   *
+   * @return ShardOwnership
+   */
+  protected ShardOwnership shardOwnership() {
+    return leases == null ? ShardOwnership.all() : leases;
   }
 
   private Void doDispatch(Dispatchable<Entry<?>, RS> dispatchable) {
@@ -98,6 +183,12 @@ implements DispatcherControl,Scheduled<Object> {
   public void stop() {
     if (cancellable != null)
       cancellable.cancel();
+    if (confirmations != null)
+      confirmations.flush();
+    if (leaseRenewal != null) {
+      leaseRenewal.cancel();
+      leases.release();
+    }
     super.stop();
   }
 
@@ -109,18 +200,30 @@ implements DispatcherControl,Scheduled<Object> {
     private final RecordAdapter<RS> recordAdapter;
     private final long checkConfirmationExpirationInterval;
     private final long confirmationExpiration;
+    private final DynamoDBDispatcherControlConfiguration configuration;
 
     public DynamoDBDispatcherControlInstantiator(
             final List<Dispatcher<Dispatchable<Entry<?>, RS>>> dispatchers,
             final AmazonDynamoDBAsync dynamodb,
             final RecordAdapter<RS> recordAdapter,
             final long checkConfirmationExpirationInterval,
-            final long confirmationExpiration) {
+            final long confirmationExpiration,
+            final DynamoDBDispatcherControlConfiguration configuration) {
       this.dispatchers = dispatchers;
       this.dynamodb = dynamodb;
       this.recordAdapter = recordAdapter;
       this.checkConfirmationExpirationInterval = checkConfirmationExpirationInterval;
       this.confirmationExpiration = confirmationExpiration;
+      this.configuration = configuration;
+    }
+
+    public DynamoDBDispatcherControlInstantiator(
+            final List<Dispatcher<Dispatchable<Entry<?>, RS>>> dispatchers,
+            final AmazonDynamoDBAsync dynamodb,
+            final RecordAdapter<RS> recordAdapter,
+            final long checkConfirmationExpirationInterval,
+            final long confirmationExpiration) {
+      this(dispatchers, dynamodb, recordAdapter, checkConfirmationExpirationInterval, confirmationExpiration, DynamoDBDispatcherControlConfiguration.defaults());
     }
 
     public DynamoDBDispatcherControlInstantiator(
@@ -139,7 +242,8 @@ implements DispatcherControl,Scheduled<Object> {
               dynamodb,
               recordAdapter,
               checkConfirmationExpirationInterval,
-              confirmationExpiration);
+              confirmationExpiration,
+              configuration);
     }
 
     @Override
@@ -0,0 +1,353 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb;
+
+import com.amazonaws.services.dynamodbv2.model.ShardIteratorType;
+
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryPolicy;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.CapacityAccounting;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.StoreMetrics;
+import io.vlingo.xoom.symbio.store.state.dynamodb.outbox.ConfirmationBatcher;
+import io.vlingo.xoom.symbio.store.state.dynamodb.outbox.DispatchableOutbox;
+
+/**
+ * DynamoDBDispatcherControlConfiguration holds the optional behaviors of the
+ * {@link DynamoDBDispatcherControlActor} and of the
+ * {@link DynamoDBStreamsDispatcherControlActor}. An instance is never
+ * modified once answered; every {@code with...} sets the fields of a new
+ * copy before answering it.
+ */
+public final class DynamoDBDispatcherControlConfiguration {
+  public static final int DEFAULT_REDISPATCH_ITEMS_PER_SECOND = 500;
+  public static final int DEFAULT_REDISPATCH_PAGE_LIMIT = 100;
+  public static final String DEFAULT_SWEEP_NAME = "default";
+  public static final int DEFAULT_CONFIRMATION_BATCH_SIZE = 25;
+  public static final long DEFAULT_CONFIRMATION_LINGER_MILLIS = 10L;
+  public static final String DEFAULT_STREAM_CONSUMER_NAME = "default";
+  public static final long DEFAULT_STREAM_POLL_INTERVAL_MILLIS = 1000L;
+  public static final int DEFAULT_STREAM_RECORD_LIMIT = 100;
+  public static final long DEFAULT_LEASE_DURATION_MILLIS = 10_000L;
+
+  private DispatchableOutbox outbox;
+  private int redispatchItemsPerSecond;
+  private int redispatchPageLimit;
+  private String sweepName;
+  private RetryPolicy retryPolicy;
+  private StoreMetrics metrics;
+  private CapacityAccounting capacityAccounting;
+  private int confirmationBatchSize;
+  private long confirmationLingerMillis;
+  private String streamConsumerName;
+  private ShardIteratorType streamInitialPosition;
+  private long streamPollIntervalMillis;
+  private int streamRecordLimit;
+  private String leaseTableName;
+  private long leaseDurationMillis;
+
+  /**
+   * Answer the configuration with which a {@link DynamoDBDispatcherControlActor}
+   * works with a store using {@code DynamoDBStateStoreConfiguration.defaults()}.
+   *
+   * @return DynamoDBDispatcherControlConfiguration
+   */
+  public static DynamoDBDispatcherControlConfiguration defaults() {
+    return new DynamoDBDispatcherControlConfiguration();
+  }
+
+  private DynamoDBDispatcherControlConfiguration() {
+    this.outbox = DispatchableOutbox.defaults();
+    this.redispatchItemsPerSecond = DEFAULT_REDISPATCH_ITEMS_PER_SECOND;
+    this.redispatchPageLimit = DEFAULT_REDISPATCH_PAGE_LIMIT;
+    this.sweepName = DEFAULT_SWEEP_NAME;
+    this.retryPolicy = RetryPolicy.defaults();
+    this.metrics = new StoreMetrics();
+    this.capacityAccounting = new CapacityAccounting();
+    this.confirmationBatchSize = DEFAULT_CONFIRMATION_BATCH_SIZE;
+    this.confirmationLingerMillis = DEFAULT_CONFIRMATION_LINGER_MILLIS;
+    this.streamConsumerName = DEFAULT_STREAM_CONSUMER_NAME;
+    this.streamInitialPosition = ShardIteratorType.LATEST;
+    this.streamPollIntervalMillis = DEFAULT_STREAM_POLL_INTERVAL_MILLIS;
+    this.streamRecordLimit = DEFAULT_STREAM_RECORD_LIMIT;
+    this.leaseTableName = null;
+    this.leaseDurationMillis = DEFAULT_LEASE_DURATION_MILLIS;
+  }
+
+  private DynamoDBDispatcherControlConfiguration(final DynamoDBDispatcherControlConfiguration other) {
+    this.outbox = other.outbox;
+    this.redispatchItemsPerSecond = other.redispatchItemsPerSecond;
+    this.redispatchPageLimit = other.redispatchPageLimit;
+    this.sweepName = other.sweepName;
+    this.retryPolicy = other.retryPolicy;
+    this.metrics = other.metrics;
+    this.capacityAccounting = other.capacityAccounting;
+    this.confirmationBatchSize = other.confirmationBatchSize;
+    this.confirmationLingerMillis = other.confirmationLingerMillis;
+    this.streamConsumerName = other.streamConsumerName;
+    this.streamInitialPosition = other.streamInitialPosition;
+    this.streamPollIntervalMillis = other.streamPollIntervalMillis;
+    this.streamRecordLimit = other.streamRecordLimit;
+    this.leaseTableName = other.leaseTableName;
+    this.leaseDurationMillis = other.leaseDurationMillis;
+  }
+
+  /**
+   * Answer the {@code DispatchableOutbox}, which must match the store's.
+   *
+   * @return DispatchableOutbox
+   */
+  public DispatchableOutbox outbox() {
+    return outbox;
+  }
+
+  /**
+   * Answer the maximum number of expired dispatchables a sweep reads per second.
+   *
+   * @return int
+   */
+  public int redispatchItemsPerSecond() {
+    return redispatchItemsPerSecond;
+  }
+
+  /**
+   * Answer the {@code Limit} of each page read by a sweep.
+   *
+   * @return int
+   */
+  public int redispatchPageLimit() {
+    return redispatchPageLimit;
+  }
+
+  /**
+   * Answer the name of the sweep's cursor, distinct for each dispatcher control sharing an outbox.
+   *
+   * @return String
+   */
+  public String sweepName() {
+    return sweepName;
+  }
+
+  public RetryPolicy retryPolicy() {
+    return retryPolicy;
+  }
+
+  public StoreMetrics metrics() {
+    return metrics;
+  }
+
+  /**
+   * Answer the {@code CapacityAccounting} of the capacity consumed by
+   * confirmations, sweeps, leases and stream checkpoints.
+   *
+   * @return CapacityAccounting
+   */
+  public CapacityAccounting capacityAccounting() {
+    return capacityAccounting;
+  }
+
+  /**
+   * Answer the maximum number of confirmations deleted by one {@code BatchWriteItem},
+   * where {@code 1} deletes each dispatchable as it is confirmed.
+   *
+   * @return int
+   */
+  public int confirmationBatchSize() {
+    return confirmationBatchSize;
+  }
+
+  /**
+   * Answer the longest a confirmation waits for its batch to fill.
+   *
+   * @return long
+   */
+  public long confirmationLingerMillis() {
+    return confirmationLingerMillis;
+  }
+
+  /**
+   * Answer the name of the stream checkpoints of a {@link DynamoDBStreamsDispatcherControlActor},
+   * shared by the nodes dividing the stream by their shard leases.
+   *
+   * @return String
+   */
+  public String streamConsumerName() {
+    return streamConsumerName;
+  }
+
+  /**
+   * Answer where the shards without a checkpoint are read from when a
+   * {@link DynamoDBStreamsDispatcherControlActor} starts, either
+   * {@code LATEST} or {@code TRIM_HORIZON}.
+   *
+   * @return ShardIteratorType
+   */
+  public ShardIteratorType streamInitialPosition() {
+    return streamInitialPosition;
+  }
+
+  /**
+   * Answer the delay before reading a shard again after it answered no records.
+   *
+   * @return long
+   */
+  public long streamPollIntervalMillis() {
+    return streamPollIntervalMillis;
+  }
+
+  /**
+   * Answer the {@code Limit} of each {@code GetRecords} of a shard.
+   *
+   * @return int
+   */
+  public int streamRecordLimit() {
+    return streamRecordLimit;
+  }
+
+  /**
+   * Answer whether the shards of the outbox are swept only by the node
+   * holding their lease, rather than every shard by every node.
+   *
+   * @return boolean
+   */
+  public boolean isLeasingShards() {
+    return leaseTableName != null;
+  }
+
+  /**
+   * Answer the name of the table keyed on {@code Id} that holds the shard leases.
+   *
+   * @return String
+   */
+  public String leaseTableName() {
+    return leaseTableName;
+  }
+
+  /**
+   * Answer how long a lease that is not renewed is held by its owner.
+   *
+   * @return long
+   */
+  public long leaseDurationMillis() {
+    return leaseDurationMillis;
+  }
+
+  public DynamoDBDispatcherControlConfiguration withOutbox(final DispatchableOutbox outbox) {
+    final DynamoDBDispatcherControlConfiguration copy = new DynamoDBDispatcherControlConfiguration(this);
+    copy.outbox = outbox;
+    return copy;
+  }
+
+  /**
+   * Answer a copy whose sweeps read at most {@code itemsPerSecond}
+   * dispatchables, in pages of at most {@code pageLimit}. An eventually
+   * consistent read of the outbox index costs half a read capacity unit
+   * per 4 KB, which bounds the read capacity a sweep consumes.
+   *
+   * @param itemsPerSecond the int maximum dispatchables read per second
+   * @param pageLimit the int maximum dispatchables read per page
+   * @return DynamoDBDispatcherControlConfiguration
+   */
+  public DynamoDBDispatcherControlConfiguration withRedispatchBudget(final int itemsPerSecond, final int pageLimit) {
+    if (itemsPerSecond < 1 || pageLimit < 1) {
+      throw new IllegalArgumentException("Redispatch budget and page limit must be at least 1.");
+    }
+    final DynamoDBDispatcherControlConfiguration copy = new DynamoDBDispatcherControlConfiguration(this);
+    copy.redispatchItemsPerSecond = itemsPerSecond;
+    copy.redispatchPageLimit = pageLimit;
+    return copy;
+  }
+
+  public DynamoDBDispatcherControlConfiguration withConfirmationBatching(final int batchSize, final long lingerMillis) {
+    if (batchSize < 1 || batchSize > ConfirmationBatcher.BATCH_WRITE_ITEM_LIMIT) {
+      throw new IllegalArgumentException("Confirmation batch size must be between 1 and " + ConfirmationBatcher.BATCH_WRITE_ITEM_LIMIT + ".");
+    }
+    if (lingerMillis < 0L) {
+      throw new IllegalArgumentException("Confirmation linger must not be negative.");
+    }
+    final DynamoDBDispatcherControlConfiguration copy = new DynamoDBDispatcherControlConfiguration(this);
+    copy.confirmationBatchSize = batchSize;
+    copy.confirmationLingerMillis = lingerMillis;
+    return copy;
+  }
+
+  public DynamoDBDispatcherControlConfiguration withStreamConsumerName(final String streamConsumerName) {
+    final DynamoDBDispatcherControlConfiguration copy = new DynamoDBDispatcherControlConfiguration(this);
+    copy.streamConsumerName = streamConsumerName;
+    return copy;
+  }
+
+  public DynamoDBDispatcherControlConfiguration withStreamInitialPosition(final ShardIteratorType streamInitialPosition) {
+    if (streamInitialPosition != ShardIteratorType.LATEST && streamInitialPosition != ShardIteratorType.TRIM_HORIZON) {
+      throw new IllegalArgumentException("The initial stream position must be LATEST or TRIM_HORIZON.");
+    }
+    final DynamoDBDispatcherControlConfiguration copy = new DynamoDBDispatcherControlConfiguration(this);
+    copy.streamInitialPosition = streamInitialPosition;
+    return copy;
+  }
+
+  public DynamoDBDispatcherControlConfiguration withStreamPolling(final long pollIntervalMillis, final int recordLimit) {
+    if (pollIntervalMillis < 0L || recordLimit < 1 || recordLimit > 1000) {
+      throw new IllegalArgumentException("Stream polling must not be negative and its record limit must be between 1 and 1000.");
+    }
+    final DynamoDBDispatcherControlConfiguration copy = new DynamoDBDispatcherControlConfiguration(this);
+    copy.streamPollIntervalMillis = pollIntervalMillis;
+    copy.streamRecordLimit = recordLimit;
+    return copy;
+  }
+
+  /**
+   * Answer a copy in which each shard of the outbox is swept by the one
+   * node holding its lease in {@code leaseTableName}, which may be the
+   * dispatchables table. Every node must then have a distinct
+   * {@link #sweepName()}, which names the owner of its leases.
+   *
+   * @param leaseTableName the String name of the table keyed on {@code Id} holding the leases
+   * @param leaseDurationMillis the long duration of a lease that is not renewed
+   * @return DynamoDBDispatcherControlConfiguration
+   */
+  public DynamoDBDispatcherControlConfiguration withShardLeases(final String leaseTableName, final long leaseDurationMillis) {
+    if (leaseDurationMillis < 3L) {
+      throw new IllegalArgumentException("The lease duration must be at least 3 milliseconds.");
+    }
+    final DynamoDBDispatcherControlConfiguration copy = new DynamoDBDispatcherControlConfiguration(this);
+    copy.leaseTableName = leaseTableName;
+    copy.leaseDurationMillis = leaseDurationMillis;
+    return copy;
+  }
+
+  public DynamoDBDispatcherControlConfiguration withSweepName(final String sweepName) {
+    final DynamoDBDispatcherControlConfiguration copy = new DynamoDBDispatcherControlConfiguration(this);
+    copy.sweepName = sweepName;
+    return copy;
+  }
+
+  public DynamoDBDispatcherControlConfiguration withRetryPolicy(final RetryPolicy retryPolicy) {
+    final DynamoDBDispatcherControlConfiguration copy = new DynamoDBDispatcherControlConfiguration(this);
+    copy.retryPolicy = retryPolicy;
+    return copy;
+  }
+
+  public DynamoDBDispatcherControlConfiguration withMetrics(final StoreMetrics metrics) {
+    final DynamoDBDispatcherControlConfiguration copy = new DynamoDBDispatcherControlConfiguration(this);
+    copy.metrics = metrics;
+    return copy;
+  }
+
+  /**
+   * Answer a copy that records the capacity consumed by confirmations,
+   * sweeps, leases and stream checkpoints in {@code capacityAccounting},
+   * which may be the store's, so that one account covers both.
+   *
+   * @param capacityAccounting the CapacityAccounting to record in
+   * @return DynamoDBDispatcherControlConfiguration
+   */
+  public DynamoDBDispatcherControlConfiguration withCapacityAccounting(final CapacityAccounting capacityAccounting) {
+    final DynamoDBDispatcherControlConfiguration copy = new DynamoDBDispatcherControlConfiguration(this);
+    copy.capacityAccounting = capacityAccounting;
+    return copy;
+  }
+}
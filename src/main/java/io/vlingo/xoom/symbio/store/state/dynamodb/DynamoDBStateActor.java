@@ -7,13 +7,17 @@
 
 package io.vlingo.xoom.symbio.store.state.dynamodb;
 
+import com.amazonaws.handlers.AsyncHandler;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
 import com.amazonaws.services.dynamodbv2.model.*;
 import io.vlingo.xoom.actors.Actor;
 import io.vlingo.xoom.actors.ActorInstantiator;
 import io.vlingo.xoom.actors.Definition;
+import io.vlingo.xoom.common.Cancellable;
 import io.vlingo.xoom.common.Completes;
 import io.vlingo.xoom.common.Failure;
+import io.vlingo.xoom.common.Scheduled;
+import io.vlingo.xoom.common.Success;
 import io.vlingo.xoom.reactivestreams.Stream;
 import io.vlingo.xoom.symbio.*;
 import io.vlingo.xoom.symbio.store.QueryExpression;
@@ -25,22 +29,67 @@ import io.vlingo.xoom.symbio.store.dispatch.DispatcherControl;
 import io.vlingo.xoom.symbio.store.state.StateStore;
 import io.vlingo.xoom.symbio.store.state.StateStoreEntryReader;
 import io.vlingo.xoom.symbio.store.state.StateTypeStateStoreMap;
+import io.vlingo.xoom.symbio.store.state.dynamodb.DynamoDBStateStoreConfiguration.OutboxMode;
+import io.vlingo.xoom.symbio.store.state.dynamodb.DynamoDBStateStoreConfiguration.WriteMode;
 import io.vlingo.xoom.symbio.store.state.dynamodb.DynamoDBStateStoreEntryReaderActor.DynamoDBStateStoreEntryReaderInstantiator;
 import io.vlingo.xoom.symbio.store.state.dynamodb.adapters.RecordAdapter;
+import io.vlingo.xoom.symbio.store.state.dynamodb.cache.CachingWriteResultInterest;
+import io.vlingo.xoom.symbio.store.state.dynamodb.cache.StateCache;
+import io.vlingo.xoom.symbio.store.state.dynamodb.capacity.CapacityLimiter;
+import io.vlingo.xoom.symbio.store.state.dynamodb.capacity.Demand;
+import io.vlingo.xoom.symbio.store.state.dynamodb.chunks.ChunkedPageReader;
+import io.vlingo.xoom.symbio.store.state.dynamodb.chunks.StateChunks;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.BatchGetItemAsyncHandler;
 import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.BatchWriteItemAsyncHandler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.ConditionalPutItemAsyncHandler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.DescribeIndexesAsyncHandler;
 import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.GetEntityAsyncHandler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.ReadAllAggregator;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryScheduler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.StorageFailures;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.TransactWriteItemsAsyncHandler;
 import io.vlingo.xoom.symbio.store.state.dynamodb.interests.CreateTableInterest;
+import io.vlingo.xoom.symbio.store.state.dynamodb.journal.EntryJournal;
+import io.vlingo.xoom.symbio.store.state.dynamodb.journal.SequenceAllocator;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.CapacityAccounting;
+import io.vlingo.xoom.symbio.store.state.dynamodb.outbox.StateReferences;
+import io.vlingo.xoom.symbio.store.state.dynamodb.query.IndexRegistry;
+import io.vlingo.xoom.symbio.store.state.dynamodb.query.QueryPlan;
+import io.vlingo.xoom.symbio.store.state.dynamodb.query.QueryPlanner;
+import io.vlingo.xoom.symbio.store.state.dynamodb.streams.DynamoDBStream;
+import io.vlingo.xoom.symbio.store.state.dynamodb.streams.PageReader;
+import io.vlingo.xoom.symbio.store.state.dynamodb.streams.PagedSource;
+import io.vlingo.xoom.symbio.store.state.dynamodb.streams.QueryPageReader;
+import io.vlingo.xoom.symbio.store.state.dynamodb.streams.ScanPageReader;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 
-public class DynamoDBStateActor<RS extends State<?>> extends Actor implements StateStore {
+public class DynamoDBStateActor<RS extends State<?>> extends Actor implements StateStore, ActorContinuation, Scheduled<Object> {
     public static final String DISPATCHABLE_TABLE_NAME = "xoom_dispatchables";
+    public static final String ENTRY_JOURNAL_TABLE_NAME = "xoom_entries";
+    private static final String VERSION_CONDITION = "attribute_not_exists(#id) OR #version <= :version";
+    private static final int BATCH_GET_ITEM_LIMIT = 100;
+    private static final int BATCH_WRITE_ITEM_LIMIT = 25;
+    private static final ReturnConsumedCapacity RETURN_CONSUMED_CAPACITY = ReturnConsumedCapacity.INDEXES;
+    private static final Map<String, String> VERSION_CONDITION_NAMES = new HashMap<>(2);
+    static {
+        VERSION_CONDITION_NAMES.put("#id", "Id");
+        VERSION_CONDITION_NAMES.put("#version", "DataVersion");
+    }
+
     private final List<Dispatcher<Dispatchable<Entry<?>, RS>>> dispatchers;
     private final AmazonDynamoDBAsync dynamodb;
     private final CreateTableInterest createTableInterest;
@@ -48,6 +97,18 @@ public class DynamoDBStateActor<RS extends State<?>> extends Actor implements St
     private final EntryAdapterProvider entryAdapterProvider;
     private final StateAdapterProvider stateAdapterProvider;
     private final RecordAdapter<RS> recordAdapter;
+    private final DynamoDBStateStoreConfiguration configuration;
+    private final RetryScheduler retries;
+    private final CapacityAccounting accounting;
+    private final CapacityLimiter capacity;
+    private final StateChunks chunks;
+    private final SequenceAllocator sequences;
+    private final QueryPlanner queryPlanner;
+    private final StateCache<RS> cache;
+    private final Map<String, GetEntityAsyncHandler<?, RS>> inFlightReads;
+    private final Set<String> verifiedTables;
+    private final ActorContinuation self;
+    private final Cancellable capacityLog;
 
     /**
      * NOTE: this constructor is intended <u>only</u> for supporting testing with mocks.
@@ -65,39 +126,117 @@ public class DynamoDBStateActor<RS extends State<?>> extends Actor implements St
       CreateTableInterest createTableInterest,
       RecordAdapter<RS> recordAdapter)
     {
-      this.dispatchers = dispatchers;
+      this(dispatchers, dispatcherControl, dynamodb, createTableInterest, recordAdapter, DynamoDBStateStoreConfiguration.defaults());
+    }
+
+    /**
+     * NOTE: this constructor is intended <u>only</u> for supporting testing with mocks.
+     *
+     * @param dispatchers the {@code List<Dispatcher<Dispatchable<Entry<?>, RS>>>} that will handle dispatching state changes
+     * @param dispatcherControl the {@code DispatcherControl} this will handle re-dispatching and dispatch confirmation
+     * @param dynamodb the {@code AmazonDynamoDBAsync} that provide async access to Amazon DynamoDB
+     * @param createTableInterest the {@code CreateTableInterest} that is responsible for table creation
+     * @param recordAdapter the {@code RecordAdapter} that is responsible for un/marshalling state
+     * @param configuration the {@code DynamoDBStateStoreConfiguration} of optional store behaviors
+     */
+    @SuppressWarnings("unchecked")
+    public DynamoDBStateActor(
+      List<Dispatcher<Dispatchable<Entry<?>, RS>>> dispatchers,
+      DispatcherControl dispatcherControl,
+      AmazonDynamoDBAsync dynamodb,
+      CreateTableInterest createTableInterest,
+      RecordAdapter<RS> recordAdapter,
+      DynamoDBStateStoreConfiguration configuration)
+    {
+      // dispatchers still receive the control when the stream dispatches for them
+      this.dispatchers = configuration.dispatchesInline() ? dispatchers : emptyList();
       this.dynamodb = dynamodb;
       this.createTableInterest = createTableInterest;
       this.recordAdapter = recordAdapter;
+      this.configuration = configuration;
+      this.retries = new RetryScheduler(scheduler(), configuration.retryPolicy(), configuration.metrics());
+      this.accounting = configuration.capacityAccounting();
+      this.capacity = configuration.limitsCapacity() ?
+              new CapacityLimiter(dynamodb, scheduler(), retries, configuration.metrics(), accounting) :
+              CapacityLimiter.unlimited(accounting);
+      this.chunks = new StateChunks(dynamodb, configuration.chunkBytes(), retries, capacity);
+      this.sequences = SequenceAllocator.of(dynamodb, ENTRY_JOURNAL_TABLE_NAME, configuration.entryJournal());
       this.entryAdapterProvider = EntryAdapterProvider.instance(stage().world());
       this.stateAdapterProvider = StateAdapterProvider.instance(stage().world());
       this.entryReaders = new HashMap<>();
-
-      createTableInterest.createDispatchableTable(dynamodb, DISPATCHABLE_TABLE_NAME);
+      this.queryPlanner = new QueryPlanner();
+      this.inFlightReads = new ConcurrentHashMap<>();
+      this.verifiedTables = ConcurrentHashMap.newKeySet();
+      this.cache = configuration.stateCacheMaxEntries() > 0 ?
+              new StateCache<>(configuration.stateCacheMaxEntries(), configuration.stateCacheMaxBytes(), configuration.metrics()) :
+              StateCache.none();
+      this.self = selfAs(ActorContinuation.class);
+      this.capacityLog = configuration.capacityLogIntervalMillis() > 0L ?
+              scheduler().schedule(selfAs(Scheduled.class), null, configuration.capacityLogIntervalMillis(), configuration.capacityLogIntervalMillis()) :
+              null;
+
+      createTableInterest.createDispatchableTable(dynamodb, DISPATCHABLE_TABLE_NAME, configuration.outbox().attributeDefinitions(), singletonList(configuration.outbox().createdAtIndex()));
+      if (configuration.entryJournal().isEnabled()) {
+        createTableInterest.createEntryJournalTable(dynamodb, ENTRY_JOURNAL_TABLE_NAME, configuration.entryJournal().attributeDefinitions(), configuration.entryJournal().keySchema());
+      }
 
       dispatchers.forEach(d -> d.controlWith(dispatcherControl));
     }
 
+    @Override
+    public void continueWith(final Runnable continuation) {
+      continuation.run();
+    }
+
+    @Override
+    public void intervalSignal(final Scheduled<Object> scheduled, final Object data) {
+      if (!accounting.isEmpty()) {
+        logger().info("Consumed capacity: " + accounting);
+      }
+    }
+
+    @Override
+    public void stop() {
+      if (capacityLog != null) {
+        capacityLog.cancel();
+      }
+      super.stop();
+    }
+
     @Override
     public void read(String id, Class<?> type, ReadResultInterest interest, Object object) {
-      doGenericRead(id, type, interest, object);
+      doGenericRead(id, type, ReadConsistency.of(object, configuration.readConsistency()), interest, ReadConsistency.unhinted(object));
     }
 
     @Override
     public void readAll(final Collection<TypedStateBundle> bundles, final ReadResultInterest interest, final Object object) {
-      // TODO: Implement
+      doGenericReadAll(bundles, ReadConsistency.of(object, configuration.readConsistency()), interest, ReadConsistency.unhinted(object));
     }
 
     @Override
     public Completes<Stream> streamAllOf(final Class<?> stateType) {
-      // TODO: Implement
-      return null;
+      final String table = tableFor(stateType);
+      final ScanRequest request = new ScanRequest(table).withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+      final List<PageReader> segments = ChunkedPageReader.allOf(table, ScanPageReader.segmentsOf(dynamodb, request, configuration.scanSegments(), consumed -> accounting.record(stateType.getName(), "Scan", consumed)), chunks);
+      return completes().with(new DynamoDBStream(stage(), new PagedSource<>(segments, this::bundleFor, configuration.streamBufferLimit(), logger(), retries)));
     }
 
     @Override
     public Completes<Stream> streamSomeUsing(final QueryExpression query) {
-      // TODO: Implement
-      return null;
+      final QueryPlan plan = queryPlanner.plan(tableFor(query.type), query, configuration.secondaryIndexesOf(query.type));
+
+      final List<PageReader> readers;
+      if (plan.isScan()) {
+        logger().warn("No index of " + query.type.getName() + " matches the query, so it will scan the table: " + query.query);
+        configuration.metrics().increment(QueryPlanner.SCAN_FALLBACKS);
+        readers = ScanPageReader.segmentsOf(dynamodb, plan.scanRequest.withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES), configuration.scanSegments(),
+                consumed -> accounting.record(query.type.getName(), "Scan", consumed));
+      } else {
+        readers = singletonList(new QueryPageReader(dynamodb, plan.queryRequest.withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES),
+                consumed -> accounting.record(query.type.getName(), "Query", consumed)));
+      }
+
+      return completes().with(new DynamoDBStream(stage(), new PagedSource<>(ChunkedPageReader.allOf(tableFor(query.type), readers, chunks), this::bundleFor, configuration.streamBufferLimit(), logger(), retries)));
     }
 
     @Override
@@ -110,7 +249,7 @@ public class DynamoDBStateActor<RS extends State<?>> extends Actor implements St
     public <ET extends Entry<?>> Completes<StateStoreEntryReader<ET>> entryReader(final String name) {
       StateStoreEntryReader<?> reader = entryReaders.get(name);
       if (reader == null) {
-        reader = childActorFor(StateStoreEntryReader.class, Definition.has(DynamoDBStateStoreEntryReaderActor.class, new DynamoDBStateStoreEntryReaderInstantiator(name)));
+        reader = childActorFor(StateStoreEntryReader.class, Definition.has(DynamoDBStateStoreEntryReaderActor.class, new DynamoDBStateStoreEntryReaderInstantiator(name, dynamodb, configuration.entryJournal(), ENTRY_JOURNAL_TABLE_NAME, configuration.streamBufferLimit(), configuration.retryPolicy(), configuration.metrics())));
         entryReaders.put(name, reader);
       }
       return completes().with((StateStoreEntryReader<ET>) reader);
@@ -122,64 +261,404 @@ public class DynamoDBStateActor<RS extends State<?>> extends Actor implements St
         return tableName;
     }
 
-    private void doGenericRead(String id, Class<?> type, StateStore.ReadResultInterest interest, final Object object) {
-        dynamodb.getItemAsync(readRequestFor(id, type), new GetEntityAsyncHandler<>(id, interest, object, recordAdapter::unmarshallState, stateAdapterProvider));
+    private void createEntityTable(Class<?> type, String tableName) {
+        final IndexRegistry indexes = configuration.indexRegistry();
+        if (indexes.isDeclared(type)) {
+            final List<GlobalSecondaryIndex> globalSecondaryIndexes = indexes.globalSecondaryIndexesOf(type);
+            createTableInterest.createEntityTable(dynamodb, tableName, indexes.attributeDefinitionsOf(type), globalSecondaryIndexes);
+            verifyIndexes(tableName, globalSecondaryIndexes);
+        } else {
+            createTableInterest.createEntityTable(dynamodb, tableName);
+        }
+    }
+
+    // Warns once per table of declared indexes that the table lacks, such as
+    // when a CreateTableInterest predating the registry created it; queries
+    // planned over them fail. A table not yet created is verified again on
+    // its next write.
+    private void verifyIndexes(String tableName, List<GlobalSecondaryIndex> globalSecondaryIndexes) {
+        if (!verifiedTables.add(tableName)) {
+            return;
+        }
+        final List<String> names = new ArrayList<>(globalSecondaryIndexes.size());
+        globalSecondaryIndexes.forEach(index -> names.add(index.getIndexName()));
+        dynamodb.describeTableAsync(new DescribeTableRequest(tableName), new DescribeIndexesAsyncHandler(names,
+                missing -> {
+                    if (!missing.isEmpty()) {
+                        logger().warn("The table " + tableName + " lacks the declared indexes " + missing + ", so queries planned over them will fail");
+                    }
+                },
+                e -> verifiedTables.remove(tableName)));
+    }
+
+    private void doGenericRead(String id, Class<?> type, ReadConsistency consistency, StateStore.ReadResultInterest interest, final Object object) {
+        final RS cached = cache.get(type, id);
+        if (cached != null) {
+            interest.readResultedIn(Success.of(Result.Success), id, stateAdapterProvider.fromRaw(cached), cached.dataVersion, cached.metadata, object);
+            return;
+        }
+        final String key = tableFor(type) + ":" + id + ":" + consistency;
+        final GetEntityAsyncHandler<?, RS> inFlight = inFlightReads.get(key);
+        if (inFlight != null && inFlight.join(interest, object)) {
+            configuration.metrics().increment(GetEntityAsyncHandler.COALESCED_READS);
+            return;
+        }
+
+        final GetEntityAsyncHandler<Object, RS> handler = new GetEntityAsyncHandler<>(id, interest, object, recordAdapter::unmarshallState, stateAdapterProvider, completed -> inFlightReads.remove(key, completed));
+        inFlightReads.put(key, handler);
+        final GetItemRequest request = readRequestFor(id, type, consistency);
+        capacity.submit(type.getName(), Demand.of(request), request, dynamodb::getItemAsync, chunks.reassembling(tableFor(type), handler), result -> singletonList(result.getConsumedCapacity()));
+    }
+
+    // A read issued after this write must not join a GetItem issued before
+    // it, which may answer the state the write replaces; the in-flight reads
+    // still answer those that joined them.
+    private void forgetInFlightReads(String tableName, String id) {
+        final String prefix = tableName + ":" + id + ":";
+        inFlightReads.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    private void doGenericReadAll(final Collection<TypedStateBundle> bundles, final ReadConsistency consistency, final ReadResultInterest interest, final Object object) {
+        final List<TypedStateBundle> requested = new ArrayList<>(bundles);
+        final List<String> tables = new ArrayList<>(requested.size());
+        final Map<String, Set<String>> idsByTable = new LinkedHashMap<>();
+        final Map<String, String> typeNamesByTable = new HashMap<>();
+        for (final TypedStateBundle bundle : requested) {
+            final String table = tableFor(bundle.type);
+            tables.add(table);
+            typeNamesByTable.put(table, bundle.type.getName());
+            idsByTable.computeIfAbsent(table, key -> new LinkedHashSet<>()).add(bundle.id);
+        }
+
+        final List<BatchGetItemRequest> requests = new ArrayList<>();
+        for (final Map.Entry<String, Set<String>> tableIds : idsByTable.entrySet()) {
+            List<Map<String, AttributeValue>> keys = new ArrayList<>();
+            for (final String id : tableIds.getValue()) {
+                keys.add(recordAdapter.marshallForQuery(id));
+                if (keys.size() == BATCH_GET_ITEM_LIMIT) {
+                    requests.add(batchGetRequestFor(tableIds.getKey(), keys, consistency));
+                    keys = new ArrayList<>();
+                }
+            }
+            if (!keys.isEmpty()) {
+                requests.add(batchGetRequestFor(tableIds.getKey(), keys, consistency));
+            }
+        }
+
+        if (requests.isEmpty()) {
+            interest.readResultedIn(Success.of(Result.Success), requested, object);
+            return;
+        }
+
+        final ReadAllAggregator<RS> aggregator = new ReadAllAggregator<>(requested, tables, interest, object, recordAdapter::unmarshallState, stateAdapterProvider, requests.size());
+        for (final BatchGetItemRequest request : requests) {
+            final String typeName = typeNamesByTable.get(request.getRequestItems().keySet().iterator().next());
+            capacity.submit(typeName, Demand.of(request), request, dynamodb::batchGetItemAsync, new BatchGetItemAsyncHandler<>(aggregator, typeName, capacity, dynamodb, retries, chunks), BatchGetItemResult::getConsumedCapacity);
+        }
     }
 
     private <S,C> void doGenericWrite(final String id, final S state, final int stateVersion, final List<Source<C>> sources, final Metadata metadata, final WriteResultInterest interest, final Object object) {
         String tableName = tableFor(state.getClass());
-        createTableInterest.createEntityTable(dynamodb, tableName);
+        createEntityTable(state.getClass(), tableName);
+        forgetInFlightReads(tableName, id);
         final RS raw = metadata == null ?
                 stateAdapterProvider.asRaw(id, state, stateVersion) :
                 stateAdapterProvider.asRaw(id, state, stateVersion, metadata);
 
-        try {
-            Map<String, AttributeValue> foundItem = dynamodb.getItem(readRequestFor(id, state.getClass())).getItem();
-            if (foundItem != null) {
-                try {
-                    RS savedState = recordAdapter.unmarshallState(foundItem);
-                    if (savedState.dataVersion > raw.dataVersion) {
-                        interest.writeResultedIn(Failure.of(new StorageException(Result.ConcurrencyViolation, "Concurrent modification of: " + id)), id, state, stateVersion, sources, object);
-                        return;
-                    }
-                } catch (Exception e) {
-                    interest.writeResultedIn(Failure.of(new StorageException(Result.Failure, e.getMessage(), e)), id, state, stateVersion, sources, object);
-                    return;
+        final WriteResultInterest writeInterest = cache.isEnabled() ? new CachingWriteResultInterest<>(cache, state.getClass(), raw, interest) : interest;
+
+        if (configuration.writeMode() == WriteMode.ReadBeforeWrite) {
+            // the version is read without blocking the actor, and checked on it
+            final GetItemRequest request = readRequestFor(id, state.getClass());
+            capacity.submit(state.getClass().getName(), Demand.of(request), request, dynamodb::getItemAsync, new AsyncHandler<GetItemRequest, GetItemResult>() {
+                @Override
+                public void onError(final Exception e) {
+                    // in case of error (for now) just try to write the record
+                    self.continueWith(() -> doJournaledWrite(id, state, stateVersion, sources, metadata, object, tableName, raw, writeInterest, 0));
+                }
+
+                @Override
+                public void onSuccess(final GetItemRequest request, final GetItemResult found) {
+                    self.continueWith(() -> {
+                        if (isWritable(id, state, stateVersion, sources, raw, writeInterest, object, found.getItem())) {
+                            doJournaledWrite(id, state, stateVersion, sources, metadata, object, tableName, raw, writeInterest, StateChunks.chunkCountOf(found.getItem()));
+                        }
+                    });
                 }
+            }, result -> singletonList(result.getConsumedCapacity()));
+            return;
+        }
+
+        doJournaledWrite(id, state, stateVersion, sources, metadata, object, tableName, raw, writeInterest, 0);
+    }
+
+    private <S,C> void doJournaledWrite(final String id, final S state, final int stateVersion, final List<Source<C>> sources, final Metadata metadata, final Object object, final String tableName, final RS raw, final WriteResultInterest writeInterest, final int previousChunkCount) {
+        final List<Entry<?>> entries = entryAdapterProvider.asEntries(sources, stateVersion, metadata);
+        final EntryJournal journal = configuration.entryJournal();
+        if (!journal.isEnabled() || entries.isEmpty()) {
+            doWrite(id, state, stateVersion, sources, object, tableName, raw, writeInterest, entries, previousChunkCount);
+            return;
+        }
+
+        // entries are identified by their sequences before they are written with
+        // the state, which is written by the actor rather than the allocating thread
+        sequences.allocate(entries.size(), firstSequence -> self.continueWith(() -> {
+            final List<Entry<?>> sequenced;
+            try {
+                sequenced = journal.sequenced(entries, firstSequence);
+            } catch (Exception e) {
+                writeInterest.writeResultedIn(Failure.of(new StorageException(Result.Failure, e.getMessage(), e)), id, state, stateVersion, sources, object);
+                return;
             }
+            doWrite(id, state, stateVersion, sources, object, tableName, raw, writeInterest, sequenced, previousChunkCount);
+        }), e -> writeInterest.writeResultedIn(Failure.of(StorageFailures.of(e)), id, state, stateVersion, sources, object));
+    }
+
+    private <S,C> void doWrite(final String id, final S state, final int stateVersion, final List<Source<C>> sources, final Object object, final String tableName, final RS raw, final WriteResultInterest writeInterest, final List<Entry<?>> entries, final int previousChunkCount) {
+        Dispatchable<Entry<?>, RS> dispatchable = new Dispatchable<>(state.getClass().getName() + ":" + id, LocalDateTime.now(), raw, entries);
+        final Map<String, AttributeValue> stateItem;
+        final List<Map<String, AttributeValue>> entryItems;
+        final Map<String, AttributeValue> dispatchableItem;
+        try {
+            // marshalling fails for states, attributes or entries that cannot be stored, such as ObjectEntry
+            stateItem = recordAdapter.marshallState(raw, configuration.indexRegistry().attributesOf(state));
+            entryItems = entryItemsFor(entries);
+            dispatchableItem = dispatchableItemFor(dispatchable, stateItem);
         } catch (Exception e) {
-            // in case of error (for now) just try to write the record
+            writeInterest.writeResultedIn(Failure.of(new StorageException(Result.Failure, e.getMessage(), e)), id, state, stateVersion, sources, object);
+            return;
         }
 
-        // TODO: Write sources
-        final List<Entry<?>> entries = entryAdapterProvider.asEntries(sources, stateVersion, metadata);// final List<Entry<?>> entries =
+        if (chunks.isOversized(stateItem)) {
+            // a chunked state is written whole or not at all
+            final List<Map<String, AttributeValue>> otherItems = new ArrayList<>(entryItems);
+            otherItems.add(dispatchableItem);
+            final List<Map<String, AttributeValue>> chunkedItems;
+            try {
+                chunkedItems = chunks.split(stateItem, otherItems);
+            } catch (Exception e) {
+                writeInterest.writeResultedIn(Failure.of(new StorageException(Result.Failure, e.getMessage(), e)), id, state, stateVersion, sources, object);
+                return;
+            }
+            TransactWriteItemsRequest request = new TransactWriteItemsRequest().withTransactItems(chunkedTransactItemsFor(tableName, raw, chunkedItems, dispatchableItem, entryItems)).withReturnConsumedCapacity(RETURN_CONSUMED_CAPACITY);
+            capacity.submit(state.getClass().getName(), Demand.of(request), request, dynamodb::transactWriteItemsAsync, new TransactWriteItemsAsyncHandler<>(id, state, stateVersion, sources, writeInterest, object, dispatchable, written -> {
+                chunks.written();
+                chunks.deleteStale(tableName, state.getClass().getName(), id, raw.dataVersion, StateChunks.chunkCountOf(chunkedItems.get(0)), previousChunkCount);
+                return doDispatch(written);
+            }), TransactWriteItemsResult::getConsumedCapacity);
+            return;
+        }
 
-        Dispatchable<Entry<?>, RS> dispatchable = new Dispatchable<>(state.getClass().getName() + ":" + id, LocalDateTime.now(), raw, entries);
+        if (configuration.writeMode() == WriteMode.Transactional) {
+            TransactWriteItemsRequest request = new TransactWriteItemsRequest().withTransactItems(transactItemsFor(tableName, raw, stateItem, dispatchableItem, entryItems)).withReturnConsumedCapacity(RETURN_CONSUMED_CAPACITY);
+            capacity.submit(state.getClass().getName(), Demand.of(request), request, dynamodb::transactWriteItemsAsync, new TransactWriteItemsAsyncHandler<>(id, state, stateVersion, sources, writeInterest, object, dispatchable, this::doDispatch), TransactWriteItemsResult::getConsumedCapacity);
+            return;
+        }
 
-        Map<String, List<WriteRequest>> transaction = writeRequestFor(raw, dispatchable);
-        BatchWriteItemRequest request = new BatchWriteItemRequest(transaction);
-        dynamodb.batchWriteItemAsync(request, new BatchWriteItemAsyncHandler<>(id, state, stateVersion, sources, interest, object, dispatchable, dispatchers, this::doDispatch));
+        if (entryItems.size() + 2 > BATCH_WRITE_ITEM_LIMIT) {
+            writeInterest.writeResultedIn(Failure.of(new StorageException(Result.Failure, entries.size() + " entries cannot be written in one BatchWriteItem; use WriteMode.Transactional for: " + id)), id, state, stateVersion, sources, object);
+            return;
+        }
+
+        if (configuration.writeMode() == WriteMode.Conditional) {
+            BatchWriteItemRequest dispatchableRequest = new BatchWriteItemRequest(dispatchableWriteRequestFor(dispatchableItem, entryItems)).withReturnConsumedCapacity(RETURN_CONSUMED_CAPACITY);
+            PutItemRequest request = conditionalPutRequestFor(tableName, raw, stateItem);
+            capacity.submit(state.getClass().getName(), Demand.of(request), request, dynamodb::putItemAsync, new ConditionalPutItemAsyncHandler<>(id, state, stateVersion, sources, writeInterest, object,
+                    () -> capacity.submit(state.getClass().getName(), Demand.of(dispatchableRequest), dispatchableRequest, dynamodb::batchWriteItemAsync, new BatchWriteItemAsyncHandler<>(id, state, stateVersion, sources, writeInterest, object, dispatchable, dispatchers, this::doDispatch, capacity, dynamodb, retries, dispatchableRequest), BatchWriteItemResult::getConsumedCapacity)),
+                    result -> singletonList(result.getConsumedCapacity()));
+            return;
+        }
+
+        Map<String, List<WriteRequest>> transaction = writeRequestFor(raw, stateItem, dispatchableItem, entryItems);
+        BatchWriteItemRequest request = new BatchWriteItemRequest(transaction).withReturnConsumedCapacity(RETURN_CONSUMED_CAPACITY);
+        capacity.submit(state.getClass().getName(), Demand.of(request), request, dynamodb::batchWriteItemAsync, new BatchWriteItemAsyncHandler<>(id, state, stateVersion, sources, writeInterest, object, dispatchable, dispatchers, written -> {
+            // the chunks of a state that no longer needs them
+            chunks.deleteStale(tableName, state.getClass().getName(), id, raw.dataVersion, 0, previousChunkCount);
+            return doDispatch(written);
+        }, capacity, dynamodb, retries), BatchWriteItemResult::getConsumedCapacity);
+    }
+
+    private <S,C> boolean isWritable(final String id, final S state, final int stateVersion, final List<Source<C>> sources, final RS raw, final WriteResultInterest interest, final Object object, final Map<String, AttributeValue> foundItem) {
+        if (foundItem != null) {
+            try {
+                // the version of a chunked state is read from its head, without its chunks
+                final int savedVersion = StateChunks.isChunked(foundItem) ?
+                        Integer.parseInt(foundItem.get("DataVersion").getN()) :
+                        recordAdapter.unmarshallState(foundItem).dataVersion;
+                if (savedVersion > raw.dataVersion) {
+                    interest.writeResultedIn(Failure.of(new StorageException(Result.ConcurrencyViolation, "Concurrent modification of: " + id)), id, state, stateVersion, sources, object);
+                    return false;
+                }
+            } catch (Exception e) {
+                interest.writeResultedIn(Failure.of(new StorageException(Result.Failure, e.getMessage(), e)), id, state, stateVersion, sources, object);
+                return false;
+            }
+        }
+        return true;
     }
 
     private GetItemRequest readRequestFor(String id, Class<?> type) {
+        return readRequestFor(id, type, ReadConsistency.Strong);
+    }
+
+    private GetItemRequest readRequestFor(String id, Class<?> type, ReadConsistency consistency) {
         String table = tableFor(type);
         Map<String, AttributeValue> stateItem = recordAdapter.marshallForQuery(id);
 
-        return new GetItemRequest(table, stateItem, true);
+        return new GetItemRequest(table, stateItem, consistency.isConsistentRead()).withReturnConsumedCapacity(RETURN_CONSUMED_CAPACITY);
     }
 
-    private Map<String, List<WriteRequest>> writeRequestFor(RS raw, Dispatchable<Entry<?>, RS> dispatchable) {
-        Map<String, List<WriteRequest>> requests = new HashMap<>(2);
+    private BatchGetItemRequest batchGetRequestFor(String table, List<Map<String, AttributeValue>> keys, ReadConsistency consistency) {
+        return new BatchGetItemRequest(singletonMap(table, new KeysAndAttributes().withKeys(keys).withConsistentRead(consistency.isConsistentRead())))
+                .withReturnConsumedCapacity(RETURN_CONSUMED_CAPACITY);
+    }
+
+    private Map<String, List<WriteRequest>> writeRequestFor(RS raw, Map<String, AttributeValue> stateItem, Map<String, AttributeValue> dispatchableItem, List<Map<String, AttributeValue>> entryItems) {
+        Map<String, List<WriteRequest>> requests = new HashMap<>(3);
 
         requests.put(tableFor(raw.typed()),
-                singletonList(new WriteRequest(new PutRequest(recordAdapter.marshallState(raw)))));
+                singletonList(new WriteRequest(new PutRequest(stateItem))));
+
+        requests.put(DISPATCHABLE_TABLE_NAME,
+                singletonList(new WriteRequest(new PutRequest(dispatchableItem))));
+
+        if (!entryItems.isEmpty()) {
+            requests.put(ENTRY_JOURNAL_TABLE_NAME, entryWriteRequestsFor(entryItems));
+        }
+
+        return requests;
+    }
+
+    private PutItemRequest conditionalPutRequestFor(String tableName, RS raw, Map<String, AttributeValue> stateItem) {
+        return new PutItemRequest(tableName, stateItem)
+                .withConditionExpression(VERSION_CONDITION)
+                .withExpressionAttributeNames(VERSION_CONDITION_NAMES)
+                .withExpressionAttributeValues(versionConditionValuesFor(raw))
+                .withReturnConsumedCapacity(RETURN_CONSUMED_CAPACITY);
+    }
+
+    private List<TransactWriteItem> transactItemsFor(String tableName, RS raw, Map<String, AttributeValue> stateItem, Map<String, AttributeValue> dispatchableItem, List<Map<String, AttributeValue>> entryItems) {
+        List<TransactWriteItem> items = new ArrayList<>(2 + entryItems.size());
+
+        // the state must remain the first item; see TransactWriteItemsAsyncHandler.STATE_ITEM_INDEX
+        items.add(new TransactWriteItem().withPut(new Put()
+                .withTableName(tableName)
+                .withItem(stateItem)
+                .withConditionExpression(VERSION_CONDITION)
+                .withExpressionAttributeNames(VERSION_CONDITION_NAMES)
+                .withExpressionAttributeValues(versionConditionValuesFor(raw))));
+
+        items.add(new TransactWriteItem().withPut(new Put()
+                .withTableName(DISPATCHABLE_TABLE_NAME)
+                .withItem(dispatchableItem)));
+
+        items.addAll(entryTransactItemsFor(entryItems));
+
+        return items;
+    }
+
+    private List<TransactWriteItem> chunkedTransactItemsFor(String tableName, RS raw, List<Map<String, AttributeValue>> chunkedItems, Map<String, AttributeValue> dispatchableItem, List<Map<String, AttributeValue>> entryItems) {
+        List<TransactWriteItem> items = new ArrayList<>(chunkedItems.size() + 1 + entryItems.size());
+
+        // the head must remain the first item; see TransactWriteItemsAsyncHandler.STATE_ITEM_INDEX
+        items.add(new TransactWriteItem().withPut(new Put()
+                .withTableName(tableName)
+                .withItem(chunkedItems.get(0))
+                .withConditionExpression(VERSION_CONDITION)
+                .withExpressionAttributeNames(VERSION_CONDITION_NAMES)
+                .withExpressionAttributeValues(versionConditionValuesFor(raw))));
+
+        for (final Map<String, AttributeValue> chunk : chunkedItems.subList(1, chunkedItems.size())) {
+            items.add(new TransactWriteItem().withPut(new Put()
+                    .withTableName(tableName)
+                    .withItem(chunk)));
+        }
+
+        items.add(new TransactWriteItem().withPut(new Put()
+                .withTableName(DISPATCHABLE_TABLE_NAME)
+                .withItem(dispatchableItem)));
+
+        items.addAll(entryTransactItemsFor(entryItems));
+
+        return items;
+    }
+
+    private List<Map<String, AttributeValue>> entryItemsFor(List<Entry<?>> entries) {
+        if (!configuration.entryJournal().isEnabled() || entries.isEmpty()) {
+            return emptyList();
+        }
+        List<Map<String, AttributeValue>> items = new ArrayList<>(entries.size());
+        for (Entry<?> entry : entries) {
+            items.add(configuration.entryJournal().itemOf(entry));
+        }
+        return items;
+    }
+
+    private List<WriteRequest> entryWriteRequestsFor(List<Map<String, AttributeValue>> entryItems) {
+        List<WriteRequest> requests = new ArrayList<>(entryItems.size());
+        for (Map<String, AttributeValue> entryItem : entryItems) {
+            requests.add(new WriteRequest(new PutRequest(entryItem)));
+        }
+        return requests;
+    }
+
+    private List<TransactWriteItem> entryTransactItemsFor(List<Map<String, AttributeValue>> entryItems) {
+        List<TransactWriteItem> items = new ArrayList<>(entryItems.size());
+        for (Map<String, AttributeValue> entryItem : entryItems) {
+            items.add(new TransactWriteItem().withPut(new Put()
+                    .withTableName(ENTRY_JOURNAL_TABLE_NAME)
+                    .withItem(entryItem)));
+        }
+        return items;
+    }
+
+    private Map<String, AttributeValue> versionConditionValuesFor(RS raw) {
+        return singletonMap(":version", new AttributeValue().withN(String.valueOf(raw.dataVersion)));
+    }
+
+    private Map<String, List<WriteRequest>> dispatchableWriteRequestFor(Map<String, AttributeValue> dispatchableItem, List<Map<String, AttributeValue>> entryItems) {
+        Map<String, List<WriteRequest>> requests = new HashMap<>(2);
 
         requests.put(DISPATCHABLE_TABLE_NAME,
-                singletonList(new WriteRequest(new PutRequest(recordAdapter.marshallDispatchable(dispatchable)))));
+                singletonList(new WriteRequest(new PutRequest(dispatchableItem))));
+
+        if (!entryItems.isEmpty()) {
+            requests.put(ENTRY_JOURNAL_TABLE_NAME, entryWriteRequestsFor(entryItems));
+        }
 
         return requests;
     }
 
+    // The outbox item references the state, rather than carrying it, when the
+    // state is chunked or would make the outbox item too large.
+    private Map<String, AttributeValue> dispatchableItemFor(Dispatchable<Entry<?>, RS> dispatchable, Map<String, AttributeValue> stateItem) {
+        Map<String, AttributeValue> item = null;
+        if (configuration.outboxMode() != OutboxMode.StateReference && !chunks.isOversized(stateItem)) {
+            item = dispatchableItemFor(dispatchable, false);
+        }
+        if (item == null || chunks.isOversized(item)) {
+            item = dispatchableItemFor(dispatchable, true);
+        }
+        if (StateChunks.sizeOf(item) > StateChunks.MAX_ITEM_BYTES) {
+            throw new IllegalArgumentException("The outbox item of " + StateChunks.sizeOf(item) + " bytes exceeds the item size limit for: " + dispatchable.id());
+        }
+        return item;
+    }
+
+    private Map<String, AttributeValue> dispatchableItemFor(Dispatchable<Entry<?>, RS> dispatchable, boolean referencesState) {
+        if (referencesState) {
+            final RS raw = dispatchable.state().get();
+            final Dispatchable<Entry<?>, RS> withoutState = new Dispatchable<>(dispatchable.id(), dispatchable.createdOn(), null, dispatchable.entries());
+            return configuration.outbox().itemOf(StateReferences.itemOf(recordAdapter.marshallDispatchable(withoutState), tableFor(raw.typed()), raw), dispatchable);
+        }
+        return configuration.outbox().itemOf(recordAdapter.marshallDispatchable(dispatchable), dispatchable);
+    }
+
+    private TypedStateBundle bundleFor(Map<String, AttributeValue> item) {
+        final RS raw = recordAdapter.unmarshallState(item);
+        return new TypedStateBundle(raw.id, stateAdapterProvider.fromRaw(raw), raw.dataVersion, raw.metadata);
+    }
+
     private Void doDispatch(Dispatchable<Entry<?>, RS> dispatchable) {
       dispatchers.forEach(d -> d.dispatch(dispatchable));
       return null;
@@ -193,6 +672,7 @@ public class DynamoDBStateActor<RS extends State<?>> extends Actor implements St
       private final AmazonDynamoDBAsync dynamodb;
       private final CreateTableInterest createTableInterest;
       private final RecordAdapter<RS> recordAdapter;
+      private final DynamoDBStateStoreConfiguration configuration;
 
       public DynamoDBStateStoreInstantiator(
               final List<Dispatcher<Dispatchable<Entry<?>, RS>>> dispatchers,
@@ -200,16 +680,27 @@ public class DynamoDBStateActor<RS extends State<?>> extends Actor implements St
               final AmazonDynamoDBAsync dynamodb,
               final CreateTableInterest createTableInterest,
               final RecordAdapter<RS> recordAdapter) {
+        this(dispatchers, dispatcherControl, dynamodb, createTableInterest, recordAdapter, DynamoDBStateStoreConfiguration.defaults());
+      }
+
+      public DynamoDBStateStoreInstantiator(
+              final List<Dispatcher<Dispatchable<Entry<?>, RS>>> dispatchers,
+              final DispatcherControl dispatcherControl,
+              final AmazonDynamoDBAsync dynamodb,
+              final CreateTableInterest createTableInterest,
+              final RecordAdapter<RS> recordAdapter,
+              final DynamoDBStateStoreConfiguration configuration) {
         this.dispatchers = dispatchers;
         this.dispatcherControl = dispatcherControl;
         this.dynamodb = dynamodb;
         this.createTableInterest = createTableInterest;
         this.recordAdapter = recordAdapter;
+        this.configuration = configuration;
       }
 
       @Override
       public DynamoDBStateActor<RS> instantiate() {
-        return new DynamoDBStateActor<>(dispatchers, dispatcherControl, dynamodb, createTableInterest, recordAdapter);
+        return new DynamoDBStateActor<>(dispatchers, dispatcherControl, dynamodb, createTableInterest, recordAdapter, configuration);
       }
 
       @Override
@@ -0,0 +1,472 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb;
+
+import java.util.List;
+
+import io.vlingo.xoom.symbio.store.state.dynamodb.chunks.StateChunks;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryPolicy;
+import io.vlingo.xoom.symbio.store.state.dynamodb.journal.EntryJournal;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.CapacityAccounting;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.StoreMetrics;
+import io.vlingo.xoom.symbio.store.state.dynamodb.outbox.DispatchableOutbox;
+import io.vlingo.xoom.symbio.store.state.dynamodb.query.IndexRegistry;
+import io.vlingo.xoom.symbio.store.state.dynamodb.query.SecondaryIndex;
+import io.vlingo.xoom.symbio.store.state.dynamodb.streams.PagedSource;
+
+/**
+ * DynamoDBStateStoreConfiguration holds the optional behaviors of the
+ * {@link DynamoDBStateActor}. An instance is never modified once answered;
+ * every {@code with...} sets the fields of a new copy before answering it,
+ * so a single configuration may be shared by several stores once it has
+ * been handed to them, as by their instantiators.
+ */
+public final class DynamoDBStateStoreConfiguration {
+  public static final int DEFAULT_SCAN_SEGMENTS = 4;
+
+  private WriteMode writeMode;
+  private ReadConsistency readConsistency;
+  private RetryPolicy retryPolicy;
+  private StoreMetrics metrics;
+  private int scanSegments;
+  private int streamBufferLimit;
+  private IndexRegistry indexRegistry;
+  private int stateCacheMaxEntries;
+  private long stateCacheMaxBytes;
+  private DispatchableOutbox outbox;
+  private boolean dispatchesInline;
+  private OutboxMode outboxMode;
+  private int chunkBytes;
+  private EntryJournal entryJournal;
+  private boolean limitsCapacity;
+  private CapacityAccounting capacityAccounting;
+  private long capacityLogIntervalMillis;
+
+  /**
+   * Answer the configuration with which a {@link DynamoDBStateActor} behaves
+   * as it always has.
+   *
+   * @return DynamoDBStateStoreConfiguration
+   */
+  public static DynamoDBStateStoreConfiguration defaults() {
+    return new DynamoDBStateStoreConfiguration();
+  }
+
+  private DynamoDBStateStoreConfiguration() {
+    this.writeMode = WriteMode.ReadBeforeWrite;
+    this.readConsistency = ReadConsistency.Strong;
+    this.retryPolicy = RetryPolicy.defaults();
+    this.metrics = new StoreMetrics();
+    this.scanSegments = DEFAULT_SCAN_SEGMENTS;
+    this.streamBufferLimit = PagedSource.DEFAULT_BUFFER_LIMIT;
+    this.indexRegistry = IndexRegistry.empty();
+    this.stateCacheMaxEntries = 0;
+    this.stateCacheMaxBytes = 0L;
+    this.outbox = DispatchableOutbox.defaults();
+    this.dispatchesInline = true;
+    this.outboxMode = OutboxMode.EmbeddedState;
+    this.chunkBytes = StateChunks.DEFAULT_CHUNK_BYTES;
+    this.entryJournal = EntryJournal.disabled();
+    this.limitsCapacity = false;
+    this.capacityAccounting = new CapacityAccounting();
+    this.capacityLogIntervalMillis = 0L;
+  }
+
+  private DynamoDBStateStoreConfiguration(final DynamoDBStateStoreConfiguration other) {
+    this.writeMode = other.writeMode;
+    this.readConsistency = other.readConsistency;
+    this.retryPolicy = other.retryPolicy;
+    this.metrics = other.metrics;
+    this.scanSegments = other.scanSegments;
+    this.streamBufferLimit = other.streamBufferLimit;
+    this.indexRegistry = other.indexRegistry;
+    this.stateCacheMaxEntries = other.stateCacheMaxEntries;
+    this.stateCacheMaxBytes = other.stateCacheMaxBytes;
+    this.outbox = other.outbox;
+    this.dispatchesInline = other.dispatchesInline;
+    this.outboxMode = other.outboxMode;
+    this.chunkBytes = other.chunkBytes;
+    this.entryJournal = other.entryJournal;
+    this.limitsCapacity = other.limitsCapacity;
+    this.capacityAccounting = other.capacityAccounting;
+    this.capacityLogIntervalMillis = other.capacityLogIntervalMillis;
+  }
+
+  /**
+   * Answer the estimated item bytes above which a state is written in chunks, and the bytes of each chunk.
+   *
+   * @return int
+   */
+  public int chunkBytes() {
+    return chunkBytes;
+  }
+
+  /**
+   * Answer the {@code EntryJournal} to which the entries of written states
+   * are appended, which is disabled unless one is given.
+   *
+   * @return EntryJournal
+   */
+  public EntryJournal entryJournal() {
+    return entryJournal;
+  }
+
+  /**
+   * Answer whether reads and writes of states are submitted no faster than
+   * the provisioned capacity of their tables admits.
+   *
+   * @return boolean
+   */
+  public boolean limitsCapacity() {
+    return limitsCapacity;
+  }
+
+  /**
+   * Answer the {@code CapacityAccounting} of the capacity consumed by stores using this configuration.
+   *
+   * @return CapacityAccounting
+   */
+  public CapacityAccounting capacityAccounting() {
+    return capacityAccounting;
+  }
+
+  /**
+   * Answer the interval at which a store logs its {@link #capacityAccounting()}, where {@code 0} disables the log.
+   *
+   * @return long
+   */
+  public long capacityLogIntervalMillis() {
+    return capacityLogIntervalMillis;
+  }
+
+  public WriteMode writeMode() {
+    return writeMode;
+  }
+
+  /**
+   * Answer the {@code ReadConsistency} of reads that do not hint another.
+   *
+   * @return ReadConsistency
+   */
+  public ReadConsistency readConsistency() {
+    return readConsistency;
+  }
+
+  /**
+   * Answer the {@code RetryPolicy} used to resubmit unprocessed items.
+   *
+   * @return RetryPolicy
+   */
+  public RetryPolicy retryPolicy() {
+    return retryPolicy;
+  }
+
+  /**
+   * Answer the {@code StoreMetrics} maintained by stores using this configuration.
+   *
+   * @return StoreMetrics
+   */
+  public StoreMetrics metrics() {
+    return metrics;
+  }
+
+  /**
+   * Answer the {@code TotalSegments} of the parallel {@code Scan} used to stream a state table.
+   *
+   * @return int
+   */
+  public int scanSegments() {
+    return scanSegments;
+  }
+
+  /**
+   * Answer the maximum number of elements read ahead of a stream's subscriber.
+   *
+   * @return int
+   */
+  public int streamBufferLimit() {
+    return streamBufferLimit;
+  }
+
+  /**
+   * Answer the {@code IndexRegistry} of extracted attributes and secondary indexes.
+   *
+   * @return IndexRegistry
+   */
+  public IndexRegistry indexRegistry() {
+    return indexRegistry;
+  }
+
+  /**
+   * Answer the {@code SecondaryIndex} declarations of the table of {@code stateType}.
+   *
+   * @param stateType the {@code Class<?>} of the state
+   * @return {@code List<SecondaryIndex>}
+   */
+  public List<SecondaryIndex> secondaryIndexesOf(final Class<?> stateType) {
+    return indexRegistry.indexesOf(stateType);
+  }
+
+  /**
+   * Answer the maximum number of states held by the state cache, where {@code 0} disables it.
+   *
+   * @return int
+   */
+  public int stateCacheMaxEntries() {
+    return stateCacheMaxEntries;
+  }
+
+  /**
+   * Answer the maximum estimated bytes of the states held by the state cache.
+   *
+   * @return long
+   */
+  public long stateCacheMaxBytes() {
+    return stateCacheMaxBytes;
+  }
+
+  /**
+   * Answer the {@code DispatchableOutbox}, which must match the dispatcher control's.
+   *
+   * @return DispatchableOutbox
+   */
+  public DispatchableOutbox outbox() {
+    return outbox;
+  }
+
+  /**
+   * Answer whether a state is dispatched by the store once it is written,
+   * rather than only from the stream of the dispatchables table.
+   *
+   * @return boolean
+   */
+  public boolean dispatchesInline() {
+    return dispatchesInline;
+  }
+
+  /**
+   * Answer whether an outbox item embeds its state or only references it.
+   *
+   * @return OutboxMode
+   */
+  public OutboxMode outboxMode() {
+    return outboxMode;
+  }
+
+  public DynamoDBStateStoreConfiguration withWriteMode(final WriteMode writeMode) {
+    final DynamoDBStateStoreConfiguration copy = new DynamoDBStateStoreConfiguration(this);
+    copy.writeMode = writeMode;
+    return copy;
+  }
+
+  public DynamoDBStateStoreConfiguration withReadConsistency(final ReadConsistency readConsistency) {
+    final DynamoDBStateStoreConfiguration copy = new DynamoDBStateStoreConfiguration(this);
+    copy.readConsistency = readConsistency;
+    return copy;
+  }
+
+  public DynamoDBStateStoreConfiguration withRetryPolicy(final RetryPolicy retryPolicy) {
+    final DynamoDBStateStoreConfiguration copy = new DynamoDBStateStoreConfiguration(this);
+    copy.retryPolicy = retryPolicy;
+    return copy;
+  }
+
+  public DynamoDBStateStoreConfiguration withOutbox(final DispatchableOutbox outbox) {
+    final DynamoDBStateStoreConfiguration copy = new DynamoDBStateStoreConfiguration(this);
+    copy.outbox = outbox;
+    return copy;
+  }
+
+  /**
+   * Answer a copy that dispatches written states itself when {@code dispatchesInline},
+   * or leaves their dispatch to a {@code DynamoDBStreamsDispatcherControlActor}.
+   *
+   * @param dispatchesInline the boolean indicating whether the store dispatches
+   * @return DynamoDBStateStoreConfiguration
+   */
+  public DynamoDBStateStoreConfiguration withInlineDispatch(final boolean dispatchesInline) {
+    final DynamoDBStateStoreConfiguration copy = new DynamoDBStateStoreConfiguration(this);
+    copy.dispatchesInline = dispatchesInline;
+    return copy;
+  }
+
+  public DynamoDBStateStoreConfiguration withOutboxMode(final OutboxMode outboxMode) {
+    final DynamoDBStateStoreConfiguration copy = new DynamoDBStateStoreConfiguration(this);
+    copy.outboxMode = outboxMode;
+    return copy;
+  }
+
+  /**
+   * Answer a copy that writes states whose items exceed {@code chunkBytes}
+   * in chunks of {@code chunkBytes} of their data.
+   *
+   * @param chunkBytes the int bytes of an item or chunk
+   * @return DynamoDBStateStoreConfiguration
+   */
+  public DynamoDBStateStoreConfiguration withChunkBytes(final int chunkBytes) {
+    if (chunkBytes < 1 || chunkBytes > StateChunks.MAX_ITEM_BYTES - 1024) {
+      throw new IllegalArgumentException("Chunk bytes must be between 1 and " + (StateChunks.MAX_ITEM_BYTES - 1024) + ".");
+    }
+    final DynamoDBStateStoreConfiguration copy = new DynamoDBStateStoreConfiguration(this);
+    copy.chunkBytes = chunkBytes;
+    return copy;
+  }
+
+  /**
+   * Answer a copy that appends the entries of written states to {@code entryJournal}.
+   * The journal table is created by {@code CreateTableInterest.createEntryJournalTable},
+   * and must exist before entries are written when the interest creates nothing.
+   *
+   * @param entryJournal the EntryJournal of the entries
+   * @return DynamoDBStateStoreConfiguration
+   */
+  public DynamoDBStateStoreConfiguration withEntryJournal(final EntryJournal entryJournal) {
+    final DynamoDBStateStoreConfiguration copy = new DynamoDBStateStoreConfiguration(this);
+    copy.entryJournal = entryJournal;
+    return copy;
+  }
+
+  /**
+   * Answer a copy that queues the reads and writes of states while their
+   * tables lack the provisioned capacity for them when {@code limitsCapacity},
+   * adapting to throttling, rather than submitting them at once. Throttled
+   * requests are resubmitted within the budget of the {@link #retryPolicy()}.
+   *
+   * @param limitsCapacity the boolean indicating whether capacity is limited
+   * @return DynamoDBStateStoreConfiguration
+   */
+  public DynamoDBStateStoreConfiguration withCapacityLimits(final boolean limitsCapacity) {
+    final DynamoDBStateStoreConfiguration copy = new DynamoDBStateStoreConfiguration(this);
+    copy.limitsCapacity = limitsCapacity;
+    return copy;
+  }
+
+  public DynamoDBStateStoreConfiguration withCapacityAccounting(final CapacityAccounting capacityAccounting) {
+    final DynamoDBStateStoreConfiguration copy = new DynamoDBStateStoreConfiguration(this);
+    copy.capacityAccounting = capacityAccounting;
+    return copy;
+  }
+
+  /**
+   * Answer a copy whose stores log the capacity they consumed, by table,
+   * state type and operation, every {@code intervalMillis}, or never when
+   * it is {@code 0}.
+   *
+   * @param intervalMillis the long interval between log lines
+   * @return DynamoDBStateStoreConfiguration
+   */
+  public DynamoDBStateStoreConfiguration withCapacityLogInterval(final long intervalMillis) {
+    if (intervalMillis < 0L) {
+      throw new IllegalArgumentException("Capacity log interval must not be negative.");
+    }
+    final DynamoDBStateStoreConfiguration copy = new DynamoDBStateStoreConfiguration(this);
+    copy.capacityLogIntervalMillis = intervalMillis;
+    return copy;
+  }
+
+  public DynamoDBStateStoreConfiguration withMetrics(final StoreMetrics metrics) {
+    final DynamoDBStateStoreConfiguration copy = new DynamoDBStateStoreConfiguration(this);
+    copy.metrics = metrics;
+    return copy;
+  }
+
+  public DynamoDBStateStoreConfiguration withScanSegments(final int scanSegments) {
+    if (scanSegments < 1) {
+      throw new IllegalArgumentException("Scan segments must be at least 1.");
+    }
+    final DynamoDBStateStoreConfiguration copy = new DynamoDBStateStoreConfiguration(this);
+    copy.scanSegments = scanSegments;
+    return copy;
+  }
+
+  public DynamoDBStateStoreConfiguration withStreamBufferLimit(final int streamBufferLimit) {
+    if (streamBufferLimit < 1) {
+      throw new IllegalArgumentException("Stream buffer limit must be at least 1.");
+    }
+    final DynamoDBStateStoreConfiguration copy = new DynamoDBStateStoreConfiguration(this);
+    copy.streamBufferLimit = streamBufferLimit;
+    return copy;
+  }
+
+  public DynamoDBStateStoreConfiguration withIndexRegistry(final IndexRegistry indexRegistry) {
+    final DynamoDBStateStoreConfiguration copy = new DynamoDBStateStoreConfiguration(this);
+    copy.indexRegistry = indexRegistry;
+    return copy;
+  }
+
+  /**
+   * Answer a copy that caches written states for subsequent reads, holding
+   * at most {@code maxEntries} states and {@code maxBytes} estimated bytes.
+   * Enable the cache only when the store is the sole writer of its states.
+   *
+   * @param maxEntries the int maximum number of cached states
+   * @param maxBytes the long maximum estimated bytes of cached states
+   * @return DynamoDBStateStoreConfiguration
+   */
+  public DynamoDBStateStoreConfiguration withStateCache(final int maxEntries, final long maxBytes) {
+    if (maxEntries < 1 || maxBytes < 1L) {
+      throw new IllegalArgumentException("State cache bounds must be at least 1.");
+    }
+    final DynamoDBStateStoreConfiguration copy = new DynamoDBStateStoreConfiguration(this);
+    copy.stateCacheMaxEntries = maxEntries;
+    copy.stateCacheMaxBytes = maxBytes;
+    return copy;
+  }
+
+  /**
+   * The way in which a write guards against concurrent modification.
+   */
+  public enum WriteMode {
+    /**
+     * Read the current item and compare its {@code DataVersion} before a
+     * {@code BatchWriteItem} of the state and its dispatchable. The read
+     * does not block the store, but costs the write a full round trip, and
+     * is admitted by the capacity limits like the write itself.
+     */
+    ReadBeforeWrite,
+
+    /**
+     * Put the state with a {@code ConditionExpression} on its
+     * {@code DataVersion}, then write the dispatchable once the state has
+     * landed. Nothing blocks the store.
+     * <p>
+     * The two writes are not atomic. Should the dispatchable not be written
+     * within the retry policy, the write is still reported successful and
+     * the state is dispatched, but it cannot be redispatched, which is
+     * counted as {@code outbox.writes.lost}. Use {@link #Transactional}
+     * where every dispatchable must be durable.
+     */
+    Conditional,
+
+    /**
+     * Put the state, conditioned on its {@code DataVersion}, together with
+     * its dispatchable in a single {@code TransactWriteItems}. Either both
+     * items are written or neither is, in one round trip.
+     */
+    Transactional
+  }
+
+  /**
+   * What the outbox item of a written state holds.
+   */
+  public enum OutboxMode {
+    /**
+     * Embed the state, serialized as JSON, so that it is written twice:
+     * once in its table and once in the outbox. A state too large to be
+     * embedded is referenced instead.
+     */
+    EmbeddedState,
+
+    /**
+     * Reference the state by its table, id and {@code DataVersion}. The
+     * first dispatch uses the state in memory, and a redispatch, or a
+     * dispatch from the stream, reads the state with a {@code BatchGetItem}.
+     */
+    StateReference
+  }
+}
@@ -7,25 +7,113 @@
 
 package io.vlingo.xoom.symbio.store.state.dynamodb;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
 
 import io.vlingo.xoom.actors.Actor;
 import io.vlingo.xoom.actors.ActorInstantiator;
+import io.vlingo.xoom.actors.CompletesEventually;
 import io.vlingo.xoom.common.Completes;
 import io.vlingo.xoom.reactivestreams.Stream;
 import io.vlingo.xoom.symbio.Entry;
 import io.vlingo.xoom.symbio.store.state.StateStoreEntryReader;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryPolicy;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryScheduler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.journal.EntryJournal;
+import io.vlingo.xoom.symbio.store.state.dynamodb.journal.JournalCursor;
+import io.vlingo.xoom.symbio.store.state.dynamodb.journal.JournalPageReader;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.StoreMetrics;
+import io.vlingo.xoom.symbio.store.state.dynamodb.streams.DynamoDBStream;
+import io.vlingo.xoom.symbio.store.state.dynamodb.streams.PagedSource;
 
-public class DynamoDBStateStoreEntryReaderActor<T extends Entry<?>> extends Actor implements StateStoreEntryReader<T> {
+/**
+ * Reads the {@link EntryJournal} from the position of a {@link JournalCursor}.
+ * <p>
+ * A read queries every shard in parallel for the entries after the
+ * reader's position in it, and advances the cursor over the shard pages:
+ * entries are answered in sequence order, an entry beyond a missing
+ * sequence waits for the gap grace of the journal, and an entry written
+ * after greater sequences were read is answered by a later read rather
+ * than skipped. The position is persisted in the journal table under the
+ * reader's name whenever it moves, so a reader resumes where it left off.
+ * A read or seek whose position cannot be restored or persisted fails, and
+ * leaves the reader where it was.
+ * <p>
+ * Requests are served one at a time, without blocking the actor: the
+ * {@code GetItem}, {@code PutItem} and {@code Query} requests are sent
+ * asynchronously, and their results are sent back to the actor before the
+ * next request is served. A read of several entries answers {@code null}
+ * when it fails and an empty list once every entry has been read, while a
+ * read of the next entry answers {@code null} in both cases. A seek answers
+ * {@code null} when it fails, or when the id sought is not a sequence.
+ * The size of the journal is its last sequence allocated or leased, or
+ * {@code -1} when it cannot be read.
+ * <p>
+ * A stream of all entries starts at the reader's position, and reads one
+ * merged page ahead of its subscriber while fewer than the stream buffer
+ * limit of entries wait to be consumed, retrying failed pages with the
+ * retry policy of the store. Streaming does not move the position; a
+ * subscriber that resumes later seeks to the entry after the last one it
+ * has processed.
+ */
+public class DynamoDBStateStoreEntryReaderActor<T extends Entry<?>> extends Actor implements StateStoreEntryReader<T>, ActorContinuation {
   private final String name;
+  private final AmazonDynamoDBAsync dynamodb;
+  private final EntryJournal journal;
+  private final String tableName;
+  private final int streamBufferLimit;
+  private final RetryScheduler retries;
+  private final ActorContinuation self;
+  private final Queue<Consumer<Runnable>> requests;
+  private JournalCursor cursor;
+  private boolean serving;
 
-  public DynamoDBStateStoreEntryReaderActor(final String name) {
+  public DynamoDBStateStoreEntryReaderActor(
+          final String name,
+          final AmazonDynamoDBAsync dynamodb,
+          final EntryJournal journal,
+          final String tableName,
+          final int streamBufferLimit,
+          final RetryPolicy retryPolicy,
+          final StoreMetrics metrics) {
     this.name = name;
+    this.dynamodb = dynamodb;
+    this.journal = journal;
+    this.tableName = tableName;
+    this.streamBufferLimit = streamBufferLimit;
+    this.retries = new RetryScheduler(scheduler(), retryPolicy, metrics);
+    this.self = selfAs(ActorContinuation.class);
+    this.requests = new ArrayDeque<>();
+    this.cursor = null;
+    this.serving = false;
+  }
+
+  @Override
+  public void continueWith(final Runnable continuation) {
+    continuation.run();
   }
 
   @Override
   public void close() {
-    // TODO
+    // the position is persisted whenever it moves
   }
 
   @Override
@@ -35,60 +123,329 @@ public class DynamoDBStateStoreEntryReaderActor<T extends Entry<?>> extends Acto
 
   @Override
   public Completes<T> readNext() {
-    // TODO Auto-generated method stub
-    return null;
+    final CompletesEventually eventually = completesEventually();
+    serve(served -> read(1, entries -> {
+      eventually.with(entries == null || entries.isEmpty() ? null : entries.get(0));
+      served.run();
+    }));
+    return completes();
   }
 
   @Override
   public Completes<T> readNext(final String fromId) {
-    seekTo(fromId);
-    return readNext();
+    final CompletesEventually eventually = completesEventually();
+    serve(served -> seek(fromId, position -> {
+      if (position == null) {
+        eventually.with(null);
+        served.run();
+        return;
+      }
+      read(1, entries -> {
+        eventually.with(entries == null || entries.isEmpty() ? null : entries.get(0));
+        served.run();
+      });
+    }));
+    return completes();
   }
 
   @Override
   public Completes<List<T>> readNext(final int maximumEntries) {
-    // TODO Auto-generated method stub
-    return null;
+    final CompletesEventually eventually = completesEventually();
+    serve(served -> read(maximumEntries, entries -> {
+      eventually.with(entries);
+      served.run();
+    }));
+    return completes();
   }
 
   @Override
   public Completes<List<T>> readNext(final String fromId, final int maximumEntries) {
-    seekTo(fromId);
-    return readNext(maximumEntries);
+    final CompletesEventually eventually = completesEventually();
+    serve(served -> seek(fromId, position -> {
+      if (position == null) {
+        eventually.with(null);
+        served.run();
+        return;
+      }
+      read(maximumEntries, entries -> {
+        eventually.with(entries);
+        served.run();
+      });
+    }));
+    return completes();
   }
 
   @Override
   public void rewind() {
-
+    serve(served -> seek(Beginning, position -> served.run()));
   }
 
   @Override
   public Completes<String> seekTo(final String id) {
-    return null;
+    final CompletesEventually eventually = completesEventually();
+    serve(served -> seek(id, position -> {
+      eventually.with(position);
+      served.run();
+    }));
+    return completes();
   }
 
   @Override
   public Completes<Long> size() {
-    return completes().with(-1L);
+    final CompletesEventually eventually = completesEventually();
+    serve(served -> readCounters(lastSequences -> {
+      long lastSequence = 0L;
+      for (int index = 0; index < lastSequences.length; ++index) {
+        lastSequence = Math.max(lastSequence, journal.sequenceOf(index, lastSequences[index]));
+      }
+      eventually.with(lastSequence);
+      served.run();
+    }, e -> {
+      logger().error("Entry reader " + name + " failed to read the last sequence because: " + e.getMessage(), e);
+      eventually.with(-1L);
+      served.run();
+    }));
+    return completes();
   }
 
   @Override
   public Completes<Stream> streamAll() {
-    return null;
+    final CompletesEventually eventually = completesEventually();
+    serve(served -> restored(current -> {
+      final JournalPageReader reader = new JournalPageReader(dynamodb, journal, tableName, current, streamBufferLimit);
+      eventually.with(new DynamoDBStream(stage(), new PagedSource<>(Collections.singletonList(reader), journal::entryOf, streamBufferLimit, logger(), retries)));
+      served.run();
+    }, e -> {
+      eventually.with(null);
+      served.run();
+    }));
+    return completes();
+  }
+
+  /**
+   * Serve {@code request} once the requests before it were served. A
+   * request runs {@code served} on the actor when it is done.
+   */
+  private void serve(final Consumer<Runnable> request) {
+    requests.add(request);
+    if (!serving) {
+      serveNext();
+    }
+  }
+
+  private void serveNext() {
+    final Consumer<Runnable> request = requests.poll();
+    serving = request != null;
+    if (request != null) {
+      request.accept(this::serveNext);
+    }
+  }
+
+  private void onActor(final Runnable continuation) {
+    self.continueWith(continuation);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void read(final int maximumEntries, final Consumer<List<T>> answer) {
+    restored(current -> {
+      final QueryResult[] pages = new QueryResult[journal.shards()];
+      final AtomicInteger pending = new AtomicInteger(pages.length);
+      final AtomicBoolean failed = new AtomicBoolean(false);
+      for (int shard = 0; shard < pages.length; ++shard) {
+        final int index = shard;
+        dynamodb.queryAsync(current.queryOf(tableName, shard, maximumEntries), new AsyncHandler<QueryRequest, QueryResult>() {
+          @Override
+          public void onError(final Exception e) {
+            if (failed.compareAndSet(false, true)) {
+              onActor(() -> {
+                logger().error("Entry reader " + name + " failed to read after " + (current.position() - 1) + " because: " + e.getMessage(), e);
+                answer.accept(null);
+              });
+            }
+          }
+
+          @Override
+          public void onSuccess(final QueryRequest request, final QueryResult result) {
+            pages[index] = result;
+            if (pending.decrementAndGet() == 0 && !failed.get()) {
+              onActor(() -> {
+                final JournalCursor advanced = current.copy();
+                final List<T> entries = new ArrayList<>(maximumEntries);
+                try {
+                  for (final Map<String, AttributeValue> item : advanced.advance(Arrays.asList(pages), maximumEntries, System.currentTimeMillis())) {
+                    entries.add((T) journal.entryOf(item));
+                  }
+                } catch (Exception e) {
+                  logger().error("Entry reader " + name + " failed to read after " + (current.position() - 1) + " because: " + e.getMessage(), e);
+                  answer.accept(null);
+                  return;
+                }
+                if (entries.isEmpty()) {
+                  cursor = advanced; // may be waiting out a missing sequence
+                  answer.accept(entries);
+                } else {
+                  moveTo(advanced, moved -> answer.accept(moved ? entries : null));
+                }
+              });
+            }
+          }
+        });
+      }
+    }, e -> answer.accept(null));
+  }
+
+  /**
+   * Answer the position sought by {@code id} to {@code answer}, or {@code null} when it cannot be sought.
+   */
+  private void seek(final String id, final Consumer<String> answer) {
+    final Consumer<JournalCursor> move = sought -> moveTo(sought, moved -> answer.accept(moved ? String.valueOf(sought.position()) : null));
+    switch (id) {
+    case Beginning:
+      move.accept(JournalCursor.after(journal, 0L));
+      break;
+    case End:
+      readCounters(lastSequences -> move.accept(JournalCursor.afterCounters(journal, lastSequences)), e -> {
+        logger().error("Entry reader " + name + " failed to read the last sequence because: " + e.getMessage(), e);
+        answer.accept(null);
+      });
+      break;
+    case Query:
+      restored(current -> answer.accept(String.valueOf(current.position())), e -> answer.accept(null));
+      break;
+    default:
+      final long sequence;
+      try {
+        sequence = Long.parseLong(id);
+      } catch (NumberFormatException e) {
+        logger().warn("Entry reader " + name + " cannot seek to " + id + ", which is not a sequence.");
+        answer.accept(null);
+        return;
+      }
+      move.accept(JournalCursor.after(journal, sequence - 1));
+      break;
+    }
+  }
+
+  /**
+   * Answer the cursor, restoring it once from the journal table, to {@code restored}, or the failure to {@code failed}.
+   */
+  private void restored(final Consumer<JournalCursor> restored, final Consumer<Exception> failed) {
+    if (cursor != null) {
+      restored.accept(cursor);
+      return;
+    }
+    dynamodb.getItemAsync(new GetItemRequest(tableName, EntryJournal.offsetKeyOf(name), true), new AsyncHandler<GetItemRequest, GetItemResult>() {
+      @Override
+      public void onError(final Exception e) {
+        onActor(() -> {
+          logger().error("Entry reader " + name + " failed to restore its position because: " + e.getMessage(), e);
+          failed.accept(e);
+        });
+      }
+
+      @Override
+      public void onSuccess(final GetItemRequest request, final GetItemResult result) {
+        onActor(() -> {
+          if (cursor == null) {
+            try {
+              cursor = JournalCursor.of(journal, result.getItem());
+            } catch (Exception e) {
+              logger().error("Entry reader " + name + " failed to restore its position because: " + e.getMessage(), e);
+              failed.accept(e);
+              return;
+            }
+          }
+          restored.accept(cursor);
+        });
+      }
+    });
+  }
+
+  /**
+   * Persist {@code moved} as the position of the reader, which it then takes, answering whether it was persisted.
+   */
+  private void moveTo(final JournalCursor moved, final Consumer<Boolean> answer) {
+    dynamodb.putItemAsync(new PutItemRequest(tableName, moved.itemOf(name)), new AsyncHandler<PutItemRequest, PutItemResult>() {
+      @Override
+      public void onError(final Exception e) {
+        onActor(() -> {
+          logger().error("Entry reader " + name + " failed to persist its position " + (moved.position() - 1) + " because: " + e.getMessage(), e);
+          answer.accept(false);
+        });
+      }
+
+      @Override
+      public void onSuccess(final PutItemRequest request, final PutItemResult result) {
+        onActor(() -> {
+          cursor = moved;
+          answer.accept(true);
+        });
+      }
+    });
+  }
+
+  /**
+   * Answer the last sequence of each counter of the journal, or 0 for one not yet used.
+   */
+  private void readCounters(final Consumer<long[]> read, final Consumer<Exception> failed) {
+    final List<String> counterNames = journal.sequenceCounterNames();
+    final long[] lastSequences = new long[counterNames.size()];
+    final AtomicInteger pending = new AtomicInteger(lastSequences.length);
+    final AtomicBoolean anyFailed = new AtomicBoolean(false);
+    for (int counter = 0; counter < lastSequences.length; ++counter) {
+      final int index = counter;
+      dynamodb.getItemAsync(new GetItemRequest(tableName, EntryJournal.controlKeyOf(counterNames.get(index)), true), new AsyncHandler<GetItemRequest, GetItemResult>() {
+        @Override
+        public void onError(final Exception e) {
+          if (anyFailed.compareAndSet(false, true)) {
+            onActor(() -> failed.accept(e));
+          }
+        }
+
+        @Override
+        public void onSuccess(final GetItemRequest request, final GetItemResult result) {
+          final Map<String, AttributeValue> item = result.getItem();
+          final AttributeValue last = item == null ? null : item.get(EntryJournal.LAST_SEQUENCE_ATTRIBUTE);
+          lastSequences[index] = last == null ? 0L : Long.parseLong(last.getN());
+          if (pending.decrementAndGet() == 0 && !anyFailed.get()) {
+            onActor(() -> read.accept(lastSequences));
+          }
+        }
+      });
+    }
   }
 
   public static class DynamoDBStateStoreEntryReaderInstantiator<T extends Entry<?>> implements ActorInstantiator<DynamoDBStateStoreEntryReaderActor<T>> {
     private static final long serialVersionUID = -4399593112818745520L;
 
     private final String name;
+    private final AmazonDynamoDBAsync dynamodb;
+    private final EntryJournal journal;
+    private final String tableName;
+    private final int streamBufferLimit;
+    private final RetryPolicy retryPolicy;
+    private final StoreMetrics metrics;
 
-    DynamoDBStateStoreEntryReaderInstantiator(final String name) {
+    DynamoDBStateStoreEntryReaderInstantiator(
+            final String name,
+            final AmazonDynamoDBAsync dynamodb,
+            final EntryJournal journal,
+            final String tableName,
+            final int streamBufferLimit,
+            final RetryPolicy retryPolicy,
+            final StoreMetrics metrics) {
       this.name = name;
+      this.dynamodb = dynamodb;
+      this.journal = journal;
+      this.tableName = tableName;
+      this.streamBufferLimit = streamBufferLimit;
+      this.retryPolicy = retryPolicy;
+      this.metrics = metrics;
     }
 
     @Override
     public DynamoDBStateStoreEntryReaderActor<T> instantiate() {
-      return new DynamoDBStateStoreEntryReaderActor<>(name);
+      return new DynamoDBStateStoreEntryReaderActor<>(name, dynamodb, journal, tableName, streamBufferLimit, retryPolicy, metrics);
     }
 
     @Override
@@ -0,0 +1,155 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+package io.vlingo.xoom.symbio.store.state.dynamodb;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBStreamsAsync;
+import io.vlingo.xoom.actors.ActorInstantiator;
+import io.vlingo.xoom.symbio.Entry;
+import io.vlingo.xoom.symbio.State;
+import io.vlingo.xoom.symbio.store.dispatch.Dispatchable;
+import io.vlingo.xoom.symbio.store.dispatch.Dispatcher;
+import io.vlingo.xoom.symbio.store.state.dynamodb.adapters.RecordAdapter;
+import io.vlingo.xoom.symbio.store.state.dynamodb.capacity.CapacityLimiter;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryScheduler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.outbox.StateReferences;
+import io.vlingo.xoom.symbio.store.state.dynamodb.outbox.StreamTail;
+
+import java.util.Collections;
+import java.util.List;
+/**
+ * DynamoDBStreamsDispatcherControlActor dispatches each {@link Dispatchable}
+ * from the DynamoDB Stream of the dispatchables table as soon as it is
+ * written, rather than waiting for it to expire unconfirmed. The stream must
+ * be enabled on the table with the {@code NEW_IMAGE} view type, and the
+ * store should be configured with {@code withInlineDispatch(false)} so that
+ * the stream is the only source of first dispatches.
+ * <p>
+ * A single node reads every shard of the stream. Several nodes must be
+ * configured {@code withShardLeases(...)}, so that each shard of the stream
+ * is read only by the node leasing the outbox shard it hashes to, and with
+ * one {@link DynamoDBDispatcherControlConfiguration#streamConsumerName()},
+ * which names the checkpoints they share; a shard whose lease moves is
+ * resumed by its new owner where the previous one stopped. Without leases
+ * every node would dispatch every record. Dispatchables that remain
+ * unconfirmed are still redispatched by the sweep of
+ * {@link DynamoDBDispatcherControlActor}, which also remains the fallback
+ * for tables without a stream.
+ */
+public class DynamoDBStreamsDispatcherControlActor<RS extends State<?>> extends DynamoDBDispatcherControlActor<RS> {
+  private final List<Dispatcher<Dispatchable<Entry<?>, RS>>> dispatchers;
+  private final StreamTail<RS> tail;
+
+  public DynamoDBStreamsDispatcherControlActor(
+    final List<Dispatcher<Dispatchable<Entry<?>, RS>>> dispatchers,
+    final AmazonDynamoDBAsync dynamodb,
+    final AmazonDynamoDBStreamsAsync streams,
+    final RecordAdapter<RS> recordAdapter,
+    final long checkConfirmationExpirationInterval,
+    final long confirmationExpiration,
+    final DynamoDBDispatcherControlConfiguration configuration)
+  {
+    super(dispatchers, dynamodb, recordAdapter, checkConfirmationExpirationInterval, confirmationExpiration, configuration);
+    this.dispatchers = dispatchers;
+    final RetryScheduler retries = new RetryScheduler(scheduler(), configuration.retryPolicy(), configuration.metrics());
+    this.tail = new StreamTail<>(
+      dynamodb,
+      streams,
+      DynamoDBStateActor.DISPATCHABLE_TABLE_NAME,
+      configuration.streamConsumerName(),
+      configuration.streamInitialPosition(),
+      configuration.streamPollIntervalMillis(),
+      configuration.streamRecordLimit(),
+      new StateReferences<>(dynamodb, recordAdapter, retries, CapacityLimiter.unlimited(configuration.capacityAccounting())),
+      this::dispatchNew,
+      scheduler(),
+      retries,
+      logger(),
+      shardOwnership(),
+      configuration.outbox().shards(),
+      configuration.capacityAccounting());
+    this.tail.discover();
+  }
+
+  /**
+   * Redispatch the expired dispatchables, and open the shards that have
+   * appeared in the stream since the last interval.
+   */
+  @Override
+  public void dispatchUnconfirmed() {
+    super.dispatchUnconfirmed();
+    tail.discover();
+  }
+
+  private Void dispatchNew(final Dispatchable<Entry<?>, RS> dispatchable) {
+    dispatchers.forEach(d -> d.dispatch(dispatchable));
+    return null;
+  }
+
+  @Override
+  public void stop() {
+    tail.stop();
+    super.stop();
+  }
+
+  public static class DynamoDBStreamsDispatcherControlInstantiator<RS extends State<?>> implements ActorInstantiator<DynamoDBStreamsDispatcherControlActor<RS>> {
+    private static final long serialVersionUID = -2735162408318497264L;
+
+    private final List<Dispatcher<Dispatchable<Entry<?>, RS>>> dispatchers;
+    private final AmazonDynamoDBAsync dynamodb;
+    private final AmazonDynamoDBStreamsAsync streams;
+    private final RecordAdapter<RS> recordAdapter;
+    private final long checkConfirmationExpirationInterval;
+    private final long confirmationExpiration;
+    private final DynamoDBDispatcherControlConfiguration configuration;
+
+    public DynamoDBStreamsDispatcherControlInstantiator(
+            final List<Dispatcher<Dispatchable<Entry<?>, RS>>> dispatchers,
+            final AmazonDynamoDBAsync dynamodb,
+            final AmazonDynamoDBStreamsAsync streams,
+            final RecordAdapter<RS> recordAdapter,
+            final long checkConfirmationExpirationInterval,
+            final long confirmationExpiration,
+            final DynamoDBDispatcherControlConfiguration configuration) {
+      this.dispatchers = dispatchers;
+      this.dynamodb = dynamodb;
+      this.streams = streams;
+      this.recordAdapter = recordAdapter;
+      this.checkConfirmationExpirationInterval = checkConfirmationExpirationInterval;
+      this.confirmationExpiration = confirmationExpiration;
+      this.configuration = configuration;
+    }
+
+    public DynamoDBStreamsDispatcherControlInstantiator(
+            final Dispatcher<Dispatchable<Entry<?>, RS>> dispatcher,
+            final AmazonDynamoDBAsync dynamodb,
+            final AmazonDynamoDBStreamsAsync streams,
+            final RecordAdapter<RS> recordAdapter,
+            final long checkConfirmationExpirationInterval,
+            final long confirmationExpiration) {
+      this(Collections.singletonList(dispatcher), dynamodb, streams, recordAdapter, checkConfirmationExpirationInterval, confirmationExpiration, DynamoDBDispatcherControlConfiguration.defaults());
+    }
+
+    @Override
+    public DynamoDBStreamsDispatcherControlActor<RS> instantiate() {
+      return new DynamoDBStreamsDispatcherControlActor<>(
+              dispatchers,
+              dynamodb,
+              streams,
+              recordAdapter,
+              checkConfirmationExpirationInterval,
+              confirmationExpiration,
+              configuration);
+    }
+
+    @Override
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public Class<DynamoDBStreamsDispatcherControlActor<RS>> type() {
+      return (Class) DynamoDBStreamsDispatcherControlActor.class;
+    }
+  }
+}
@@ -0,0 +1,70 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb;
+
+/**
+ * ReadConsistency is the consistency of the {@code GetItem} and
+ * {@code BatchGetItem} requests made by {@code read} and {@code readAll}.
+ * <p>
+ * The store reads with the consistency of its configuration. A single read
+ * may ask for another by passing its {@code object} through
+ * {@link #hinting(Object)}; the {@code ReadResultInterest} is answered with
+ * the original {@code object}:
+ * <pre>
+ *   store.read(id, type, interest, ReadConsistency.Eventual.hinting(object));
+ * </pre>
+ */
+public enum ReadConsistency {
+  /**
+   * Read the latest committed state, for twice the read capacity.
+   */
+  Strong,
+
+  /**
+   * Read a state that may lag recent writes by up to about a second, for
+   * half the read capacity of a strongly consistent read.
+   */
+  Eventual;
+
+  /**
+   * Answer {@code object} carrying the hint that it is read with this consistency.
+   *
+   * @param object the Object to answer the ReadResultInterest with
+   * @return Object
+   */
+  public Object hinting(final Object object) {
+    return new Hint(this, object);
+  }
+
+  public boolean isConsistentRead() {
+    return this == Strong;
+  }
+
+  static ReadConsistency of(final Object object, final ReadConsistency defaultConsistency) {
+    return object instanceof Hint ? ((Hint) object).consistency : defaultConsistency;
+  }
+
+  static Object unhinted(final Object object) {
+    return object instanceof Hint ? ((Hint) object).object : object;
+  }
+
+  private static final class Hint {
+    final ReadConsistency consistency;
+    final Object object;
+
+    Hint(final ReadConsistency consistency, final Object object) {
+      this.consistency = consistency;
+      this.object = object;
+    }
+
+    @Override
+    public String toString() {
+      return "Hint[consistency=" + consistency + " object=" + object + "]";
+    }
+  }
+}
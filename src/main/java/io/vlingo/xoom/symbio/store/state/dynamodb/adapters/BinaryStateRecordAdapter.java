@@ -8,7 +8,6 @@
 package io.vlingo.xoom.symbio.store.state.dynamodb.adapters;
 
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
-import io.vlingo.xoom.common.serialization.JsonSerialization;
 import io.vlingo.xoom.symbio.Entry;
 import io.vlingo.xoom.symbio.Metadata;
 import io.vlingo.xoom.symbio.State;
@@ -20,27 +19,62 @@ import java.nio.ByteBuffer;
 import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public final class BinaryStateRecordAdapter implements RecordAdapter<BinaryState> {
     private static final String ID_FIELD = "Id";
     private static final String CREATED_AT_FIELD = "CreatedAt";
     private static final String STATE_FIELD = "State";
+    private static final String ENTRIES_FIELD = "Entries";
     private static final String DATA_FIELD = "Data";
     private static final String TYPE_FIELD = "Type";
     private static final String METADATA_FIELD = "Metadata";
     private static final String TYPE_VERSION_FIELD = "TypeVersion";
     private static final String DATA_VERSION_FIELD = "DataVersion";
 
+    private final RecordCodec codec;
+    private final StateCompression compression;
+
+    public BinaryStateRecordAdapter() {
+        this(RecordCodec.json());
+    }
+
+    /**
+     * Construct the adapter writing metadata and outbox states with {@code codec}.
+     * Values written with any built-in codec remain readable.
+     *
+     * @param codec the RecordCodec of written values
+     */
+    public BinaryStateRecordAdapter(final RecordCodec codec) {
+        this(codec, StateCompression.none());
+    }
+
+    /**
+     * Construct the adapter writing metadata and outbox states with {@code codec},
+     * and compressing the data of large states with {@code compression}.
+     *
+     * @param codec the RecordCodec of written values
+     * @param compression the StateCompression of state data
+     */
+    public BinaryStateRecordAdapter(final RecordCodec codec, final StateCompression compression) {
+        this.codec = codec;
+        this.compression = compression;
+    }
+
     @Override
     public Map<String, AttributeValue> marshallState(BinaryState state) {
-        String metadataAsJson = JsonSerialization.serialized(state.metadata);
-
         Map<String, AttributeValue> stateItem = new HashMap<>();
         stateItem.put(ID_FIELD, new AttributeValue().withS(state.id));
-        stateItem.put(DATA_FIELD, new AttributeValue().withB(ByteBuffer.wrap(state.data)));
+        ByteBuffer compressed = compression.compress(state.data);
+        if (compressed == null) {
+            stateItem.put(DATA_FIELD, new AttributeValue().withB(ByteBuffer.wrap(state.data)));
+        } else {
+            stateItem.put(DATA_FIELD, new AttributeValue().withB(compressed));
+            stateItem.put(StateCompression.COMPRESSION_FIELD, new AttributeValue().withS(StateCompression.DEFLATE));
+        }
         stateItem.put(TYPE_FIELD, new AttributeValue().withS(state.type));
-        stateItem.put(METADATA_FIELD, new AttributeValue().withS(metadataAsJson));
+        stateItem.put(METADATA_FIELD, codec.encodeMetadata(state.metadata));
         stateItem.put(TYPE_VERSION_FIELD, new AttributeValue().withN(String.valueOf(state.typeVersion)));
         stateItem.put(DATA_VERSION_FIELD, new AttributeValue().withN(String.valueOf(state.dataVersion)));
 
@@ -53,9 +87,11 @@ public final class BinaryStateRecordAdapter implements RecordAdapter<BinaryState
         stateItem.put(ID_FIELD, new AttributeValue().withS(dispatchable.id()));
         stateItem.put(CREATED_AT_FIELD, new AttributeValue().withS(dispatchable.createdOn().toString()));
         if (dispatchable.state().isPresent()) {
-            stateItem.put(STATE_FIELD, new AttributeValue().withS(JsonSerialization.serialized(dispatchable.state().get())));
+            stateItem.put(STATE_FIELD, codec.encodeState(dispatchable.state().get()));
+        }
+        if (!dispatchable.entries().isEmpty()) {
+            stateItem.put(ENTRIES_FIELD, new AttributeValue().withB(EntriesEncoding.encode(dispatchable.entries())));
         }
-        //TODO add entities
         return stateItem;
     }
 
@@ -74,9 +110,9 @@ public final class BinaryStateRecordAdapter implements RecordAdapter<BinaryState
                     record.get(ID_FIELD).getS(),
                     StoredTypes.forName(record.get(TYPE_FIELD).getS()),
                     Integer.valueOf(record.get(TYPE_VERSION_FIELD).getN()),
-                    record.get(DATA_FIELD).getB().array(),
+                    dataOf(record),
                     Integer.valueOf(record.get(DATA_VERSION_FIELD).getN()),
-                    JsonSerialization.deserialized(record.get(METADATA_FIELD).getS(), Metadata.class)
+                    decodeMetadata(record.get(METADATA_FIELD))
             );
         } catch (ClassNotFoundException e) {
             throw new IllegalStateException(e);
@@ -87,8 +123,24 @@ public final class BinaryStateRecordAdapter implements RecordAdapter<BinaryState
     public Dispatchable<Entry<?>, BinaryState> unmarshallDispatchable(Map<String, AttributeValue> item) {
         String id = item.get(ID_FIELD).getS();
         LocalDateTime createdAt = LocalDateTime.parse(item.get(CREATED_AT_FIELD).getS());
-        String json = item.get(STATE_FIELD).getS();
-        //TODO get entries
-        return new Dispatchable<>(id, createdAt, JsonSerialization.deserialized(json, State.BinaryState.class), Collections.emptyList());
+        AttributeValue encodedState = item.get(STATE_FIELD);
+        // an item referencing its state is answered without it; see StateReferences
+        State.BinaryState state = encodedState == null ? null : RecordCodec.decoderOf(encodedState, codec).decodeState(encodedState, State.BinaryState.class);
+        AttributeValue entriesBlob = item.get(ENTRIES_FIELD);
+        List<Entry<?>> entries = entriesBlob == null ? Collections.emptyList() : EntriesEncoding.decode(entriesBlob.getB());
+
+        return new Dispatchable<>(id, createdAt, state, entries);
+    }
+
+    private Metadata decodeMetadata(AttributeValue value) {
+        return RecordCodec.decoderOf(value, codec).decodeMetadata(value);
+    }
+
+    private byte[] dataOf(Map<String, AttributeValue> record) {
+        AttributeValue format = record.get(StateCompression.COMPRESSION_FIELD);
+        if (format == null) {
+            return record.get(DATA_FIELD).getB().array();
+        }
+        return compression.decompress(format.getS(), record.get(DATA_FIELD).getB());
     }
 }
@@ -0,0 +1,171 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.adapters;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.List;
+
+import io.vlingo.xoom.common.serialization.JsonSerialization;
+import io.vlingo.xoom.symbio.BaseEntry.BinaryEntry;
+import io.vlingo.xoom.symbio.BaseEntry.TextEntry;
+import io.vlingo.xoom.symbio.Entry;
+import io.vlingo.xoom.symbio.Metadata;
+import io.vlingo.xoom.symbio.store.StoredTypes;
+
+/**
+ * EntriesEncoding writes the entries of a dispatchable as one binary
+ * attribute, and reads them back as a list that decodes each entry only
+ * when it is first accessed.
+ * <p>
+ * The blob starts with a format byte, the number of entries and the offset
+ * of each entry, followed by the entries. An entry is its kind, id, type
+ * name, type version, entry version, metadata as JSON, and data, where
+ * strings and binary data are prefixed by their length. Only text and
+ * binary entries are supported.
+ */
+public final class EntriesEncoding {
+    private static final byte FORMAT = 1;
+    private static final byte TEXT = 0;
+    private static final byte BINARY = 1;
+    private static final int HEADER_BYTES = 1 + 4;
+
+    /**
+     * Answer the blob of {@code entries}.
+     *
+     * @param entries the {@code List<Entry<?>>} to encode
+     * @return ByteBuffer
+     */
+    public static ByteBuffer encode(final List<Entry<?>> entries) {
+        final byte[][] encoded = new byte[entries.size()][];
+        int size = HEADER_BYTES + 4 * entries.size();
+        for (int index = 0; index < encoded.length; ++index) {
+            encoded[index] = encode(entries.get(index));
+            size += encoded[index].length;
+        }
+
+        final ByteBuffer blob = ByteBuffer.allocate(size);
+        blob.put(FORMAT);
+        blob.putInt(entries.size());
+        int offset = HEADER_BYTES + 4 * entries.size();
+        for (final byte[] entry : encoded) {
+            blob.putInt(offset);
+            offset += entry.length;
+        }
+        for (final byte[] entry : encoded) {
+            blob.put(entry);
+        }
+        blob.flip();
+        return blob;
+    }
+
+    /**
+     * Answer the entries of {@code blob}, each decoded on its first access.
+     *
+     * @param blob the ByteBuffer written by {@link #encode(List)}
+     * @return {@code List<Entry<?>>}
+     */
+    public static List<Entry<?>> decode(final ByteBuffer blob) {
+        final ByteBuffer entries = blob.slice();
+        if (entries.get(0) != FORMAT) {
+            throw new IllegalStateException("Unknown entries format: " + entries.get(0));
+        }
+        return new LazyEntries(entries);
+    }
+
+    private static byte[] encode(final Entry<?> entry) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (final DataOutputStream output = new DataOutputStream(bytes)) {
+            final Object data = entry.entryData();
+            if (data instanceof String) {
+                output.writeByte(TEXT);
+            } else if (data instanceof byte[]) {
+                output.writeByte(BINARY);
+            } else {
+                throw new IllegalArgumentException("Only text and binary entries can be dispatched from the outbox: " + entry.typeName());
+            }
+            writeBytes(output, entry.id().getBytes(StandardCharsets.UTF_8));
+            writeBytes(output, entry.typeName().getBytes(StandardCharsets.UTF_8));
+            output.writeInt(entry.typeVersion());
+            output.writeInt(entry.entryVersion());
+            writeBytes(output, JsonSerialization.serialized(entry.metadata()).getBytes(StandardCharsets.UTF_8));
+            writeBytes(output, data instanceof String ? ((String) data).getBytes(StandardCharsets.UTF_8) : (byte[]) data);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // not thrown by a ByteArrayOutputStream
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeBytes(final DataOutputStream output, final byte[] bytes) throws IOException {
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private EntriesEncoding() { }
+
+    private static final class LazyEntries extends AbstractList<Entry<?>> {
+        private final ByteBuffer blob;
+        private final Entry<?>[] decoded;
+
+        LazyEntries(final ByteBuffer blob) {
+            this.blob = blob;
+            this.decoded = new Entry<?>[blob.getInt(1)];
+        }
+
+        @Override
+        public Entry<?> get(final int index) {
+            if (index < 0 || index >= decoded.length) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + decoded.length);
+            }
+            if (decoded[index] == null) {
+                decoded[index] = decodeAt(blob.getInt(HEADER_BYTES + 4 * index));
+            }
+            return decoded[index];
+        }
+
+        @Override
+        public int size() {
+            return decoded.length;
+        }
+
+        private Entry<?> decodeAt(final int offset) {
+            final ByteBuffer entry = blob.duplicate();
+            entry.position(offset);
+            final byte kind = entry.get();
+            final String id = readString(entry);
+            final String typeName = readString(entry);
+            final int typeVersion = entry.getInt();
+            final int entryVersion = entry.getInt();
+            final Metadata metadata = JsonSerialization.deserialized(readString(entry), Metadata.class);
+            final byte[] data = readBytes(entry);
+
+            try {
+                final Class<?> type = StoredTypes.forName(typeName);
+                return kind == TEXT ?
+                        new TextEntry(id, type, typeVersion, new String(data, StandardCharsets.UTF_8), entryVersion, metadata) :
+                        new BinaryEntry(id, type, typeVersion, data, entryVersion, metadata);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private String readString(final ByteBuffer entry) {
+            return new String(readBytes(entry), StandardCharsets.UTF_8);
+        }
+
+        private byte[] readBytes(final ByteBuffer entry) {
+            final byte[] bytes = new byte[entry.getInt()];
+            entry.get(bytes);
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.adapters;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import io.vlingo.xoom.common.serialization.JsonSerialization;
+import io.vlingo.xoom.symbio.Metadata;
+import io.vlingo.xoom.symbio.State;
+
+/**
+ * JsonRecordCodec writes metadata and states as JSON string values.
+ */
+final class JsonRecordCodec implements RecordCodec {
+    static final JsonRecordCodec INSTANCE = new JsonRecordCodec();
+
+    @Override
+    public boolean decodes(final AttributeValue value) {
+        return value.getS() != null;
+    }
+
+    @Override
+    public AttributeValue encodeMetadata(final Metadata metadata) {
+        return new AttributeValue().withS(JsonSerialization.serialized(metadata));
+    }
+
+    @Override
+    public Metadata decodeMetadata(final AttributeValue value) {
+        return JsonSerialization.deserialized(value.getS(), Metadata.class);
+    }
+
+    @Override
+    public AttributeValue encodeState(final State<?> state) {
+        return new AttributeValue().withS(JsonSerialization.serialized(state));
+    }
+
+    @Override
+    public <S extends State<?>> S decodeState(final AttributeValue value, final Class<S> stateType) {
+        return JsonSerialization.deserialized(value.getS(), stateType);
+    }
+
+    private JsonRecordCodec() { }
+}
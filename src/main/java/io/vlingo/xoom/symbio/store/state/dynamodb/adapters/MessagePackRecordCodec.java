@@ -0,0 +1,135 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.adapters;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.msgpack.MessagePack;
+import org.msgpack.packer.BufferPacker;
+import org.msgpack.unpacker.BufferUnpacker;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import io.vlingo.xoom.symbio.Metadata;
+import io.vlingo.xoom.symbio.State;
+import io.vlingo.xoom.symbio.store.StoredTypes;
+
+/**
+ * MessagePackRecordCodec writes metadata and states as binary values,
+ * each beginning with the byte {@code 0xC1}, which MessagePack never uses.
+ * Metadata is written as its value and operation; its object is not kept.
+ * Only text and binary states are supported.
+ */
+final class MessagePackRecordCodec implements RecordCodec {
+    static final MessagePackRecordCodec INSTANCE = new MessagePackRecordCodec();
+
+    private static final byte FORMAT = (byte) 0xC1;
+    private static final byte TEXT = 0;
+    private static final byte BINARY = 1;
+
+    private final MessagePack msgpack = new MessagePack();
+
+    @Override
+    public boolean decodes(final AttributeValue value) {
+        final ByteBuffer bytes = value.getB();
+        return bytes != null && bytes.remaining() > 0 && bytes.get(bytes.position()) == FORMAT;
+    }
+
+    @Override
+    public AttributeValue encodeMetadata(final Metadata metadata) {
+        try {
+            final BufferPacker packer = msgpack.createBufferPacker();
+            writeMetadata(packer, metadata);
+            return valueOf(packer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public Metadata decodeMetadata(final AttributeValue value) {
+        try {
+            return readMetadata(unpacker(value));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public AttributeValue encodeState(final State<?> state) {
+        try {
+            final BufferPacker packer = msgpack.createBufferPacker();
+            if (state.data instanceof String) {
+                packer.write(TEXT);
+            } else if (state.data instanceof byte[]) {
+                packer.write(BINARY);
+            } else {
+                throw new IllegalArgumentException("Only text and binary states can be encoded: " + state.type);
+            }
+            packer.write(state.id);
+            packer.write(state.type);
+            packer.write(state.typeVersion);
+            packer.write(state.dataVersion);
+            if (state.data instanceof String) {
+                packer.write((String) state.data);
+            } else {
+                packer.write((byte[]) state.data);
+            }
+            writeMetadata(packer, state.metadata);
+            return valueOf(packer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public <S extends State<?>> S decodeState(final AttributeValue value, final Class<S> stateType) {
+        try {
+            final BufferUnpacker unpacker = unpacker(value);
+            final byte kind = unpacker.readByte();
+            final String id = unpacker.readString();
+            final Class<?> type = StoredTypes.forName(unpacker.readString());
+            final int typeVersion = unpacker.readInt();
+            final int dataVersion = unpacker.readInt();
+            final State<?> state = kind == TEXT ?
+                    new State.TextState(id, type, typeVersion, unpacker.readString(), dataVersion, readMetadata(unpacker)) :
+                    new State.BinaryState(id, type, typeVersion, unpacker.readByteArray(), dataVersion, readMetadata(unpacker));
+            return stateType.cast(state);
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private AttributeValue valueOf(final BufferPacker packer) {
+        final byte[] packed = packer.toByteArray();
+        final ByteBuffer value = ByteBuffer.allocate(1 + packed.length);
+        value.put(FORMAT).put(packed).flip();
+        return new AttributeValue().withB(value);
+    }
+
+    private BufferUnpacker unpacker(final AttributeValue value) throws IOException {
+        final ByteBuffer buffer = value.getB().duplicate();
+        if (buffer.get() != FORMAT) {
+            throw new IllegalStateException("Not a MessagePack record value.");
+        }
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return msgpack.createBufferUnpacker(bytes);
+    }
+
+    private void writeMetadata(final BufferPacker packer, final Metadata metadata) throws IOException {
+        packer.write(metadata.value);
+        packer.write(metadata.operation);
+    }
+
+    private Metadata readMetadata(final BufferUnpacker unpacker) throws IOException {
+        return Metadata.with(unpacker.readString(), unpacker.readString());
+    }
+
+    private MessagePackRecordCodec() { }
+}
@@ -12,11 +12,34 @@ import io.vlingo.xoom.symbio.Entry;
 import io.vlingo.xoom.symbio.State;
 import io.vlingo.xoom.symbio.store.dispatch.Dispatchable;
 
+import java.util.HashMap;
 import java.util.Map;
 
 public interface RecordAdapter<RS extends State<?>> {
     Map<String, AttributeValue> marshallState(RS state);
 
+    /**
+     * Answer the item of {@code state} with the extracted {@code attributes}
+     * written as top-level attributes alongside its record.
+     *
+     * @param state the RS state to marshall
+     * @param attributes the {@code Map<String, AttributeValue>} extracted from the state
+     * @return {@code Map<String, AttributeValue>}
+     */
+    default Map<String, AttributeValue> marshallState(RS state, Map<String, AttributeValue> attributes) {
+        final Map<String, AttributeValue> item = marshallState(state);
+        if (attributes.isEmpty()) {
+            return item;
+        }
+        final Map<String, AttributeValue> extended = new HashMap<>(item);
+        attributes.forEach((name, value) -> {
+            if (extended.putIfAbsent(name, value) != null) {
+                throw new IllegalArgumentException("The extracted attribute collides with the state record: " + name);
+            }
+        });
+        return extended;
+    }
+
     Map<String, AttributeValue> marshallDispatchable(Dispatchable<Entry<?>, RS> dispatchable);
 
     Map<String, AttributeValue> marshallForQuery(String id);
@@ -0,0 +1,76 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.adapters;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import io.vlingo.xoom.symbio.Metadata;
+import io.vlingo.xoom.symbio.State;
+
+/**
+ * RecordCodec encodes the {@code Metadata} of a state record, and the
+ * state embedded in an outbox item, as attribute values.
+ * <p>
+ * A record adapter writes with the codec it is given, and reads every
+ * value with the first codec that {@link #decodes(AttributeValue)} it,
+ * so items written in an earlier format remain readable. A codec that
+ * writes binary values must begin them with a marker that distinguishes
+ * its format from the others.
+ */
+public interface RecordCodec {
+    /**
+     * Answer the codec of JSON string values, which record adapters have always written.
+     *
+     * @return RecordCodec
+     */
+    static RecordCodec json() {
+        return JsonRecordCodec.INSTANCE;
+    }
+
+    /**
+     * Answer the codec of MessagePack binary values.
+     *
+     * @return RecordCodec
+     */
+    static RecordCodec messagePack() {
+        return MessagePackRecordCodec.INSTANCE;
+    }
+
+    /**
+     * Answer {@code codec} if it decodes {@code value}, or else the built-in codec that does.
+     *
+     * @param value the AttributeValue to decode
+     * @param codec the RecordCodec preferred for decoding
+     * @return RecordCodec
+     */
+    static RecordCodec decoderOf(final AttributeValue value, final RecordCodec codec) {
+        if (codec.decodes(value)) {
+            return codec;
+        } else if (json().decodes(value)) {
+            return json();
+        } else if (messagePack().decodes(value)) {
+            return messagePack();
+        }
+        throw new IllegalStateException("No codec decodes the record value.");
+    }
+
+    /**
+     * Answer whether {@code value} was written by this codec.
+     *
+     * @param value the AttributeValue to test
+     * @return boolean
+     */
+    boolean decodes(AttributeValue value);
+
+    AttributeValue encodeMetadata(Metadata metadata);
+
+    Metadata decodeMetadata(AttributeValue value);
+
+    AttributeValue encodeState(State<?> state);
+
+    <S extends State<?>> S decodeState(AttributeValue value, Class<S> stateType);
+}
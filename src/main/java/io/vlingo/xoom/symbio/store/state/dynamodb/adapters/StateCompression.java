@@ -0,0 +1,157 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.adapters;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.StoreMetrics;
+
+/**
+ * StateCompression deflates the data of states at or above a size
+ * threshold, so that large states consume fewer capacity units. Data that
+ * does not shrink is stored as it is. A compressed record carries the
+ * {@code Compression} attribute naming its format, and records without it
+ * are read unchanged, so compression may be enabled on an existing table.
+ * <p>
+ * The compression maintains these metrics, from which its hit rate and
+ * ratio are derived:
+ * <ul>
+ *   <li>{@code compression.candidates}: the states at or above the threshold</li>
+ *   <li>{@code compression.compressed}: the candidates stored compressed</li>
+ *   <li>{@code compression.bytes.original}: the bytes of the compressed states before compression</li>
+ *   <li>{@code compression.bytes.stored}: the bytes of the compressed states as stored</li>
+ *   <li>{@code compression.inflated}: the compressed states read</li>
+ * </ul>
+ */
+public final class StateCompression {
+    public static final String BYTES_ORIGINAL = "compression.bytes.original";
+    public static final String BYTES_STORED = "compression.bytes.stored";
+    public static final String CANDIDATES = "compression.candidates";
+    public static final String COMPRESSED = "compression.compressed";
+    public static final String INFLATED = "compression.inflated";
+
+    public static final String COMPRESSION_FIELD = "Compression";
+    static final String DEFLATE = "deflate";
+
+    private static final StateCompression NONE = new StateCompression(Integer.MAX_VALUE, new StoreMetrics());
+
+    private final int thresholdBytes;
+    private final StoreMetrics metrics;
+
+    /**
+     * Answer the compression that never compresses, but still reads compressed records.
+     *
+     * @return StateCompression
+     */
+    public static StateCompression none() {
+        return NONE;
+    }
+
+    /**
+     * Answer the compression that deflates the data of states of at least {@code thresholdBytes}.
+     *
+     * @param thresholdBytes the int size from which data is compressed
+     * @param metrics the StoreMetrics of the compression
+     * @return StateCompression
+     */
+    public static StateCompression deflateAbove(final int thresholdBytes, final StoreMetrics metrics) {
+        if (thresholdBytes < 1) {
+            throw new IllegalArgumentException("Compression threshold must be at least 1 byte.");
+        }
+        return new StateCompression(thresholdBytes, metrics);
+    }
+
+    private StateCompression(final int thresholdBytes, final StoreMetrics metrics) {
+        this.thresholdBytes = thresholdBytes;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Answer whether data of {@code size} bytes, or of at least as many, is worth compressing.
+     *
+     * @param size the int size of the data
+     * @return boolean
+     */
+    public boolean isCandidate(final int size) {
+        return size >= thresholdBytes;
+    }
+
+    /**
+     * Answer {@code data} deflated, or {@code null} if it is below the
+     * threshold or would not shrink.
+     *
+     * @param data the byte[] to compress
+     * @return ByteBuffer
+     */
+    public ByteBuffer compress(final byte[] data) {
+        if (!isCandidate(data.length)) {
+            return null;
+        }
+        metrics.increment(CANDIDATES);
+
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2);
+            final byte[] buffer = new byte[Math.min(data.length, 8192)];
+            while (!deflater.finished()) {
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+                if (compressed.size() >= data.length) {
+                    return null;
+                }
+            }
+            metrics.increment(COMPRESSED);
+            metrics.add(BYTES_ORIGINAL, data.length);
+            metrics.add(BYTES_STORED, compressed.size());
+            return ByteBuffer.wrap(compressed.toByteArray());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Answer the data of a record stored with {@code format}.
+     *
+     * @param format the String value of the {@code Compression} attribute
+     * @param compressed the ByteBuffer of the stored data
+     * @return byte[]
+     */
+    public byte[] decompress(final String format, final ByteBuffer compressed) {
+        if (!DEFLATE.equals(format)) {
+            throw new IllegalStateException("Unknown state compression: " + format);
+        }
+        final ByteBuffer input = compressed.duplicate();
+        final byte[] deflated = new byte[input.remaining()];
+        input.get(deflated);
+
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(deflated);
+            final ByteArrayOutputStream data = new ByteArrayOutputStream(deflated.length * 3);
+            final byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                final int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated compressed state.");
+                }
+                data.write(buffer, 0, inflated);
+            }
+            metrics.increment(INFLATED);
+            return data.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -7,14 +7,16 @@
 
 package io.vlingo.xoom.symbio.store.state.dynamodb.adapters;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 
-import io.vlingo.xoom.common.serialization.JsonSerialization;
 import io.vlingo.xoom.symbio.Entry;
 import io.vlingo.xoom.symbio.Metadata;
 import io.vlingo.xoom.symbio.State;
@@ -26,23 +28,55 @@ public final class TextStateRecordAdapter implements RecordAdapter<TextState> {
     private static final String ID_FIELD = "Id";
     private static final String CREATED_AT_FIELD = "CreatedAt";
     private static final String STATE_FIELD = "State";
-    @SuppressWarnings("unused")
-    private static final String ENTRIES = "entries";
+    private static final String ENTRIES_FIELD = "Entries";
     private static final String DATA_FIELD = "Data";
     private static final String TYPE_FIELD = "Type";
     private static final String METADATA_FIELD = "Metadata";
     private static final String TYPE_VERSION_FIELD = "TypeVersion";
     private static final String DATA_VERSION_FIELD = "DataVersion";
 
+    private final RecordCodec codec;
+    private final StateCompression compression;
+
+    public TextStateRecordAdapter() {
+        this(RecordCodec.json());
+    }
+
+    /**
+     * Construct the adapter writing metadata and outbox states with {@code codec}.
+     * Values written with any built-in codec remain readable.
+     *
+     * @param codec the RecordCodec of written values
+     */
+    public TextStateRecordAdapter(final RecordCodec codec) {
+        this(codec, StateCompression.none());
+    }
+
+    /**
+     * Construct the adapter writing metadata and outbox states with {@code codec},
+     * and compressing the data of large states with {@code compression}.
+     *
+     * @param codec the RecordCodec of written values
+     * @param compression the StateCompression of state data
+     */
+    public TextStateRecordAdapter(final RecordCodec codec, final StateCompression compression) {
+        this.codec = codec;
+        this.compression = compression;
+    }
+
     @Override
     public Map<String, AttributeValue> marshallState(TextState state) {
-        String metadataAsJson = JsonSerialization.serialized(state.metadata);
-
         Map<String, AttributeValue> stateItem = new HashMap<>();
         stateItem.put(ID_FIELD, new AttributeValue().withS(state.id));
-        stateItem.put(DATA_FIELD, new AttributeValue().withS(state.data));
+        ByteBuffer compressed = compression.isCandidate(state.data.length()) ? compression.compress(state.data.getBytes(StandardCharsets.UTF_8)) : null;
+        if (compressed == null) {
+            stateItem.put(DATA_FIELD, new AttributeValue().withS(state.data));
+        } else {
+            stateItem.put(DATA_FIELD, new AttributeValue().withB(compressed));
+            stateItem.put(StateCompression.COMPRESSION_FIELD, new AttributeValue().withS(StateCompression.DEFLATE));
+        }
         stateItem.put(TYPE_FIELD, new AttributeValue().withS(state.type));
-        stateItem.put(METADATA_FIELD, new AttributeValue().withS(metadataAsJson));
+        stateItem.put(METADATA_FIELD, codec.encodeMetadata(state.metadata));
         stateItem.put(TYPE_VERSION_FIELD, new AttributeValue().withN(String.valueOf(state.typeVersion)));
         stateItem.put(DATA_VERSION_FIELD, new AttributeValue().withN(String.valueOf(state.dataVersion)));
 
@@ -55,9 +89,11 @@ public final class TextStateRecordAdapter implements RecordAdapter<TextState> {
         stateItem.put(ID_FIELD, new AttributeValue().withS(dispatchable.id()));
         stateItem.put(CREATED_AT_FIELD, new AttributeValue().withS(dispatchable.createdOn().toString()));
         if (dispatchable.state().isPresent()) {
-            stateItem.put(STATE_FIELD, new AttributeValue().withS(JsonSerialization.serialized(dispatchable.state().get())));
+            stateItem.put(STATE_FIELD, codec.encodeState(dispatchable.state().get()));
+        }
+        if (!dispatchable.entries().isEmpty()) {
+            stateItem.put(ENTRIES_FIELD, new AttributeValue().withB(EntriesEncoding.encode(dispatchable.entries())));
         }
-        //TODO add entities
 
         return stateItem;
     }
@@ -77,9 +113,9 @@ public final class TextStateRecordAdapter implements RecordAdapter<TextState> {
                     record.get(ID_FIELD).getS(),
                     StoredTypes.forName(record.get(TYPE_FIELD).getS()),
                     Integer.valueOf(record.get(TYPE_VERSION_FIELD).getN()),
-                    record.get(DATA_FIELD).getS(),
+                    dataOf(record),
                     Integer.valueOf(record.get(DATA_VERSION_FIELD).getN()),
-                    JsonSerialization.deserialized(record.get(METADATA_FIELD).getS(), Metadata.class)
+                    decodeMetadata(record.get(METADATA_FIELD))
             );
         } catch (ClassNotFoundException e) {
             throw new IllegalStateException(e);
@@ -90,8 +126,25 @@ public final class TextStateRecordAdapter implements RecordAdapter<TextState> {
     public Dispatchable<Entry<?>, TextState> unmarshallDispatchable(Map<String, AttributeValue> item) {
         String id = item.get(ID_FIELD).getS();
         LocalDateTime createdAt = LocalDateTime.parse(item.get(CREATED_AT_FIELD).getS());
-        String json = item.get(STATE_FIELD).getS();
+        AttributeValue encodedState = item.get(STATE_FIELD);
+        // an item referencing its state is answered without it; see StateReferences
+        State.TextState state = encodedState == null ? null : RecordCodec.decoderOf(encodedState, codec).decodeState(encodedState, State.TextState.class);
+
+        AttributeValue entriesBlob = item.get(ENTRIES_FIELD);
+        List<Entry<?>> entries = entriesBlob == null ? Collections.emptyList() : EntriesEncoding.decode(entriesBlob.getB());
+
+        return new Dispatchable<>(id, createdAt, state, entries);
+    }
+
+    private Metadata decodeMetadata(AttributeValue value) {
+        return RecordCodec.decoderOf(value, codec).decodeMetadata(value);
+    }
 
-        return new Dispatchable<>(id, createdAt, JsonSerialization.deserialized(json, State.TextState.class), Collections.emptyList());
+    private String dataOf(Map<String, AttributeValue> record) {
+        AttributeValue format = record.get(StateCompression.COMPRESSION_FIELD);
+        if (format == null) {
+            return record.get(DATA_FIELD).getS();
+        }
+        return new String(compression.decompress(format.getS(), record.get(DATA_FIELD).getB()), StandardCharsets.UTF_8);
     }
 }
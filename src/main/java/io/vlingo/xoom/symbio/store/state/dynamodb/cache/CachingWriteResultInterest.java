@@ -0,0 +1,54 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.cache;
+
+import java.util.List;
+
+import io.vlingo.xoom.common.Outcome;
+import io.vlingo.xoom.symbio.Source;
+import io.vlingo.xoom.symbio.State;
+import io.vlingo.xoom.symbio.store.Result;
+import io.vlingo.xoom.symbio.store.StorageException;
+import io.vlingo.xoom.symbio.store.state.StateStore.WriteResultInterest;
+
+/**
+ * CachingWriteResultInterest writes a state through to the {@link StateCache}
+ * once it has been stored, and invalidates it when the write fails, most
+ * notably on a {@code Result.ConcurrencyViolation}, before answering the
+ * writer's own interest.
+ *
+ * @param <RS> the raw State type
+ */
+public class CachingWriteResultInterest<RS extends State<?>> implements WriteResultInterest {
+  private final StateCache<RS> cache;
+  private final Class<?> type;
+  private final RS raw;
+  private final WriteResultInterest interest;
+
+  public CachingWriteResultInterest(final StateCache<RS> cache, final Class<?> type, final RS raw, final WriteResultInterest interest) {
+    this.cache = cache;
+    this.type = type;
+    this.raw = raw;
+    this.interest = interest;
+  }
+
+  @Override
+  public <S,C> void writeResultedIn(final Outcome<StorageException, Result> outcome, final String id, final S state, final int stateVersion, final List<Source<C>> sources, final Object object) {
+    outcome.resolve(
+            failure -> {
+              cache.invalidate(type, id);
+              return failure.result;
+            },
+            result -> {
+              cache.put(type, raw);
+              return result;
+            });
+
+    interest.writeResultedIn(outcome, id, state, stateVersion, sources, object);
+  }
+}
@@ -0,0 +1,149 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.vlingo.xoom.symbio.State;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.StoreMetrics;
+
+/**
+ * StateCache holds the most recently used raw states, keyed by state type
+ * and id, bounded by both a number of entries and an estimated number of
+ * bytes. The least recently used states are evicted first.
+ * <p>
+ * The cache is populated by successful writes only, so it serves reads
+ * correctly as long as the store that owns it is the only writer of the
+ * cached types. It is safe for use by the store's actor and the DynamoDB
+ * client callbacks concurrently.
+ *
+ * @param <RS> the raw State type
+ */
+public class StateCache<RS extends State<?>> {
+  public static final String HITS = "cache.hits";
+  public static final String MISSES = "cache.misses";
+  public static final String EVICTIONS = "cache.evictions";
+
+  private static final long ENTRY_OVERHEAD = 128L;
+  private static final long UNKNOWN_DATA_SIZE = 256L;
+
+  private final int maxEntries;
+  private final long maxBytes;
+  private final StoreMetrics metrics;
+  private final LinkedHashMap<String, RS> states;
+  private long bytes;
+
+  /**
+   * Answer a StateCache that holds nothing.
+   *
+   * @param <RS> the raw State type
+   * @return {@code StateCache<RS>}
+   */
+  public static <RS extends State<?>> StateCache<RS> none() {
+    return new StateCache<>(0, 0L, new StoreMetrics());
+  }
+
+  public StateCache(final int maxEntries, final long maxBytes, final StoreMetrics metrics) {
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+    this.metrics = metrics;
+    this.states = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  public boolean isEnabled() {
+    return maxEntries > 0 && maxBytes > 0L;
+  }
+
+  /**
+   * Answer the cached raw state of {@code type} with {@code id}, or {@code null}.
+   *
+   * @param type the {@code Class<?>} of the state
+   * @param id the String id of the state
+   * @return RS
+   */
+  public synchronized RS get(final Class<?> type, final String id) {
+    if (!isEnabled()) {
+      return null;
+    }
+    final RS raw = states.get(keyOf(type, id));
+    metrics.increment(raw == null ? MISSES : HITS);
+    return raw;
+  }
+
+  /**
+   * Cache {@code raw} as the state of {@code type}, unless a later
+   * {@code dataVersion} is already cached or it is larger than the cache.
+   *
+   * @param type the {@code Class<?>} of the state
+   * @param raw the RS raw state
+   */
+  public synchronized void put(final Class<?> type, final RS raw) {
+    if (!isEnabled()) {
+      return;
+    }
+    final long size = sizeOf(raw);
+    if (size > maxBytes) {
+      invalidate(type, raw.id);
+      return;
+    }
+    final String key = keyOf(type, raw.id);
+    final RS cached = states.get(key);
+    if (cached != null) {
+      if (cached.dataVersion > raw.dataVersion) {
+        return;
+      }
+      bytes -= sizeOf(cached);
+    }
+    states.put(key, raw);
+    bytes += size;
+    evict();
+  }
+
+  public synchronized void invalidate(final Class<?> type, final String id) {
+    final RS removed = states.remove(keyOf(type, id));
+    if (removed != null) {
+      bytes -= sizeOf(removed);
+    }
+  }
+
+  public synchronized int size() {
+    return states.size();
+  }
+
+  public synchronized long bytes() {
+    return bytes;
+  }
+
+  private void evict() {
+    final Iterator<Map.Entry<String, RS>> eldest = states.entrySet().iterator();
+    while ((states.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+      bytes -= sizeOf(eldest.next().getValue());
+      eldest.remove();
+      metrics.increment(EVICTIONS);
+    }
+  }
+
+  private String keyOf(final Class<?> type, final String id) {
+    return type.getName() + ":" + id;
+  }
+
+  private long sizeOf(final RS raw) {
+    final Object data = raw.data;
+    final long dataSize;
+    if (data instanceof String) {
+      dataSize = 2L * ((String) data).length();
+    } else if (data instanceof byte[]) {
+      dataSize = ((byte[]) data).length;
+    } else {
+      dataSize = UNKNOWN_DATA_SIZE;
+    }
+    return ENTRY_OVERHEAD + 2L * (raw.id.length() + raw.type.length()) + dataSize;
+  }
+}
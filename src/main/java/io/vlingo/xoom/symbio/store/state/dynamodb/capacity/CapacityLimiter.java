@@ -0,0 +1,284 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.capacity;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.BillingMode;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+
+import io.vlingo.xoom.common.Scheduler;
+import io.vlingo.xoom.symbio.store.Result;
+import io.vlingo.xoom.symbio.store.StorageException;
+import io.vlingo.xoom.symbio.store.state.dynamodb.capacity.Demand.OperationClass;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryPolicy;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryScheduler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.StorageFailures;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.CapacityAccounting;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.StoreMetrics;
+
+/**
+ * CapacityLimiter submits requests to provisioned-capacity tables no faster
+ * than the tables admit them, so that the store does not keep sending
+ * requests that DynamoDB throttles.
+ * <p>
+ * Each table has a {@link TokenBucket} for its reads and one for its
+ * writes, seeded from the provisioned throughput answered by
+ * {@code DescribeTable}. Until then, and for on-demand tables, requests
+ * are not limited. A request takes the units of its {@link Demand} from
+ * the bucket of each table it uses, and waits in the bucket's queue while
+ * the bucket is empty. The {@code ConsumedCapacity} of the result settles
+ * the difference from the demand. A throttled request, or a batch with
+ * unprocessed items, halves the rate of the buckets of its demand. A
+ * throttled request is resubmitted after the backoff of the store's
+ * {@link RetryPolicy}, and queued again in the buckets, until its retries
+ * are spent; it then fails with a {@code Result.Failure}.
+ * <p>
+ * Whether limiting or not, the {@code ConsumedCapacity} of every result
+ * is recorded in the {@link CapacityAccounting} of the store, under the
+ * state type of the request and its operation.
+ */
+public class CapacityLimiter {
+  public static final String QUEUED = "capacity.queued";
+  public static final String THROTTLED = "capacity.throttled";
+  public static final String RATE_PREFIX = "capacity.rate.";
+
+  private final AmazonDynamoDBAsync dynamodb;
+  private final Scheduler scheduler;
+  private final RetryScheduler retries;
+  private final StoreMetrics metrics;
+  private final CapacityAccounting accounting;
+  private final LongSupplier clock;
+  private final Map<String, TokenBucket> buckets;
+  private final Set<String> described;
+
+  /**
+   * Answer a CapacityLimiter that submits every request at once, recording its consumed capacity in {@code accounting}.
+   *
+   * @param accounting the CapacityAccounting of the store
+   * @return CapacityLimiter
+   */
+  public static CapacityLimiter unlimited(final CapacityAccounting accounting) {
+    return new CapacityLimiter(null, null, RetryScheduler.none(), new StoreMetrics(), accounting, System::currentTimeMillis);
+  }
+
+  public CapacityLimiter(final AmazonDynamoDBAsync dynamodb, final Scheduler scheduler, final RetryScheduler retries, final StoreMetrics metrics, final CapacityAccounting accounting) {
+    this(dynamodb, scheduler, retries, metrics, accounting, System::currentTimeMillis);
+  }
+
+  CapacityLimiter(final AmazonDynamoDBAsync dynamodb, final Scheduler scheduler, final RetryScheduler retries, final StoreMetrics metrics, final CapacityAccounting accounting, final LongSupplier clock) {
+    this.dynamodb = dynamodb;
+    this.scheduler = scheduler;
+    this.retries = retries;
+    this.metrics = metrics;
+    this.accounting = accounting;
+    this.clock = clock;
+    this.buckets = new ConcurrentHashMap<>();
+    this.described = ConcurrentHashMap.newKeySet();
+  }
+
+  public boolean isLimiting() {
+    return dynamodb != null;
+  }
+
+  /**
+   * Submit {@code request} with {@code submission} once the tables of
+   * {@code demand} admit it, informing {@code handler} of its outcome.
+   * Throttling resubmits it until the retries of the store are spent.
+   *
+   * @param stateType the String name of the state type of the request, or {@link CapacityAccounting#NO_STATE_TYPE}
+   * @param demand the Demand of the request
+   * @param request the Q request to submit
+   * @param submission the {@code BiConsumer<Q, AsyncHandler<Q, R>>} that submits the request, such as {@code dynamodb::putItemAsync}
+   * @param handler the {@code AsyncHandler<Q, R>} of the outcome
+   * @param consumedCapacity the {@code Function<R, List<ConsumedCapacity>>} answering the capacity consumed by the result
+   * @param <Q> the type of the request
+   * @param <R> the type of the result
+   */
+  public <Q extends AmazonWebServiceRequest, R> void submit(
+          final String stateType,
+          final Demand demand,
+          final Q request,
+          final BiConsumer<Q, AsyncHandler<Q, R>> submission,
+          final AsyncHandler<Q, R> handler,
+          final Function<R, List<ConsumedCapacity>> consumedCapacity) {
+    submit(stateType, demand, request, submission, handler, consumedCapacity, 0);
+  }
+
+  private <Q extends AmazonWebServiceRequest, R> void submit(
+          final String stateType,
+          final Demand demand,
+          final Q request,
+          final BiConsumer<Q, AsyncHandler<Q, R>> submission,
+          final AsyncHandler<Q, R> handler,
+          final Function<R, List<ConsumedCapacity>> consumedCapacity,
+          final int attempt) {
+
+    if (!isLimiting()) {
+      submission.accept(request, new AsyncHandler<Q, R>() {
+        @Override
+        public void onError(final Exception e) {
+          handler.onError(e);
+        }
+
+        @Override
+        public void onSuccess(final Q request, final R result) {
+          accounting.record(stateType, operationOf(request), consumedCapacity.apply(result));
+          handler.onSuccess(request, result);
+        }
+      });
+      return;
+    }
+
+    acquire(demand, demand.units.entrySet().iterator(), () -> submission.accept(request, new AsyncHandler<Q, R>() {
+      @Override
+      public void onError(final Exception e) {
+        if (!StorageFailures.isThrottling(e)) {
+          handler.onError(e);
+          return;
+        }
+        metrics.increment(THROTTLED);
+        throttled(demand);
+        if (!retries.retry(attempt, () -> submit(stateType, demand, request, submission, handler, consumedCapacity, attempt + 1))) {
+          handler.onError(new StorageException(Result.Failure, "Throttled " + (attempt + 1) + " times: " + e.getMessage(), e));
+        }
+      }
+
+      @Override
+      public void onSuccess(final Q request, final R result) {
+        final List<ConsumedCapacity> consumed = consumedCapacity.apply(result);
+        accounting.record(stateType, operationOf(request), consumed);
+        settle(demand, consumed);
+        if (isPartiallyThrottled(result)) {
+          throttled(demand);
+        }
+        handler.onSuccess(request, result);
+      }
+    }));
+  }
+
+  private void acquire(final Demand demand, final Iterator<Map.Entry<String, Double>> units, final Runnable admitted) {
+    if (!units.hasNext()) {
+      admitted.run();
+      return;
+    }
+    final Map.Entry<String, Double> tableUnits = units.next();
+    if (bucketOf(tableUnits.getKey(), demand.operationClass).acquire(tableUnits.getValue(), () -> acquire(demand, units, admitted))) {
+      metrics.increment(QUEUED);
+    }
+  }
+
+  private void settle(final Demand demand, final List<ConsumedCapacity> consumed) {
+    if (consumed == null) {
+      return;
+    }
+    for (final ConsumedCapacity capacity : consumed) {
+      if (capacity == null || capacity.getTableName() == null) {
+        continue;
+      }
+      // the capacity of the table alone, since its indexes are provisioned apart
+      final Double units = capacity.getTable() != null && capacity.getTable().getCapacityUnits() != null ?
+              capacity.getTable().getCapacityUnits() :
+              capacity.getCapacityUnits();
+      if (units != null) {
+        bucketOf(capacity.getTableName(), demand.operationClass).settle(units - demand.units.getOrDefault(capacity.getTableName(), 0.0));
+      }
+    }
+  }
+
+  /**
+   * Halve the rate of the buckets of {@code demand}.
+   */
+  private void throttled(final Demand demand) {
+    for (final String table : demand.units.keySet()) {
+      final TokenBucket bucket = bucketOf(table, demand.operationClass);
+      bucket.throttled();
+      metrics.gauge(rateNameOf(table, demand.operationClass), (long) bucket.rate());
+    }
+  }
+
+  private TokenBucket bucketOf(final String table, final OperationClass operationClass) {
+    final TokenBucket bucket = buckets.computeIfAbsent(keyOf(table, operationClass), key -> new TokenBucket(scheduler, clock));
+    if (described.add(table)) {
+      describe(table);
+    }
+    return bucket;
+  }
+
+  private void describe(final String table) {
+    dynamodb.describeTableAsync(new DescribeTableRequest(table), new AsyncHandler<DescribeTableRequest, DescribeTableResult>() {
+      @Override
+      public void onError(final Exception e) {
+        described.remove(table); // described again on a later demand, such as once the table is created
+      }
+
+      @Override
+      public void onSuccess(final DescribeTableRequest request, final DescribeTableResult result) {
+        final TableDescription description = result.getTable();
+        final ProvisionedThroughputDescription throughput = description.getProvisionedThroughput();
+        final boolean onDemand = throughput == null ||
+                (description.getBillingModeSummary() != null && BillingMode.PAY_PER_REQUEST.toString().equals(description.getBillingModeSummary().getBillingMode()));
+
+        seed(table, OperationClass.Read, onDemand ? null : throughput.getReadCapacityUnits());
+        seed(table, OperationClass.Write, onDemand ? null : throughput.getWriteCapacityUnits());
+      }
+    });
+  }
+
+  private void seed(final String table, final OperationClass operationClass, final Long provisioned) {
+    final double units = provisioned == null ? 0.0 : provisioned;
+    buckets.computeIfAbsent(keyOf(table, operationClass), key -> new TokenBucket(scheduler, clock)).seed(units);
+    metrics.gauge(rateNameOf(table, operationClass), (long) units);
+  }
+
+  private static boolean isPartiallyThrottled(final Object result) {
+    if (result instanceof BatchWriteItemResult) {
+      final Map<?, ?> unprocessed = ((BatchWriteItemResult) result).getUnprocessedItems();
+      return unprocessed != null && !unprocessed.isEmpty();
+    } else if (result instanceof BatchGetItemResult) {
+      final Map<?, ?> unprocessed = ((BatchGetItemResult) result).getUnprocessedKeys();
+      return unprocessed != null && !unprocessed.isEmpty();
+    }
+    return false;
+  }
+
+  /**
+   * Answer the name of the operation of {@code request}, such as {@code PutItem} of a {@code PutItemRequest}.
+   *
+   * @param request the AmazonWebServiceRequest
+   * @return String
+   */
+  public static String operationOf(final AmazonWebServiceRequest request) {
+    final String name = request.getClass().getSimpleName();
+    return name.endsWith("Request") ? name.substring(0, name.length() - "Request".length()) : name;
+  }
+
+  private static String keyOf(final String table, final OperationClass operationClass) {
+    return table + ":" + operationClass;
+  }
+
+  public static String rateNameOf(final String table, final OperationClass operationClass) {
+    return RATE_PREFIX + table + "." + operationClass.name().toLowerCase();
+  }
+}
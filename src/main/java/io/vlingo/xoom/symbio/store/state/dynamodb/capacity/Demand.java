@@ -0,0 +1,129 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.capacity;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItem;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItemsRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+import io.vlingo.xoom.symbio.store.state.dynamodb.chunks.StateChunks;
+
+/**
+ * Demand estimates the capacity units that a request will consume of each
+ * table, before it is submitted.
+ * <p>
+ * A write consumes a unit per kilobyte of each item written, and twice as
+ * many within a transaction. The size of an item read is unknown until it
+ * is read, so a read is estimated at a unit per item, or half a unit when
+ * eventually consistent. The {@code ConsumedCapacity} answered with the
+ * result corrects the estimate.
+ */
+public final class Demand {
+  private static final double WRITE_UNIT_BYTES = 1024.0;
+  private static final double EVENTUAL_READ_UNITS = 0.5;
+  private static final double TRANSACTIONAL_FACTOR = 2.0;
+
+  public final OperationClass operationClass;
+  public final Map<String, Double> units;
+
+  public static Demand of(final GetItemRequest request) {
+    return new Demand(OperationClass.Read, Collections.singletonMap(request.getTableName(), readUnitsOf(1, request.getConsistentRead())));
+  }
+
+  public static Demand of(final BatchGetItemRequest request) {
+    final Map<String, Double> units = new TreeMap<>();
+    for (final Map.Entry<String, KeysAndAttributes> table : request.getRequestItems().entrySet()) {
+      units.put(table.getKey(), readUnitsOf(table.getValue().getKeys().size(), table.getValue().getConsistentRead()));
+    }
+    return new Demand(OperationClass.Read, units);
+  }
+
+  public static Demand of(final PutItemRequest request) {
+    return new Demand(OperationClass.Write, Collections.singletonMap(request.getTableName(), writeUnitsOf(request.getItem())));
+  }
+
+  public static Demand of(final DeleteItemRequest request) {
+    return new Demand(OperationClass.Write, Collections.singletonMap(request.getTableName(), 1.0));
+  }
+
+  public static Demand of(final BatchWriteItemRequest request) {
+    return of(request.getRequestItems());
+  }
+
+  /**
+   * Answer the demand of a {@code BatchWriteItem} of {@code requestItems}.
+   *
+   * @param requestItems the {@code Map<String, List<WriteRequest>>} write requests by table
+   * @return Demand
+   */
+  public static Demand of(final Map<String, List<WriteRequest>> requestItems) {
+    final Map<String, Double> units = new TreeMap<>();
+    for (final Map.Entry<String, List<WriteRequest>> table : requestItems.entrySet()) {
+      double tableUnits = 0.0;
+      for (final WriteRequest request : table.getValue()) {
+        tableUnits += request.getPutRequest() == null ? 1.0 : writeUnitsOf(request.getPutRequest().getItem());
+      }
+      units.put(table.getKey(), tableUnits);
+    }
+    return new Demand(OperationClass.Write, units);
+  }
+
+  public static Demand of(final TransactWriteItemsRequest request) {
+    final Map<String, Double> units = new TreeMap<>();
+    for (final TransactWriteItem item : request.getTransactItems()) {
+      if (item.getPut() != null) {
+        units.merge(item.getPut().getTableName(), TRANSACTIONAL_FACTOR * writeUnitsOf(item.getPut().getItem()), Double::sum);
+      } else if (item.getUpdate() != null) {
+        units.merge(item.getUpdate().getTableName(), TRANSACTIONAL_FACTOR, Double::sum);
+      } else if (item.getDelete() != null) {
+        units.merge(item.getDelete().getTableName(), TRANSACTIONAL_FACTOR, Double::sum);
+      } else if (item.getConditionCheck() != null) {
+        units.merge(item.getConditionCheck().getTableName(), TRANSACTIONAL_FACTOR, Double::sum);
+      }
+    }
+    return new Demand(OperationClass.Write, units);
+  }
+
+  private static double readUnitsOf(final int items, final Boolean consistentRead) {
+    return items * (Boolean.TRUE.equals(consistentRead) ? 1.0 : EVENTUAL_READ_UNITS);
+  }
+
+  private static double writeUnitsOf(final Map<String, AttributeValue> item) {
+    return Math.max(1.0, Math.ceil(StateChunks.sizeOf(item) / WRITE_UNIT_BYTES));
+  }
+
+  private Demand(final OperationClass operationClass, final Map<String, Double> units) {
+    this.operationClass = operationClass;
+    this.units = units;
+  }
+
+  @Override
+  public String toString() {
+    return "Demand[" + operationClass + " " + units + "]";
+  }
+
+  /**
+   * The class of capacity that an operation consumes, each limited separately.
+   */
+  public enum OperationClass {
+    Read,
+    Write
+  }
+}
@@ -0,0 +1,203 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.capacity;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.function.LongSupplier;
+
+import io.vlingo.xoom.common.Scheduler;
+
+/**
+ * TokenBucket admits requests at the rate of the capacity of one class of
+ * a table, and queues those it cannot admit yet.
+ * <p>
+ * Tokens accrue at the rate, up to a second of it, and a request is
+ * admitted while tokens remain and no earlier request waits, taking the
+ * units of its demand. A request larger than the tokens left is admitted
+ * into debt, which delays those that follow. Waiting requests are
+ * admitted in order, once enough time has passed to repay the debt.
+ * <p>
+ * The rate adapts to the table. It is halved when a request is
+ * throttled, at most once a second so that a burst of throttled requests
+ * in flight counts once, and grows by a tenth of the provisioned capacity
+ * each second without throttling, up to the provisioned capacity. A bucket
+ * that is not seeded with a provisioned capacity admits every request.
+ */
+final class TokenBucket {
+  static final double DECREASE_FACTOR = 0.5;
+  static final double INCREASE_FRACTION = 0.1;
+  static final double MIN_RATE = 1.0;
+  static final long ADJUSTMENT_INTERVAL = 1000L;
+
+  private final Scheduler scheduler;
+  private final LongSupplier clock;
+  private final Queue<Waiting> waiting;
+  private double provisioned;
+  private double rate;
+  private double tokens;
+  private long refilledAt;
+  private long adjustedAt;
+  private long decreasedAt;
+  private boolean draining;
+
+  TokenBucket(final Scheduler scheduler, final LongSupplier clock) {
+    this.scheduler = scheduler;
+    this.clock = clock;
+    this.waiting = new ArrayDeque<>();
+    this.provisioned = 0.0;
+    this.rate = 0.0;
+    this.tokens = 0.0;
+    this.decreasedAt = Long.MIN_VALUE / 2;
+  }
+
+  /**
+   * Limit the bucket to {@code provisioned} units a second, or lift the
+   * limit when it is not positive, as for an on-demand table.
+   *
+   * @param provisioned the double capacity units a second provisioned for the table
+   */
+  void seed(final double provisioned) {
+    final List<Runnable> admitted;
+    synchronized (this) {
+      final long now = clock.getAsLong();
+      this.provisioned = Math.max(0.0, provisioned);
+      this.rate = this.provisioned;
+      this.tokens = this.provisioned;
+      this.refilledAt = now;
+      this.adjustedAt = now;
+      admitted = admitWaiting();
+    }
+    admitted.forEach(Runnable::run);
+  }
+
+  /**
+   * Run {@code admitted} once the bucket admits {@code units}, either now,
+   * on the current thread, or later, on a thread of the scheduler.
+   *
+   * @param units the double capacity units demanded
+   * @param admitted the Runnable that submits the request
+   * @return boolean whether the request was queued
+   */
+  boolean acquire(final double units, final Runnable admitted) {
+    synchronized (this) {
+      refill();
+      if (!isLimited() || (waiting.isEmpty() && tokens > 0.0)) {
+        tokens -= units;
+      } else {
+        waiting.add(new Waiting(units, admitted));
+        scheduleDrain();
+        return true;
+      }
+    }
+    admitted.run();
+    return false;
+  }
+
+  /**
+   * Correct the tokens taken by a request with the {@code units} it consumed beyond its demand.
+   *
+   * @param units the double capacity units consumed beyond, or when negative below, the demand
+   */
+  synchronized void settle(final double units) {
+    if (isLimited()) {
+      tokens -= units;
+    }
+  }
+
+  /**
+   * Halve the rate, unless it was halved within the last second, and drop the remaining tokens.
+   */
+  synchronized void throttled() {
+    if (!isLimited()) {
+      return;
+    }
+    final long now = clock.getAsLong();
+    accrue(now);
+    if (now - decreasedAt >= ADJUSTMENT_INTERVAL) {
+      rate = Math.max(MIN_RATE, rate * DECREASE_FACTOR);
+      decreasedAt = now;
+    }
+    tokens = Math.min(tokens, 0.0);
+    adjustedAt = now;
+  }
+
+  synchronized boolean isLimited() {
+    return provisioned > 0.0;
+  }
+
+  synchronized double rate() {
+    return rate;
+  }
+
+  synchronized int waiting() {
+    return waiting.size();
+  }
+
+  private void drain() {
+    final List<Runnable> admitted;
+    synchronized (this) {
+      draining = false;
+      refill();
+      admitted = admitWaiting();
+      if (!waiting.isEmpty()) {
+        scheduleDrain();
+      }
+    }
+    admitted.forEach(Runnable::run);
+  }
+
+  private List<Runnable> admitWaiting() {
+    final List<Runnable> admitted = new ArrayList<>();
+    while (!waiting.isEmpty() && (!isLimited() || tokens > 0.0)) {
+      final Waiting next = waiting.poll();
+      tokens -= next.units;
+      admitted.add(next.admitted);
+    }
+    return admitted;
+  }
+
+  private void scheduleDrain() {
+    if (draining) {
+      return;
+    }
+    draining = true;
+    // the time to accrue the debt and a fraction of a unit, so that tokens remain
+    final long delay = 1L + (long) Math.ceil((Math.max(0.0, -tokens) + 0.01) / rate * 1000.0);
+    scheduler.scheduleOnce((scheduled, data) -> drain(), null, 0L, delay);
+  }
+
+  private void refill() {
+    if (!isLimited()) {
+      return;
+    }
+    final long now = clock.getAsLong();
+    accrue(now);
+    if (now - adjustedAt >= ADJUSTMENT_INTERVAL && rate < provisioned) {
+      rate = Math.min(provisioned, rate + provisioned * INCREASE_FRACTION);
+      adjustedAt = now;
+    }
+  }
+
+  private void accrue(final long now) {
+    tokens = Math.min(rate, tokens + rate * (now - refilledAt) / 1000.0);
+    refilledAt = now;
+  }
+
+  private static final class Waiting {
+    private final double units;
+    private final Runnable admitted;
+
+    Waiting(final double units, final Runnable admitted) {
+      this.units = units;
+      this.admitted = admitted;
+    }
+  }
+}
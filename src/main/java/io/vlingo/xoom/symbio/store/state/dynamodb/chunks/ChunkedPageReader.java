@@ -0,0 +1,68 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.chunks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import io.vlingo.xoom.symbio.store.state.dynamodb.streams.PageReader;
+
+/**
+ * ChunkedPageReader reads the pages of another {@link PageReader} of a
+ * state table, and answers them with their chunked states reassembled and
+ * without their chunk items.
+ */
+public class ChunkedPageReader implements PageReader {
+  private final String table;
+  private final PageReader reader;
+  private final StateChunks chunks;
+
+  /**
+   * Answer each of {@code readers} of {@code table} reassembling chunked states.
+   *
+   * @param table the String name of the state table read
+   * @param readers the {@code List<PageReader>} of the table
+   * @param chunks the StateChunks to reassemble with
+   * @return {@code List<PageReader>}
+   */
+  public static List<PageReader> allOf(final String table, final List<PageReader> readers, final StateChunks chunks) {
+    final List<PageReader> chunked = new ArrayList<>(readers.size());
+    for (final PageReader reader : readers) {
+      chunked.add(new ChunkedPageReader(table, reader, chunks));
+    }
+    return chunked;
+  }
+
+  public ChunkedPageReader(final String table, final PageReader reader, final StateChunks chunks) {
+    this.table = table;
+    this.reader = reader;
+    this.chunks = chunks;
+  }
+
+  @Override
+  public void readPage(final Map<String, AttributeValue> exclusiveStartKey, final PageListener listener) {
+    reader.readPage(exclusiveStartKey, new PageListener() {
+      @Override
+      public void pageRead(final List<Map<String, AttributeValue>> items, final Map<String, AttributeValue> lastEvaluatedKey) {
+        chunks.reassemble(
+                Collections.singletonMap(table, items),
+                whole -> listener.pageRead(whole.get(table), lastEvaluatedKey),
+                listener::pageFailed);
+      }
+
+      @Override
+      public void pageFailed(final Exception e) {
+        listener.pageFailed(e);
+      }
+    });
+  }
+}
@@ -0,0 +1,578 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.chunks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+
+import io.vlingo.xoom.symbio.store.Result;
+import io.vlingo.xoom.symbio.store.StorageException;
+import io.vlingo.xoom.symbio.store.state.dynamodb.capacity.CapacityLimiter;
+import io.vlingo.xoom.symbio.store.state.dynamodb.capacity.Demand;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryScheduler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.CapacityAccounting;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.StoreMetrics;
+
+/**
+ * StateChunks stores a state whose item would exceed the DynamoDB item
+ * size limit as a head item and sibling chunk items in the same table.
+ * <p>
+ * The head keeps every attribute of the state item except its {@code Data},
+ * which is split into chunks of at most {@code chunkBytes}, and records the
+ * number of chunks and the type of the data. Chunk {@code n} has the
+ * {@code Id} {@code <id>#chunk-n}, names its head in {@code ChunkOf}, and
+ * carries the {@code DataVersion} of the head. The head and its chunks are
+ * written by one {@code TransactWriteItems}, so a state and its outbox item
+ * must fit in one transaction. States that fit in one item are stored as
+ * they always have been.
+ * <p>
+ * Read items are reassembled by {@link #reassemble(Map, Consumer, Consumer)},
+ * which reads the chunks of every head with strongly consistent
+ * {@code BatchGetItem}s and drops chunk items, such as those of a scan.
+ * The chunks, and any left unprocessed, are read through the
+ * {@link CapacityLimiter}, under the type of their heads.
+ * <p>
+ * A write of a state that had more chunks than it now has, as answered by
+ * the read before the write, is followed by a {@code DeleteItem} of each
+ * chunk left behind, conditioned on the chunk being older than the write,
+ * so that the chunks of a later write are kept. A chunk whose delete fails
+ * once its retries are spent, or that a write mode without the read leaves
+ * behind, stays in the table, where it is not read.
+ * <p>
+ * The chunks maintain these metrics:
+ * <ul>
+ *   <li>{@code chunks.states.written}: the states written in chunks</li>
+ *   <li>{@code chunks.states.read}: the chunked states reassembled</li>
+ *   <li>{@code chunks.stale.deleted}: the chunks deleted after their state shrank</li>
+ * </ul>
+ */
+public class StateChunks {
+  public static final String STATES_READ = "chunks.states.read";
+  public static final String STATES_WRITTEN = "chunks.states.written";
+  public static final String STALE_DELETED = "chunks.stale.deleted";
+
+  public static final int DEFAULT_CHUNK_BYTES = 350 * 1024;
+  public static final int MAX_ITEM_BYTES = 400 * 1024;
+  public static final int MAX_TRANSACTION_BYTES = 4 * 1024 * 1024;
+  public static final int MAX_TRANSACTION_ITEMS = 100;
+
+  public static final String CHUNK_COUNT_ATTRIBUTE = "ChunkCount";
+  public static final String CHUNK_OF_ATTRIBUTE = "ChunkOf";
+  public static final String CHUNKED_TYPE_ATTRIBUTE = "ChunkedType";
+
+  private static final String ID_ATTRIBUTE = "Id";
+  private static final String DATA_ATTRIBUTE = "Data";
+  private static final String DATA_VERSION_ATTRIBUTE = "DataVersion";
+  private static final String TYPE_ATTRIBUTE = "Type";
+  private static final String CHUNK_ID_SEPARATOR = "#chunk-";
+  private static final String BINARY = "B";
+  private static final String TEXT = "S";
+  private static final int BATCH_GET_ITEM_LIMIT = 100;
+
+  private final AmazonDynamoDBAsync dynamodb;
+  private final int chunkBytes;
+  private final RetryScheduler retries;
+  private final StoreMetrics metrics;
+  private final CapacityLimiter capacity;
+
+  public StateChunks(final AmazonDynamoDBAsync dynamodb, final RetryScheduler retries) {
+    this(dynamodb, DEFAULT_CHUNK_BYTES, retries);
+  }
+
+  public StateChunks(final AmazonDynamoDBAsync dynamodb, final int chunkBytes, final RetryScheduler retries) {
+    this(dynamodb, chunkBytes, retries, CapacityLimiter.unlimited(new CapacityAccounting()));
+  }
+
+  public StateChunks(final AmazonDynamoDBAsync dynamodb, final int chunkBytes, final RetryScheduler retries, final CapacityLimiter capacity) {
+    if (chunkBytes < 1 || chunkBytes > MAX_ITEM_BYTES - 1024) {
+      throw new IllegalArgumentException("Chunk bytes must be between 1 and " + (MAX_ITEM_BYTES - 1024) + ".");
+    }
+    this.dynamodb = dynamodb;
+    this.chunkBytes = chunkBytes;
+    this.retries = retries;
+    this.metrics = retries.metrics();
+    this.capacity = capacity;
+  }
+
+  public static boolean isChunk(final Map<String, AttributeValue> item) {
+    return item.containsKey(CHUNK_OF_ATTRIBUTE);
+  }
+
+  public static boolean isChunked(final Map<String, AttributeValue> item) {
+    return item.containsKey(CHUNK_COUNT_ATTRIBUTE);
+  }
+
+  /**
+   * Answer the number of chunks of {@code item}, which is {@code 0} when it is not chunked or {@code null}.
+   *
+   * @param item the {@code Map<String, AttributeValue>} of a state, or of its head
+   * @return int
+   */
+  public static int chunkCountOf(final Map<String, AttributeValue> item) {
+    return item != null && isChunked(item) ? Integer.parseInt(item.get(CHUNK_COUNT_ATTRIBUTE).getN()) : 0;
+  }
+
+  /**
+   * Answer whether {@code item} must be written in chunks.
+   *
+   * @param item the {@code Map<String, AttributeValue>} of a state
+   * @return boolean
+   */
+  public boolean isOversized(final Map<String, AttributeValue> item) {
+    return sizeOf(item) > chunkBytes;
+  }
+
+  /**
+   * Answer the items that store the oversized {@code item}, its head first
+   * and then its chunks.
+   *
+   * @param item the {@code Map<String, AttributeValue>} of a state
+   * @param transactionItems the {@code List<Map<String, AttributeValue>>} other items of its transaction
+   * @return {@code List<Map<String, AttributeValue>>}
+   * @throws IllegalArgumentException if the chunks do not fit in one transaction
+   */
+  public List<Map<String, AttributeValue>> split(final Map<String, AttributeValue> item, final List<Map<String, AttributeValue>> transactionItems) {
+    final int size = sizeOf(item);
+    int transactionBytes = 0;
+    for (final Map<String, AttributeValue> transactionItem : transactionItems) {
+      transactionBytes += sizeOf(transactionItem);
+    }
+    final AttributeValue data = item.get(DATA_ATTRIBUTE);
+    final byte[] bytes = data.getS() != null ? data.getS().getBytes(StandardCharsets.UTF_8) : bytesOf(data.getB());
+    final int chunkCount = (bytes.length + chunkBytes - 1) / chunkBytes;
+    final String id = item.get(ID_ATTRIBUTE).getS();
+    if (size + transactionBytes > MAX_TRANSACTION_BYTES || chunkCount + 1 + transactionItems.size() > MAX_TRANSACTION_ITEMS) {
+      throw new IllegalArgumentException("The state of " + size + " bytes is too large to be written in one transaction: " + id);
+    }
+
+    final Map<String, AttributeValue> head = new HashMap<>(item);
+    head.remove(DATA_ATTRIBUTE);
+    head.put(CHUNK_COUNT_ATTRIBUTE, new AttributeValue().withN(String.valueOf(chunkCount)));
+    head.put(CHUNKED_TYPE_ATTRIBUTE, new AttributeValue().withS(data.getS() != null ? TEXT : BINARY));
+
+    final List<Map<String, AttributeValue>> items = new ArrayList<>(chunkCount + 1);
+    items.add(head);
+    for (int index = 0; index < chunkCount; ++index) {
+      final int offset = index * chunkBytes;
+      final Map<String, AttributeValue> chunk = new HashMap<>(4);
+      chunk.put(ID_ATTRIBUTE, new AttributeValue().withS(chunkIdOf(id, index)));
+      chunk.put(CHUNK_OF_ATTRIBUTE, new AttributeValue().withS(id));
+      chunk.put(DATA_VERSION_ATTRIBUTE, item.get(DATA_VERSION_ATTRIBUTE));
+      chunk.put(DATA_ATTRIBUTE, new AttributeValue().withB(ByteBuffer.wrap(bytes, offset, Math.min(chunkBytes, bytes.length - offset)).slice()));
+      items.add(chunk);
+    }
+
+    return items;
+  }
+
+  /**
+   * Record that the items of a {@link #split(Map, List)} state were written.
+   */
+  public void written() {
+    metrics.increment(STATES_WRITTEN);
+  }
+
+  /**
+   * Delete the chunks of the state {@code id} in {@code table} from
+   * {@code chunkCount} up to {@code previousChunkCount}, which a write of
+   * {@code dataVersion} left behind, unless a later write replaced them.
+   *
+   * @param table the String name of the table of the state
+   * @param stateType the String name of the state type, under which the capacity is accounted
+   * @param id the String id of the state
+   * @param dataVersion the int version of the write
+   * @param chunkCount the int number of chunks written, {@code 0} for a state written whole
+   * @param previousChunkCount the int number of chunks of the state replaced
+   */
+  public void deleteStale(final String table, final String stateType, final String id, final int dataVersion, final int chunkCount, final int previousChunkCount) {
+    for (int index = chunkCount; index < previousChunkCount; ++index) {
+      final DeleteItemRequest request = new DeleteItemRequest()
+              .withTableName(table)
+              .withKey(Collections.singletonMap(ID_ATTRIBUTE, new AttributeValue().withS(chunkIdOf(id, index))))
+              .withConditionExpression("#version < :version")
+              .withExpressionAttributeNames(Collections.singletonMap("#version", DATA_VERSION_ATTRIBUTE))
+              .withExpressionAttributeValues(Collections.singletonMap(":version", new AttributeValue().withN(String.valueOf(dataVersion))))
+              .withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+      new StaleChunkDeletion(stateType, request).submit();
+    }
+  }
+
+  /**
+   * Answer to {@code whole} the items of {@code itemsByTable} with the chunks
+   * of each head joined into its {@code Data}, and without chunk items, or
+   * answer to {@code failed} if the chunks cannot be read.
+   *
+   * @param itemsByTable the {@code Map<String, List<Map<String, AttributeValue>>>} of read items by table
+   * @param whole the {@code Consumer<Map<String, List<Map<String, AttributeValue>>>>} of the reassembled items
+   * @param failed the {@code Consumer<Exception>} of the failure
+   */
+  public void reassemble(
+          final Map<String, List<Map<String, AttributeValue>>> itemsByTable,
+          final Consumer<Map<String, List<Map<String, AttributeValue>>>> whole,
+          final Consumer<Exception> failed) {
+    boolean anyChunked = false;
+    for (final List<Map<String, AttributeValue>> items : itemsByTable.values()) {
+      for (final Map<String, AttributeValue> item : items) {
+        if (isChunked(item) || isChunk(item)) {
+          anyChunked = true;
+        }
+      }
+    }
+
+    if (!anyChunked) {
+      whole.accept(itemsByTable);
+      return;
+    }
+
+    new Reassembly(itemsByTable, whole, failed).start();
+  }
+
+  /**
+   * Answer {@code handler} answered with the reassembled item of the {@code GetItem} of a state in {@code table}.
+   *
+   * @param table the String name of the table being read
+   * @param handler the {@code AsyncHandler<GetItemRequest, GetItemResult>} of the whole item
+   * @return {@code AsyncHandler<GetItemRequest, GetItemResult>}
+   */
+  public AsyncHandler<GetItemRequest, GetItemResult> reassembling(final String table, final AsyncHandler<GetItemRequest, GetItemResult> handler) {
+    return new AsyncHandler<GetItemRequest, GetItemResult>() {
+      @Override
+      public void onError(final Exception e) {
+        handler.onError(e);
+      }
+
+      @Override
+      public void onSuccess(final GetItemRequest request, final GetItemResult result) {
+        if (result.getItem() == null || !isChunked(result.getItem())) {
+          handler.onSuccess(request, result);
+          return;
+        }
+        reassemble(
+                Collections.singletonMap(table, Collections.singletonList(result.getItem())),
+                whole -> handler.onSuccess(request, new GetItemResult().withItem(whole.get(table).get(0))),
+                handler::onError);
+      }
+    };
+  }
+
+  /**
+   * Answer the estimated bytes that DynamoDB counts for {@code item}.
+   *
+   * @param item the {@code Map<String, AttributeValue>} to measure
+   * @return int
+   */
+  public static int sizeOf(final Map<String, AttributeValue> item) {
+    int size = 0;
+    for (final Map.Entry<String, AttributeValue> attribute : item.entrySet()) {
+      size += utf8LengthOf(attribute.getKey()) + sizeOf(attribute.getValue());
+    }
+    return size;
+  }
+
+  private static int sizeOf(final AttributeValue value) {
+    if (value.getS() != null) {
+      return utf8LengthOf(value.getS());
+    } else if (value.getB() != null) {
+      return value.getB().remaining();
+    } else if (value.getN() != null) {
+      return value.getN().length() / 2 + 2;
+    } else if (value.getM() != null) {
+      return 3 + sizeOf(value.getM());
+    } else if (value.getL() != null) {
+      int size = 3;
+      for (final AttributeValue element : value.getL()) {
+        size += 1 + sizeOf(element);
+      }
+      return size;
+    } else if (value.getSS() != null) {
+      int size = 0;
+      for (final String element : value.getSS()) {
+        size += utf8LengthOf(element);
+      }
+      return size;
+    } else if (value.getNS() != null) {
+      int size = 0;
+      for (final String element : value.getNS()) {
+        size += element.length() / 2 + 2;
+      }
+      return size;
+    } else if (value.getBS() != null) {
+      int size = 0;
+      for (final ByteBuffer element : value.getBS()) {
+        size += element.remaining();
+      }
+      return size;
+    }
+    return 1;
+  }
+
+  private static int utf8LengthOf(final String text) {
+    int length = 0;
+    for (int index = 0; index < text.length(); ++index) {
+      final char c = text.charAt(index);
+      if (c < 0x80) {
+        length += 1;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c)) {
+        length += 4;
+        ++index;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  private static byte[] bytesOf(final ByteBuffer buffer) {
+    final ByteBuffer source = buffer.duplicate();
+    final byte[] bytes = new byte[source.remaining()];
+    source.get(bytes);
+    return bytes;
+  }
+
+  private static String chunkIdOf(final String id, final int index) {
+    return id + CHUNK_ID_SEPARATOR + index;
+  }
+
+  private static String keyOf(final String table, final String id) {
+    return table + "/" + id;
+  }
+
+  private class StaleChunkDeletion implements AsyncHandler<DeleteItemRequest, DeleteItemResult> {
+    private final String stateType;
+    private final DeleteItemRequest request;
+    private int attempt;
+
+    StaleChunkDeletion(final String stateType, final DeleteItemRequest request) {
+      this.stateType = stateType;
+      this.request = request;
+      this.attempt = 0;
+    }
+
+    void submit() {
+      capacity.submit(stateType, Demand.of(request), request, dynamodb::deleteItemAsync, this, result -> Collections.singletonList(result.getConsumedCapacity()));
+    }
+
+    @Override
+    public void onError(final Exception e) {
+      // a chunk that is gone, or of a later write, is kept as it is
+      if (!(e instanceof ConditionalCheckFailedException)) {
+        retries.retry(attempt++, this::submit);
+      }
+    }
+
+    @Override
+    public void onSuccess(final DeleteItemRequest request, final DeleteItemResult result) {
+      metrics.increment(STALE_DELETED);
+    }
+  }
+
+  private class Reassembly {
+    private final Map<String, List<Map<String, AttributeValue>>> itemsByTable;
+    private final Consumer<Map<String, List<Map<String, AttributeValue>>>> whole;
+    private final Consumer<Exception> failed;
+    private final Map<String, Map<String, AttributeValue>> chunks;
+    private final AtomicInteger outstanding;
+    private final AtomicBoolean completed;
+    private final List<BatchGetItemRequest> requests;
+    private String stateType;
+
+    Reassembly(
+            final Map<String, List<Map<String, AttributeValue>>> itemsByTable,
+            final Consumer<Map<String, List<Map<String, AttributeValue>>>> whole,
+            final Consumer<Exception> failed) {
+      this.itemsByTable = itemsByTable;
+      this.whole = whole;
+      this.failed = failed;
+      this.chunks = new ConcurrentHashMap<>();
+      this.requests = requestsOf(itemsByTable);
+      this.outstanding = new AtomicInteger(requests.size());
+      this.completed = new AtomicBoolean(false);
+    }
+
+    void start() {
+      if (requests.isEmpty()) {
+        requestCompleted(); // only chunk items were read
+        return;
+      }
+      for (final BatchGetItemRequest request : requests) {
+        submit(request, new ChunksAsyncHandler());
+      }
+    }
+
+    private void submit(final BatchGetItemRequest request, final ChunksAsyncHandler handler) {
+      capacity.submit(stateType, Demand.of(request), request, dynamodb::batchGetItemAsync, handler, BatchGetItemResult::getConsumedCapacity);
+    }
+
+    private List<BatchGetItemRequest> requestsOf(final Map<String, List<Map<String, AttributeValue>>> itemsByTable) {
+      final List<BatchGetItemRequest> requests = new ArrayList<>();
+      Map<String, KeysAndAttributes> requestItems = new HashMap<>();
+      int keys = 0;
+      for (final Map.Entry<String, List<Map<String, AttributeValue>>> table : itemsByTable.entrySet()) {
+        for (final Map<String, AttributeValue> item : table.getValue()) {
+          if (!isChunked(item)) {
+            continue;
+          }
+          final String id = item.get(ID_ATTRIBUTE).getS();
+          final int chunkCount = Integer.parseInt(item.get(CHUNK_COUNT_ATTRIBUTE).getN());
+          accountTo(item);
+          for (int index = 0; index < chunkCount; ++index) {
+            requestItems
+              .computeIfAbsent(table.getKey(), name -> new KeysAndAttributes().withConsistentRead(true))
+              .withKeys(Collections.singletonMap(ID_ATTRIBUTE, new AttributeValue().withS(chunkIdOf(id, index))));
+            if (++keys == BATCH_GET_ITEM_LIMIT) {
+              requests.add(new BatchGetItemRequest(requestItems).withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES));
+              requestItems = new HashMap<>();
+              keys = 0;
+            }
+          }
+        }
+      }
+      if (keys > 0) {
+        requests.add(new BatchGetItemRequest(requestItems).withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES));
+      }
+      return requests;
+    }
+
+    /**
+     * Account the chunks to the type of {@code head}, or to no single type
+     * when the heads are of several types.
+     */
+    private void accountTo(final Map<String, AttributeValue> head) {
+      final AttributeValue type = head.get(TYPE_ATTRIBUTE);
+      final String headType = type == null || type.getS() == null ? CapacityAccounting.NO_STATE_TYPE : type.getS();
+      stateType = stateType == null || stateType.equals(headType) ? headType : CapacityAccounting.NO_STATE_TYPE;
+    }
+
+    private void requestCompleted() {
+      if (outstanding.get() > 0 && outstanding.decrementAndGet() > 0) {
+        return;
+      }
+      if (!completed.compareAndSet(false, true)) {
+        return;
+      }
+
+      final Map<String, List<Map<String, AttributeValue>>> reassembled = new LinkedHashMap<>();
+      try {
+        for (final Map.Entry<String, List<Map<String, AttributeValue>>> table : itemsByTable.entrySet()) {
+          final List<Map<String, AttributeValue>> items = new ArrayList<>(table.getValue().size());
+          for (final Map<String, AttributeValue> item : table.getValue()) {
+            if (isChunked(item)) {
+              items.add(joined(table.getKey(), item));
+            } else if (!isChunk(item)) {
+              items.add(item);
+            }
+          }
+          reassembled.put(table.getKey(), items);
+        }
+      } catch (Exception e) {
+        failed.accept(e);
+        return;
+      }
+
+      whole.accept(reassembled);
+    }
+
+    private Map<String, AttributeValue> joined(final String table, final Map<String, AttributeValue> head) {
+      final String id = head.get(ID_ATTRIBUTE).getS();
+      final String dataVersion = head.get(DATA_VERSION_ATTRIBUTE).getN();
+      final int chunkCount = Integer.parseInt(head.get(CHUNK_COUNT_ATTRIBUTE).getN());
+
+      final List<ByteBuffer> parts = new ArrayList<>(chunkCount);
+      int size = 0;
+      for (int index = 0; index < chunkCount; ++index) {
+        final Map<String, AttributeValue> chunk = chunks.get(keyOf(table, chunkIdOf(id, index)));
+        if (chunk == null || !dataVersion.equals(chunk.get(DATA_VERSION_ATTRIBUTE).getN())) {
+          throw new StorageException(Result.Failure, "Chunk " + index + " of version " + dataVersion + " is missing for: " + id);
+        }
+        final ByteBuffer part = chunk.get(DATA_ATTRIBUTE).getB();
+        parts.add(part);
+        size += part.remaining();
+      }
+
+      final ByteBuffer data = ByteBuffer.allocate(size);
+      for (final ByteBuffer part : parts) {
+        data.put(part.duplicate());
+      }
+      data.flip();
+
+      final Map<String, AttributeValue> item = new HashMap<>(head);
+      item.remove(CHUNK_COUNT_ATTRIBUTE);
+      item.remove(CHUNKED_TYPE_ATTRIBUTE);
+      if (TEXT.equals(head.get(CHUNKED_TYPE_ATTRIBUTE).getS())) {
+        item.put(DATA_ATTRIBUTE, new AttributeValue().withS(new String(data.array(), StandardCharsets.UTF_8)));
+      } else {
+        item.put(DATA_ATTRIBUTE, new AttributeValue().withB(data));
+      }
+      metrics.increment(STATES_READ);
+      return item;
+    }
+
+    private void requestFailed(final Exception e) {
+      if (completed.compareAndSet(false, true)) {
+        failed.accept(e);
+      }
+    }
+
+    private class ChunksAsyncHandler implements AsyncHandler<BatchGetItemRequest, BatchGetItemResult> {
+      private final AtomicInteger attempts = new AtomicInteger(0);
+
+      @Override
+      public void onError(final Exception e) {
+        requestFailed(e);
+      }
+
+      @Override
+      public void onSuccess(final BatchGetItemRequest request, final BatchGetItemResult result) {
+        if (result.getResponses() != null) {
+          result.getResponses().forEach((table, items) -> {
+            for (final Map<String, AttributeValue> chunk : items) {
+              chunks.put(keyOf(table, chunk.get(ID_ATTRIBUTE).getS()), chunk);
+            }
+          });
+        }
+
+        final Map<String, KeysAndAttributes> unprocessed = result.getUnprocessedKeys();
+        if (unprocessed != null && !unprocessed.isEmpty()) {
+          final int attempt = attempts.getAndIncrement();
+          final BatchGetItemRequest retry = new BatchGetItemRequest(unprocessed).withReturnConsumedCapacity(request.getReturnConsumedCapacity());
+          if (!retries.retry(attempt, () -> submit(retry, this))) {
+            requestFailed(new StorageException(Result.Failure, "Chunks remain unprocessed after " + attempt + " retries"));
+          }
+          return;
+        }
+
+        requestCompleted();
+      }
+    }
+  }
+}
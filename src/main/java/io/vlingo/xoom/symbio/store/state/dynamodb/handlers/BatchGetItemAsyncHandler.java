@@ -0,0 +1,83 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.handlers;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+
+import io.vlingo.xoom.symbio.State;
+import io.vlingo.xoom.symbio.store.Result;
+import io.vlingo.xoom.symbio.store.StorageException;
+import io.vlingo.xoom.symbio.store.state.dynamodb.capacity.CapacityLimiter;
+import io.vlingo.xoom.symbio.store.state.dynamodb.capacity.Demand;
+import io.vlingo.xoom.symbio.store.state.dynamodb.chunks.StateChunks;
+
+/**
+ * Handles one {@code BatchGetItem} chunk of a {@code readAll()}, feeding
+ * its items to the {@link ReadAllAggregator}, with chunked states
+ * reassembled by {@link StateChunks}, and resubmitting unprocessed keys
+ * through the {@link RetryScheduler} and the {@link CapacityLimiter}.
+ */
+public class BatchGetItemAsyncHandler<RS extends State<?>> implements AsyncHandler<BatchGetItemRequest, BatchGetItemResult> {
+    private final ReadAllAggregator<RS> aggregator;
+    private final String stateType;
+    private final CapacityLimiter capacity;
+    private final AmazonDynamoDBAsync dynamodb;
+    private final RetryScheduler retries;
+    private final StateChunks chunks;
+    private final AtomicInteger attempts;
+
+    public BatchGetItemAsyncHandler(final ReadAllAggregator<RS> aggregator, final String stateType, final CapacityLimiter capacity, final AmazonDynamoDBAsync dynamodb, final RetryScheduler retries, final StateChunks chunks) {
+        this.aggregator = aggregator;
+        this.stateType = stateType;
+        this.capacity = capacity;
+        this.dynamodb = dynamodb;
+        this.retries = retries;
+        this.chunks = chunks;
+        this.attempts = new AtomicInteger(0);
+    }
+
+    @Override
+    public void onError(Exception e) {
+        aggregator.failed(StorageFailures.of(e));
+    }
+
+    @Override
+    public void onSuccess(BatchGetItemRequest request, BatchGetItemResult batchGetItemResult) {
+        final Map<String, List<Map<String, AttributeValue>>> responses = batchGetItemResult.getResponses() == null ?
+                Collections.emptyMap() :
+                batchGetItemResult.getResponses();
+
+        chunks.reassemble(responses, whole -> {
+            whole.forEach(aggregator::found);
+            readUnprocessed(request, batchGetItemResult.getUnprocessedKeys());
+        }, e -> aggregator.failed(StorageFailures.of(e)));
+    }
+
+    private void readUnprocessed(final BatchGetItemRequest request, final Map<String, KeysAndAttributes> unprocessed) {
+        if (unprocessed != null && !unprocessed.isEmpty()) {
+            final int attempt = attempts.getAndIncrement();
+            final BatchGetItemRequest retry = new BatchGetItemRequest(unprocessed).withReturnConsumedCapacity(request.getReturnConsumedCapacity());
+            if (!retries.retry(attempt, () -> capacity.submit(stateType, Demand.of(retry), retry, dynamodb::batchGetItemAsync, this, BatchGetItemResult::getConsumedCapacity))) {
+                aggregator.failed(new StorageException(Result.Failure, "Keys remain unprocessed after " + attempt + " retries"));
+            }
+            return;
+        }
+
+        aggregator.requestCompleted();
+    }
+}
@@ -9,11 +9,15 @@ package io.vlingo.xoom.symbio.store.state.dynamodb.handlers;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
 import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
 import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
 
 import io.vlingo.xoom.common.Failure;
 import io.vlingo.xoom.common.Success;
@@ -26,8 +30,27 @@ import io.vlingo.xoom.symbio.store.dispatch.Dispatchable;
 import io.vlingo.xoom.symbio.store.dispatch.Dispatcher;
 import io.vlingo.xoom.symbio.store.state.StateStore;
 import io.vlingo.xoom.symbio.store.state.StateStore.WriteResultInterest;
+import io.vlingo.xoom.symbio.store.state.dynamodb.capacity.CapacityLimiter;
+import io.vlingo.xoom.symbio.store.state.dynamodb.capacity.Demand;
 
+/**
+ * Handles a {@code BatchWriteItem} of a state and its dispatchable. Items
+ * left unprocessed by DynamoDB are resubmitted through the
+ * {@link RetryScheduler} and the {@link CapacityLimiter}, so that each
+ * attempt is admitted and accounted under the type of the state, and the write is reported successful only once
+ * every item has landed.
+ * <p>
+ * When the state has already landed, as in {@code WriteMode.Conditional},
+ * the batch holds only the dispatchable and its entries, and is given as
+ * the {@code outboxRequest}. A failed batch is then resubmitted as well, and should the retries be spent the write is
+ * still reported successful, since the state was written, and the
+ * dispatchable is dispatched from memory. It cannot be redispatched
+ * should its dispatch not be confirmed, which is counted as
+ * {@link #OUTBOX_WRITES_LOST}.
+ */
 public class BatchWriteItemAsyncHandler<S,RS extends State<?>,C> implements AsyncHandler<BatchWriteItemRequest, BatchWriteItemResult> {
+    public static final String OUTBOX_WRITES_LOST = "outbox.writes.lost";
+
     private final String id;
     private final S state;
     private final int stateVersion;
@@ -37,8 +60,18 @@ public class BatchWriteItemAsyncHandler<S,RS extends State<?>,C> implements Asyn
     private final Object object;
     private final Function<Dispatchable<Entry<?>, RS>, Void> dispatchState;
     private final List<Source<C>> sources;
+    private final CapacityLimiter capacity;
+    private final AmazonDynamoDBAsync dynamodb;
+    private final RetryScheduler retries;
+    private final boolean stateWritten;
+    private final AtomicInteger attempts;
+    private volatile BatchWriteItemRequest lastRequest;
 
-    public BatchWriteItemAsyncHandler(String id, S state, int stateVersion, final List<Source<C>> sources, WriteResultInterest interest, final Object object, Dispatchable<Entry<?>, RS> dispatchable, List<Dispatcher<Dispatchable<Entry<?>, RS>>> dispatchers, Function<Dispatchable<Entry<?>, RS>, Void> dispatchState) {
+    public BatchWriteItemAsyncHandler(String id, S state, int stateVersion, final List<Source<C>> sources, WriteResultInterest interest, final Object object, Dispatchable<Entry<?>, RS> dispatchable, List<Dispatcher<Dispatchable<Entry<?>, RS>>> dispatchers, Function<Dispatchable<Entry<?>, RS>, Void> dispatchState, final CapacityLimiter capacity, final AmazonDynamoDBAsync dynamodb, final RetryScheduler retries) {
+        this(id, state, stateVersion, sources, interest, object, dispatchable, dispatchers, dispatchState, capacity, dynamodb, retries, null);
+    }
+
+    public BatchWriteItemAsyncHandler(String id, S state, int stateVersion, final List<Source<C>> sources, WriteResultInterest interest, final Object object, Dispatchable<Entry<?>, RS> dispatchable, List<Dispatcher<Dispatchable<Entry<?>, RS>>> dispatchers, Function<Dispatchable<Entry<?>, RS>, Void> dispatchState, final CapacityLimiter capacity, final AmazonDynamoDBAsync dynamodb, final RetryScheduler retries, final BatchWriteItemRequest outboxRequest) {
         this.id = id;
         this.state = state;
         this.stateVersion = stateVersion;
@@ -48,6 +81,16 @@ public class BatchWriteItemAsyncHandler<S,RS extends State<?>,C> implements Asyn
         this.dispatchable = dispatchable;
         this.dispatchers = dispatchers;
         this.dispatchState = dispatchState;
+        this.capacity = capacity;
+        this.dynamodb = dynamodb;
+        this.retries = retries;
+        this.stateWritten = outboxRequest != null;
+        this.lastRequest = outboxRequest;
+        this.attempts = new AtomicInteger(0);
+    }
+
+    public BatchWriteItemAsyncHandler(String id, S state, int stateVersion, final List<Source<C>> sources, WriteResultInterest interest, final Object object, Dispatchable<Entry<?>, RS> dispatchable, List<Dispatcher<Dispatchable<Entry<?>, RS>>> dispatchers, Function<Dispatchable<Entry<?>, RS>, Void> dispatchState) {
+      this(id, state, stateVersion, sources, interest, object, dispatchable, dispatchers, dispatchState, null, null, RetryScheduler.none());
     }
 
     public BatchWriteItemAsyncHandler(String id, S state, int stateVersion, final List<Source<C>> sources, WriteResultInterest interest, final Object object, Dispatchable<Entry<?>, RS> dispatchable, Dispatcher<Dispatchable<Entry<?>, RS>> dispatcher, Function<Dispatchable<Entry<?>, RS>, Void> dispatchState) {
@@ -56,11 +99,46 @@ public class BatchWriteItemAsyncHandler<S,RS extends State<?>,C> implements Asyn
 
     @Override
     public void onError(Exception e) {
-        interest.writeResultedIn(Failure.of(new StorageException(Result.NoTypeStore, e.getMessage(), e)), id, state, stateVersion, Source.none(), object);
+        if (stateWritten) {
+            final BatchWriteItemRequest request = lastRequest;
+            if (!retries.retry(attempts.getAndIncrement(), () -> submit(request))) {
+                outboxLost();
+            }
+            return;
+        }
+        interest.writeResultedIn(Failure.of(StorageFailures.of(e)), id, state, stateVersion, Source.none(), object);
     }
 
     @Override
     public void onSuccess(BatchWriteItemRequest request, BatchWriteItemResult batchWriteItemResult) {
+        final Map<String, List<WriteRequest>> unprocessed = batchWriteItemResult.getUnprocessedItems();
+        if (unprocessed != null && !unprocessed.isEmpty()) {
+            final int attempt = attempts.getAndIncrement();
+            final BatchWriteItemRequest retry = new BatchWriteItemRequest(unprocessed).withReturnConsumedCapacity(request.getReturnConsumedCapacity());
+            if (!retries.retry(attempt, () -> submit(retry))) {
+                if (stateWritten) {
+                    outboxLost();
+                    return;
+                }
+                interest.writeResultedIn(Failure.of(new StorageException(Result.Failure, "Items remain unprocessed after " + attempt + " retries for: " + id)), id, state, stateVersion, sources, object);
+            }
+            return;
+        }
+
+        succeeded();
+    }
+
+    private void submit(final BatchWriteItemRequest request) {
+        lastRequest = request;
+        capacity.submit(state.getClass().getName(), Demand.of(request), request, dynamodb::batchWriteItemAsync, this, BatchWriteItemResult::getConsumedCapacity);
+    }
+
+    private void outboxLost() {
+        retries.metrics().increment(OUTBOX_WRITES_LOST);
+        succeeded();
+    }
+
+    private void succeeded() {
         interest.writeResultedIn(Success.of(Result.Success), id, state, stateVersion, sources, object);
         dispatchState.apply(dispatchable);
         dispatchers.forEach(d -> d.dispatch(dispatchable));
@@ -0,0 +1,53 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.handlers;
+
+import java.util.List;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+
+import io.vlingo.xoom.common.Failure;
+import io.vlingo.xoom.symbio.Source;
+import io.vlingo.xoom.symbio.store.state.StateStore.WriteResultInterest;
+
+/**
+ * Handles the conditional put of a state item. A failed {@code DataVersion}
+ * condition is reported as a {@code Result.ConcurrencyViolation}; when the
+ * state has landed {@code whenWritten} continues the write.
+ */
+public class ConditionalPutItemAsyncHandler<S,C> implements AsyncHandler<PutItemRequest, PutItemResult> {
+    private final String id;
+    private final S state;
+    private final int stateVersion;
+    private final List<Source<C>> sources;
+    private final WriteResultInterest interest;
+    private final Object object;
+    private final Runnable whenWritten;
+
+    public ConditionalPutItemAsyncHandler(String id, S state, int stateVersion, final List<Source<C>> sources, WriteResultInterest interest, final Object object, final Runnable whenWritten) {
+        this.id = id;
+        this.state = state;
+        this.stateVersion = stateVersion;
+        this.sources = sources;
+        this.interest = interest;
+        this.object = object;
+        this.whenWritten = whenWritten;
+    }
+
+    @Override
+    public void onError(Exception e) {
+        interest.writeResultedIn(Failure.of(StorageFailures.of(e)), id, state, stateVersion, sources, object);
+    }
+
+    @Override
+    public void onSuccess(PutItemRequest request, PutItemResult putItemResult) {
+        whenWritten.run();
+    }
+}
@@ -12,14 +12,21 @@ import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
 import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
 import io.vlingo.xoom.symbio.store.Result;
 import io.vlingo.xoom.symbio.store.dispatch.ConfirmDispatchedResultInterest;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.CapacityAccounting;
 
 public class ConfirmDispatchableAsyncHandler implements AsyncHandler<DeleteItemRequest, DeleteItemResult> {
     private final String dispatchId;
     private final ConfirmDispatchedResultInterest interest;
+    private final CapacityAccounting accounting;
 
     public ConfirmDispatchableAsyncHandler(String dispatchId, ConfirmDispatchedResultInterest interest) {
+        this(dispatchId, interest, new CapacityAccounting());
+    }
+
+    public ConfirmDispatchableAsyncHandler(String dispatchId, ConfirmDispatchedResultInterest interest, CapacityAccounting accounting) {
         this.dispatchId = dispatchId;
         this.interest = interest;
+        this.accounting = accounting;
     }
 
     @Override
@@ -29,6 +36,7 @@ public class ConfirmDispatchableAsyncHandler implements AsyncHandler<DeleteItemR
 
     @Override
     public void onSuccess(DeleteItemRequest request, DeleteItemResult deleteItemResult) {
+        accounting.record(CapacityAccounting.NO_STATE_TYPE, "DeleteItem", deleteItemResult.getConsumedCapacity());
         interest.confirmDispatchedResultedIn(Result.Success, dispatchId);
     }
 }
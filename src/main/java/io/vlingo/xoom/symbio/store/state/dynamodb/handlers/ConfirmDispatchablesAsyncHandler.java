@@ -0,0 +1,112 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.handlers;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+import io.vlingo.xoom.symbio.store.Result;
+import io.vlingo.xoom.symbio.store.dispatch.ConfirmDispatchedResultInterest;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.CapacityAccounting;
+
+/**
+ * Handles a {@code BatchWriteItem} that deletes confirmed dispatchables.
+ * Each confirmation is answered individually as soon as its delete has
+ * landed; keys left unprocessed are resubmitted through the
+ * {@link RetryScheduler} until its budget is spent, after which their
+ * confirmations fail.
+ */
+public class ConfirmDispatchablesAsyncHandler implements AsyncHandler<BatchWriteItemRequest, BatchWriteItemResult> {
+    private final String tableName;
+    private final Map<Map<String, AttributeValue>, String> dispatchIdsByKey;
+    private final Map<String, List<ConfirmDispatchedResultInterest>> interests;
+    private final AmazonDynamoDBAsync dynamodb;
+    private final RetryScheduler retries;
+    private final CapacityAccounting accounting;
+    private final AtomicInteger attempts;
+
+    public ConfirmDispatchablesAsyncHandler(final String tableName, final Map<Map<String, AttributeValue>, String> dispatchIdsByKey, final Map<String, List<ConfirmDispatchedResultInterest>> interests, final AmazonDynamoDBAsync dynamodb, final RetryScheduler retries) {
+        this(tableName, dispatchIdsByKey, interests, dynamodb, retries, new CapacityAccounting());
+    }
+
+    public ConfirmDispatchablesAsyncHandler(final String tableName, final Map<Map<String, AttributeValue>, String> dispatchIdsByKey, final Map<String, List<ConfirmDispatchedResultInterest>> interests, final AmazonDynamoDBAsync dynamodb, final RetryScheduler retries, final CapacityAccounting accounting) {
+        this.tableName = tableName;
+        this.dispatchIdsByKey = dispatchIdsByKey;
+        this.interests = interests;
+        this.dynamodb = dynamodb;
+        this.retries = retries;
+        this.accounting = accounting;
+        this.attempts = new AtomicInteger(0);
+    }
+
+    @Override
+    public void onError(Exception e) {
+        final List<String> remaining;
+        synchronized (interests) {
+            remaining = new ArrayList<>(interests.keySet());
+        }
+        remaining.forEach(dispatchId -> answer(dispatchId, Result.Failure));
+    }
+
+    @Override
+    public void onSuccess(BatchWriteItemRequest request, BatchWriteItemResult batchWriteItemResult) {
+        accounting.record(CapacityAccounting.NO_STATE_TYPE, "BatchWriteItem", batchWriteItemResult.getConsumedCapacity());
+
+        final Map<String, List<WriteRequest>> unprocessedItems = batchWriteItemResult.getUnprocessedItems();
+        final List<WriteRequest> unprocessed = unprocessedItems == null ? null : unprocessedItems.get(tableName);
+
+        final Set<String> pending = new HashSet<>();
+        if (unprocessed != null) {
+            for (final WriteRequest write : unprocessed) {
+                pending.add(dispatchIdOf(write));
+            }
+        }
+        for (final WriteRequest write : request.getRequestItems().get(tableName)) {
+            final String dispatchId = dispatchIdOf(write);
+            if (!pending.contains(dispatchId)) {
+                answer(dispatchId, Result.Success);
+            }
+        }
+
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        final BatchWriteItemRequest retry = new BatchWriteItemRequest(unprocessedItems).withReturnConsumedCapacity(request.getReturnConsumedCapacity());
+        if (!retries.retry(attempts.getAndIncrement(), () -> dynamodb.batchWriteItemAsync(retry, this))) {
+            for (final String dispatchId : pending) {
+                answer(dispatchId, Result.Failure);
+            }
+        }
+    }
+
+    private String dispatchIdOf(final WriteRequest write) {
+        return dispatchIdsByKey.get(write.getDeleteRequest().getKey());
+    }
+
+    private void answer(final String dispatchId, final Result result) {
+        final List<ConfirmDispatchedResultInterest> answered;
+        synchronized (interests) {
+            answered = interests.remove(dispatchId);
+        }
+        if (answered != null) {
+            answered.forEach(interest -> interest.confirmDispatchedResultedIn(result, dispatchId));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.handlers;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndexDescription;
+
+/**
+ * Answers which of the expected global secondary indexes a described
+ * table lacks, or the {@code Exception} of a failed {@code DescribeTable},
+ * such as that of a table that does not exist yet.
+ */
+public class DescribeIndexesAsyncHandler implements AsyncHandler<DescribeTableRequest, DescribeTableResult> {
+    private final Collection<String> expectedIndexes;
+    private final Consumer<Set<String>> missing;
+    private final Consumer<Exception> failed;
+
+    public DescribeIndexesAsyncHandler(Collection<String> expectedIndexes, Consumer<Set<String>> missing, Consumer<Exception> failed) {
+        this.expectedIndexes = expectedIndexes;
+        this.missing = missing;
+        this.failed = failed;
+    }
+
+    @Override
+    public void onError(Exception e) {
+        failed.accept(e);
+    }
+
+    @Override
+    public void onSuccess(DescribeTableRequest request, DescribeTableResult describeTableResult) {
+        final Set<String> absent = new LinkedHashSet<>(expectedIndexes);
+        if (describeTableResult.getTable().getGlobalSecondaryIndexes() != null) {
+            for (GlobalSecondaryIndexDescription index : describeTableResult.getTable().getGlobalSecondaryIndexes()) {
+                absent.remove(index.getIndexName());
+            }
+        }
+        missing.accept(absent);
+    }
+}
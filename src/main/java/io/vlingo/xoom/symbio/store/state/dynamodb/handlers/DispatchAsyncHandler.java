@@ -9,37 +9,62 @@ package io.vlingo.xoom.symbio.store.state.dynamodb.handlers;
 
 import com.amazonaws.handlers.AsyncHandler;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
-import com.amazonaws.services.dynamodbv2.model.ScanRequest;
-import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
 import io.vlingo.xoom.symbio.Entry;
 import io.vlingo.xoom.symbio.State;
 import io.vlingo.xoom.symbio.store.dispatch.Dispatchable;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.CapacityAccounting;
+import io.vlingo.xoom.symbio.store.state.dynamodb.outbox.StateReferences;
+import io.vlingo.xoom.symbio.store.state.dynamodb.streams.PageReader.PageListener;
 
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 
-public class DispatchAsyncHandler<RS extends State<?>> implements AsyncHandler<ScanRequest, ScanResult> {
-    private final Function<Map<String, AttributeValue>, Dispatchable<Entry<?>, RS>> unmarshaller;
+/**
+ * Handles a page of the {@code Query} of expired dispatchables, dispatching
+ * each of them again, once the states they reference have been read, before
+ * the {@code PageListener} is told of the page, or of the failure to read it.
+ */
+public class DispatchAsyncHandler<RS extends State<?>> implements AsyncHandler<QueryRequest, QueryResult> {
+    private final StateReferences<RS> references;
     private final Function<Dispatchable<Entry<?>, RS>, Void> dispatchState;
+    private final PageListener listener;
+    private final CapacityAccounting accounting;
 
-    public DispatchAsyncHandler(Function<Map<String, AttributeValue>, Dispatchable<Entry<?>, RS>> unmarshaller, Function<Dispatchable<Entry<?>, RS>, Void> dispatchState) {
-        this.unmarshaller = unmarshaller;
+    public DispatchAsyncHandler(StateReferences<RS> references, Function<Dispatchable<Entry<?>, RS>, Void> dispatchState, final PageListener listener) {
+        this(references, dispatchState, listener, new CapacityAccounting());
+    }
+
+    public DispatchAsyncHandler(StateReferences<RS> references, Function<Dispatchable<Entry<?>, RS>, Void> dispatchState, final PageListener listener, final CapacityAccounting accounting) {
+        this.references = references;
         this.dispatchState = dispatchState;
+        this.listener = listener;
+        this.accounting = accounting;
     }
 
     @Override
     public void onError(Exception e) {
-
+        listener.pageFailed(e);
     }
 
     @Override
-    public void onSuccess(ScanRequest request, ScanResult scanResult) {
-        List<Map<String, AttributeValue>> items = scanResult.getItems();
-        for (Map<String, AttributeValue> item : items) {
-            Dispatchable<Entry<?>, RS> dispatchable = unmarshaller.apply(item);
-            dispatchState.apply(dispatchable);
-//            dispatcher.dispatch(dispatchable.id, dispatchableToState.apply(dispatchable));
-        }
+    public void onSuccess(QueryRequest request, QueryResult queryResult) {
+        accounting.record(CapacityAccounting.NO_STATE_TYPE, "Query", queryResult.getConsumedCapacity());
+        List<Map<String, AttributeValue>> items = queryResult.getItems();
+        references.resolve(items, dispatchables -> {
+            try {
+                for (Dispatchable<Entry<?>, RS> dispatchable : dispatchables) {
+                    if (dispatchable != null) {
+                        dispatchState.apply(dispatchable);
+                    }
+                }
+            } catch (Exception e) {
+                listener.pageFailed(e);
+                return;
+            }
+            listener.pageRead(items, queryResult.getLastEvaluatedKey());
+        }, listener::pageFailed);
     }
 }
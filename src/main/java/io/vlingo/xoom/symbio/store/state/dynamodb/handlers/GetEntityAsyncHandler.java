@@ -7,7 +7,10 @@
 
 package io.vlingo.xoom.symbio.store.state.dynamodb.handlers;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import com.amazonaws.handlers.AsyncHandler;
@@ -23,40 +26,109 @@ import io.vlingo.xoom.symbio.store.Result;
 import io.vlingo.xoom.symbio.store.StorageException;
 import io.vlingo.xoom.symbio.store.state.StateStore;
 
+/**
+ * Handles the {@code GetItem} of a state. Readers of the same state that
+ * arrive while the item is in flight may {@link #join(StateStore.ReadResultInterest, Object)}
+ * the read, and every one of them is answered with its outcome.
+ */
 public class GetEntityAsyncHandler<S, RS extends State<?>> implements AsyncHandler<GetItemRequest, GetItemResult> {
+    public static final String COALESCED_READS = "reads.coalesced";
+
     private final String id;
-    private final StateStore.ReadResultInterest interest;
-    private final Object object;
+    private final List<Waiter> waiters;
     final StateAdapterProvider stateAdapterProvider;
     private final Function<Map<String, AttributeValue>, RS> unmarshaller;
+    private final Consumer<GetEntityAsyncHandler<S, RS>> whenCompleted;
+    private boolean completed;
 
-    public GetEntityAsyncHandler(String id, StateStore.ReadResultInterest interest, final Object object, Function<Map<String, AttributeValue>, RS> unmarshaller, final StateAdapterProvider stateAdapterProvider) {
+    public GetEntityAsyncHandler(String id, StateStore.ReadResultInterest interest, final Object object, Function<Map<String, AttributeValue>, RS> unmarshaller, final StateAdapterProvider stateAdapterProvider, final Consumer<GetEntityAsyncHandler<S, RS>> whenCompleted) {
         this.id = id;
-        this.interest = interest;
-        this.object = object;
+        this.waiters = new ArrayList<>(1);
+        this.waiters.add(new Waiter(interest, object));
         this.unmarshaller = unmarshaller;
         this.stateAdapterProvider = stateAdapterProvider;
+        this.whenCompleted = whenCompleted;
+        this.completed = false;
+    }
+
+    public GetEntityAsyncHandler(String id, StateStore.ReadResultInterest interest, final Object object, Function<Map<String, AttributeValue>, RS> unmarshaller, final StateAdapterProvider stateAdapterProvider) {
+        this(id, interest, object, unmarshaller, stateAdapterProvider, handler -> { });
+    }
+
+    /**
+     * Answer whether {@code interest} will be answered by this read, which
+     * is no longer possible once the read has completed.
+     *
+     * @param interest the ReadResultInterest of the joining reader
+     * @param object the Object of the joining reader
+     * @return boolean
+     */
+    public synchronized boolean join(StateStore.ReadResultInterest interest, final Object object) {
+        if (completed) {
+            return false;
+        }
+        waiters.add(new Waiter(interest, object));
+        return true;
     }
 
     @Override
     public void onError(Exception e) {
-        interest.readResultedIn(Failure.of(new StorageException(Result.NoTypeStore, e.getMessage(), e)), id, null, -1, null, object);
+        for (final Waiter waiter : complete()) {
+            waiter.interest.readResultedIn(Failure.of(StorageFailures.of(e)), id, null, -1, null, waiter.object);
+        }
     }
 
     @Override
     public void onSuccess(GetItemRequest request, GetItemResult getItemResult) {
+        final List<Waiter> answered = complete();
+
         Map<String, AttributeValue> item = getItemResult.getItem();
         if (item == null) {
-            interest.readResultedIn(Failure.of(new StorageException(Result.NotFound, "Item not found for: " + id)), id, null, -1, null, object);
+            for (final Waiter waiter : answered) {
+                waiter.interest.readResultedIn(Failure.of(new StorageException(Result.NotFound, "Item not found for: " + id)), id, null, -1, null, waiter.object);
+            }
             return;
         }
 
+        final RS raw;
         try {
-            RS raw = unmarshaller.apply(item);
-            S state = stateAdapterProvider.fromRaw(raw);
-            interest.readResultedIn(Success.of(Result.Success), id, state, raw.dataVersion, raw.metadata, object);
+            raw = unmarshaller.apply(item);
         } catch (Exception e) {
-            interest.readResultedIn(Failure.of(new StorageException(Result.Failure, e.getMessage(), e)), id, null, -1, null, object);
+            for (final Waiter waiter : answered) {
+                waiter.interest.readResultedIn(Failure.of(new StorageException(Result.Failure, e.getMessage(), e)), id, null, -1, null, waiter.object);
+            }
+            return;
+        }
+
+        for (final Waiter waiter : answered) {
+            try {
+                // every reader gets its own state instance
+                S state = stateAdapterProvider.fromRaw(raw);
+                waiter.interest.readResultedIn(Success.of(Result.Success), id, state, raw.dataVersion, raw.metadata, waiter.object);
+            } catch (Exception e) {
+                waiter.interest.readResultedIn(Failure.of(new StorageException(Result.Failure, e.getMessage(), e)), id, null, -1, null, waiter.object);
+            }
+        }
+    }
+
+    private List<Waiter> complete() {
+        final List<Waiter> answered;
+        synchronized (this) {
+            completed = true;
+            answered = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        whenCompleted.accept(this);
+        return answered;
+    }
+
+    private static final class Waiter {
+        final StateStore.ReadResultInterest interest;
+        final Object object;
+
+        Waiter(final StateStore.ReadResultInterest interest, final Object object) {
+            this.interest = interest;
+            this.object = object;
         }
     }
 }
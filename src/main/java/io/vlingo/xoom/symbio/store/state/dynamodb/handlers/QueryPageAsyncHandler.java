@@ -0,0 +1,44 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.handlers;
+
+import java.util.function.Consumer;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+
+import io.vlingo.xoom.symbio.store.state.dynamodb.streams.PageReader.PageListener;
+
+public class QueryPageAsyncHandler implements AsyncHandler<QueryRequest, QueryResult> {
+    private final PageListener listener;
+    private final Consumer<ConsumedCapacity> consumedCapacity;
+
+    public QueryPageAsyncHandler(final PageListener listener) {
+        this(listener, consumed -> { });
+    }
+
+    public QueryPageAsyncHandler(final PageListener listener, final Consumer<ConsumedCapacity> consumedCapacity) {
+        this.listener = listener;
+        this.consumedCapacity = consumedCapacity;
+    }
+
+    @Override
+    public void onError(Exception e) {
+        listener.pageFailed(e);
+    }
+
+    @Override
+    public void onSuccess(QueryRequest request, QueryResult queryResult) {
+        if (queryResult.getConsumedCapacity() != null) {
+            consumedCapacity.accept(queryResult.getConsumedCapacity());
+        }
+        listener.pageRead(queryResult.getItems(), queryResult.getLastEvaluatedKey());
+    }
+}
@@ -0,0 +1,122 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.handlers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import io.vlingo.xoom.common.Failure;
+import io.vlingo.xoom.common.Success;
+import io.vlingo.xoom.symbio.State;
+import io.vlingo.xoom.symbio.StateAdapterProvider;
+import io.vlingo.xoom.symbio.store.Result;
+import io.vlingo.xoom.symbio.store.StorageException;
+import io.vlingo.xoom.symbio.store.state.StateStore.ReadResultInterest;
+import io.vlingo.xoom.symbio.store.state.StateStore.TypedStateBundle;
+
+/**
+ * ReadAllAggregator collects the items answered by the concurrent
+ * {@code BatchGetItem} requests of a {@code readAll()} and, once the last
+ * request completes, answers the bundles in the order they were requested.
+ */
+public class ReadAllAggregator<RS extends State<?>> {
+    private final List<TypedStateBundle> bundles;
+    private final List<String> tables;
+    private final ReadResultInterest interest;
+    private final Object object;
+    private final Function<Map<String, AttributeValue>, RS> unmarshaller;
+    private final StateAdapterProvider stateAdapterProvider;
+    private final Map<String, Map<String, RS>> found;
+    private final AtomicInteger pending;
+    private final AtomicBoolean completed;
+
+    /**
+     * Construct my state.
+     *
+     * @param bundles the {@code List<TypedStateBundle>} requested
+     * @param tables the {@code List<String>} table of each bundle, by index
+     * @param interest the ReadResultInterest to answer
+     * @param object the Object to answer with the result
+     * @param unmarshaller the {@code Function} that unmarshalls a raw state from an item
+     * @param stateAdapterProvider the StateAdapterProvider that adapts raw states
+     * @param requests the int number of requests issued
+     */
+    public ReadAllAggregator(final List<TypedStateBundle> bundles, final List<String> tables, final ReadResultInterest interest, final Object object, final Function<Map<String, AttributeValue>, RS> unmarshaller, final StateAdapterProvider stateAdapterProvider, final int requests) {
+        this.bundles = bundles;
+        this.tables = tables;
+        this.interest = interest;
+        this.object = object;
+        this.unmarshaller = unmarshaller;
+        this.stateAdapterProvider = stateAdapterProvider;
+        this.found = new ConcurrentHashMap<>();
+        this.pending = new AtomicInteger(requests);
+        this.completed = new AtomicBoolean(false);
+    }
+
+    public void found(final String table, final List<Map<String, AttributeValue>> items) {
+        final Map<String, RS> states = found.computeIfAbsent(table, key -> new ConcurrentHashMap<>());
+        try {
+            for (final Map<String, AttributeValue> item : items) {
+                final RS raw = unmarshaller.apply(item);
+                states.put(raw.id, raw);
+            }
+        } catch (Exception e) {
+            failed(new StorageException(Result.Failure, e.getMessage(), e));
+        }
+    }
+
+    public void requestCompleted() {
+        if (pending.decrementAndGet() == 0) {
+            complete();
+        }
+    }
+
+    public void failed(final StorageException e) {
+        if (completed.compareAndSet(false, true)) {
+            interest.readResultedIn(Failure.of(e), Collections.<TypedStateBundle>emptyList(), object);
+        }
+    }
+
+    private void complete() {
+        if (!completed.compareAndSet(false, true)) {
+            return;
+        }
+
+        final List<TypedStateBundle> states = new ArrayList<>(bundles.size());
+        final List<String> missing = new ArrayList<>();
+        try {
+            for (int index = 0; index < bundles.size(); ++index) {
+                final TypedStateBundle bundle = bundles.get(index);
+                final RS raw = found.getOrDefault(tables.get(index), Collections.emptyMap()).get(bundle.id);
+                if (raw == null) {
+                    missing.add(bundle.id);
+                } else {
+                    final Object state = stateAdapterProvider.fromRaw(raw);
+                    states.add(new TypedStateBundle(bundle.id, state, raw.dataVersion, raw.metadata));
+                }
+            }
+        } catch (Exception e) {
+            interest.readResultedIn(Failure.of(new StorageException(Result.Failure, e.getMessage(), e)), Collections.<TypedStateBundle>emptyList(), object);
+            return;
+        }
+
+        if (missing.isEmpty()) {
+            interest.readResultedIn(Success.of(Result.Success), states, object);
+        } else {
+            interest.readResultedIn(Failure.of(new StorageException(Result.NotFound, "Items not found for: " + missing)), states, object);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.handlers;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * RetryPolicy bounds the resubmission of the items DynamoDB left
+ * unprocessed. Delays grow exponentially from {@code baseDelay}, are capped
+ * at {@code maxDelay}, and are fully jittered so that throttled writers do
+ * not retry in lockstep.
+ */
+public final class RetryPolicy {
+    public static final int DEFAULT_MAX_RETRIES = 8;
+    public static final long DEFAULT_BASE_DELAY = 25L;
+    public static final long DEFAULT_MAX_DELAY = 2000L;
+
+    private static final int MAX_SHIFT = 20;
+
+    public final int maxRetries;
+    public final long baseDelay;
+    public final long maxDelay;
+
+    public static RetryPolicy defaults() {
+        return new RetryPolicy(DEFAULT_MAX_RETRIES, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY);
+    }
+
+    public static RetryPolicy none() {
+        return new RetryPolicy(0, 0L, 0L);
+    }
+
+    public static RetryPolicy with(final int maxRetries, final long baseDelay, final long maxDelay) {
+        return new RetryPolicy(maxRetries, baseDelay, maxDelay);
+    }
+
+    private RetryPolicy(final int maxRetries, final long baseDelay, final long maxDelay) {
+        if (maxRetries < 0 || baseDelay < 0 || maxDelay < baseDelay) {
+            throw new IllegalArgumentException("Invalid retry policy: maxRetries=" + maxRetries + " baseDelay=" + baseDelay + " maxDelay=" + maxDelay);
+        }
+        this.maxRetries = maxRetries;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Answer whether the retry numbered {@code attempt}, counting from zero, is within budget.
+     *
+     * @param attempt the int number of retries already made
+     * @return boolean
+     */
+    public boolean allows(final int attempt) {
+        return attempt < maxRetries;
+    }
+
+    /**
+     * Answer the milliseconds to wait before the retry numbered {@code attempt}.
+     *
+     * @param attempt the int number of retries already made
+     * @return long
+     */
+    public long delayFor(final int attempt) {
+        final long exponential = baseDelay << Math.min(attempt, MAX_SHIFT);
+        final long capped = exponential < 0 ? maxDelay : Math.min(maxDelay, exponential);
+        return ThreadLocalRandom.current().nextLong(capped + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy[maxRetries=" + maxRetries + " baseDelay=" + baseDelay + " maxDelay=" + maxDelay + "]";
+    }
+}
@@ -0,0 +1,61 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.handlers;
+
+import io.vlingo.xoom.common.Scheduler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.StoreMetrics;
+
+/**
+ * RetryScheduler resubmits requests on a {@link Scheduler} according to a
+ * {@link RetryPolicy}, counting retries and exhausted budgets.
+ */
+public class RetryScheduler {
+    public static final String RETRIES = "retries";
+    public static final String RETRIES_EXHAUSTED = "retries.exhausted";
+
+    private final Scheduler scheduler;
+    private final RetryPolicy policy;
+    private final StoreMetrics metrics;
+
+    /**
+     * Answer a RetryScheduler that never retries.
+     *
+     * @return RetryScheduler
+     */
+    public static RetryScheduler none() {
+        return new RetryScheduler(null, RetryPolicy.none(), new StoreMetrics());
+    }
+
+    public RetryScheduler(final Scheduler scheduler, final RetryPolicy policy, final StoreMetrics metrics) {
+        this.scheduler = scheduler;
+        this.policy = policy;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Schedule {@code resubmit} after the jittered delay of {@code attempt},
+     * answering {@code false} without scheduling when the budget is spent.
+     *
+     * @param attempt the int number of retries already made
+     * @param resubmit the Runnable that reissues the request
+     * @return boolean
+     */
+    public boolean retry(final int attempt, final Runnable resubmit) {
+        if (!policy.allows(attempt)) {
+            metrics.increment(RETRIES_EXHAUSTED);
+            return false;
+        }
+        metrics.increment(RETRIES);
+        scheduler.scheduleOnce((scheduled, data) -> resubmit.run(), null, 0L, policy.delayFor(attempt));
+        return true;
+    }
+
+    public StoreMetrics metrics() {
+        return metrics;
+    }
+}
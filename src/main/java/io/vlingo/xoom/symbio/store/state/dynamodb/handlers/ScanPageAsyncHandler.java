@@ -0,0 +1,44 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.handlers;
+
+import java.util.function.Consumer;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+import io.vlingo.xoom.symbio.store.state.dynamodb.streams.PageReader.PageListener;
+
+public class ScanPageAsyncHandler implements AsyncHandler<ScanRequest, ScanResult> {
+    private final PageListener listener;
+    private final Consumer<ConsumedCapacity> consumedCapacity;
+
+    public ScanPageAsyncHandler(final PageListener listener) {
+        this(listener, consumed -> { });
+    }
+
+    public ScanPageAsyncHandler(final PageListener listener, final Consumer<ConsumedCapacity> consumedCapacity) {
+        this.listener = listener;
+        this.consumedCapacity = consumedCapacity;
+    }
+
+    @Override
+    public void onError(Exception e) {
+        listener.pageFailed(e);
+    }
+
+    @Override
+    public void onSuccess(ScanRequest request, ScanResult scanResult) {
+        if (scanResult.getConsumedCapacity() != null) {
+            consumedCapacity.accept(scanResult.getConsumedCapacity());
+        }
+        listener.pageRead(scanResult.getItems(), scanResult.getLastEvaluatedKey());
+    }
+}
@@ -0,0 +1,69 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.handlers;
+
+import java.util.List;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.model.CancellationReason;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.RequestLimitExceededException;
+import com.amazonaws.services.dynamodbv2.model.TransactionCanceledException;
+
+import io.vlingo.xoom.symbio.store.Result;
+import io.vlingo.xoom.symbio.store.StorageException;
+
+/**
+ * Translates exceptions raised by the DynamoDB client into the
+ * {@link StorageException} reported to store interests. A throttled
+ * request is a {@code Result.Failure}, since the table exists and the
+ * request may succeed once resubmitted.
+ */
+public final class StorageFailures {
+    public static final String THROTTLING_ERROR = "ThrottlingError";
+    public static final String THROTTLING_EXCEPTION = "ThrottlingException";
+
+    public static StorageException of(final Exception e) {
+        if (e instanceof StorageException) {
+            return (StorageException) e;
+        } else if (e instanceof ConditionalCheckFailedException) {
+            return new StorageException(Result.ConcurrencyViolation, e.getMessage(), e);
+        } else if (isThrottling(e)) {
+            return new StorageException(Result.Failure, e.getMessage(), e);
+        }
+        return new StorageException(Result.NoTypeStore, e.getMessage(), e);
+    }
+
+    /**
+     * Answer whether {@code e} reports a request rejected for exceeding the
+     * capacity of a table or account, including a transaction cancelled
+     * because one of its items was throttled.
+     *
+     * @param e the Exception raised by the DynamoDB client
+     * @return boolean
+     */
+    public static boolean isThrottling(final Exception e) {
+        if (e instanceof ProvisionedThroughputExceededException || e instanceof RequestLimitExceededException) {
+            return true;
+        } else if (e instanceof TransactionCanceledException) {
+            final List<CancellationReason> reasons = ((TransactionCanceledException) e).getCancellationReasons();
+            if (reasons != null) {
+                for (final CancellationReason reason : reasons) {
+                    if (THROTTLING_ERROR.equals(reason.getCode())) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        return e instanceof AmazonServiceException && THROTTLING_EXCEPTION.equals(((AmazonServiceException) e).getErrorCode());
+    }
+
+    private StorageFailures() { }
+}
@@ -0,0 +1,95 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.handlers;
+
+import java.util.List;
+import java.util.function.Function;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.model.CancellationReason;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItemsRequest;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItemsResult;
+import com.amazonaws.services.dynamodbv2.model.TransactionCanceledException;
+
+import io.vlingo.xoom.common.Failure;
+import io.vlingo.xoom.common.Success;
+import io.vlingo.xoom.symbio.Entry;
+import io.vlingo.xoom.symbio.Source;
+import io.vlingo.xoom.symbio.State;
+import io.vlingo.xoom.symbio.store.Result;
+import io.vlingo.xoom.symbio.store.StorageException;
+import io.vlingo.xoom.symbio.store.dispatch.Dispatchable;
+import io.vlingo.xoom.symbio.store.state.StateStore.WriteResultInterest;
+
+/**
+ * Handles a {@code TransactWriteItems} whose first item is the conditional
+ * put of the state. When the transaction is cancelled every item's
+ * cancellation reason is reported; a failed condition on the state item is
+ * a {@code Result.ConcurrencyViolation}.
+ */
+public class TransactWriteItemsAsyncHandler<S,RS extends State<?>,C> implements AsyncHandler<TransactWriteItemsRequest, TransactWriteItemsResult> {
+    public static final String CONDITIONAL_CHECK_FAILED = "ConditionalCheckFailed";
+    public static final int STATE_ITEM_INDEX = 0;
+
+    private final String id;
+    private final S state;
+    private final int stateVersion;
+    private final List<Source<C>> sources;
+    private final WriteResultInterest interest;
+    private final Object object;
+    private final Dispatchable<Entry<?>, RS> dispatchable;
+    private final Function<Dispatchable<Entry<?>, RS>, Void> dispatchState;
+
+    public TransactWriteItemsAsyncHandler(String id, S state, int stateVersion, final List<Source<C>> sources, WriteResultInterest interest, final Object object, Dispatchable<Entry<?>, RS> dispatchable, Function<Dispatchable<Entry<?>, RS>, Void> dispatchState) {
+        this.id = id;
+        this.state = state;
+        this.stateVersion = stateVersion;
+        this.sources = sources;
+        this.interest = interest;
+        this.object = object;
+        this.dispatchable = dispatchable;
+        this.dispatchState = dispatchState;
+    }
+
+    @Override
+    public void onError(Exception e) {
+        if (e instanceof TransactionCanceledException) {
+            interest.writeResultedIn(Failure.of(cancelled((TransactionCanceledException) e)), id, state, stateVersion, sources, object);
+        } else {
+            interest.writeResultedIn(Failure.of(StorageFailures.of(e)), id, state, stateVersion, sources, object);
+        }
+    }
+
+    @Override
+    public void onSuccess(TransactWriteItemsRequest request, TransactWriteItemsResult transactWriteItemsResult) {
+        interest.writeResultedIn(Success.of(Result.Success), id, state, stateVersion, sources, object);
+        dispatchState.apply(dispatchable);
+    }
+
+    private StorageException cancelled(final TransactionCanceledException e) {
+        final List<CancellationReason> reasons = e.getCancellationReasons();
+        if (reasons == null || reasons.isEmpty()) {
+            return new StorageException(Result.Failure, e.getMessage(), e);
+        }
+
+        final StringBuilder message = new StringBuilder("Transaction cancelled for: ").append(id);
+        for (int index = 0; index < reasons.size(); ++index) {
+            final CancellationReason reason = reasons.get(index);
+            message.append("; item ").append(index).append(": ").append(reason.getCode());
+            if (reason.getMessage() != null) {
+                message.append(" (").append(reason.getMessage()).append(")");
+            }
+        }
+
+        final Result result = CONDITIONAL_CHECK_FAILED.equals(reasons.get(STATE_ITEM_INDEX).getCode()) ?
+                Result.ConcurrencyViolation :
+                Result.Failure;
+
+        return new StorageException(result, message.toString(), e);
+    }
+}
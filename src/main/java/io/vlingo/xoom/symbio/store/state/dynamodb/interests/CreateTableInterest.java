@@ -7,10 +7,72 @@
 
 package io.vlingo.xoom.symbio.store.state.dynamodb.interests;
 
+import java.util.List;
+
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
 
 public interface CreateTableInterest {
     void createDispatchableTable(AmazonDynamoDBAsync dynamoDBAsync, String tableName);
 
+    /**
+     * Create the dispatchables table {@code tableName} with the time-ordered
+     * outbox index. The {@code attributeDefinitions} include the {@code Id}
+     * key. The {@code globalSecondaryIndexes} carry no {@code ProvisionedThroughput},
+     * which must be set on each of them when the table does not use
+     * on-demand capacity.
+     * <p>
+     * Implementations that predate the outbox index create the table without
+     * it; the dispatcher control then logs an error on each sweep instead of
+     * redispatching. Dispatchables written before the index was added are
+     * swept once an {@code OutboxBackfill} has added its attributes to them.
+     *
+     * @param dynamoDBAsync the AmazonDynamoDBAsync with which to create the table
+     * @param tableName the String name of the table
+     * @param attributeDefinitions the {@code List<AttributeDefinition>} of the key attributes
+     * @param globalSecondaryIndexes the {@code List<GlobalSecondaryIndex>} to create
+     */
+    default void createDispatchableTable(AmazonDynamoDBAsync dynamoDBAsync, String tableName, List<AttributeDefinition> attributeDefinitions, List<GlobalSecondaryIndex> globalSecondaryIndexes) {
+        createDispatchableTable(dynamoDBAsync, tableName);
+    }
+
     void createEntityTable(AmazonDynamoDBAsync dynamoDBAsync, String tableName);
+
+    /**
+     * Create the state table {@code tableName} with the secondary indexes
+     * declared in the store's {@code IndexRegistry}. The {@code attributeDefinitions}
+     * include the {@code Id} key. The {@code globalSecondaryIndexes} carry
+     * no {@code ProvisionedThroughput}, which must be set on each of them
+     * when the table does not use on-demand capacity.
+     * <p>
+     * Implementations that predate the registry create the table without
+     * indexes, and queries planned over them then fail. The store describes
+     * the table once and logs a warning naming each declared index it lacks.
+     *
+     * @param dynamoDBAsync the AmazonDynamoDBAsync with which to create the table
+     * @param tableName the String name of the table
+     * @param attributeDefinitions the {@code List<AttributeDefinition>} of the key attributes
+     * @param globalSecondaryIndexes the {@code List<GlobalSecondaryIndex>} to create
+     */
+    default void createEntityTable(AmazonDynamoDBAsync dynamoDBAsync, String tableName, List<AttributeDefinition> attributeDefinitions, List<GlobalSecondaryIndex> globalSecondaryIndexes) {
+        createEntityTable(dynamoDBAsync, tableName);
+    }
+
+    /**
+     * Create the entry journal table {@code tableName} with the {@code keySchema}
+     * of its {@code Shard} hash key and {@code Sequence} range key.
+     * <p>
+     * It is asked only of stores configured with an enabled journal.
+     * Implementations that predate the journal create nothing, so the table
+     * must then already exist before entries are written.
+     *
+     * @param dynamoDBAsync the AmazonDynamoDBAsync with which to create the table
+     * @param tableName the String name of the table
+     * @param attributeDefinitions the {@code List<AttributeDefinition>} of the key attributes
+     * @param keySchema the {@code List<KeySchemaElement>} of the table
+     */
+    default void createEntryJournalTable(AmazonDynamoDBAsync dynamoDBAsync, String tableName, List<AttributeDefinition> attributeDefinitions, List<KeySchemaElement> keySchema) {
+    }
 }
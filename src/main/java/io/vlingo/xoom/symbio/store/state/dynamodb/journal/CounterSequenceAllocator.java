@@ -0,0 +1,65 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.journal;
+
+import java.util.Collections;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+
+/**
+ * CounterSequenceAllocator allocates sequences by adding to a counter
+ * item of the journal table with one {@code UpdateItem} per allocation.
+ */
+public class CounterSequenceAllocator implements SequenceAllocator {
+  private static final String ADD_COUNT = "ADD #last :count";
+
+  private final AmazonDynamoDBAsync dynamodb;
+  private final String tableName;
+  private final String counterName;
+
+  public CounterSequenceAllocator(final AmazonDynamoDBAsync dynamodb, final String tableName) {
+    this(dynamodb, tableName, EntryJournal.SEQUENCE_COUNTER_NAME);
+  }
+
+  public CounterSequenceAllocator(final AmazonDynamoDBAsync dynamodb, final String tableName, final String counterName) {
+    this.dynamodb = dynamodb;
+    this.tableName = tableName;
+    this.counterName = counterName;
+  }
+
+  @Override
+  public void allocate(final int count, final LongConsumer allocated, final Consumer<Exception> failed) {
+    final UpdateItemRequest request = new UpdateItemRequest()
+            .withTableName(tableName)
+            .withKey(EntryJournal.controlKeyOf(counterName))
+            .withUpdateExpression(ADD_COUNT)
+            .withExpressionAttributeNames(Collections.singletonMap("#last", EntryJournal.LAST_SEQUENCE_ATTRIBUTE))
+            .withExpressionAttributeValues(Collections.singletonMap(":count", new AttributeValue().withN(String.valueOf(count))))
+            .withReturnValues(ReturnValue.UPDATED_NEW);
+
+    dynamodb.updateItemAsync(request, new AsyncHandler<UpdateItemRequest, UpdateItemResult>() {
+      @Override
+      public void onError(final Exception e) {
+        failed.accept(e);
+      }
+
+      @Override
+      public void onSuccess(final UpdateItemRequest request, final UpdateItemResult result) {
+        final long last = Long.parseLong(result.getAttributes().get(EntryJournal.LAST_SEQUENCE_ATTRIBUTE).getN());
+        allocated.accept(last - count + 1);
+      }
+    });
+  }
+}
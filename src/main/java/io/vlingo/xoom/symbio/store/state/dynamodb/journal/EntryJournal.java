@@ -0,0 +1,397 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.journal;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+
+import io.vlingo.xoom.common.serialization.JsonSerialization;
+import io.vlingo.xoom.symbio.BaseEntry.BinaryEntry;
+import io.vlingo.xoom.symbio.BaseEntry.TextEntry;
+import io.vlingo.xoom.symbio.Entry;
+import io.vlingo.xoom.symbio.Metadata;
+import io.vlingo.xoom.symbio.store.StoredTypes;
+
+/**
+ * EntryJournal orders the entries of written states by a global sequence.
+ * <p>
+ * Each entry is written to the journal table together with its state. The
+ * table is keyed on a {@code Shard} hash key, the sequence modulo the
+ * number of shards, and a {@code Sequence} range key, so that writes are
+ * spread over the shards and each shard is read in order by a
+ * {@code Query}. The id of an entry is its sequence, and readers merge the
+ * shards to read the entries in sequence order.
+ * <p>
+ * The journal table also holds control items, whose {@code Shard} begins
+ * with {@link #CONTROL_SHARD_PREFIX}: the counters of the sequence and the
+ * offset of each entry reader.
+ * <p>
+ * Sequences are allocated by adding to a counter for each write, unless
+ * the journal leases them in ranges that each store hands out locally.
+ * The journal may also keep one counter per shard, answering the sequence
+ * {@code n * shards + shard} for the {@code n}-th sequence of a shard, to
+ * spread allocations over the counters.
+ * <p>
+ * Either way, an entry may be written after entries of greater sequences:
+ * a write is slower than another, or one store writes from an older lease
+ * than another. Readers keep their position in each shard and wait out a
+ * missing sequence for the gap grace of the journal before reading past
+ * it, and a lease expires after half the gap grace, so that the entries
+ * of a lease are written before readers give up on them.
+ * <p>
+ * The state store and its entry readers must use the same number of shards.
+ */
+public final class EntryJournal {
+  public static final String SHARD_ATTRIBUTE = "Shard";
+  public static final String SEQUENCE_ATTRIBUTE = "Sequence";
+  public static final String ENTRY_TYPE_ATTRIBUTE = "EntryType";
+  public static final String TYPE_VERSION_ATTRIBUTE = "TypeVersion";
+  public static final String ENTRY_VERSION_ATTRIBUTE = "EntryVersion";
+  public static final String ENTRY_DATA_ATTRIBUTE = "EntryData";
+  public static final String METADATA_ATTRIBUTE = "Metadata";
+  public static final String OFFSET_ATTRIBUTE = "Offset";
+  public static final String SHARD_OFFSETS_ATTRIBUTE = "ShardOffsets";
+  public static final String LAST_SEQUENCE_ATTRIBUTE = "LastSequence";
+  public static final String SEQUENCE_COUNTER_NAME = "sequence";
+  public static final int DEFAULT_SHARDS = 4;
+  public static final long DEFAULT_GAP_GRACE_MILLIS = 10_000L;
+
+  /**
+   * The prefix of the {@code Shard} of the items that are not entries.
+   */
+  public static final String CONTROL_SHARD_PREFIX = "xoom:";
+
+  private static final String OFFSET_CONTROL_PREFIX = "offset:";
+  private static final String AFTER_CONDITION = "#shard = :shard AND #sequence > :sequence";
+  private static final Map<String, String> AFTER_CONDITION_NAMES = new HashMap<>(2);
+  static {
+    AFTER_CONDITION_NAMES.put("#shard", SHARD_ATTRIBUTE);
+    AFTER_CONDITION_NAMES.put("#sequence", SEQUENCE_ATTRIBUTE);
+  }
+
+  private static final EntryJournal DISABLED = new EntryJournal(1, false, 0, false, DEFAULT_GAP_GRACE_MILLIS);
+
+  private final int shards;
+  private final boolean enabled;
+  private final int sequenceLeaseSize;
+  private final boolean shardedSequences;
+  private final long gapGraceMillis;
+
+  public static EntryJournal defaults() {
+    return new EntryJournal(DEFAULT_SHARDS, true, 0, false, DEFAULT_GAP_GRACE_MILLIS);
+  }
+
+  public static EntryJournal withShards(final int shards) {
+    return new EntryJournal(shards, true, 0, false, DEFAULT_GAP_GRACE_MILLIS);
+  }
+
+  /**
+   * Answer the journal that does not store entries, which a store uses
+   * unless it is configured with another.
+   *
+   * @return EntryJournal
+   */
+  public static EntryJournal disabled() {
+    return DISABLED;
+  }
+
+  private EntryJournal(final int shards, final boolean enabled, final int sequenceLeaseSize, final boolean shardedSequences, final long gapGraceMillis) {
+    if (shards < 1) {
+      throw new IllegalArgumentException("The journal must have at least 1 shard.");
+    }
+    this.shards = shards;
+    this.enabled = enabled;
+    this.sequenceLeaseSize = sequenceLeaseSize;
+    this.shardedSequences = shardedSequences;
+    this.gapGraceMillis = gapGraceMillis;
+  }
+
+  /**
+   * Answer a copy that leases {@link LeasedSequenceAllocator#DEFAULT_LEASE_SIZE} sequences at a time.
+   *
+   * @return EntryJournal
+   */
+  public EntryJournal withSequenceLeases() {
+    return withSequenceLeases(LeasedSequenceAllocator.DEFAULT_LEASE_SIZE);
+  }
+
+  /**
+   * Answer a copy that leases {@code leaseSize} sequences at a time.
+   *
+   * @param leaseSize the int number of sequences of a lease
+   * @return EntryJournal
+   */
+  public EntryJournal withSequenceLeases(final int leaseSize) {
+    if (leaseSize < 1) {
+      throw new IllegalArgumentException("A sequence lease must hold at least 1 sequence.");
+    }
+    return new EntryJournal(shards, enabled, leaseSize, shardedSequences, gapGraceMillis);
+  }
+
+  /**
+   * Answer a copy that allocates the sequences of each shard from its own counter.
+   *
+   * @return EntryJournal
+   */
+  public EntryJournal withShardedSequences() {
+    return new EntryJournal(shards, enabled, sequenceLeaseSize, true, gapGraceMillis);
+  }
+
+  /**
+   * Answer a copy whose readers wait {@code gapGraceMillis} for the entry
+   * of a missing sequence before they read past it.
+   *
+   * @param gapGraceMillis the long milliseconds to wait for a missing entry
+   * @return EntryJournal
+   */
+  public EntryJournal withGapGrace(final long gapGraceMillis) {
+    if (gapGraceMillis < 0L) {
+      throw new IllegalArgumentException("The gap grace must not be negative.");
+    }
+    return new EntryJournal(shards, enabled, sequenceLeaseSize, shardedSequences, gapGraceMillis);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public int shards() {
+    return shards;
+  }
+
+  /**
+   * Answer the number of sequences leased at a time, where {@code 0} allocates them with each write.
+   *
+   * @return int
+   */
+  public int sequenceLeaseSize() {
+    return sequenceLeaseSize;
+  }
+
+  public boolean hasShardedSequences() {
+    return shardedSequences;
+  }
+
+  public long gapGraceMillis() {
+    return gapGraceMillis;
+  }
+
+  /**
+   * Answer the milliseconds after which a lease of sequences expires, half
+   * the gap grace, leaving the other half for the entries of the lease to be
+   * written. With no gap grace, a lease serves only the allocations waiting
+   * for it.
+   *
+   * @return long
+   */
+  public long sequenceLeaseMillis() {
+    return gapGraceMillis / 2;
+  }
+
+  /**
+   * Answer the names of the counters of the sequence, one per shard when sequences are sharded.
+   *
+   * @return {@code List<String>}
+   */
+  public List<String> sequenceCounterNames() {
+    if (!shardedSequences) {
+      return Collections.singletonList(SEQUENCE_COUNTER_NAME);
+    }
+    final List<String> names = new ArrayList<>(shards);
+    for (int shard = 0; shard < shards; ++shard) {
+      names.add(SEQUENCE_COUNTER_NAME + ":" + shard);
+    }
+    return names;
+  }
+
+  /**
+   * Answer the sequence of the {@code counterSequence} allocated from the
+   * counter at {@code counterIndex} of {@link #sequenceCounterNames()}.
+   *
+   * @param counterIndex the int index of the counter
+   * @param counterSequence the long sequence allocated from the counter
+   * @return long
+   */
+  public long sequenceOf(final int counterIndex, final long counterSequence) {
+    return shardedSequences ? counterSequence * shards + counterIndex : counterSequence;
+  }
+
+  /**
+   * Answer the distance between the consecutive sequences allocated from one counter.
+   *
+   * @return int
+   */
+  public int sequenceStride() {
+    return shardedSequences ? shards : 1;
+  }
+
+  public String shardOf(final long sequence) {
+    return String.valueOf(shardIndexOf(sequence));
+  }
+
+  public int shardIndexOf(final long sequence) {
+    return (int) Math.floorMod(sequence, (long) shards);
+  }
+
+  /**
+   * Answer {@code entries} with the ids of the sequences allocated from {@code firstSequence}.
+   *
+   * @param entries the {@code List<Entry<?>>} to identify
+   * @param firstSequence the long sequence of the first entry
+   * @return {@code List<Entry<?>>}
+   */
+  public List<Entry<?>> sequenced(final List<Entry<?>> entries, final long firstSequence) {
+    final List<Entry<?>> sequenced = new ArrayList<>(entries.size());
+    for (int index = 0; index < entries.size(); ++index) {
+      final Entry<?> entry = entries.get(index);
+      final String id = String.valueOf(firstSequence + (long) index * sequenceStride());
+      final Object data = entry.entryData();
+      if (data instanceof String) {
+        sequenced.add(new TextEntry(id, entry.typed(), entry.typeVersion(), (String) data, entry.entryVersion(), entry.metadata()));
+      } else if (data instanceof byte[]) {
+        sequenced.add(new BinaryEntry(id, entry.typed(), entry.typeVersion(), (byte[]) data, entry.entryVersion(), entry.metadata()));
+      } else {
+        throw new IllegalArgumentException("Only text and binary entries can be journaled: " + entry.typeName());
+      }
+    }
+    return sequenced;
+  }
+
+  /**
+   * Answer the journal item of {@code entry}, whose id is its sequence.
+   *
+   * @param entry the {@code Entry<?>} identified by {@link #sequenced(List, long)}
+   * @return {@code Map<String, AttributeValue>}
+   */
+  public Map<String, AttributeValue> itemOf(final Entry<?> entry) {
+    final long sequence = Long.parseLong(entry.id());
+    final Map<String, AttributeValue> item = new HashMap<>(8);
+    item.put(SHARD_ATTRIBUTE, new AttributeValue().withS(shardOf(sequence)));
+    item.put(SEQUENCE_ATTRIBUTE, new AttributeValue().withN(entry.id()));
+    item.put(ENTRY_TYPE_ATTRIBUTE, new AttributeValue().withS(entry.typeName()));
+    item.put(TYPE_VERSION_ATTRIBUTE, new AttributeValue().withN(String.valueOf(entry.typeVersion())));
+    item.put(ENTRY_VERSION_ATTRIBUTE, new AttributeValue().withN(String.valueOf(entry.entryVersion())));
+    item.put(METADATA_ATTRIBUTE, new AttributeValue().withS(JsonSerialization.serialized(entry.metadata())));
+    final Object data = entry.entryData();
+    item.put(ENTRY_DATA_ATTRIBUTE, data instanceof String ?
+            new AttributeValue().withS((String) data) :
+            new AttributeValue().withB(ByteBuffer.wrap((byte[]) data)));
+    return item;
+  }
+
+  /**
+   * Answer the entry of the journal {@code item}.
+   *
+   * @param item the {@code Map<String, AttributeValue>} read from the journal table
+   * @return {@code Entry<?>}
+   */
+  public Entry<?> entryOf(final Map<String, AttributeValue> item) {
+    final String id = item.get(SEQUENCE_ATTRIBUTE).getN();
+    final int typeVersion = Integer.parseInt(item.get(TYPE_VERSION_ATTRIBUTE).getN());
+    final int entryVersion = Integer.parseInt(item.get(ENTRY_VERSION_ATTRIBUTE).getN());
+    final Metadata metadata = JsonSerialization.deserialized(item.get(METADATA_ATTRIBUTE).getS(), Metadata.class);
+    final AttributeValue data = item.get(ENTRY_DATA_ATTRIBUTE);
+    try {
+      final Class<?> type = StoredTypes.forName(item.get(ENTRY_TYPE_ATTRIBUTE).getS());
+      if (data.getS() != null) {
+        return new TextEntry(id, type, typeVersion, data.getS(), entryVersion, metadata);
+      }
+      final ByteBuffer buffer = data.getB().duplicate();
+      final byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      return new BinaryEntry(id, type, typeVersion, bytes, entryVersion, metadata);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public static long sequenceOf(final Map<String, AttributeValue> item) {
+    return Long.parseLong(item.get(SEQUENCE_ATTRIBUTE).getN());
+  }
+
+  /**
+   * Answer the {@code Query} of at most {@code limit} entries of {@code shard} after {@code sequence}.
+   *
+   * @param tableName the String name of the journal table
+   * @param shard the int shard to read
+   * @param sequence the long sequence after which to read
+   * @param limit the int maximum number of entries
+   * @return QueryRequest
+   */
+  public QueryRequest queryAfter(final String tableName, final int shard, final long sequence, final int limit) {
+    final Map<String, AttributeValue> values = new HashMap<>(2);
+    values.put(":shard", new AttributeValue().withS(String.valueOf(shard)));
+    values.put(":sequence", new AttributeValue().withN(String.valueOf(sequence)));
+
+    return new QueryRequest(tableName)
+            .withKeyConditionExpression(AFTER_CONDITION)
+            .withExpressionAttributeNames(AFTER_CONDITION_NAMES)
+            .withExpressionAttributeValues(values)
+            .withConsistentRead(true)
+            .withLimit(limit);
+  }
+
+  /**
+   * Answer the key of the control item {@code name}.
+   *
+   * @param name the String name of the control item, without the prefix
+   * @return {@code Map<String, AttributeValue>}
+   */
+  public static Map<String, AttributeValue> controlKeyOf(final String name) {
+    final Map<String, AttributeValue> key = new HashMap<>(2);
+    key.put(SHARD_ATTRIBUTE, new AttributeValue().withS(CONTROL_SHARD_PREFIX + name));
+    key.put(SEQUENCE_ATTRIBUTE, new AttributeValue().withN("0"));
+    return key;
+  }
+
+  /**
+   * Answer the offset item of the entry reader {@code readerName}, which has read up to {@code sequence}.
+   *
+   * @param readerName the String name of the entry reader
+   * @param sequence the long sequence of the last entry read
+   * @return {@code Map<String, AttributeValue>}
+   */
+  public static Map<String, AttributeValue> offsetItemOf(final String readerName, final long sequence) {
+    final Map<String, AttributeValue> item = offsetKeyOf(readerName);
+    item.put(OFFSET_ATTRIBUTE, new AttributeValue().withN(String.valueOf(sequence)));
+    return item;
+  }
+
+  public static Map<String, AttributeValue> offsetKeyOf(final String readerName) {
+    return controlKeyOf(OFFSET_CONTROL_PREFIX + readerName);
+  }
+
+  /**
+   * Answer the {@code AttributeDefinitions} of the journal table's key.
+   *
+   * @return {@code List<AttributeDefinition>}
+   */
+  public List<AttributeDefinition> attributeDefinitions() {
+    return Arrays.asList(
+            new AttributeDefinition(SHARD_ATTRIBUTE, ScalarAttributeType.S),
+            new AttributeDefinition(SEQUENCE_ATTRIBUTE, ScalarAttributeType.N));
+  }
+
+  public List<KeySchemaElement> keySchema() {
+    return Arrays.asList(
+            new KeySchemaElement(SHARD_ATTRIBUTE, KeyType.HASH),
+            new KeySchemaElement(SEQUENCE_ATTRIBUTE, KeyType.RANGE));
+  }
+}
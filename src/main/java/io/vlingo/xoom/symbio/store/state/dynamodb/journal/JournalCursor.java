@@ -0,0 +1,244 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.journal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+
+/**
+ * JournalCursor is the position of a reader in each shard of the
+ * {@link EntryJournal}: the sequence of the last entry read from the shard.
+ * <p>
+ * The sequences of a shard follow each other at a distance of the number
+ * of shards, whether they are allocated from one counter or from one
+ * counter per shard, so the cursor knows the sequence to expect next in
+ * each shard. An entry found beyond a missing sequence, such as that of a
+ * slower write, is not read, nor is any entry of another shard beyond the
+ * missing sequence, until the missing entry is written or has been missing
+ * for the gap grace of the journal. Sequences that are never written, such
+ * as those of failed writes, so delay a reader by the gap grace once each.
+ * <p>
+ * Each shard is read from its own position, so an entry written late,
+ * after greater sequences of other shards were read, is read by a later
+ * advance rather than skipped. The entries of one advance are answered in
+ * sequence order.
+ */
+public final class JournalCursor {
+  private final EntryJournal journal;
+  private final long[] offsets;
+  private final long gapGraceMillis;
+  private final Map<Long, Long> gapsSeen;
+
+  /**
+   * Answer the cursor positioned after {@code sequence} in every shard.
+   *
+   * @param journal the EntryJournal to read
+   * @param sequence the long sequence after which to read
+   * @return JournalCursor
+   */
+  public static JournalCursor after(final EntryJournal journal, final long sequence) {
+    final long[] offsets = new long[journal.shards()];
+    for (int shard = 0; shard < offsets.length; ++shard) {
+      final long offset = sequence - Math.floorMod(sequence - shard, (long) offsets.length);
+      // no sequence of a shard precedes the first one of its counter
+      offsets[shard] = journal.hasShardedSequences() ? Math.max(offset, journal.sequenceOf(shard, 0L)) : offset;
+    }
+    return new JournalCursor(journal, offsets, journal.gapGraceMillis());
+  }
+
+  /**
+   * Answer the cursor positioned after the last sequences of the counters
+   * of the journal, in the order of {@link EntryJournal#sequenceCounterNames()}.
+   *
+   * @param journal the EntryJournal to read
+   * @param lastSequences the {@code long[]} last sequence of each counter, or 0 for one not yet used
+   * @return JournalCursor
+   */
+  public static JournalCursor afterCounters(final EntryJournal journal, final long[] lastSequences) {
+    if (!journal.hasShardedSequences()) {
+      return after(journal, lastSequences[0]);
+    }
+    final long[] offsets = new long[journal.shards()];
+    for (int shard = 0; shard < offsets.length; ++shard) {
+      offsets[shard] = journal.sequenceOf(shard, lastSequences[shard]);
+    }
+    return new JournalCursor(journal, offsets, journal.gapGraceMillis());
+  }
+
+  /**
+   * Answer the cursor held by {@code item}, as answered by {@link #itemOf(String)}
+   * or {@link #key()}, positioned at the beginning when there is no item.
+   * An item holding only the {@code Offset} of one sequence is positioned
+   * after it in every shard.
+   *
+   * @param journal the EntryJournal to read
+   * @param item the {@code Map<String, AttributeValue>} of the offsets, or null
+   * @return JournalCursor
+   */
+  public static JournalCursor of(final EntryJournal journal, final Map<String, AttributeValue> item) {
+    if (item == null) {
+      return after(journal, 0L);
+    }
+    final AttributeValue shardOffsets = item.get(EntryJournal.SHARD_OFFSETS_ATTRIBUTE);
+    if (shardOffsets == null || shardOffsets.getL().size() != journal.shards()) {
+      return after(journal, Long.parseLong(item.get(EntryJournal.OFFSET_ATTRIBUTE).getN()));
+    }
+    final long[] offsets = new long[journal.shards()];
+    for (int shard = 0; shard < offsets.length; ++shard) {
+      offsets[shard] = Long.parseLong(shardOffsets.getL().get(shard).getN());
+    }
+    return new JournalCursor(journal, offsets, journal.gapGraceMillis());
+  }
+
+  private JournalCursor(final EntryJournal journal, final long[] offsets, final long gapGraceMillis) {
+    this.journal = journal;
+    this.offsets = offsets;
+    this.gapGraceMillis = gapGraceMillis;
+    this.gapsSeen = new HashMap<>();
+  }
+
+  /**
+   * Answer a copy at the same position, waiting for the same missing sequences.
+   *
+   * @return JournalCursor
+   */
+  public JournalCursor copy() {
+    final JournalCursor copy = new JournalCursor(journal, Arrays.copyOf(offsets, offsets.length), gapGraceMillis);
+    copy.gapsSeen.putAll(gapsSeen);
+    return copy;
+  }
+
+  /**
+   * Answer a copy at the same position that reads past missing sequences at
+   * once, as a stream of the entries already written does.
+   *
+   * @return JournalCursor
+   */
+  public JournalCursor skippingGaps() {
+    return new JournalCursor(journal, Arrays.copyOf(offsets, offsets.length), 0L);
+  }
+
+  public long offsetOf(final int shard) {
+    return offsets[shard];
+  }
+
+  /**
+   * Answer the least sequence that may be read next.
+   *
+   * @return long
+   */
+  public long position() {
+    long position = Long.MAX_VALUE;
+    for (final long offset : offsets) {
+      position = Math.min(position, offset + journal.shards());
+    }
+    return position;
+  }
+
+  /**
+   * Answer the {@code Query} of at most {@code limit} entries of {@code shard} after its position.
+   *
+   * @param tableName the String name of the journal table
+   * @param shard the int shard to read
+   * @param limit the int maximum number of entries
+   * @return QueryRequest
+   */
+  public QueryRequest queryOf(final String tableName, final int shard, final int limit) {
+    return journal.queryAfter(tableName, shard, offsets[shard], limit);
+  }
+
+  /**
+   * Answer the items of {@code pages} that may be read, in sequence order
+   * and up to {@code maximumItems}, and move to the last of them in each
+   * shard. Items beyond the last key of a truncated page may precede items
+   * of other pages, so none after that key is answered.
+   *
+   * @param pages the {@code List<QueryResult>} of the queries of each shard, in shard order
+   * @param maximumItems the int maximum number of items to answer
+   * @param now the long current time in milliseconds
+   * @return {@code List<Map<String, AttributeValue>>}
+   */
+  public List<Map<String, AttributeValue>> advance(final List<QueryResult> pages, final int maximumItems, final long now) {
+    long bound = Long.MAX_VALUE;
+    final List<Map<String, AttributeValue>> readable = new ArrayList<>();
+    for (int shard = 0; shard < pages.size(); ++shard) {
+      final QueryResult page = pages.get(shard);
+      long expected = offsets[shard] + journal.shards();
+      for (final Map<String, AttributeValue> item : page.getItems()) {
+        final long sequence = EntryJournal.sequenceOf(item);
+        if (sequence > expected && !isWaitedOut(expected, now)) {
+          bound = Math.min(bound, expected - 1);
+          break;
+        }
+        readable.add(item);
+        expected = sequence + journal.shards();
+      }
+      if (isTruncated(page)) {
+        bound = Math.min(bound, EntryJournal.sequenceOf(page.getLastEvaluatedKey()));
+      }
+    }
+    readable.sort(Comparator.comparingLong(EntryJournal::sequenceOf));
+
+    final List<Map<String, AttributeValue>> read = new ArrayList<>();
+    for (final Map<String, AttributeValue> item : readable) {
+      final long sequence = EntryJournal.sequenceOf(item);
+      if (read.size() == maximumItems || sequence > bound) {
+        break;
+      }
+      read.add(item);
+      offsets[journal.shardIndexOf(sequence)] = sequence;
+    }
+    gapsSeen.keySet().removeIf(gap -> gap <= offsets[journal.shardIndexOf(gap)]);
+    return read;
+  }
+
+  /**
+   * Answer the offset item of the reader {@code readerName} at this position.
+   *
+   * @param readerName the String name of the entry reader
+   * @return {@code Map<String, AttributeValue>}
+   */
+  public Map<String, AttributeValue> itemOf(final String readerName) {
+    final Map<String, AttributeValue> item = EntryJournal.offsetItemOf(readerName, position() - 1);
+    item.putAll(key());
+    return item;
+  }
+
+  /**
+   * Answer the key from which {@link #of(EntryJournal, Map)} answers a cursor at this position.
+   *
+   * @return {@code Map<String, AttributeValue>}
+   */
+  public Map<String, AttributeValue> key() {
+    final List<AttributeValue> shardOffsets = new ArrayList<>(offsets.length);
+    for (final long offset : offsets) {
+      shardOffsets.add(new AttributeValue().withN(String.valueOf(offset)));
+    }
+    final Map<String, AttributeValue> key = new HashMap<>(2);
+    key.put(EntryJournal.OFFSET_ATTRIBUTE, new AttributeValue().withN(String.valueOf(position() - 1)));
+    key.put(EntryJournal.SHARD_OFFSETS_ATTRIBUTE, new AttributeValue().withL(shardOffsets));
+    return key;
+  }
+
+  static boolean isTruncated(final QueryResult page) {
+    return page.getLastEvaluatedKey() != null && !page.getLastEvaluatedKey().isEmpty();
+  }
+
+  private boolean isWaitedOut(final long gap, final long now) {
+    final long seen = gapsSeen.computeIfAbsent(gap, missing -> now);
+    return now - seen >= gapGraceMillis;
+  }
+}
@@ -0,0 +1,91 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.journal;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+
+import io.vlingo.xoom.symbio.store.state.dynamodb.streams.PageReader;
+
+/**
+ * JournalPageReader reads the {@link EntryJournal} in pages of entries in
+ * sequence order, starting at the position of a {@link JournalCursor}.
+ * <p>
+ * Each page queries every shard in parallel and advances a copy of the
+ * cursor over the shard pages, reading past missing sequences at once. The
+ * last evaluated key of a page holds the position of the cursor, and is
+ * {@code null} once no shard has entries left, so that the pages end with
+ * the entries written before the last page was read.
+ */
+public class JournalPageReader implements PageReader {
+  private final AmazonDynamoDBAsync dynamodb;
+  private final EntryJournal journal;
+  private final String tableName;
+  private final JournalCursor start;
+  private final int shardPageLimit;
+
+  public JournalPageReader(final AmazonDynamoDBAsync dynamodb, final EntryJournal journal, final String tableName, final JournalCursor start, final int pageLimit) {
+    this.dynamodb = dynamodb;
+    this.journal = journal;
+    this.tableName = tableName;
+    this.start = start.skippingGaps();
+    this.shardPageLimit = Math.max(1, pageLimit / journal.shards());
+  }
+
+  @Override
+  public void readPage(final Map<String, AttributeValue> exclusiveStartKey, final PageListener listener) {
+    final JournalCursor cursor = exclusiveStartKey == null ? start.copy() : JournalCursor.of(journal, exclusiveStartKey).skippingGaps();
+    final QueryResult[] pages = new QueryResult[journal.shards()];
+    final AtomicInteger pending = new AtomicInteger(pages.length);
+    final AtomicBoolean failed = new AtomicBoolean(false);
+
+    for (int shard = 0; shard < pages.length; ++shard) {
+      final int index = shard;
+      dynamodb.queryAsync(cursor.queryOf(tableName, shard, shardPageLimit), new AsyncHandler<QueryRequest, QueryResult>() {
+        @Override
+        public void onError(final Exception e) {
+          if (failed.compareAndSet(false, true)) {
+            listener.pageFailed(e);
+          }
+        }
+
+        @Override
+        public void onSuccess(final QueryRequest request, final QueryResult result) {
+          pages[index] = result;
+          if (pending.decrementAndGet() == 0 && !failed.get()) {
+            pageRead(cursor, Arrays.asList(pages), listener);
+          }
+        }
+      });
+    }
+  }
+
+  private void pageRead(final JournalCursor cursor, final List<QueryResult> pages, final PageListener listener) {
+    final List<Map<String, AttributeValue>> items = cursor.advance(pages, Integer.MAX_VALUE, System.currentTimeMillis());
+
+    boolean truncated = false;
+    for (final QueryResult page : pages) {
+      truncated |= JournalCursor.isTruncated(page);
+    }
+
+    if (!truncated || items.isEmpty()) {
+      listener.pageRead(items, null);
+    } else {
+      listener.pageRead(items, cursor.key());
+    }
+  }
+}
@@ -0,0 +1,231 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.journal;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+
+/**
+ * LeasedSequenceAllocator leases ranges of sequences from a counter item
+ * of the journal table, and hands them out locally without locks.
+ * <p>
+ * A lease moves the counter from the last sequence leased to the end of
+ * the new range with an {@code UpdateItem} conditioned on the counter
+ * being unchanged, and reads the counter again to retry when another
+ * allocator leased first. Within a lease, sequences are taken from an
+ * {@code AtomicLong}, so each sequence is allocated once, and an
+ * allocation made after another was answered answers greater sequences.
+ * Allocations that arrive while the lease is exhausted wait for the next
+ * lease, which is taken by one of them alone.
+ * <p>
+ * A lease also expires {@code leaseMillis} after it was requested, so the
+ * sequences of one allocator do not trail those of the others for longer
+ * than that. Readers wait out a missing sequence for the gap grace of the
+ * journal, which is twice the lease time, so the entries of an expiring
+ * lease are written before readers move past them.
+ * <p>
+ * Sequences are skipped only at the end of a lease: those too few for the
+ * allocation that exhausted it, those not handed out before it expired,
+ * and those never handed out before the allocator is discarded.
+ */
+public class LeasedSequenceAllocator implements SequenceAllocator {
+  public static final int DEFAULT_LEASE_SIZE = 1000;
+
+  private static final String LEASE_UPDATE = "SET #last = :end";
+  private static final String LEASE_CONDITION = "attribute_not_exists(#last) OR #last = :last";
+
+  private final AmazonDynamoDBAsync dynamodb;
+  private final String tableName;
+  private final String counterName;
+  private final int leaseSize;
+  private final long leaseMillis;
+  private final AtomicReference<Lease> lease;
+  private final AtomicBoolean leasing;
+  private final Queue<Allocation> waiting;
+
+  public LeasedSequenceAllocator(final AmazonDynamoDBAsync dynamodb, final String tableName, final String counterName, final int leaseSize, final long leaseMillis) {
+    if (leaseSize < 1) {
+      throw new IllegalArgumentException("A sequence lease must hold at least 1 sequence.");
+    }
+    this.dynamodb = dynamodb;
+    this.tableName = tableName;
+    this.counterName = counterName;
+    this.leaseSize = leaseSize;
+    this.leaseMillis = leaseMillis;
+    this.lease = new AtomicReference<>(new Lease(0L, 0L, 0L));
+    this.leasing = new AtomicBoolean(false);
+    this.waiting = new ConcurrentLinkedQueue<>();
+  }
+
+  @Override
+  public void allocate(final int count, final LongConsumer allocated, final Consumer<Exception> failed) {
+    final Lease current = lease.get();
+    current.expireIfDue(System.currentTimeMillis());
+    final long first = current.take(count);
+    if (first > 0L) {
+      allocated.accept(first);
+      return;
+    }
+    waiting.add(new Allocation(count, allocated, failed));
+    leaseIfExhausted();
+  }
+
+  private void leaseIfExhausted() {
+    while (leasing.compareAndSet(false, true)) {
+      final Allocation exhausting = allocateWaiting();
+      if (exhausting != null) {
+        readCounter(Math.max(leaseSize, exhausting.count));
+        return;
+      }
+      leasing.set(false);
+      if (waiting.isEmpty()) {
+        return;
+      }
+      // an allocation arrived after the waiting were allocated, but before leasing ended
+    }
+  }
+
+  /**
+   * Answer the first waiting allocation that the lease cannot hold, or
+   * {@code null} once every waiting allocation has been allocated. Only the
+   * holder of {@code leasing} takes from {@code waiting}.
+   */
+  private Allocation allocateWaiting() {
+    Allocation allocation;
+    while ((allocation = waiting.peek()) != null) {
+      final long first = lease.get().take(allocation.count);
+      if (first <= 0L) {
+        return allocation;
+      }
+      waiting.poll();
+      allocation.allocated.accept(first);
+    }
+    return null;
+  }
+
+  private void readCounter(final int size) {
+    final GetItemRequest request = new GetItemRequest(tableName, EntryJournal.controlKeyOf(counterName), true);
+    dynamodb.getItemAsync(request, new AsyncHandler<GetItemRequest, GetItemResult>() {
+      @Override
+      public void onError(final Exception e) {
+        leaseFailed(e);
+      }
+
+      @Override
+      public void onSuccess(final GetItemRequest request, final GetItemResult result) {
+        final Map<String, AttributeValue> counter = result.getItem();
+        final AttributeValue last = counter == null ? null : counter.get(EntryJournal.LAST_SEQUENCE_ATTRIBUTE);
+        updateCounter(last == null ? 0L : Long.parseLong(last.getN()), size);
+      }
+    });
+  }
+
+  private void updateCounter(final long last, final int size) {
+    final long expiresAt = System.currentTimeMillis() + leaseMillis;
+    final Map<String, AttributeValue> values = new HashMap<>(2);
+    values.put(":last", new AttributeValue().withN(String.valueOf(last)));
+    values.put(":end", new AttributeValue().withN(String.valueOf(last + size)));
+
+    final UpdateItemRequest request = new UpdateItemRequest()
+            .withTableName(tableName)
+            .withKey(EntryJournal.controlKeyOf(counterName))
+            .withUpdateExpression(LEASE_UPDATE)
+            .withConditionExpression(LEASE_CONDITION)
+            .withExpressionAttributeNames(Collections.singletonMap("#last", EntryJournal.LAST_SEQUENCE_ATTRIBUTE))
+            .withExpressionAttributeValues(values);
+
+    dynamodb.updateItemAsync(request, new AsyncHandler<UpdateItemRequest, UpdateItemResult>() {
+      @Override
+      public void onError(final Exception e) {
+        if (e instanceof ConditionalCheckFailedException) {
+          readCounter(size); // leased by another allocator in the meantime
+        } else {
+          leaseFailed(e);
+        }
+      }
+
+      @Override
+      public void onSuccess(final UpdateItemRequest request, final UpdateItemResult result) {
+        lease.set(new Lease(last + 1, last + size + 1, expiresAt));
+        leasing.set(false);
+        leaseIfExhausted();
+      }
+    });
+  }
+
+  private void leaseFailed(final Exception e) {
+    Allocation allocation;
+    while ((allocation = waiting.poll()) != null) {
+      allocation.failed.accept(e);
+    }
+    leasing.set(false);
+    leaseIfExhausted();
+  }
+
+  private static final class Lease {
+    private final AtomicLong next;
+    private final long end;
+    private final long expiresAt;
+
+    Lease(final long first, final long end, final long expiresAt) {
+      this.next = new AtomicLong(first);
+      this.end = end;
+      this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Exhaust the lease if it has expired by {@code now}. The allocations
+     * waiting for a lease take from it even if it expired meanwhile.
+     */
+    void expireIfDue(final long now) {
+      if (now >= expiresAt) {
+        next.accumulateAndGet(end, Math::max);
+      }
+    }
+
+    /**
+     * Answer the first of {@code count} sequences, or {@code 0} if the lease cannot hold them.
+     */
+    long take(final int count) {
+      if (next.get() >= end) {
+        return 0L;
+      }
+      final long first = next.getAndAdd(count);
+      return first + count <= end ? first : 0L;
+    }
+  }
+
+  private static final class Allocation {
+    private final int count;
+    private final LongConsumer allocated;
+    private final Consumer<Exception> failed;
+
+    Allocation(final int count, final LongConsumer allocated, final Consumer<Exception> failed) {
+      this.count = count;
+      this.allocated = allocated;
+      this.failed = failed;
+    }
+  }
+}
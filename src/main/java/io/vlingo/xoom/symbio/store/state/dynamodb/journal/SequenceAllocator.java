@@ -0,0 +1,51 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.journal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+
+/**
+ * SequenceAllocator allocates the sequences of journal entries. The
+ * sequences allocated by one call follow each other at the
+ * {@link EntryJournal#sequenceStride()} of the journal, and each sequence
+ * is allocated once; a sequence whose entry is not written leaves a gap.
+ */
+public interface SequenceAllocator {
+  /**
+   * Answer the allocator of the sequences of {@code journal}, whose counters are kept in {@code tableName}.
+   *
+   * @param dynamodb the AmazonDynamoDBAsync of the counters
+   * @param tableName the String name of the journal table
+   * @param journal the EntryJournal whose sequences are allocated
+   * @return SequenceAllocator
+   */
+  static SequenceAllocator of(final AmazonDynamoDBAsync dynamodb, final String tableName, final EntryJournal journal) {
+    final List<SequenceAllocator> counters = new ArrayList<>();
+    for (final String counterName : journal.sequenceCounterNames()) {
+      counters.add(journal.sequenceLeaseSize() > 0 ?
+              new LeasedSequenceAllocator(dynamodb, tableName, counterName, journal.sequenceLeaseSize(), journal.sequenceLeaseMillis()) :
+              new CounterSequenceAllocator(dynamodb, tableName, counterName));
+    }
+    return journal.hasShardedSequences() ? new ShardedSequenceAllocator(journal, counters) : counters.get(0);
+  }
+
+  /**
+   * Allocate {@code count} sequences, answering the first of them to
+   * {@code allocated}, or the failure to {@code failed}.
+   *
+   * @param count the int number of sequences to allocate
+   * @param allocated the LongConsumer of the first sequence allocated
+   * @param failed the {@code Consumer<Exception>} of the failure
+   */
+  void allocate(final int count, final LongConsumer allocated, final Consumer<Exception> failed);
+}
@@ -0,0 +1,39 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.journal;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * ShardedSequenceAllocator allocates each call from the counter of one
+ * shard, taking the shards in turn, so that the entries of a write share
+ * a shard and writes are spread over the counters.
+ */
+public class ShardedSequenceAllocator implements SequenceAllocator {
+  private final EntryJournal journal;
+  private final List<SequenceAllocator> shards;
+  private final AtomicInteger nextShard;
+
+  public ShardedSequenceAllocator(final EntryJournal journal, final List<SequenceAllocator> shards) {
+    if (shards.size() != journal.shards()) {
+      throw new IllegalArgumentException("There must be one sequence allocator per shard.");
+    }
+    this.journal = journal;
+    this.shards = shards;
+    this.nextShard = new AtomicInteger(0);
+  }
+
+  @Override
+  public void allocate(final int count, final LongConsumer allocated, final Consumer<Exception> failed) {
+    final int shard = Math.floorMod(nextShard.getAndIncrement(), shards.size());
+    shards.get(shard).allocate(count, first -> allocated.accept(journal.sequenceOf(shard, first)), failed);
+  }
+}
@@ -0,0 +1,174 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.metrics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import com.amazonaws.services.dynamodbv2.model.Capacity;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+
+/**
+ * CapacityAccounting sums the capacity units consumed by requests, as
+ * answered in their {@code ConsumedCapacity}, by table, state type and
+ * operation, so that the types driving the cost of a store can be told
+ * apart. Units may be recorded concurrently by actors and DynamoDB client
+ * callbacks.
+ * <p>
+ * The units of a table exclude those of its secondary indexes, which are
+ * recorded under {@code table/index} when the request asked for
+ * {@code INDEXES}, so that no unit is counted twice. A state type is the
+ * name of the type whose read or write made the request, or
+ * {@link #NO_STATE_TYPE} for requests on behalf of no single type.
+ */
+public class CapacityAccounting {
+  public static final String NO_STATE_TYPE = "-";
+  public static final String TABLE_PREFIX = "table.";
+  public static final String STATE_TYPE_PREFIX = "type.";
+  public static final String OPERATION_PREFIX = "operation.";
+
+  private final Map<Account, DoubleAdder> units = new ConcurrentHashMap<>();
+
+  /**
+   * Record the {@code consumed} capacity of an {@code operation} made for {@code stateType}.
+   *
+   * @param stateType the String name of the state type, or {@link #NO_STATE_TYPE}
+   * @param operation the String name of the operation, such as {@code PutItem}
+   * @param consumed the {@code List<ConsumedCapacity>} answered, of which {@code null} elements are ignored
+   */
+  public void record(final String stateType, final String operation, final List<ConsumedCapacity> consumed) {
+    if (consumed != null) {
+      for (final ConsumedCapacity capacity : consumed) {
+        record(stateType, operation, capacity);
+      }
+    }
+  }
+
+  /**
+   * Record the {@code consumed} capacity of an {@code operation} made for {@code stateType}.
+   *
+   * @param stateType the String name of the state type, or {@link #NO_STATE_TYPE}
+   * @param operation the String name of the operation, such as {@code PutItem}
+   * @param consumed the ConsumedCapacity answered, which is ignored when {@code null}
+   */
+  public void record(final String stateType, final String operation, final ConsumedCapacity consumed) {
+    if (consumed == null || consumed.getTableName() == null) {
+      return;
+    }
+    final String table = consumed.getTableName();
+    double indexUnits = 0.0;
+    indexUnits += recordIndexes(table, stateType, operation, consumed.getGlobalSecondaryIndexes());
+    indexUnits += recordIndexes(table, stateType, operation, consumed.getLocalSecondaryIndexes());
+
+    final double tableUnits = consumed.getTable() != null && consumed.getTable().getCapacityUnits() != null ?
+            consumed.getTable().getCapacityUnits() :
+            (consumed.getCapacityUnits() == null ? 0.0 : consumed.getCapacityUnits() - indexUnits);
+    add(new Account(table, stateType, operation), tableUnits);
+  }
+
+  /**
+   * Answer the units consumed of each table, state type and operation,
+   * named with {@link #TABLE_PREFIX}, {@link #STATE_TYPE_PREFIX} and
+   * {@link #OPERATION_PREFIX}, and ordered by name.
+   *
+   * @return {@code Map<String, Double>}
+   */
+  public Map<String, Double> snapshot() {
+    final Map<String, Double> snapshot = new TreeMap<>();
+    units.forEach((account, adder) -> {
+      final double sum = adder.sum();
+      snapshot.merge(TABLE_PREFIX + account.table, sum, Double::sum);
+      snapshot.merge(STATE_TYPE_PREFIX + account.stateType, sum, Double::sum);
+      snapshot.merge(OPERATION_PREFIX + account.operation, sum, Double::sum);
+    });
+    return snapshot;
+  }
+
+  /**
+   * Answer the units consumed by {@code operation} on {@code table} for
+   * {@code stateType}, where {@code table} may name an index as {@code table/index}.
+   *
+   * @param table the String name of the table
+   * @param stateType the String name of the state type
+   * @param operation the String name of the operation
+   * @return double
+   */
+  public double unitsOf(final String table, final String stateType, final String operation) {
+    final DoubleAdder adder = units.get(new Account(table, stateType, operation));
+    return adder == null ? 0.0 : adder.sum();
+  }
+
+  public double total() {
+    double total = 0.0;
+    for (final DoubleAdder adder : units.values()) {
+      total += adder.sum();
+    }
+    return total;
+  }
+
+  public boolean isEmpty() {
+    return units.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder line = new StringBuilder("CapacityAccounting[total=").append(String.format("%.1f", total()));
+    snapshot().forEach((name, sum) -> line.append(' ').append(name).append('=').append(String.format("%.1f", sum)));
+    return line.append(']').toString();
+  }
+
+  private double recordIndexes(final String table, final String stateType, final String operation, final Map<String, Capacity> indexes) {
+    double recorded = 0.0;
+    if (indexes != null) {
+      for (final Map.Entry<String, Capacity> index : indexes.entrySet()) {
+        final Double indexUnits = index.getValue().getCapacityUnits();
+        if (indexUnits != null) {
+          add(new Account(table + "/" + index.getKey(), stateType, operation), indexUnits);
+          recorded += indexUnits;
+        }
+      }
+    }
+    return recorded;
+  }
+
+  private void add(final Account account, final double value) {
+    units.computeIfAbsent(account, key -> new DoubleAdder()).add(value);
+  }
+
+  private static final class Account {
+    private final String table;
+    private final String stateType;
+    private final String operation;
+
+    Account(final String table, final String stateType, final String operation) {
+      this.table = table;
+      this.stateType = stateType;
+      this.operation = operation;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (other == null || getClass() != other.getClass()) {
+        return false;
+      }
+      final Account account = (Account) other;
+      return table.equals(account.table) && stateType.equals(account.stateType) && operation.equals(account.operation);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * table.hashCode() + stateType.hashCode()) + operation.hashCode();
+    }
+  }
+}
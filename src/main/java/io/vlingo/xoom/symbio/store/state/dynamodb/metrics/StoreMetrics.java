@@ -0,0 +1,64 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * StoreMetrics holds named counters that may be incremented concurrently
+ * by actors and DynamoDB client callbacks, and named gauges that hold the
+ * latest value of a measurement. Names are declared as constants by the
+ * components that maintain them.
+ */
+public class StoreMetrics {
+  private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+  private final Map<String, AtomicLong> gauges = new ConcurrentHashMap<>();
+
+  public void increment(final String name) {
+    add(name, 1L);
+  }
+
+  public void add(final String name, final long value) {
+    counters.computeIfAbsent(name, key -> new LongAdder()).add(value);
+  }
+
+  public long count(final String name) {
+    final LongAdder counter = counters.get(name);
+    return counter == null ? 0L : counter.sum();
+  }
+
+  public void gauge(final String name, final long value) {
+    gauges.computeIfAbsent(name, key -> new AtomicLong()).set(value);
+  }
+
+  public long gauged(final String name) {
+    final AtomicLong gauge = gauges.get(name);
+    return gauge == null ? 0L : gauge.get();
+  }
+
+  /**
+   * Answer the current value of every counter and gauge, ordered by name.
+   *
+   * @return {@code Map<String, Long>}
+   */
+  public Map<String, Long> snapshot() {
+    final Map<String, Long> snapshot = new TreeMap<>();
+    counters.forEach((name, counter) -> snapshot.put(name, counter.sum()));
+    gauges.forEach((name, gauge) -> snapshot.put(name, gauge.get()));
+    return snapshot;
+  }
+
+  @Override
+  public String toString() {
+    return "StoreMetrics" + snapshot();
+  }
+}
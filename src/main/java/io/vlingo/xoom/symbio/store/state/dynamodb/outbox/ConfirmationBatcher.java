@@ -0,0 +1,123 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.outbox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteRequest;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+import io.vlingo.xoom.symbio.store.dispatch.ConfirmDispatchedResultInterest;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.ConfirmDispatchablesAsyncHandler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryScheduler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.CapacityAccounting;
+
+/**
+ * ConfirmationBatcher collects dispatch confirmations and deletes their
+ * dispatchables with one {@code BatchWriteItem} per batch, instead of one
+ * {@code DeleteItem} each. Confirmations of the same dispatch id collected
+ * into one batch share a single delete.
+ * <p>
+ * The batcher is confined to its owning actor, which {@link #flush() flushes}
+ * it when {@link #confirm(String, ConfirmDispatchedResultInterest)} reports
+ * a full batch, and when the linger that began with the first confirmation
+ * of a batch has passed.
+ */
+public class ConfirmationBatcher {
+  public static final int BATCH_WRITE_ITEM_LIMIT = 25;
+  public static final String BATCHES = "confirmations.batches";
+  public static final String CONFIRMATIONS = "confirmations";
+
+  private final AmazonDynamoDBAsync dynamodb;
+  private final String tableName;
+  private final Function<String, Map<String, AttributeValue>> keyOf;
+  private final int batchSize;
+  private final RetryScheduler retries;
+  private final CapacityAccounting accounting;
+  private Map<String, List<ConfirmDispatchedResultInterest>> pending;
+
+  public ConfirmationBatcher(final AmazonDynamoDBAsync dynamodb, final String tableName, final Function<String, Map<String, AttributeValue>> keyOf, final int batchSize, final RetryScheduler retries) {
+    this(dynamodb, tableName, keyOf, batchSize, retries, new CapacityAccounting());
+  }
+
+  public ConfirmationBatcher(final AmazonDynamoDBAsync dynamodb, final String tableName, final Function<String, Map<String, AttributeValue>> keyOf, final int batchSize, final RetryScheduler retries, final CapacityAccounting accounting) {
+    if (batchSize < 1 || batchSize > BATCH_WRITE_ITEM_LIMIT) {
+      throw new IllegalArgumentException("Confirmation batch size must be between 1 and " + BATCH_WRITE_ITEM_LIMIT + ".");
+    }
+    this.dynamodb = dynamodb;
+    this.tableName = tableName;
+    this.keyOf = keyOf;
+    this.batchSize = batchSize;
+    this.retries = retries;
+    this.accounting = accounting;
+    this.pending = new LinkedHashMap<>();
+  }
+
+  /**
+   * Collect the confirmation of {@code dispatchId}, answering whether the
+   * batch is now full and must be flushed.
+   *
+   * @param dispatchId the String id of the confirmed dispatchable
+   * @param interest the ConfirmDispatchedResultInterest to answer
+   * @return boolean
+   */
+  public boolean confirm(final String dispatchId, final ConfirmDispatchedResultInterest interest) {
+    pending.computeIfAbsent(dispatchId, key -> new ArrayList<>(1)).add(interest);
+    retries.metrics().increment(CONFIRMATIONS);
+    return pending.size() >= batchSize;
+  }
+
+  /**
+   * Answer whether the batch holds its first confirmation, when its linger begins.
+   *
+   * @return boolean
+   */
+  public boolean isFirst() {
+    return pending.size() == 1;
+  }
+
+  public boolean isEmpty() {
+    return pending.isEmpty();
+  }
+
+  /**
+   * Delete the dispatchables of every collected confirmation.
+   */
+  public void flush() {
+    if (pending.isEmpty()) {
+      return;
+    }
+    final Map<String, List<ConfirmDispatchedResultInterest>> batch = pending;
+    pending = new LinkedHashMap<>();
+
+    final Map<Map<String, AttributeValue>, String> dispatchIdsByKey = new HashMap<>(batch.size());
+    final List<WriteRequest> deletes = new ArrayList<>(batch.size());
+    for (final String dispatchId : batch.keySet()) {
+      final Map<String, AttributeValue> key = keyOf.apply(dispatchId);
+      dispatchIdsByKey.put(key, dispatchId);
+      deletes.add(new WriteRequest().withDeleteRequest(new DeleteRequest(key)));
+    }
+
+    final Map<String, List<WriteRequest>> requestItems = new HashMap<>(1);
+    requestItems.put(tableName, deletes);
+
+    retries.metrics().increment(BATCHES);
+    dynamodb.batchWriteItemAsync(
+            new BatchWriteItemRequest(requestItems).withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES),
+            new ConfirmDispatchablesAsyncHandler(tableName, dispatchIdsByKey, batch, dynamodb, retries, accounting));
+  }
+}
@@ -0,0 +1,175 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.outbox;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+
+import io.vlingo.xoom.symbio.Entry;
+import io.vlingo.xoom.symbio.State;
+import io.vlingo.xoom.symbio.store.dispatch.Dispatchable;
+
+/**
+ * DispatchableOutbox orders the dispatchables table by creation time.
+ * <p>
+ * Each dispatchable item is written with a {@code Shard}, derived from its
+ * id, and its {@code CreatedAtMillis}. The global secondary index
+ * {@code CreatedAtIndex} is keyed on both, so the dispatchables whose
+ * confirmation has expired are found by one {@code Query} per shard over
+ * the expired range, at a cost proportional to the expired items rather
+ * than to the size of the outbox. Shards spread the writes of the index
+ * over several partitions.
+ * <p>
+ * The state store and its dispatcher control must use the same number of shards.
+ */
+public final class DispatchableOutbox {
+  public static final String SHARD_ATTRIBUTE = "Shard";
+  public static final String CREATED_AT_MILLIS_ATTRIBUTE = "CreatedAtMillis";
+  public static final String CREATED_AT_INDEX = "CreatedAtIndex";
+  public static final int DEFAULT_SHARDS = 8;
+
+  /**
+   * The prefix of the {@code Id} of the items that dispatcher controls keep
+   * in the dispatchables table, such as cursors and checkpoints, which are
+   * not dispatchables.
+   */
+  public static final String CONTROL_ID_PREFIX = "xoom:";
+
+  private static final String EXPIRED_CONDITION = "#shard = :shard AND #createdAt <= :expiredAt";
+  private static final Map<String, String> EXPIRED_CONDITION_NAMES = new HashMap<>(2);
+  static {
+    EXPIRED_CONDITION_NAMES.put("#shard", SHARD_ATTRIBUTE);
+    EXPIRED_CONDITION_NAMES.put("#createdAt", CREATED_AT_MILLIS_ATTRIBUTE);
+  }
+
+  private final int shards;
+
+  public static DispatchableOutbox defaults() {
+    return new DispatchableOutbox(DEFAULT_SHARDS);
+  }
+
+  public static DispatchableOutbox withShards(final int shards) {
+    return new DispatchableOutbox(shards);
+  }
+
+  private DispatchableOutbox(final int shards) {
+    if (shards < 1) {
+      throw new IllegalArgumentException("The outbox must have at least 1 shard.");
+    }
+    this.shards = shards;
+  }
+
+  public int shards() {
+    return shards;
+  }
+
+  public int shardOf(final String dispatchId) {
+    return Math.floorMod(dispatchId.hashCode(), shards);
+  }
+
+  /**
+   * Answer {@code item}, the marshalled {@code dispatchable}, with its outbox attributes.
+   *
+   * @param item the {@code Map<String, AttributeValue>} of the dispatchable
+   * @param dispatchable the Dispatchable being written
+   * @param <RS> the raw State type
+   * @return {@code Map<String, AttributeValue>}
+   */
+  public <RS extends State<?>> Map<String, AttributeValue> itemOf(final Map<String, AttributeValue> item, final Dispatchable<Entry<?>, RS> dispatchable) {
+    final Map<String, AttributeValue> outboxItem = new HashMap<>(item);
+    outboxItem.put(SHARD_ATTRIBUTE, new AttributeValue().withN(String.valueOf(shardOf(dispatchable.id()))));
+    outboxItem.put(CREATED_AT_MILLIS_ATTRIBUTE, new AttributeValue().withN(String.valueOf(millisOf(dispatchable.createdOn()))));
+    return outboxItem;
+  }
+
+  /**
+   * Answer one {@code Query} per shard of the dispatchables created at or before {@code expiredAtMillis}.
+   *
+   * @param tableName the String name of the dispatchables table
+   * @param expiredAtMillis the long epoch millis of the most recent expired creation time
+   * @return {@code List<QueryRequest>}
+   */
+  public List<QueryRequest> expiredQueriesFor(final String tableName, final long expiredAtMillis) {
+    final List<QueryRequest> queries = new ArrayList<>(shards);
+    for (int shard = 0; shard < shards; ++shard) {
+      queries.add(expiredQueryFor(tableName, shard, expiredAtMillis));
+    }
+    return queries;
+  }
+
+  public QueryRequest expiredQueryFor(final String tableName, final int shard, final long expiredAtMillis) {
+    final Map<String, AttributeValue> values = new HashMap<>(2);
+    values.put(":shard", new AttributeValue().withN(String.valueOf(shard)));
+    values.put(":expiredAt", new AttributeValue().withN(String.valueOf(expiredAtMillis)));
+
+    return new QueryRequest(tableName)
+            .withIndexName(CREATED_AT_INDEX)
+            .withKeyConditionExpression(EXPIRED_CONDITION)
+            .withExpressionAttributeNames(EXPIRED_CONDITION_NAMES)
+            .withExpressionAttributeValues(values);
+  }
+
+  /**
+   * Answer the {@code AttributeDefinitions} of the dispatchables table, including its {@code Id} key.
+   *
+   * @return {@code List<AttributeDefinition>}
+   */
+  public List<AttributeDefinition> attributeDefinitions() {
+    return Arrays.asList(
+            new AttributeDefinition("Id", ScalarAttributeType.S),
+            new AttributeDefinition(SHARD_ATTRIBUTE, ScalarAttributeType.N),
+            new AttributeDefinition(CREATED_AT_MILLIS_ATTRIBUTE, ScalarAttributeType.N));
+  }
+
+  /**
+   * Answer the {@code CreatedAtIndex}, which projects all attributes and
+   * has no {@code ProvisionedThroughput}.
+   *
+   * @return GlobalSecondaryIndex
+   */
+  public GlobalSecondaryIndex createdAtIndex() {
+    return new GlobalSecondaryIndex()
+            .withIndexName(CREATED_AT_INDEX)
+            .withKeySchema(
+                    new KeySchemaElement(SHARD_ATTRIBUTE, KeyType.HASH),
+                    new KeySchemaElement(CREATED_AT_MILLIS_ATTRIBUTE, KeyType.RANGE))
+            .withProjection(new Projection().withProjectionType(ProjectionType.ALL));
+  }
+
+  /**
+   * Answer whether {@code item} of the dispatchables table is kept by a
+   * dispatcher control rather than being a dispatchable.
+   *
+   * @param item the {@code Map<String, AttributeValue>} read from the dispatchables table
+   * @return boolean
+   */
+  public static boolean isControlItem(final Map<String, AttributeValue> item) {
+    final AttributeValue id = item.get("Id");
+    return id != null && id.getS() != null && id.getS().startsWith(CONTROL_ID_PREFIX);
+  }
+
+  public static long millisOf(final LocalDateTime dateTime) {
+    // dispatchables are created with LocalDateTime.now(), in the default zone
+    return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+  }
+}
@@ -0,0 +1,176 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.outbox;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+
+import io.vlingo.xoom.symbio.store.state.dynamodb.streams.PageReader;
+import io.vlingo.xoom.symbio.store.state.dynamodb.streams.PageReader.PageListener;
+import io.vlingo.xoom.symbio.store.state.dynamodb.streams.ScanPageReader;
+
+/**
+ * OutboxBackfill adds the {@code Shard} and {@code CreatedAtMillis} of the
+ * {@link DispatchableOutbox} to the dispatchables written before the outbox
+ * index existed, which the {@code CreatedAtIndex} does not contain, so the
+ * redispatch sweep cannot find them.
+ * <p>
+ * The backfill scans the dispatchables table, one page at a time, for items
+ * lacking either attribute and derives them from the {@code Id} and the
+ * {@code CreatedAt} of each. An item confirmed while the backfill runs is
+ * not written again. The backfill may be run while the store is in use,
+ * and again after a failure, as it only finds the items still lacking the
+ * attributes. It answers the number of items it updated.
+ */
+public class OutboxBackfill implements PageListener {
+  private static final String CREATED_AT_ATTRIBUTE = "CreatedAt";
+  private static final String MISSING_CONDITION = "attribute_not_exists(#shard) OR attribute_not_exists(#createdAt)";
+  private static final String UPDATE = "SET #shard = :shard, #createdAt = :createdAt";
+  private static final String EXISTS_CONDITION = "attribute_exists(#id)";
+  private static final Map<String, String> NAMES = new HashMap<>(2);
+  static {
+    NAMES.put("#shard", DispatchableOutbox.SHARD_ATTRIBUTE);
+    NAMES.put("#createdAt", DispatchableOutbox.CREATED_AT_MILLIS_ATTRIBUTE);
+  }
+
+  private final AmazonDynamoDBAsync dynamodb;
+  private final String tableName;
+  private final DispatchableOutbox outbox;
+  private final PageReader reader;
+  private final Consumer<Long> completed;
+  private final Consumer<Exception> failed;
+  private final AtomicBoolean running;
+  private final AtomicLong updated;
+
+  public OutboxBackfill(
+          final AmazonDynamoDBAsync dynamodb,
+          final String tableName,
+          final DispatchableOutbox outbox,
+          final int pageLimit,
+          final Consumer<Long> completed,
+          final Consumer<Exception> failed) {
+    this.dynamodb = dynamodb;
+    this.tableName = tableName;
+    this.outbox = outbox;
+    this.reader = new ScanPageReader(dynamodb,
+            new ScanRequest(tableName)
+              .withFilterExpression(MISSING_CONDITION)
+              .withExpressionAttributeNames(NAMES)
+              .withLimit(pageLimit));
+    this.completed = completed;
+    this.failed = failed;
+    this.running = new AtomicBoolean(false);
+    this.updated = new AtomicLong(0L);
+  }
+
+  /**
+   * Start the backfill, answering {@code false} if it is already running.
+   *
+   * @return boolean
+   */
+  public boolean start() {
+    if (!running.compareAndSet(false, true)) {
+      return false;
+    }
+    updated.set(0L);
+    reader.readPage(null, this);
+    return true;
+  }
+
+  @Override
+  public void pageRead(final List<Map<String, AttributeValue>> items, final Map<String, AttributeValue> lastEvaluatedKey) {
+    final List<Map<String, AttributeValue>> dispatchables = new ArrayList<>(items.size());
+    for (final Map<String, AttributeValue> item : items) {
+      if (!DispatchableOutbox.isControlItem(item) && item.get(CREATED_AT_ATTRIBUTE) != null) {
+        dispatchables.add(item);
+      }
+    }
+
+    final Runnable next = () -> {
+      if (lastEvaluatedKey == null || lastEvaluatedKey.isEmpty()) {
+        running.set(false);
+        completed.accept(updated.get());
+      } else {
+        reader.readPage(lastEvaluatedKey, this);
+      }
+    };
+
+    if (dispatchables.isEmpty()) {
+      next.run();
+      return;
+    }
+
+    final AtomicInteger outstanding = new AtomicInteger(dispatchables.size());
+    final AtomicBoolean pageFailed = new AtomicBoolean(false);
+    for (final Map<String, AttributeValue> item : dispatchables) {
+      dynamodb.updateItemAsync(updateOf(item), new AsyncHandler<UpdateItemRequest, UpdateItemResult>() {
+        @Override
+        public void onError(final Exception e) {
+          if (e instanceof ConditionalCheckFailedException) {
+            updatedOne();
+          } else if (pageFailed.compareAndSet(false, true)) {
+            pageFailed(e);
+          }
+        }
+
+        @Override
+        public void onSuccess(final UpdateItemRequest request, final UpdateItemResult result) {
+          updated.incrementAndGet();
+          updatedOne();
+        }
+
+        private void updatedOne() {
+          if (outstanding.decrementAndGet() == 0 && !pageFailed.get()) {
+            next.run();
+          }
+        }
+      });
+    }
+  }
+
+  @Override
+  public void pageFailed(final Exception e) {
+    running.set(false);
+    failed.accept(e);
+  }
+
+  private UpdateItemRequest updateOf(final Map<String, AttributeValue> item) {
+    final String id = item.get("Id").getS();
+    final long createdAtMillis = DispatchableOutbox.millisOf(LocalDateTime.parse(item.get(CREATED_AT_ATTRIBUTE).getS()));
+
+    final Map<String, String> names = new HashMap<>(NAMES);
+    names.put("#id", "Id");
+    final Map<String, AttributeValue> values = new HashMap<>(2);
+    values.put(":shard", new AttributeValue().withN(String.valueOf(outbox.shardOf(id))));
+    values.put(":createdAt", new AttributeValue().withN(String.valueOf(createdAtMillis)));
+
+    return new UpdateItemRequest()
+            .withTableName(tableName)
+            .withKey(Collections.singletonMap("Id", new AttributeValue().withS(id)))
+            .withUpdateExpression(UPDATE)
+            .withConditionExpression(EXISTS_CONDITION)
+            .withExpressionAttributeNames(names)
+            .withExpressionAttributeValues(values);
+  }
+}
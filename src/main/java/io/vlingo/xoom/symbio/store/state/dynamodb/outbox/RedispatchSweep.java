@@ -0,0 +1,378 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.outbox;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+
+import io.vlingo.xoom.actors.Logger;
+import io.vlingo.xoom.common.Scheduler;
+import io.vlingo.xoom.symbio.Entry;
+import io.vlingo.xoom.symbio.State;
+import io.vlingo.xoom.symbio.store.dispatch.Dispatchable;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.DescribeIndexesAsyncHandler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.DispatchAsyncHandler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryScheduler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.CapacityAccounting;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.StoreMetrics;
+import io.vlingo.xoom.symbio.store.state.dynamodb.streams.PageReader.PageListener;
+
+/**
+ * RedispatchSweep pages through every expired dispatchable of the
+ * {@link DispatchableOutbox}, shard by shard, dispatching each of them again.
+ * <p>
+ * Pages are paced so that no more than the configured number of items per
+ * second are read. After every page the position of the sweep is saved in a
+ * cursor item of the dispatchables table, which the outbox index does not
+ * contain; a sweep that is interrupted, by a failure that outlasts its
+ * retries or by a restart, resumes from that cursor. Only one sweep runs at
+ * a time. Shards not owned by this node, according to its
+ * {@link ShardOwnership}, are skipped.
+ * <p>
+ * The first sweep describes the table, and fails, logging an error, when
+ * the table has no {@code CreatedAtIndex}. Dispatchables written before the
+ * index existed lack its attributes and are not swept until they are added
+ * by an {@link OutboxBackfill}.
+ * <p>
+ * A dispatchable that cannot be dispatched is skipped and logged, and one
+ * that cannot be read is skipped and counted by {@link StateReferences},
+ * so that neither holds back the rest of its shard. Either stays in the
+ * outbox, and is met again by each sweep until it is repaired or removed.
+ * <p>
+ * The capacity consumed by the pages and the cursor is recorded in the
+ * {@link CapacityAccounting} of the sweep, on behalf of no single state type.
+ * <p>
+ * The sweep maintains these metrics:
+ * <ul>
+ *   <li>{@code sweep.backlog}: the expired dispatchables found by the last completed sweep</li>
+ *   <li>{@code sweep.duration.millis}: the duration of the last completed sweep</li>
+ *   <li>{@code sweep.items}: the dispatchables redispatched by all sweeps</li>
+ *   <li>{@code sweep.skipped}: the dispatchables that could not be dispatched</li>
+ *   <li>{@code sweep.errors}: the failures to verify the index, to read a page or to save the cursor</li>
+ *   <li>{@code sweeps}: the completed sweeps</li>
+ * </ul>
+ *
+ * @param <RS> the raw State type
+ */
+public class RedispatchSweep<RS extends State<?>> implements PageListener {
+  public static final String BACKLOG = "sweep.backlog";
+  public static final String DURATION_MILLIS = "sweep.duration.millis";
+  public static final String ERRORS = "sweep.errors";
+  public static final String ITEMS = "sweep.items";
+  public static final String SKIPPED = "sweep.skipped";
+  public static final String SWEEPS = "sweeps";
+
+  private static final String CURSOR_ID_PREFIX = DispatchableOutbox.CONTROL_ID_PREFIX + "redispatch-sweep:";
+  private static final String CURSOR_EXPIRED_AT = "ExpiredAtMillis";
+  private static final String CURSOR_SHARD = "SweepShard";
+  private static final String CURSOR_LAST_KEY = "LastKey";
+
+  private final AmazonDynamoDBAsync dynamodb;
+  private final String tableName;
+  private final DispatchableOutbox outbox;
+  private final int itemsPerSecond;
+  private final int pageLimit;
+  private final StateReferences<RS> references;
+  private final Function<Dispatchable<Entry<?>, RS>, Void> dispatch;
+  private final Scheduler scheduler;
+  private final RetryScheduler retries;
+  private final StoreMetrics metrics;
+  private final Logger logger;
+  private final Map<String, AttributeValue> cursorKey;
+  private final ShardOwnership ownership;
+  private final CapacityAccounting accounting;
+  private final AtomicBoolean running;
+
+  // only one page is in flight, so the position changes on one thread at a time
+  private volatile long expiredAtMillis;
+  private volatile int shard;
+  private volatile Map<String, AttributeValue> lastKey;
+  private volatile long sweptItems;
+  private volatile long startedAt;
+  private volatile long pageStartedAt;
+  private volatile int attempts;
+  private volatile boolean indexVerified;
+
+  public RedispatchSweep(
+          final AmazonDynamoDBAsync dynamodb,
+          final String tableName,
+          final String sweepName,
+          final DispatchableOutbox outbox,
+          final int itemsPerSecond,
+          final int pageLimit,
+          final StateReferences<RS> references,
+          final Function<Dispatchable<Entry<?>, RS>, Void> dispatch,
+          final Scheduler scheduler,
+          final RetryScheduler retries,
+          final Logger logger) {
+    this(dynamodb, tableName, sweepName, outbox, itemsPerSecond, pageLimit, references, dispatch, scheduler, retries, logger, ShardOwnership.all());
+  }
+
+  public RedispatchSweep(
+          final AmazonDynamoDBAsync dynamodb,
+          final String tableName,
+          final String sweepName,
+          final DispatchableOutbox outbox,
+          final int itemsPerSecond,
+          final int pageLimit,
+          final StateReferences<RS> references,
+          final Function<Dispatchable<Entry<?>, RS>, Void> dispatch,
+          final Scheduler scheduler,
+          final RetryScheduler retries,
+          final Logger logger,
+          final ShardOwnership ownership) {
+    this(dynamodb, tableName, sweepName, outbox, itemsPerSecond, pageLimit, references, dispatch, scheduler, retries, logger, ownership, new CapacityAccounting());
+  }
+
+  public RedispatchSweep(
+          final AmazonDynamoDBAsync dynamodb,
+          final String tableName,
+          final String sweepName,
+          final DispatchableOutbox outbox,
+          final int itemsPerSecond,
+          final int pageLimit,
+          final StateReferences<RS> references,
+          final Function<Dispatchable<Entry<?>, RS>, Void> dispatch,
+          final Scheduler scheduler,
+          final RetryScheduler retries,
+          final Logger logger,
+          final ShardOwnership ownership,
+          final CapacityAccounting accounting) {
+    this.dynamodb = dynamodb;
+    this.tableName = tableName;
+    this.outbox = outbox;
+    this.itemsPerSecond = itemsPerSecond;
+    this.pageLimit = pageLimit;
+    this.references = references;
+    this.dispatch = dispatch;
+    this.scheduler = scheduler;
+    this.retries = retries;
+    this.metrics = retries.metrics();
+    this.logger = logger;
+    this.cursorKey = Collections.singletonMap("Id", new AttributeValue().withS(CURSOR_ID_PREFIX + sweepName));
+    this.ownership = ownership;
+    this.accounting = accounting;
+    this.running = new AtomicBoolean(false);
+  }
+
+  /**
+   * Start a sweep of the dispatchables created at or before {@code expiredAtMillis},
+   * or resume the interrupted sweep, answering {@code false} if a sweep is
+   * already running.
+   *
+   * @param expiredAtMillis the long epoch millis of the most recent expired creation time
+   * @return boolean
+   */
+  public boolean start(final long expiredAtMillis) {
+    if (!running.compareAndSet(false, true)) {
+      return false;
+    }
+    this.startedAt = System.currentTimeMillis();
+    this.sweptItems = 0L;
+    this.attempts = 0;
+
+    if (indexVerified) {
+      resume(expiredAtMillis);
+    } else {
+      verifyIndexThenResume(expiredAtMillis);
+    }
+
+    return true;
+  }
+
+  public boolean isRunning() {
+    return running.get();
+  }
+
+  // Without the index every expired query fails, so a sweep of a table
+  // created without it fails before reading instead of once per shard.
+  private void verifyIndexThenResume(final long expiredAtMillis) {
+    dynamodb.describeTableAsync(new DescribeTableRequest(tableName), new DescribeIndexesAsyncHandler(
+      Collections.singletonList(DispatchableOutbox.CREATED_AT_INDEX),
+      missing -> {
+        if (missing.isEmpty()) {
+          indexVerified = true;
+          resume(expiredAtMillis);
+        } else {
+          metrics.increment(ERRORS);
+          logger.error("The table " + tableName + " has no " + DispatchableOutbox.CREATED_AT_INDEX + ", so no dispatchable is redispatched; " +
+                       "create the index and backfill it with OutboxBackfill.");
+          running.set(false);
+        }
+      },
+      e -> {
+        failed("Could not describe the table " + tableName + "; the sweep retries on the next interval: " + e.getMessage(), e);
+        running.set(false);
+      }));
+  }
+
+  private void resume(final long expiredAtMillis) {
+    final GetItemRequest read = new GetItemRequest(tableName, cursorKey, true).withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+    dynamodb.getItemAsync(read, new AsyncHandler<GetItemRequest, GetItemResult>() {
+      @Override
+      public void onError(final Exception e) {
+        failed("Could not read the redispatch cursor; sweeping from the start: " + e.getMessage(), e);
+        begin(expiredAtMillis, 0, null);
+      }
+
+      @Override
+      public void onSuccess(final GetItemRequest request, final GetItemResult result) {
+        accounting.record(CapacityAccounting.NO_STATE_TYPE, "GetItem", result.getConsumedCapacity());
+        final Map<String, AttributeValue> cursor = result.getItem();
+        if (cursor == null) {
+          begin(expiredAtMillis, 0, null);
+        } else {
+          final AttributeValue last = cursor.get(CURSOR_LAST_KEY);
+          begin(Long.parseLong(cursor.get(CURSOR_EXPIRED_AT).getN()),
+                Integer.parseInt(cursor.get(CURSOR_SHARD).getN()),
+                last == null ? null : last.getM());
+        }
+      }
+    });
+  }
+
+  @Override
+  public void pageRead(final List<Map<String, AttributeValue>> items, final Map<String, AttributeValue> lastEvaluatedKey) {
+    attempts = 0;
+    sweptItems += items.size();
+    metrics.add(ITEMS, items.size());
+
+    if (lastEvaluatedKey == null || lastEvaluatedKey.isEmpty()) {
+      shard = nextOwnedShardFrom(shard + 1);
+      lastKey = null;
+    } else {
+      lastKey = lastEvaluatedKey;
+    }
+
+    if (shard >= outbox.shards()) {
+      complete();
+      return;
+    }
+
+    saveCursor();
+
+    final long budgetMillis = items.size() * 1000L / itemsPerSecond;
+    final long delay = Math.max(0L, budgetMillis - (System.currentTimeMillis() - pageStartedAt));
+    scheduler.scheduleOnce((scheduled, data) -> readPage(), null, 0L, delay);
+  }
+
+  @Override
+  public void pageFailed(final Exception e) {
+    failed("Could not redispatch a page of shard " + shard + ": " + e.getMessage(), e);
+    if (!retries.retry(attempts++, this::readPage)) {
+      logger.error("Redispatch sweep paused after " + (attempts - 1) + " retries; it resumes from its cursor on the next interval.");
+      running.set(false);
+    }
+  }
+
+  private void begin(final long expiredAtMillis, final int shard, final Map<String, AttributeValue> lastKey) {
+    this.expiredAtMillis = expiredAtMillis;
+    this.shard = nextOwnedShardFrom(shard);
+    this.lastKey = this.shard == shard ? lastKey : null;
+
+    if (this.shard >= outbox.shards()) {
+      complete();
+    } else {
+      readPage();
+    }
+  }
+
+  private int nextOwnedShardFrom(final int shard) {
+    int next = shard;
+    while (next < outbox.shards() && !ownership.owns(next)) {
+      ++next;
+    }
+    return next;
+  }
+
+  private void readPage() {
+    pageStartedAt = System.currentTimeMillis();
+    final QueryRequest query =
+            outbox.expiredQueryFor(tableName, shard, expiredAtMillis)
+              .withLimit(pageLimit)
+              .withExclusiveStartKey(lastKey)
+              .withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+
+    dynamodb.queryAsync(query, new DispatchAsyncHandler<>(references, this::dispatchOrSkip, this, accounting));
+  }
+
+  private Void dispatchOrSkip(final Dispatchable<Entry<?>, RS> dispatchable) {
+    try {
+      return dispatch.apply(dispatchable);
+    } catch (Exception e) {
+      metrics.increment(SKIPPED);
+      logger.error("Skipped the dispatchable " + dispatchable.id() + " of shard " + shard + ", which could not be dispatched: " + e.getMessage(), e);
+      return null;
+    }
+  }
+
+  private void complete() {
+    metrics.gauge(BACKLOG, sweptItems);
+    metrics.gauge(DURATION_MILLIS, System.currentTimeMillis() - startedAt);
+    metrics.increment(SWEEPS);
+
+    final DeleteItemRequest delete = new DeleteItemRequest(tableName, cursorKey).withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+    dynamodb.deleteItemAsync(delete, new AsyncHandler<DeleteItemRequest, DeleteItemResult>() {
+      @Override
+      public void onError(final Exception e) {
+        failed("Could not remove the redispatch cursor: " + e.getMessage(), e);
+        running.set(false);
+      }
+
+      @Override
+      public void onSuccess(final DeleteItemRequest request, final DeleteItemResult result) {
+        accounting.record(CapacityAccounting.NO_STATE_TYPE, "DeleteItem", result.getConsumedCapacity());
+        running.set(false);
+      }
+    });
+  }
+
+  private void saveCursor() {
+    final Map<String, AttributeValue> cursor = new HashMap<>(cursorKey);
+    cursor.put(CURSOR_EXPIRED_AT, new AttributeValue().withN(String.valueOf(expiredAtMillis)));
+    cursor.put(CURSOR_SHARD, new AttributeValue().withN(String.valueOf(shard)));
+    if (lastKey != null) {
+      cursor.put(CURSOR_LAST_KEY, new AttributeValue().withM(lastKey));
+    }
+
+    final PutItemRequest save = new PutItemRequest(tableName, cursor).withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+    dynamodb.putItemAsync(save, new AsyncHandler<PutItemRequest, PutItemResult>() {
+      @Override
+      public void onError(final Exception e) {
+        failed("Could not save the redispatch cursor: " + e.getMessage(), e);
+      }
+
+      @Override
+      public void onSuccess(final PutItemRequest request, final PutItemResult result) {
+        accounting.record(CapacityAccounting.NO_STATE_TYPE, "PutItem", result.getConsumedCapacity());
+      }
+    });
+  }
+
+  private void failed(final String message, final Exception e) {
+    metrics.increment(ERRORS);
+    logger.error(message, e);
+  }
+}
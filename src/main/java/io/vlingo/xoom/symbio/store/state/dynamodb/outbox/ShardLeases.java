@@ -0,0 +1,475 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.outbox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+
+import io.vlingo.xoom.actors.Logger;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.CapacityAccounting;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.StoreMetrics;
+
+/**
+ * ShardLeases decides which shards of the {@link DispatchableOutbox} this
+ * node sweeps, through one lease item per shard kept in a lease table keyed
+ * on {@code Id}, which may be the dispatchables table itself.
+ * <p>
+ * Every {@link #tick()} renews the held leases and balances them. A lease is
+ * renewed by incrementing its {@code LeaseCounter}, conditioned on this node
+ * still being its {@code LeaseOwner}; a renewal that fails the condition
+ * means the lease was taken, and its shard is no longer swept. A held lease
+ * that has not been renewed for three quarters of the lease duration, such as
+ * while its renewals fail, is dropped before other owners may consider it
+ * expired, and its shard is no longer swept either. A lease whose
+ * counter has not changed for the lease duration, measured on this node's
+ * clock so clocks need not agree, has expired. Balancing takes free and
+ * expired leases until this node holds its fair share of the shards among
+ * the owners seen, and then steals at most one lease per tick from the most
+ * loaded owner holding more than its share. Every acquisition is a write
+ * conditioned on the counter that was read, so two nodes never both acquire
+ * the same lease. A node that leaves {@link #release() releases} its leases,
+ * and the leases of a node that fails expire.
+ * <p>
+ * Between a steal and the next renewal of its former owner, both nodes may
+ * sweep the shard; dispatchers already tolerate redispatch.
+ * <p>
+ * The capacity consumed by the leases is recorded in the
+ * {@link CapacityAccounting} of the leases, on behalf of no single state type.
+ * <p>
+ * The leases maintain these metrics:
+ * <ul>
+ *   <li>{@code leases.acquired}: the free or expired leases acquired</li>
+ *   <li>{@code leases.stolen}: the leases taken from another owner</li>
+ *   <li>{@code leases.lost}: the leases taken by another owner</li>
+ *   <li>{@code leases.expired}: the held leases dropped for not being renewed in time</li>
+ *   <li>{@code leases.errors}: the failures to read or write leases</li>
+ *   <li>{@code leases.held}: the leases held by this node</li>
+ * </ul>
+ */
+public class ShardLeases implements ShardOwnership {
+  public static final String ACQUIRED = "leases.acquired";
+  public static final String ERRORS = "leases.errors";
+  public static final String EXPIRED = "leases.expired";
+  public static final String HELD = "leases.held";
+  public static final String LOST = "leases.lost";
+  public static final String STOLEN = "leases.stolen";
+
+  private static final int BATCH_GET_ITEM_LIMIT = 100;
+  private static final String LEASE_ID_PREFIX = DispatchableOutbox.CONTROL_ID_PREFIX + "lease:";
+  private static final String OWNER = "LeaseOwner";
+  private static final String COUNTER = "LeaseCounter";
+  private static final Map<String, String> LEASE_NAMES = new HashMap<>(3);
+  static {
+    LEASE_NAMES.put("#id", "Id");
+    LEASE_NAMES.put("#owner", OWNER);
+    LEASE_NAMES.put("#counter", COUNTER);
+  }
+
+  private final AmazonDynamoDBAsync dynamodb;
+  private final String tableName;
+  private final String owner;
+  private final int shards;
+  private final long leaseDurationMillis;
+  private final StoreMetrics metrics;
+  private final Logger logger;
+  private final CapacityAccounting accounting;
+  private final LongSupplier clock;
+  private final Map<Integer, Lease> held;
+  private final Map<Integer, Observation> observations;
+  private final AtomicBoolean balancing;
+
+  public ShardLeases(
+          final AmazonDynamoDBAsync dynamodb,
+          final String tableName,
+          final String owner,
+          final int shards,
+          final long leaseDurationMillis,
+          final StoreMetrics metrics,
+          final Logger logger) {
+    this(dynamodb, tableName, owner, shards, leaseDurationMillis, metrics, logger, new CapacityAccounting());
+  }
+
+  public ShardLeases(
+          final AmazonDynamoDBAsync dynamodb,
+          final String tableName,
+          final String owner,
+          final int shards,
+          final long leaseDurationMillis,
+          final StoreMetrics metrics,
+          final Logger logger,
+          final CapacityAccounting accounting) {
+    this(dynamodb, tableName, owner, shards, leaseDurationMillis, metrics, logger, accounting, System::currentTimeMillis);
+  }
+
+  ShardLeases(
+          final AmazonDynamoDBAsync dynamodb,
+          final String tableName,
+          final String owner,
+          final int shards,
+          final long leaseDurationMillis,
+          final StoreMetrics metrics,
+          final Logger logger,
+          final CapacityAccounting accounting,
+          final LongSupplier clock) {
+    this.dynamodb = dynamodb;
+    this.tableName = tableName;
+    this.owner = owner;
+    this.shards = shards;
+    this.leaseDurationMillis = leaseDurationMillis;
+    this.metrics = metrics;
+    this.logger = logger;
+    this.accounting = accounting;
+    this.clock = clock;
+    this.held = new ConcurrentHashMap<>();
+    this.observations = new ConcurrentHashMap<>();
+    this.balancing = new AtomicBoolean(false);
+  }
+
+  @Override
+  public boolean owns(final int shard) {
+    final Lease lease = held.get(shard);
+    return lease != null && !expired(shard, lease, clock.getAsLong());
+  }
+
+  public Set<Integer> ownedShards() {
+    final long now = clock.getAsLong();
+    final Set<Integer> owned = new HashSet<>();
+    for (final Map.Entry<Integer, Lease> lease : held.entrySet()) {
+      if (!expired(lease.getKey(), lease.getValue(), now)) {
+        owned.add(lease.getKey());
+      }
+    }
+    return Collections.unmodifiableSet(owned);
+  }
+
+  /**
+   * Renew the held leases and balance the leases among the owners. Must be
+   * called at well under the lease duration, such as a third of it.
+   */
+  public void tick() {
+    renew();
+    balance();
+  }
+
+  /**
+   * Give up every held lease so that other owners may take it at once.
+   */
+  public void release() {
+    for (final Map.Entry<Integer, Lease> lease : held.entrySet()) {
+      final UpdateItemRequest request =
+              new UpdateItemRequest()
+                .withTableName(tableName)
+                .withKey(keyOf(lease.getKey()))
+                .withUpdateExpression("REMOVE #owner SET #counter = :next")
+                .withConditionExpression("#owner = :owner")
+                .withExpressionAttributeNames(namesOf("#owner", "#counter"))
+                .withExpressionAttributeValues(valuesOf(owner, lease.getValue().counter + 1))
+                .withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+
+      dynamodb.updateItemAsync(request, new AsyncHandler<UpdateItemRequest, UpdateItemResult>() {
+        @Override
+        public void onError(final Exception e) {
+          if (!(e instanceof ConditionalCheckFailedException)) {
+            failed("Could not release the lease of shard " + lease.getKey() + "; it expires instead: " + e.getMessage(), e);
+          }
+        }
+
+        @Override
+        public void onSuccess(final UpdateItemRequest request, final UpdateItemResult result) {
+          accounting.record(CapacityAccounting.NO_STATE_TYPE, "UpdateItem", result.getConsumedCapacity());
+        }
+      });
+    }
+    held.clear();
+    metrics.gauge(HELD, 0L);
+  }
+
+  private void renew() {
+    final long now = clock.getAsLong();
+    for (final Map.Entry<Integer, Lease> lease : held.entrySet()) {
+      final int shard = lease.getKey();
+      final Lease renewed = lease.getValue();
+      if (expired(shard, renewed, now)) {
+        continue;
+      }
+      final long counter = renewed.counter;
+      final UpdateItemRequest request =
+              new UpdateItemRequest()
+                .withTableName(tableName)
+                .withKey(keyOf(shard))
+                .withUpdateExpression("SET #counter = :next")
+                .withConditionExpression("#owner = :owner AND #counter = :counter")
+                .withExpressionAttributeNames(namesOf("#owner", "#counter"))
+                .withExpressionAttributeValues(renewalValuesOf(counter))
+                .withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+
+      dynamodb.updateItemAsync(request, new AsyncHandler<UpdateItemRequest, UpdateItemResult>() {
+        @Override
+        public void onError(final Exception e) {
+          if (e instanceof ConditionalCheckFailedException) {
+            if (held.remove(shard, renewed)) {
+              metrics.increment(LOST);
+              metrics.gauge(HELD, held.size());
+              logger.info("Lost the lease of outbox shard " + shard + " to another owner.");
+            }
+          } else {
+            failed("Could not renew the lease of shard " + shard + ": " + e.getMessage(), e);
+          }
+        }
+
+        @Override
+        public void onSuccess(final UpdateItemRequest request, final UpdateItemResult result) {
+          accounting.record(CapacityAccounting.NO_STATE_TYPE, "UpdateItem", result.getConsumedCapacity());
+          // renewed as of when the request was sent, which is no later than other owners observe it
+          held.replace(shard, renewed, new Lease(counter + 1, now));
+        }
+      });
+    }
+  }
+
+  private void balance() {
+    if (!balancing.compareAndSet(false, true)) {
+      return;
+    }
+    final List<Map<String, AttributeValue>> keys = new ArrayList<>(shards);
+    for (int shard = 0; shard < shards; ++shard) {
+      keys.add(keyOf(shard));
+    }
+    read(keys, 0, new HashMap<>(shards));
+  }
+
+  private void read(final List<Map<String, AttributeValue>> keys, final int from, final Map<Integer, Map<String, AttributeValue>> leases) {
+    if (from >= keys.size()) {
+      try {
+        decide(leases);
+      } finally {
+        balancing.set(false);
+      }
+      return;
+    }
+    final List<Map<String, AttributeValue>> page = keys.subList(from, Math.min(from + BATCH_GET_ITEM_LIMIT, keys.size()));
+    readPage(new BatchGetItemRequest(Collections.singletonMap(tableName, new KeysAndAttributes().withKeys(page).withConsistentRead(true)))
+               .withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES), keys, from + page.size(), leases);
+  }
+
+  private void readPage(final BatchGetItemRequest request, final List<Map<String, AttributeValue>> keys, final int next, final Map<Integer, Map<String, AttributeValue>> leases) {
+    dynamodb.batchGetItemAsync(request, new AsyncHandler<BatchGetItemRequest, BatchGetItemResult>() {
+      @Override
+      public void onError(final Exception e) {
+        failed("Could not read the outbox shard leases: " + e.getMessage(), e);
+        balancing.set(false);
+      }
+
+      @Override
+      public void onSuccess(final BatchGetItemRequest request, final BatchGetItemResult result) {
+        accounting.record(CapacityAccounting.NO_STATE_TYPE, "BatchGetItem", result.getConsumedCapacity());
+        final List<Map<String, AttributeValue>> items = result.getResponses().get(tableName);
+        if (items != null) {
+          for (final Map<String, AttributeValue> item : items) {
+            leases.put(shardOf(item), item);
+          }
+        }
+        final Map<String, KeysAndAttributes> unprocessed = result.getUnprocessedKeys();
+        if (unprocessed != null && !unprocessed.isEmpty()) {
+          readPage(new BatchGetItemRequest(unprocessed).withReturnConsumedCapacity(request.getReturnConsumedCapacity()), keys, next, leases);
+        } else {
+          read(keys, next, leases);
+        }
+      }
+    });
+  }
+
+  private void decide(final Map<Integer, Map<String, AttributeValue>> leases) {
+    final long now = clock.getAsLong();
+    final Map<String, List<Integer>> leasesByOwner = new HashMap<>();
+    final List<Integer> free = new ArrayList<>();
+
+    for (int shard = 0; shard < shards; ++shard) {
+      final Map<String, AttributeValue> lease = leases.get(shard);
+      if (lease == null) {
+        observations.remove(shard);
+        if (!held.containsKey(shard)) {
+          free.add(shard);
+        }
+        continue;
+      }
+      final long counter = counterOf(lease);
+      final Observation observation = observations.get(shard);
+      if (observation == null || observation.counter != counter) {
+        observations.put(shard, new Observation(counter, now));
+      }
+      final AttributeValue leaseOwner = lease.get(OWNER);
+      final boolean expired = observation != null && observation.counter == counter && now - observation.observedAt > leaseDurationMillis;
+      if (leaseOwner == null || expired) {
+        if (!held.containsKey(shard)) {
+          free.add(shard);
+        }
+      } else {
+        leasesByOwner.computeIfAbsent(leaseOwner.getS(), key -> new ArrayList<>()).add(shard);
+      }
+    }
+
+    leasesByOwner.computeIfAbsent(owner, key -> new ArrayList<>());
+    final int fairShare = (shards + leasesByOwner.size() - 1) / leasesByOwner.size();
+    int holding = held.size();
+
+    for (final Integer shard : free) {
+      if (holding >= fairShare) {
+        break;
+      }
+      acquire(shard, leases.get(shard), false);
+      ++holding;
+    }
+
+    if (holding < fairShare) {
+      String mostLoaded = null;
+      for (final Map.Entry<String, List<Integer>> ownerLeases : leasesByOwner.entrySet()) {
+        if (!ownerLeases.getKey().equals(owner) &&
+            (mostLoaded == null || ownerLeases.getValue().size() > leasesByOwner.get(mostLoaded).size())) {
+          mostLoaded = ownerLeases.getKey();
+        }
+      }
+      if (mostLoaded != null && leasesByOwner.get(mostLoaded).size() > fairShare) {
+        final Integer shard = leasesByOwner.get(mostLoaded).get(0);
+        acquire(shard, leases.get(shard), true);
+      }
+    }
+  }
+
+  private void acquire(final int shard, final Map<String, AttributeValue> lease, final boolean steal) {
+    final long acquiring = clock.getAsLong();
+    final long counter = lease == null ? 0L : counterOf(lease) + 1;
+    final Map<String, AttributeValue> item = new HashMap<>(keyOf(shard));
+    item.put(OWNER, new AttributeValue().withS(owner));
+    item.put(COUNTER, new AttributeValue().withN(String.valueOf(counter)));
+
+    final PutItemRequest request = new PutItemRequest(tableName, item).withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+    if (lease == null) {
+      request.withConditionExpression("attribute_not_exists(#id)")
+             .withExpressionAttributeNames(namesOf("#id"));
+    } else {
+      request.withConditionExpression("#counter = :counter")
+             .withExpressionAttributeNames(namesOf("#counter"))
+             .withExpressionAttributeValues(Collections.singletonMap(":counter", new AttributeValue().withN(String.valueOf(counter - 1))));
+    }
+
+    dynamodb.putItemAsync(request, new AsyncHandler<PutItemRequest, PutItemResult>() {
+      @Override
+      public void onError(final Exception e) {
+        if (!(e instanceof ConditionalCheckFailedException)) {
+          failed("Could not acquire the lease of shard " + shard + ": " + e.getMessage(), e);
+        }
+      }
+
+      @Override
+      public void onSuccess(final PutItemRequest request, final PutItemResult result) {
+        accounting.record(CapacityAccounting.NO_STATE_TYPE, "PutItem", result.getConsumedCapacity());
+        held.put(shard, new Lease(counter, acquiring));
+        metrics.increment(steal ? STOLEN : ACQUIRED);
+        metrics.gauge(HELD, held.size());
+        logger.info((steal ? "Took" : "Acquired") + " the lease of outbox shard " + shard + ".");
+      }
+    });
+  }
+
+  /**
+   * Answer whether {@code lease} went unrenewed for so long that other
+   * owners may soon consider it expired, dropping it if so.
+   */
+  private boolean expired(final int shard, final Lease lease, final long now) {
+    if (now - lease.renewedAt < leaseDurationMillis - leaseDurationMillis / 4) {
+      return false;
+    }
+    if (held.remove(shard, lease)) {
+      metrics.increment(EXPIRED);
+      metrics.gauge(HELD, held.size());
+      logger.info("Dropped the lease of outbox shard " + shard + ", which was not renewed in time.");
+    }
+    return true;
+  }
+
+  private Map<String, AttributeValue> keyOf(final int shard) {
+    return Collections.singletonMap("Id", new AttributeValue().withS(LEASE_ID_PREFIX + shard));
+  }
+
+  private int shardOf(final Map<String, AttributeValue> lease) {
+    return Integer.parseInt(lease.get("Id").getS().substring(LEASE_ID_PREFIX.length()));
+  }
+
+  private long counterOf(final Map<String, AttributeValue> lease) {
+    final AttributeValue counter = lease.get(COUNTER);
+    return counter == null ? 0L : Long.parseLong(counter.getN());
+  }
+
+  private Map<String, String> namesOf(final String... names) {
+    final Map<String, String> selected = new HashMap<>(names.length);
+    for (final String name : names) {
+      selected.put(name, LEASE_NAMES.get(name));
+    }
+    return selected;
+  }
+
+  private Map<String, AttributeValue> valuesOf(final String owner, final long next) {
+    final Map<String, AttributeValue> values = new HashMap<>(2);
+    values.put(":owner", new AttributeValue().withS(owner));
+    values.put(":next", new AttributeValue().withN(String.valueOf(next)));
+    return values;
+  }
+
+  private Map<String, AttributeValue> renewalValuesOf(final long counter) {
+    final Map<String, AttributeValue> values = valuesOf(owner, counter + 1);
+    values.put(":counter", new AttributeValue().withN(String.valueOf(counter)));
+    return values;
+  }
+
+  private void failed(final String message, final Exception e) {
+    metrics.increment(ERRORS);
+    logger.error(message, e);
+  }
+
+  private static final class Lease {
+    final long counter;
+    final long renewedAt;
+
+    Lease(final long counter, final long renewedAt) {
+      this.counter = counter;
+      this.renewedAt = renewedAt;
+    }
+  }
+
+  private static final class Observation {
+    final long counter;
+    final long observedAt;
+
+    Observation(final long counter, final long observedAt) {
+      this.counter = counter;
+      this.observedAt = observedAt;
+    }
+  }
+}
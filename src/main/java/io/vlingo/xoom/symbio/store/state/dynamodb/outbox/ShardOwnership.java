@@ -0,0 +1,26 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.outbox;
+
+/**
+ * ShardOwnership answers which shards of the {@link DispatchableOutbox}
+ * are swept by this node.
+ */
+@FunctionalInterface
+public interface ShardOwnership {
+  /**
+   * Answer the ownership of every shard, for a node that sweeps the outbox alone.
+   *
+   * @return ShardOwnership
+   */
+  static ShardOwnership all() {
+    return shard -> true;
+  }
+
+  boolean owns(final int shard);
+}
@@ -0,0 +1,314 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.outbox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+
+import io.vlingo.xoom.symbio.Entry;
+import io.vlingo.xoom.symbio.State;
+import io.vlingo.xoom.symbio.store.Result;
+import io.vlingo.xoom.symbio.store.StorageException;
+import io.vlingo.xoom.symbio.store.dispatch.Dispatchable;
+import io.vlingo.xoom.symbio.store.state.dynamodb.adapters.RecordAdapter;
+import io.vlingo.xoom.symbio.store.state.dynamodb.capacity.CapacityLimiter;
+import io.vlingo.xoom.symbio.store.state.dynamodb.capacity.Demand;
+import io.vlingo.xoom.symbio.store.state.dynamodb.chunks.StateChunks;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryScheduler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.CapacityAccounting;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.StoreMetrics;
+
+/**
+ * StateReferences turns the items of the {@link DispatchableOutbox} back
+ * into dispatchables, reading the states of the items that only reference
+ * them.
+ * <p>
+ * A reference item holds the table, id and {@code DataVersion} of its state
+ * instead of the state itself. The states of a page of items are read with
+ * strongly consistent {@code BatchGetItem}s of at most 100 keys, and items
+ * that embed their state are answered without any read. A state found with
+ * a newer version than its reference is dispatched in its place, since the
+ * newer write replaces the outbox item as well; a state that is missing, or
+ * older than its reference because its write has not landed, is answered
+ * as {@code null} and its item stays in the outbox to be swept again.
+ * An item, or a referenced state, that cannot be unmarshalled is also
+ * answered as {@code null}, so that it does not hold back the other items
+ * of its page. Chunked states are reassembled by {@link StateChunks}. The
+ * states are read through the {@link CapacityLimiter}, on behalf of no
+ * single state type.
+ * <p>
+ * The references maintain these metrics:
+ * <ul>
+ *   <li>{@code outbox.references.resolved}: the referenced states read</li>
+ *   <li>{@code outbox.references.missing}: the references whose state was not found</li>
+ *   <li>{@code outbox.references.stale}: the references whose state had been overwritten</li>
+ *   <li>{@code outbox.items.unreadable}: the items and referenced states that could not be unmarshalled</li>
+ * </ul>
+ *
+ * @param <RS> the raw State type
+ */
+public class StateReferences<RS extends State<?>> {
+  public static final String MISSING = "outbox.references.missing";
+  public static final String RESOLVED = "outbox.references.resolved";
+  public static final String STALE = "outbox.references.stale";
+  public static final String UNREADABLE = "outbox.items.unreadable";
+
+  public static final String STATE_TABLE_ATTRIBUTE = "StateTable";
+  public static final String STATE_ID_ATTRIBUTE = "StateId";
+  public static final String STATE_DATA_VERSION_ATTRIBUTE = "StateDataVersion";
+
+  private static final int BATCH_GET_ITEM_LIMIT = 100;
+
+  private final AmazonDynamoDBAsync dynamodb;
+  private final RecordAdapter<RS> recordAdapter;
+  private final RetryScheduler retries;
+  private final StateChunks chunks;
+  private final StoreMetrics metrics;
+  private final CapacityLimiter capacity;
+
+  public StateReferences(final AmazonDynamoDBAsync dynamodb, final RecordAdapter<RS> recordAdapter, final RetryScheduler retries) {
+    this(dynamodb, recordAdapter, retries, CapacityLimiter.unlimited(new CapacityAccounting()));
+  }
+
+  public StateReferences(final AmazonDynamoDBAsync dynamodb, final RecordAdapter<RS> recordAdapter, final RetryScheduler retries, final CapacityLimiter capacity) {
+    this.dynamodb = dynamodb;
+    this.recordAdapter = recordAdapter;
+    this.retries = retries;
+    this.chunks = new StateChunks(dynamodb, StateChunks.DEFAULT_CHUNK_BYTES, retries, capacity);
+    this.metrics = retries.metrics();
+    this.capacity = capacity;
+  }
+
+  /**
+   * Answer {@code item}, the marshalled dispatchable without its state, with
+   * the reference to {@code state} in {@code stateTable}.
+   *
+   * @param item the {@code Map<String, AttributeValue>} of the dispatchable
+   * @param stateTable the String name of the table of the state
+   * @param state the RS state being referenced
+   * @param <RS> the raw State type
+   * @return {@code Map<String, AttributeValue>}
+   */
+  public static <RS extends State<?>> Map<String, AttributeValue> itemOf(final Map<String, AttributeValue> item, final String stateTable, final RS state) {
+    final Map<String, AttributeValue> referenceItem = new HashMap<>(item);
+    referenceItem.put(STATE_TABLE_ATTRIBUTE, new AttributeValue().withS(stateTable));
+    referenceItem.put(STATE_ID_ATTRIBUTE, new AttributeValue().withS(state.id));
+    referenceItem.put(STATE_DATA_VERSION_ATTRIBUTE, new AttributeValue().withN(String.valueOf(state.dataVersion)));
+    return referenceItem;
+  }
+
+  public static boolean isReference(final Map<String, AttributeValue> item) {
+    return item.containsKey(STATE_TABLE_ATTRIBUTE);
+  }
+
+  /**
+   * Answer to {@code resolved} the dispatchables of {@code items}, in the
+   * same order, where those that cannot be unmarshalled or whose state
+   * cannot be read are {@code null}, or answer to {@code failed} if the
+   * states cannot be read at all.
+   *
+   * @param items the {@code List<Map<String, AttributeValue>>} of outbox items
+   * @param resolved the {@code Consumer<List<Dispatchable<Entry<?>, RS>>>} of the dispatchables
+   * @param failed the {@code Consumer<Exception>} of the failure
+   */
+  public void resolve(
+          final List<Map<String, AttributeValue>> items,
+          final Consumer<List<Dispatchable<Entry<?>, RS>>> resolved,
+          final Consumer<Exception> failed) {
+    final List<Dispatchable<Entry<?>, RS>> dispatchables = new ArrayList<>(items.size());
+    final Map<String, Map<String, Map<String, AttributeValue>>> keysByTable = new LinkedHashMap<>();
+    for (final Map<String, AttributeValue> item : items) {
+      Dispatchable<Entry<?>, RS> dispatchable = null;
+      try {
+        dispatchable = recordAdapter.unmarshallDispatchable(item);
+        if (isReference(item)) {
+          final String stateId = item.get(STATE_ID_ATTRIBUTE).getS();
+          keysByTable
+            .computeIfAbsent(item.get(STATE_TABLE_ATTRIBUTE).getS(), table -> new LinkedHashMap<>())
+            .putIfAbsent(stateId, recordAdapter.marshallForQuery(stateId));
+        }
+      } catch (Exception e) {
+        metrics.increment(UNREADABLE);
+        dispatchable = null;
+      }
+      dispatchables.add(dispatchable);
+    }
+
+    if (keysByTable.isEmpty()) {
+      resolved.accept(dispatchables);
+      return;
+    }
+
+    new Resolution(items, dispatchables, keysByTable, resolved, failed).start();
+  }
+
+  private static String keyOf(final String table, final String stateId) {
+    return table + "/" + stateId;
+  }
+
+  private class Resolution {
+    private final List<Map<String, AttributeValue>> items;
+    private final List<Dispatchable<Entry<?>, RS>> dispatchables;
+    private final List<BatchGetItemRequest> requests;
+    private final Consumer<List<Dispatchable<Entry<?>, RS>>> resolved;
+    private final Consumer<Exception> failed;
+    private final Map<String, RS> states;
+    private final AtomicInteger outstanding;
+    private final AtomicBoolean completed;
+
+    Resolution(
+            final List<Map<String, AttributeValue>> items,
+            final List<Dispatchable<Entry<?>, RS>> dispatchables,
+            final Map<String, Map<String, Map<String, AttributeValue>>> keysByTable,
+            final Consumer<List<Dispatchable<Entry<?>, RS>>> resolved,
+            final Consumer<Exception> failed) {
+      this.items = items;
+      this.dispatchables = dispatchables;
+      this.requests = requestsOf(keysByTable);
+      this.resolved = resolved;
+      this.failed = failed;
+      this.states = new ConcurrentHashMap<>();
+      this.outstanding = new AtomicInteger(requests.size());
+      this.completed = new AtomicBoolean(false);
+    }
+
+    void start() {
+      for (final BatchGetItemRequest request : requests) {
+        submit(request, new StatesAsyncHandler());
+      }
+    }
+
+    private void submit(final BatchGetItemRequest request, final StatesAsyncHandler handler) {
+      capacity.submit(CapacityAccounting.NO_STATE_TYPE, Demand.of(request), request, dynamodb::batchGetItemAsync, handler, BatchGetItemResult::getConsumedCapacity);
+    }
+
+    private List<BatchGetItemRequest> requestsOf(final Map<String, Map<String, Map<String, AttributeValue>>> keysByTable) {
+      final List<BatchGetItemRequest> requests = new ArrayList<>();
+      Map<String, KeysAndAttributes> requestItems = new HashMap<>();
+      int keys = 0;
+      for (final Map.Entry<String, Map<String, Map<String, AttributeValue>>> table : keysByTable.entrySet()) {
+        for (final Map<String, AttributeValue> key : table.getValue().values()) {
+          requestItems.computeIfAbsent(table.getKey(), name -> new KeysAndAttributes().withConsistentRead(true)).withKeys(key);
+          if (++keys == BATCH_GET_ITEM_LIMIT) {
+            requests.add(new BatchGetItemRequest(requestItems).withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES));
+            requestItems = new HashMap<>();
+            keys = 0;
+          }
+        }
+      }
+      if (keys > 0) {
+        requests.add(new BatchGetItemRequest(requestItems).withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES));
+      }
+      return requests;
+    }
+
+    private void found(final Map<String, List<Map<String, AttributeValue>>> responses) {
+      responses.forEach((table, records) -> {
+        for (final Map<String, AttributeValue> record : records) {
+          try {
+            final RS state = recordAdapter.unmarshallState(record);
+            states.put(keyOf(table, state.id), state);
+          } catch (Exception e) {
+            // its reference is answered as missing
+            metrics.increment(UNREADABLE);
+          }
+        }
+      });
+    }
+
+    private void requestCompleted() {
+      if (outstanding.decrementAndGet() > 0 || !completed.compareAndSet(false, true)) {
+        return;
+      }
+
+      for (int index = 0; index < items.size(); ++index) {
+        final Map<String, AttributeValue> item = items.get(index);
+        if (!isReference(item) || dispatchables.get(index) == null) {
+          continue;
+        }
+        final RS state = states.get(keyOf(item.get(STATE_TABLE_ATTRIBUTE).getS(), item.get(STATE_ID_ATTRIBUTE).getS()));
+        final AttributeValue referencedVersionValue = item.get(STATE_DATA_VERSION_ATTRIBUTE);
+        final int referencedVersion = referencedVersionValue == null ? Integer.MAX_VALUE : Integer.parseInt(referencedVersionValue.getN());
+        final Dispatchable<Entry<?>, RS> reference = dispatchables.get(index);
+        if (state == null || state.dataVersion < referencedVersion) {
+          metrics.increment(MISSING);
+          dispatchables.set(index, null);
+        } else {
+          if (state.dataVersion > referencedVersion) {
+            metrics.increment(STALE);
+          }
+          metrics.increment(RESOLVED);
+          dispatchables.set(index, new Dispatchable<>(reference.id(), reference.createdOn(), state, reference.entries()));
+        }
+      }
+
+      resolved.accept(dispatchables);
+    }
+
+    private void requestFailed(final Exception e) {
+      if (completed.compareAndSet(false, true)) {
+        failed.accept(e);
+      }
+    }
+
+    private class StatesAsyncHandler implements AsyncHandler<BatchGetItemRequest, BatchGetItemResult> {
+      private final AtomicInteger attempts = new AtomicInteger(0);
+
+      @Override
+      public void onError(final Exception e) {
+        requestFailed(e);
+      }
+
+      @Override
+      public void onSuccess(final BatchGetItemRequest request, final BatchGetItemResult result) {
+        final Map<String, List<Map<String, AttributeValue>>> responses = result.getResponses() == null ?
+                Collections.emptyMap() :
+                result.getResponses();
+
+        chunks.reassemble(responses, whole -> {
+          try {
+            found(whole);
+          } catch (Exception e) {
+            requestFailed(e);
+            return;
+          }
+          readUnprocessed(request, result.getUnprocessedKeys());
+        }, Resolution.this::requestFailed);
+      }
+
+      private void readUnprocessed(final BatchGetItemRequest request, final Map<String, KeysAndAttributes> unprocessed) {
+        if (unprocessed != null && !unprocessed.isEmpty()) {
+          final int attempt = attempts.getAndIncrement();
+          final BatchGetItemRequest retry = new BatchGetItemRequest(unprocessed).withReturnConsumedCapacity(request.getReturnConsumedCapacity());
+          if (!retries.retry(attempt, () -> submit(retry, this))) {
+            requestFailed(new StorageException(Result.Failure, "Referenced states remain unprocessed after " + attempt + " retries"));
+          }
+          return;
+        }
+
+        requestCompleted();
+      }
+    }
+  }
+}
@@ -0,0 +1,596 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.outbox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBStreamsAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
+import com.amazonaws.services.dynamodbv2.model.DescribeStreamRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeStreamResult;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.ExpiredIteratorException;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.GetRecordsRequest;
+import com.amazonaws.services.dynamodbv2.model.GetRecordsResult;
+import com.amazonaws.services.dynamodbv2.model.GetShardIteratorRequest;
+import com.amazonaws.services.dynamodbv2.model.GetShardIteratorResult;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.Shard;
+import com.amazonaws.services.dynamodbv2.model.ShardIteratorType;
+import com.amazonaws.services.dynamodbv2.model.StreamDescription;
+import com.amazonaws.services.dynamodbv2.model.TrimmedDataAccessException;
+
+import io.vlingo.xoom.actors.Logger;
+import io.vlingo.xoom.common.Scheduler;
+import io.vlingo.xoom.symbio.Entry;
+import io.vlingo.xoom.symbio.State;
+import io.vlingo.xoom.symbio.store.dispatch.Dispatchable;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryScheduler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.CapacityAccounting;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.StoreMetrics;
+
+/**
+ * StreamTail reads the DynamoDB Stream of the dispatchables table and
+ * dispatches the new image of every dispatchable as it is written.
+ * <p>
+ * Every shard of the stream is read by its own chain of {@code GetRecords},
+ * and a shard is opened only once its parent shard has been read to its end,
+ * so the writes of an item are dispatched in order. A parent read by another
+ * node has ended once its checkpoint records its {@code ShardEnd}, which is
+ * read whenever a discovery finds its child not yet open. After each page that
+ * dispatched a dispatchable, the sequence number of its last record is saved
+ * in a checkpoint item of the dispatchables table, named after the consumer,
+ * and a restarted consumer resumes each shard after its checkpoint. Pages
+ * holding only the writes of control items, including the checkpoints
+ * themselves, are not checkpointed, so checkpoints do not feed on each
+ * other. A shard without a checkpoint is read from the configured initial
+ * position when the consumer starts, and from its start when it opens later.
+ * The states that dispatchables only reference are read by the
+ * {@link StateReferences} once per page.
+ * <p>
+ * A dispatchable whose dispatch fails is read again from its record, as
+ * the {@code RetryPolicy} allows; once the retries are spent it is skipped,
+ * and left in the outbox for the redispatch sweep, so that one bad record
+ * cannot hold back its shard. A page whose referenced states cannot be read
+ * is retried in the same way, after which the shard is opened again by the
+ * next discovery.
+ * <p>
+ * Several nodes divide the stream by their {@link ShardOwnership}: each
+ * stream shard belongs to the outbox shard of the hash of its id, and is
+ * read only by the node owning that shard, which stops reading it once the
+ * ownership is lost. The nodes then share the checkpoints of one consumer
+ * name, so the next owner of a shard resumes after its last checkpoint.
+ * <p>
+ * The stream must be enabled on the dispatchables table with a view type
+ * that includes the new image. New shards, and shards newly owned, are
+ * found by {@link #discover()}.
+ * <p>
+ * The capacity consumed by the checkpoints, read and written, is recorded in the
+ * {@link CapacityAccounting} of the tail, on behalf of no single state type.
+ * <p>
+ * The tail maintains these metrics:
+ * <ul>
+ *   <li>{@code stream.records}: the stream records read</li>
+ *   <li>{@code stream.dispatched}: the dispatchables dispatched from the stream</li>
+ *   <li>{@code stream.errors}: the failures to read the stream, to dispatch or to save a checkpoint</li>
+ *   <li>{@code stream.skipped}: the dispatchables skipped once their retries were spent</li>
+ *   <li>{@code stream.shards}: the shards being read</li>
+ * </ul>
+ *
+ * @param <RS> the raw State type
+ */
+public class StreamTail<RS extends State<?>> {
+  public static final String DISPATCHED = "stream.dispatched";
+  public static final String ERRORS = "stream.errors";
+  public static final String RECORDS = "stream.records";
+  public static final String SHARDS = "stream.shards";
+  public static final String SKIPPED = "stream.skipped";
+
+  private static final String CHECKPOINT_ID_PREFIX = DispatchableOutbox.CONTROL_ID_PREFIX + "stream-checkpoint:";
+  private static final String CHECKPOINT_SEQUENCE_NUMBER = "SequenceNumber";
+  private static final String CHECKPOINT_SHARD_END = "ShardEnd";
+
+  private final AmazonDynamoDBAsync dynamodb;
+  private final AmazonDynamoDBStreamsAsync streams;
+  private final String tableName;
+  private final String consumerName;
+  private final ShardIteratorType initialPosition;
+  private final long pollIntervalMillis;
+  private final int recordLimit;
+  private final StateReferences<RS> references;
+  private final Function<Dispatchable<Entry<?>, RS>, Void> dispatch;
+  private final Scheduler scheduler;
+  private final RetryScheduler retries;
+  private final StoreMetrics metrics;
+  private final Logger logger;
+  private final ShardOwnership ownership;
+  private final int ownershipShards;
+  private final CapacityAccounting accounting;
+  private final Map<String, ShardReader> readers;
+  private final Set<String> ended;
+  private final AtomicBoolean discovering;
+
+  private volatile String streamArn;
+  private volatile boolean started;
+  private volatile boolean stopped;
+
+  public StreamTail(
+          final AmazonDynamoDBAsync dynamodb,
+          final AmazonDynamoDBStreamsAsync streams,
+          final String tableName,
+          final String consumerName,
+          final ShardIteratorType initialPosition,
+          final long pollIntervalMillis,
+          final int recordLimit,
+          final StateReferences<RS> references,
+          final Function<Dispatchable<Entry<?>, RS>, Void> dispatch,
+          final Scheduler scheduler,
+          final RetryScheduler retries,
+          final Logger logger) {
+    this(dynamodb, streams, tableName, consumerName, initialPosition, pollIntervalMillis, recordLimit, references, dispatch, scheduler, retries, logger, ShardOwnership.all(), 1);
+  }
+
+  public StreamTail(
+          final AmazonDynamoDBAsync dynamodb,
+          final AmazonDynamoDBStreamsAsync streams,
+          final String tableName,
+          final String consumerName,
+          final ShardIteratorType initialPosition,
+          final long pollIntervalMillis,
+          final int recordLimit,
+          final StateReferences<RS> references,
+          final Function<Dispatchable<Entry<?>, RS>, Void> dispatch,
+          final Scheduler scheduler,
+          final RetryScheduler retries,
+          final Logger logger,
+          final ShardOwnership ownership,
+          final int ownershipShards) {
+    this(dynamodb, streams, tableName, consumerName, initialPosition, pollIntervalMillis, recordLimit, references, dispatch, scheduler, retries, logger, ownership, ownershipShards, new CapacityAccounting());
+  }
+
+  public StreamTail(
+          final AmazonDynamoDBAsync dynamodb,
+          final AmazonDynamoDBStreamsAsync streams,
+          final String tableName,
+          final String consumerName,
+          final ShardIteratorType initialPosition,
+          final long pollIntervalMillis,
+          final int recordLimit,
+          final StateReferences<RS> references,
+          final Function<Dispatchable<Entry<?>, RS>, Void> dispatch,
+          final Scheduler scheduler,
+          final RetryScheduler retries,
+          final Logger logger,
+          final ShardOwnership ownership,
+          final int ownershipShards,
+          final CapacityAccounting accounting) {
+    this.dynamodb = dynamodb;
+    this.streams = streams;
+    this.tableName = tableName;
+    this.consumerName = consumerName;
+    this.initialPosition = initialPosition;
+    this.pollIntervalMillis = pollIntervalMillis;
+    this.recordLimit = recordLimit;
+    this.references = references;
+    this.dispatch = dispatch;
+    this.scheduler = scheduler;
+    this.retries = retries;
+    this.metrics = retries.metrics();
+    this.logger = logger;
+    this.ownership = ownership;
+    this.ownershipShards = ownershipShards;
+    this.accounting = accounting;
+    this.readers = new ConcurrentHashMap<>();
+    this.ended = ConcurrentHashMap.newKeySet();
+    this.discovering = new AtomicBoolean(false);
+  }
+
+  /**
+   * Open every owned shard of the stream not yet being read whose parent
+   * shard has been read to its end, by this node or another. Does nothing while a discovery is running.
+   */
+  public void discover() {
+    if (stopped || !discovering.compareAndSet(false, true)) {
+      return;
+    }
+    if (streamArn != null) {
+      describeShards(null, new ArrayList<>());
+      return;
+    }
+
+    dynamodb.describeTableAsync(new DescribeTableRequest(tableName), new AsyncHandler<DescribeTableRequest, DescribeTableResult>() {
+      @Override
+      public void onError(final Exception e) {
+        failed("Could not describe the dispatchables table: " + e.getMessage(), e);
+        discovering.set(false);
+      }
+
+      @Override
+      public void onSuccess(final DescribeTableRequest request, final DescribeTableResult result) {
+        final String latestStreamArn = result.getTable().getLatestStreamArn();
+        if (latestStreamArn == null) {
+          logger.error("The table " + tableName + " has no stream; enable one with the NEW_IMAGE or NEW_AND_OLD_IMAGES view type.");
+          discovering.set(false);
+          return;
+        }
+        streamArn = latestStreamArn;
+        describeShards(null, new ArrayList<>());
+      }
+    });
+  }
+
+  public int shardsBeingRead() {
+    return readers.size();
+  }
+
+  /**
+   * Stop reading the stream once the pages in flight have been dispatched.
+   */
+  public void stop() {
+    stopped = true;
+  }
+
+  private void describeShards(final String exclusiveStartShardId, final List<Shard> shards) {
+    final DescribeStreamRequest request =
+            new DescribeStreamRequest()
+              .withStreamArn(streamArn)
+              .withExclusiveStartShardId(exclusiveStartShardId);
+
+    streams.describeStreamAsync(request, new AsyncHandler<DescribeStreamRequest, DescribeStreamResult>() {
+      @Override
+      public void onError(final Exception e) {
+        failed("Could not describe the stream of " + tableName + ": " + e.getMessage(), e);
+        discovering.set(false);
+      }
+
+      @Override
+      public void onSuccess(final DescribeStreamRequest request, final DescribeStreamResult result) {
+        final StreamDescription description = result.getStreamDescription();
+        shards.addAll(description.getShards());
+        if (description.getLastEvaluatedShardId() != null) {
+          describeShards(description.getLastEvaluatedShardId(), shards);
+        } else {
+          open(shards);
+          discovering.set(false);
+        }
+      }
+    });
+  }
+
+  private void open(final List<Shard> shards) {
+    final Set<String> described = new HashSet<>(shards.size());
+    for (final Shard shard : shards) {
+      described.add(shard.getShardId());
+    }
+
+    final ShardIteratorType uncheckpointedPosition = started ? ShardIteratorType.TRIM_HORIZON : initialPosition;
+    for (final Shard shard : shards) {
+      final String shardId = shard.getShardId();
+      final String parentId = shard.getParentShardId();
+      if (readers.containsKey(shardId) || ended.contains(shardId) || !owns(shardId)) {
+        continue;
+      }
+      final ShardReader reader = new ShardReader(shardId, uncheckpointedPosition);
+      if (readers.putIfAbsent(shardId, reader) != null) {
+        continue;
+      }
+      if (parentId != null && described.contains(parentId) && !ended.contains(parentId)) {
+        // the parent may belong to another node, whose checkpoint records its end
+        reader.openOnceEnded(parentId);
+      } else {
+        reader.open();
+      }
+    }
+    started = true;
+
+    // the shards trimmed from the stream will not be described again
+    for (final String shardId : new ArrayList<>(ended)) {
+      if (!described.contains(shardId)) {
+        ended.remove(shardId);
+        final DeleteItemRequest delete = new DeleteItemRequest(tableName, checkpointKeyOf(shardId)).withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+        dynamodb.deleteItemAsync(delete, new AsyncHandler<DeleteItemRequest, DeleteItemResult>() {
+          @Override
+          public void onError(final Exception e) {
+            failed("Could not remove the checkpoint of trimmed shard " + shardId + ": " + e.getMessage(), e);
+          }
+
+          @Override
+          public void onSuccess(final DeleteItemRequest request, final DeleteItemResult result) {
+            accounting.record(CapacityAccounting.NO_STATE_TYPE, "DeleteItem", result.getConsumedCapacity());
+          }
+        });
+      }
+    }
+
+    metrics.gauge(SHARDS, readers.size());
+  }
+
+  private boolean owns(final String shardId) {
+    return ownership.owns(Math.floorMod(shardId.hashCode(), ownershipShards));
+  }
+
+  private Map<String, AttributeValue> checkpointKeyOf(final String shardId) {
+    return Collections.singletonMap("Id", new AttributeValue().withS(CHECKPOINT_ID_PREFIX + consumerName + ":" + shardId));
+  }
+
+  private void failed(final String message, final Exception e) {
+    metrics.increment(ERRORS);
+    logger.error(message, e);
+  }
+
+  /**
+   * Reads one shard. Only one request of a shard is in flight at a time,
+   * so its position changes on one thread at a time.
+   */
+  private final class ShardReader {
+    private final String shardId;
+    private final ShardIteratorType uncheckpointedPosition;
+    private final Map<String, AttributeValue> checkpointKey;
+
+    private volatile String iterator;
+    private volatile String sequenceNumber;
+    private volatile int attempts;
+    private volatile int dispatchAttempts;
+
+    ShardReader(final String shardId, final ShardIteratorType uncheckpointedPosition) {
+      this.shardId = shardId;
+      this.uncheckpointedPosition = uncheckpointedPosition;
+      this.checkpointKey = checkpointKeyOf(shardId);
+    }
+
+    /**
+     * Open the shard if the checkpoint of {@code parentId} records that the
+     * parent was read to its end, or else leave it to a later discovery.
+     */
+    void openOnceEnded(final String parentId) {
+      final GetItemRequest read = new GetItemRequest(tableName, checkpointKeyOf(parentId), true).withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+      dynamodb.getItemAsync(read, new AsyncHandler<GetItemRequest, GetItemResult>() {
+        @Override
+        public void onError(final Exception e) {
+          failed("Could not read the checkpoint of the parent of shard " + shardId + ": " + e.getMessage(), e);
+          close();
+        }
+
+        @Override
+        public void onSuccess(final GetItemRequest request, final GetItemResult result) {
+          accounting.record(CapacityAccounting.NO_STATE_TYPE, "GetItem", result.getConsumedCapacity());
+          final Map<String, AttributeValue> checkpoint = result.getItem();
+          if (checkpoint != null && checkpoint.containsKey(CHECKPOINT_SHARD_END)) {
+            open();
+          } else {
+            close();
+          }
+        }
+      });
+    }
+
+    void open() {
+      final GetItemRequest read = new GetItemRequest(tableName, checkpointKey, true).withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+      dynamodb.getItemAsync(read, new AsyncHandler<GetItemRequest, GetItemResult>() {
+        @Override
+        public void onError(final Exception e) {
+          failed("Could not read the checkpoint of shard " + shardId + ": " + e.getMessage(), e);
+          retryOrClose(ShardReader.this::open);
+        }
+
+        @Override
+        public void onSuccess(final GetItemRequest request, final GetItemResult result) {
+          accounting.record(CapacityAccounting.NO_STATE_TYPE, "GetItem", result.getConsumedCapacity());
+          final Map<String, AttributeValue> checkpoint = result.getItem();
+          if (checkpoint != null && checkpoint.containsKey(CHECKPOINT_SHARD_END)) {
+            end(false);
+            return;
+          }
+          attempts = 0;
+          sequenceNumber = checkpoint == null ? null : checkpoint.get(CHECKPOINT_SEQUENCE_NUMBER).getS();
+          seek(sequenceNumber == null ? uncheckpointedPosition : ShardIteratorType.AFTER_SEQUENCE_NUMBER);
+        }
+      });
+    }
+
+    private void seek(final ShardIteratorType type) {
+      seek(type, type == ShardIteratorType.AFTER_SEQUENCE_NUMBER ? sequenceNumber : null);
+    }
+
+    private void seek(final ShardIteratorType type, final String position) {
+      final GetShardIteratorRequest request =
+              new GetShardIteratorRequest()
+                .withStreamArn(streamArn)
+                .withShardId(shardId)
+                .withShardIteratorType(type)
+                .withSequenceNumber(position);
+
+      streams.getShardIteratorAsync(request, new AsyncHandler<GetShardIteratorRequest, GetShardIteratorResult>() {
+        @Override
+        public void onError(final Exception e) {
+          if (e instanceof TrimmedDataAccessException) {
+            logger.warn("The checkpoint of shard " + shardId + " has been trimmed from the stream; reading the shard from its start.");
+            seek(ShardIteratorType.TRIM_HORIZON);
+          } else if (e instanceof ResourceNotFoundException) {
+            close();
+          } else {
+            failed("Could not position the reader of shard " + shardId + ": " + e.getMessage(), e);
+            retryOrClose(() -> seek(type, position));
+          }
+        }
+
+        @Override
+        public void onSuccess(final GetShardIteratorRequest request, final GetShardIteratorResult result) {
+          attempts = 0;
+          iterator = result.getShardIterator();
+          if (iterator == null) {
+            end(true);
+          } else {
+            read();
+          }
+        }
+      });
+    }
+
+    private void read() {
+      if (stopped || !owns(shardId)) {
+        close();
+        return;
+      }
+
+      streams.getRecordsAsync(new GetRecordsRequest().withShardIterator(iterator).withLimit(recordLimit), new AsyncHandler<GetRecordsRequest, GetRecordsResult>() {
+        @Override
+        public void onError(final Exception e) {
+          if (e instanceof ExpiredIteratorException) {
+            seek(sequenceNumber == null ? ShardIteratorType.TRIM_HORIZON : ShardIteratorType.AFTER_SEQUENCE_NUMBER);
+          } else if (e instanceof TrimmedDataAccessException) {
+            sequenceNumber = null;
+            seek(ShardIteratorType.TRIM_HORIZON);
+          } else {
+            failed("Could not read shard " + shardId + ": " + e.getMessage(), e);
+            retryOrClose(ShardReader.this::read);
+          }
+        }
+
+        @Override
+        public void onSuccess(final GetRecordsRequest request, final GetRecordsResult result) {
+          attempts = 0;
+          dispatch(result.getRecords(), () -> {
+            iterator = result.getNextShardIterator();
+            if (iterator == null) {
+              end(true);
+            } else {
+              final long delay = result.getRecords().isEmpty() ? pollIntervalMillis : 0L;
+              scheduler.scheduleOnce((scheduled, data) -> read(), null, 0L, delay);
+            }
+          });
+        }
+      });
+    }
+
+    private void dispatch(final List<Record> records, final Runnable next) {
+      final List<Record> dispatchableRecords = new ArrayList<>(records.size());
+      final List<Map<String, AttributeValue>> images = new ArrayList<>(records.size());
+      for (final Record record : records) {
+        metrics.increment(RECORDS);
+        final Map<String, AttributeValue> image = record.getDynamodb().getNewImage();
+        if (image != null && !DispatchableOutbox.isControlItem(image)) {
+          dispatchableRecords.add(record);
+          images.add(image);
+        }
+      }
+      final String lastSequenceNumber = records.isEmpty() ? sequenceNumber : records.get(records.size() - 1).getDynamodb().getSequenceNumber();
+
+      if (images.isEmpty()) {
+        sequenceNumber = lastSequenceNumber;
+        next.run();
+        return;
+      }
+
+      references.resolve(images, dispatchables -> {
+        for (int index = 0; index < dispatchables.size(); ++index) {
+          final Dispatchable<Entry<?>, RS> dispatchable = dispatchables.get(index);
+          try {
+            if (dispatchable != null) {
+              dispatch.apply(dispatchable);
+              metrics.increment(DISPATCHED);
+            }
+          } catch (Exception e) {
+            final String failedSequenceNumber = dispatchableRecords.get(index).getDynamodb().getSequenceNumber();
+            if (redispatchFrom(e, index > 0 ? dispatchableRecords.get(index - 1).getDynamodb().getSequenceNumber() : null, failedSequenceNumber)) {
+              return;
+            }
+            metrics.increment(SKIPPED);
+            logger.error("Skipped the dispatchable " + dispatchable.id() + " of shard " + shardId + " after " + (dispatchAttempts - 1) +
+                         " retries; it is left to the redispatch sweep: " + e.getMessage(), e);
+            dispatchAttempts = 0;
+          }
+        }
+        dispatchAttempts = 0;
+        sequenceNumber = lastSequenceNumber;
+        checkpoint();
+        next.run();
+      }, e -> {
+        if (!redispatchFrom(e, null, dispatchableRecords.get(0).getDynamodb().getSequenceNumber())) {
+          logger.error("Stopped reading shard " + shardId + " after " + (dispatchAttempts - 1) + " retries; it is opened again by the next discovery.");
+          close();
+        }
+      });
+    }
+
+    // Checkpoints the dispatched records and reads again from the record at
+    // failedSequenceNumber, answering false once the retries are spent.
+    private boolean redispatchFrom(final Exception e, final String dispatchedSequenceNumber, final String failedSequenceNumber) {
+      failed("Could not dispatch from shard " + shardId + ": " + e.getMessage(), e);
+      if (dispatchedSequenceNumber != null) {
+        sequenceNumber = dispatchedSequenceNumber;
+        checkpoint();
+      }
+      return retries.retry(dispatchAttempts++, () -> seek(ShardIteratorType.AT_SEQUENCE_NUMBER, failedSequenceNumber));
+    }
+
+    private void checkpoint() {
+      final Map<String, AttributeValue> checkpoint = new HashMap<>(checkpointKey);
+      checkpoint.put(CHECKPOINT_SEQUENCE_NUMBER, new AttributeValue().withS(sequenceNumber));
+      save(checkpoint);
+    }
+
+    private void end(final boolean save) {
+      ended.add(shardId);
+      readers.remove(shardId);
+      if (save) {
+        final Map<String, AttributeValue> checkpoint = new HashMap<>(checkpointKey);
+        checkpoint.put(CHECKPOINT_SHARD_END, new AttributeValue().withBOOL(true));
+        save(checkpoint);
+      }
+      discover();
+    }
+
+    private void close() {
+      readers.remove(shardId);
+      metrics.gauge(SHARDS, readers.size());
+    }
+
+    private void retryOrClose(final Runnable resubmit) {
+      if (!retries.retry(attempts++, resubmit)) {
+        logger.error("Stopped reading shard " + shardId + " after " + (attempts - 1) + " retries; it is opened again by the next discovery.");
+        close();
+      }
+    }
+
+    private void save(final Map<String, AttributeValue> checkpoint) {
+      final PutItemRequest write = new PutItemRequest(tableName, checkpoint).withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+      dynamodb.putItemAsync(write, new AsyncHandler<PutItemRequest, PutItemResult>() {
+        @Override
+        public void onError(final Exception e) {
+          failed("Could not save the checkpoint of shard " + shardId + ": " + e.getMessage(), e);
+        }
+
+        @Override
+        public void onSuccess(final PutItemRequest request, final PutItemResult result) {
+          accounting.record(CapacityAccounting.NO_STATE_TYPE, "PutItem", result.getConsumedCapacity());
+        }
+      });
+    }
+  }
+}
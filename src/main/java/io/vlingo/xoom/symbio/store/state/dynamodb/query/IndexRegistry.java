@@ -0,0 +1,264 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.query;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
+import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+
+import io.vlingo.xoom.symbio.store.state.dynamodb.adapters.StateCompression;
+import io.vlingo.xoom.symbio.store.state.dynamodb.chunks.StateChunks;
+
+/**
+ * IndexRegistry declares, per state type, the attributes extracted from a
+ * state and written as top-level attributes of its item alongside
+ * {@code Data}, and the global secondary indexes over them.
+ * <p>
+ * The declarations feed both the creation of the state table, through
+ * {@code CreateTableInterest}, and the {@link QueryPlanner}. Instances are
+ * immutable; every {@code with...} answers a modified copy.
+ */
+public final class IndexRegistry {
+  private static final Set<String> RESERVED_ATTRIBUTES =
+          new HashSet<>(Arrays.asList("Id", "Data", "Type", "Metadata", "TypeVersion", "DataVersion",
+                  StateCompression.COMPRESSION_FIELD,
+                  StateChunks.CHUNK_COUNT_ATTRIBUTE, StateChunks.CHUNK_OF_ATTRIBUTE, StateChunks.CHUNKED_TYPE_ATTRIBUTE));
+
+  private static final IndexRegistry EMPTY = new IndexRegistry(Collections.emptyMap());
+
+  private final Map<Class<?>, Declarations> declarations;
+
+  public static IndexRegistry empty() {
+    return EMPTY;
+  }
+
+  private IndexRegistry(final Map<Class<?>, Declarations> declarations) {
+    this.declarations = declarations;
+  }
+
+  /**
+   * Answer a copy of this registry in which states of {@code stateType}
+   * are written with the attribute {@code name}, of {@code type}, whose
+   * value is answered by {@code extractor}. A {@code null} value is not
+   * written, so the item is absent from indexes keyed on the attribute.
+   *
+   * @param stateType the {@code Class<S>} of the state
+   * @param name the String name of the attribute
+   * @param type the ScalarAttributeType of the attribute
+   * @param extractor the {@code Function<S, ?>} answering the attribute value of a state
+   * @param <S> the type of the state
+   * @return IndexRegistry
+   */
+  public <S> IndexRegistry withAttribute(final Class<S> stateType, final String name, final ScalarAttributeType type, final Function<S, ?> extractor) {
+    if (RESERVED_ATTRIBUTES.contains(name)) {
+      throw new IllegalArgumentException("The attribute name is reserved for the state record: " + name);
+    }
+    final Declarations current = declarationsOf(stateType);
+    if (current.attributes.containsKey(name)) {
+      throw new IllegalArgumentException("The attribute is already declared for " + stateType.getName() + ": " + name);
+    }
+    final Map<String, ExtractedAttribute> attributes = new LinkedHashMap<>(current.attributes);
+    attributes.put(name, new ExtractedAttribute(name, type, extractor));
+    return with(stateType, new Declarations(attributes, current.indexes));
+  }
+
+  /**
+   * Answer a copy of this registry in which the table of {@code stateType}
+   * has the global secondary {@code index}. The keys of the index must be
+   * declared attributes, or {@code Id}.
+   *
+   * @param stateType the {@code Class<?>} of the state
+   * @param index the SecondaryIndex to create and to query
+   * @return IndexRegistry
+   */
+  public IndexRegistry withIndex(final Class<?> stateType, final SecondaryIndex index) {
+    if (index.isPrimaryKey()) {
+      throw new IllegalArgumentException("A secondary index must have a name.");
+    }
+    final Declarations current = declarationsOf(stateType);
+    current.typeOf(stateType, index.partitionKey);
+    if (index.hasSortKey()) {
+      current.typeOf(stateType, index.sortKey);
+    }
+    for (final SecondaryIndex declared : current.indexes) {
+      if (declared.name.equals(index.name)) {
+        throw new IllegalArgumentException("The index is already declared for " + stateType.getName() + ": " + index.name);
+      }
+    }
+    final List<SecondaryIndex> indexes = new ArrayList<>(current.indexes);
+    indexes.add(index);
+    return with(stateType, new Declarations(current.attributes, Collections.unmodifiableList(indexes)));
+  }
+
+  /**
+   * Answer whether any attribute or index is declared for {@code stateType}.
+   *
+   * @param stateType the {@code Class<?>} of the state
+   * @return boolean
+   */
+  public boolean isDeclared(final Class<?> stateType) {
+    return declarations.containsKey(stateType);
+  }
+
+  public List<SecondaryIndex> indexesOf(final Class<?> stateType) {
+    return declarationsOf(stateType).indexes;
+  }
+
+  /**
+   * Answer the extracted attributes of {@code state}, to be written alongside its record.
+   *
+   * @param state the Object state
+   * @return {@code Map<String, AttributeValue>}
+   */
+  public Map<String, AttributeValue> attributesOf(final Object state) {
+    final Declarations current = declarations.get(state.getClass());
+    if (current == null || current.attributes.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    final Map<String, AttributeValue> values = new HashMap<>(current.attributes.size());
+    for (final ExtractedAttribute attribute : current.attributes.values()) {
+      final AttributeValue value = attribute.valueOf(state);
+      if (value != null) {
+        values.put(attribute.name, value);
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Answer the {@code AttributeDefinitions} of the table of {@code stateType}:
+   * its {@code Id} key and every attribute that keys one of its indexes.
+   *
+   * @param stateType the {@code Class<?>} of the state
+   * @return {@code List<AttributeDefinition>}
+   */
+  public List<AttributeDefinition> attributeDefinitionsOf(final Class<?> stateType) {
+    final Declarations current = declarationsOf(stateType);
+    final Map<String, AttributeDefinition> definitions = new LinkedHashMap<>();
+    definitions.put(SecondaryIndex.PRIMARY_KEY_ATTRIBUTE, new AttributeDefinition(SecondaryIndex.PRIMARY_KEY_ATTRIBUTE, ScalarAttributeType.S));
+    for (final SecondaryIndex index : current.indexes) {
+      definitions.put(index.partitionKey, new AttributeDefinition(index.partitionKey, current.typeOf(stateType, index.partitionKey)));
+      if (index.hasSortKey()) {
+        definitions.put(index.sortKey, new AttributeDefinition(index.sortKey, current.typeOf(stateType, index.sortKey)));
+      }
+    }
+    return new ArrayList<>(definitions.values());
+  }
+
+  /**
+   * Answer the {@code GlobalSecondaryIndex} definitions of the table of
+   * {@code stateType}. Every index projects all attributes so that states
+   * can be read from it. No {@code ProvisionedThroughput} is set; tables
+   * with provisioned capacity must set one on each index.
+   *
+   * @param stateType the {@code Class<?>} of the state
+   * @return {@code List<GlobalSecondaryIndex>}
+   */
+  public List<GlobalSecondaryIndex> globalSecondaryIndexesOf(final Class<?> stateType) {
+    final List<GlobalSecondaryIndex> indexes = new ArrayList<>();
+    for (final SecondaryIndex index : declarationsOf(stateType).indexes) {
+      final List<KeySchemaElement> keySchema = new ArrayList<>(2);
+      keySchema.add(new KeySchemaElement(index.partitionKey, KeyType.HASH));
+      if (index.hasSortKey()) {
+        keySchema.add(new KeySchemaElement(index.sortKey, KeyType.RANGE));
+      }
+      indexes.add(new GlobalSecondaryIndex()
+              .withIndexName(index.name)
+              .withKeySchema(keySchema)
+              .withProjection(new Projection().withProjectionType(ProjectionType.ALL)));
+    }
+    return indexes;
+  }
+
+  private Declarations declarationsOf(final Class<?> stateType) {
+    final Declarations current = declarations.get(stateType);
+    return current == null ? Declarations.NONE : current;
+  }
+
+  private IndexRegistry with(final Class<?> stateType, final Declarations replacement) {
+    final Map<Class<?>, Declarations> copy = new HashMap<>(declarations);
+    copy.put(stateType, replacement);
+    return new IndexRegistry(Collections.unmodifiableMap(copy));
+  }
+
+  private static final class Declarations {
+    static final Declarations NONE = new Declarations(Collections.emptyMap(), Collections.emptyList());
+
+    final Map<String, ExtractedAttribute> attributes;
+    final List<SecondaryIndex> indexes;
+
+    Declarations(final Map<String, ExtractedAttribute> attributes, final List<SecondaryIndex> indexes) {
+      this.attributes = attributes;
+      this.indexes = indexes;
+    }
+
+    ScalarAttributeType typeOf(final Class<?> stateType, final String name) {
+      if (SecondaryIndex.PRIMARY_KEY_ATTRIBUTE.equals(name)) {
+        return ScalarAttributeType.S;
+      }
+      final ExtractedAttribute attribute = attributes.get(name);
+      if (attribute == null) {
+        throw new IllegalArgumentException("The index key is not a declared attribute of " + stateType.getName() + ": " + name);
+      }
+      return attribute.type;
+    }
+  }
+
+  private static final class ExtractedAttribute {
+    final String name;
+    final ScalarAttributeType type;
+    final Function<Object, ?> extractor;
+
+    @SuppressWarnings("unchecked")
+    ExtractedAttribute(final String name, final ScalarAttributeType type, final Function<?, ?> extractor) {
+      this.name = name;
+      this.type = type;
+      this.extractor = (Function<Object, ?>) extractor;
+    }
+
+    AttributeValue valueOf(final Object state) {
+      final Object value = extractor.apply(state);
+      if (value == null) {
+        return null;
+      }
+      switch (type) {
+      case N:
+        if (!(value instanceof Number)) {
+          throw new IllegalArgumentException("The attribute " + name + " must be a Number but is: " + value.getClass().getName());
+        }
+        return new AttributeValue().withN(value.toString());
+      case B:
+        if (value instanceof byte[]) {
+          return new AttributeValue().withB(ByteBuffer.wrap((byte[]) value));
+        } else if (value instanceof ByteBuffer) {
+          return new AttributeValue().withB((ByteBuffer) value);
+        }
+        throw new IllegalArgumentException("The attribute " + name + " must be binary but is: " + value.getClass().getName());
+      default:
+        return new AttributeValue().withS(value.toString());
+      }
+    }
+  }
+}
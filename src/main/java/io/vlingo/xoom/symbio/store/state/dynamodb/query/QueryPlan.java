@@ -0,0 +1,47 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.query;
+
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+
+/**
+ * QueryPlan is the DynamoDB request chosen by the {@link QueryPlanner}:
+ * either a {@code Query} against an index, or a filtered {@code Scan} when
+ * no index matches.
+ */
+public final class QueryPlan {
+  public final SecondaryIndex index;
+  public final QueryRequest queryRequest;
+  public final ScanRequest scanRequest;
+
+  static QueryPlan query(final SecondaryIndex index, final QueryRequest queryRequest) {
+    return new QueryPlan(index, queryRequest, null);
+  }
+
+  static QueryPlan scan(final ScanRequest scanRequest) {
+    return new QueryPlan(null, null, scanRequest);
+  }
+
+  private QueryPlan(final SecondaryIndex index, final QueryRequest queryRequest, final ScanRequest scanRequest) {
+    this.index = index;
+    this.queryRequest = queryRequest;
+    this.scanRequest = scanRequest;
+  }
+
+  public boolean isScan() {
+    return scanRequest != null;
+  }
+
+  @Override
+  public String toString() {
+    return isScan() ?
+            "QueryPlan[scan table=" + scanRequest.getTableName() + " filter=" + scanRequest.getFilterExpression() + "]" :
+            "QueryPlan[query table=" + queryRequest.getTableName() + " index=" + index + " key=" + queryRequest.getKeyConditionExpression() + " filter=" + queryRequest.getFilterExpression() + "]";
+  }
+}
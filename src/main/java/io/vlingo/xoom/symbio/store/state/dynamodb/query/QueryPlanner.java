@@ -0,0 +1,343 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.query;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+
+import io.vlingo.xoom.symbio.store.ListQueryExpression;
+import io.vlingo.xoom.symbio.store.MapQueryExpression;
+import io.vlingo.xoom.symbio.store.QueryExpression;
+
+/**
+ * QueryPlanner translates a {@link QueryExpression} into a DynamoDB request.
+ * <p>
+ * The query is a DynamoDB condition expression over the attributes of the
+ * state items, such as {@code "Owner = :owner AND CreatedOn > :since"}.
+ * The values of a {@link MapQueryExpression} are bound by name, with or
+ * without the leading colon, and those of a {@link ListQueryExpression} are
+ * bound in order to {@code ?} placeholders. Attribute names are always
+ * passed as {@code ExpressionAttributeNames}, so reserved words need no
+ * escaping.
+ * <p>
+ * When the query is a conjunction containing an equality on the partition
+ * key of the primary key or of a declared {@link SecondaryIndex}, it becomes
+ * a {@code Query} against that index, using a condition on the index's sort
+ * key when there is one, and filtering on the remaining conditions.
+ * Otherwise the whole query filters a {@code Scan}.
+ */
+public class QueryPlanner {
+  public static final String SCAN_FALLBACKS = "query.scan.fallbacks";
+
+  private static final String IDENTIFIER = "[A-Za-z_][A-Za-z0-9_]*";
+  private static final String PLACEHOLDER = ":[A-Za-z0-9_]+";
+
+  private static final Pattern AND = Pattern.compile("\\s+(?i:AND)\\s+");
+  private static final Pattern OR = Pattern.compile("(?i)(?<![A-Za-z0-9_:#])OR(?![A-Za-z0-9_])");
+  private static final Pattern COMPARISON = Pattern.compile("^\\s*(" + IDENTIFIER + ")\\s*(=|<=|>=|<|>)\\s*(" + PLACEHOLDER + ")\\s*$");
+  private static final Pattern BETWEEN = Pattern.compile("^\\s*(" + IDENTIFIER + ")\\s+(?i:BETWEEN)\\s+(" + PLACEHOLDER + ")\\s+(?i:AND)\\s+(" + PLACEHOLDER + ")\\s*$");
+  private static final Pattern BETWEEN_START = Pattern.compile("(?i)\\sBETWEEN\\s+" + PLACEHOLDER + "\\s*$");
+  private static final Pattern BEGINS_WITH = Pattern.compile("^\\s*(?i:begins_with)\\s*\\(\\s*(" + IDENTIFIER + ")\\s*,\\s*(" + PLACEHOLDER + ")\\s*\\)\\s*$");
+  private static final Pattern NAME = Pattern.compile("(?<![:#A-Za-z0-9_])(" + IDENTIFIER + ")(?![A-Za-z0-9_])(?!\\s*\\()");
+  private static final Pattern PLACEHOLDERS = Pattern.compile(PLACEHOLDER);
+  private static final Pattern FUNCTION_CALL = Pattern.compile("(?i)(attribute_exists|attribute_not_exists|attribute_type|begins_with|contains|size)\\s*$");
+
+  private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList("AND", "OR", "NOT", "BETWEEN", "IN"));
+
+  /**
+   * Answer the {@code QueryPlan} for {@code expression} over {@code table}.
+   *
+   * @param table the String name of the state table
+   * @param expression the QueryExpression to translate
+   * @param indexes the {@code List<SecondaryIndex>} declared for the table, not including its primary key
+   * @return QueryPlan
+   */
+  public QueryPlan plan(final String table, final QueryExpression expression, final List<SecondaryIndex> indexes) {
+    final Map<String, AttributeValue> values = new HashMap<>();
+    final String query = bind(expression, values);
+
+    final List<Condition> conditions = conditionsOf(query);
+    if (conditions != null) {
+      final List<SecondaryIndex> candidates = new ArrayList<>(indexes.size() + 1);
+      candidates.add(SecondaryIndex.primaryKey());
+      candidates.addAll(indexes);
+
+      KeyMatch best = null;
+      for (final SecondaryIndex index : candidates) {
+        final KeyMatch match = KeyMatch.of(index, conditions);
+        if (match != null && (best == null || match.score() > best.score())) {
+          best = match;
+        }
+      }
+
+      if (best != null) {
+        return queryPlanOf(table, best, conditions, values);
+      }
+    }
+
+    return scanPlanOf(table, query, values);
+  }
+
+  private QueryPlan queryPlanOf(final String table, final KeyMatch match, final List<Condition> conditions, final Map<String, AttributeValue> values) {
+    final StringBuilder keyCondition = new StringBuilder(match.partition.text);
+    if (match.sort != null) {
+      keyCondition.append(" AND ").append(match.sort.text);
+    }
+
+    final StringBuilder filter = new StringBuilder();
+    for (final Condition condition : conditions) {
+      if (condition != match.partition && condition != match.sort) {
+        if (filter.length() > 0) {
+          filter.append(" AND ");
+        }
+        filter.append(condition.text);
+      }
+    }
+
+    final Map<String, String> aliases = new LinkedHashMap<>();
+    final String namedKeyCondition = named(keyCondition.toString(), aliases);
+    final String namedFilter = filter.length() == 0 ? null : named(filter.toString(), aliases);
+
+    final QueryRequest request =
+            new QueryRequest(table)
+              .withIndexName(match.index.name)
+              .withKeyConditionExpression(namedKeyCondition)
+              .withFilterExpression(namedFilter)
+              .withExpressionAttributeNames(namesOf(aliases))
+              .withExpressionAttributeValues(valuesUsedBy(values, namedKeyCondition, namedFilter));
+
+    return QueryPlan.query(match.index, request);
+  }
+
+  private QueryPlan scanPlanOf(final String table, final String query, final Map<String, AttributeValue> values) {
+    final ScanRequest request = new ScanRequest(table);
+    if (query != null && !query.trim().isEmpty()) {
+      final Map<String, String> aliases = new LinkedHashMap<>();
+      final String namedFilter = named(query, aliases);
+      request
+        .withFilterExpression(namedFilter)
+        .withExpressionAttributeNames(namesOf(aliases))
+        .withExpressionAttributeValues(valuesUsedBy(values, namedFilter, null));
+    }
+    return QueryPlan.scan(request);
+  }
+
+  private String bind(final QueryExpression expression, final Map<String, AttributeValue> values) {
+    if (expression instanceof MapQueryExpression) {
+      for (final Map.Entry<String, ?> parameter : ((MapQueryExpression) expression).parameters.entrySet()) {
+        final String placeholder = parameter.getKey().startsWith(":") ? parameter.getKey() : ":" + parameter.getKey();
+        values.put(placeholder, attributeValueOf(parameter.getValue()));
+      }
+      return expression.query;
+    }
+
+    if (expression instanceof ListQueryExpression) {
+      final List<?> parameters = ((ListQueryExpression) expression).parameters;
+      final StringBuilder query = new StringBuilder();
+      int index = 0;
+      for (final char c : expression.query.toCharArray()) {
+        if (c == '?') {
+          if (index >= parameters.size()) {
+            throw new IllegalArgumentException("Too few parameters for query: " + expression.query);
+          }
+          final String placeholder = ":p" + index;
+          values.put(placeholder, attributeValueOf(parameters.get(index++)));
+          query.append(placeholder);
+        } else {
+          query.append(c);
+        }
+      }
+      return query.toString();
+    }
+
+    return expression.query;
+  }
+
+  private List<Condition> conditionsOf(final String query) {
+    if (query == null || query.trim().isEmpty() || OR.matcher(query).find() || hasGrouping(query)) {
+      return null;
+    }
+
+    final List<Condition> conditions = new ArrayList<>();
+    String pending = null;
+    for (final String part : AND.split(query.trim())) {
+      if (pending != null) {
+        conditions.add(Condition.of(pending + " AND " + part));
+        pending = null;
+      } else if (BETWEEN_START.matcher(" " + part).find()) {
+        pending = part;
+      } else {
+        conditions.add(Condition.of(part));
+      }
+    }
+    if (pending != null) {
+      return null;
+    }
+    return conditions;
+  }
+
+  private boolean hasGrouping(final String query) {
+    for (int index = query.indexOf('('); index >= 0; index = query.indexOf('(', index + 1)) {
+      if (!FUNCTION_CALL.matcher(query.substring(0, index)).find()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private String named(final String expression, final Map<String, String> aliases) {
+    final Matcher matcher = NAME.matcher(expression);
+    final StringBuffer named = new StringBuffer();
+    while (matcher.find()) {
+      final String name = matcher.group(1);
+      if (KEYWORDS.contains(name.toUpperCase())) {
+        matcher.appendReplacement(named, name);
+      } else {
+        final String alias = aliases.computeIfAbsent(name, key -> "#n" + aliases.size());
+        matcher.appendReplacement(named, alias);
+      }
+    }
+    matcher.appendTail(named);
+    return named.toString();
+  }
+
+  private Map<String, String> namesOf(final Map<String, String> aliases) {
+    if (aliases.isEmpty()) {
+      return null;
+    }
+    final Map<String, String> names = new HashMap<>(aliases.size());
+    aliases.forEach((name, alias) -> names.put(alias, name));
+    return names;
+  }
+
+  private Map<String, AttributeValue> valuesUsedBy(final Map<String, AttributeValue> values, final String expression, final String otherExpression) {
+    final Map<String, AttributeValue> used = new HashMap<>();
+    for (final String text : Arrays.asList(expression, otherExpression)) {
+      if (text == null) {
+        continue;
+      }
+      final Matcher matcher = PLACEHOLDERS.matcher(text);
+      while (matcher.find()) {
+        final AttributeValue value = values.get(matcher.group());
+        if (value == null) {
+          throw new IllegalArgumentException("Missing query parameter: " + matcher.group());
+        }
+        used.put(matcher.group(), value);
+      }
+    }
+    return used.isEmpty() ? null : used;
+  }
+
+  private AttributeValue attributeValueOf(final Object value) {
+    if (value instanceof AttributeValue) {
+      return (AttributeValue) value;
+    } else if (value instanceof String) {
+      return new AttributeValue().withS((String) value);
+    } else if (value instanceof Number) {
+      return new AttributeValue().withN(value.toString());
+    } else if (value instanceof Boolean) {
+      return new AttributeValue().withBOOL((Boolean) value);
+    } else if (value instanceof byte[]) {
+      return new AttributeValue().withB(ByteBuffer.wrap((byte[]) value));
+    } else if (value instanceof ByteBuffer) {
+      return new AttributeValue().withB((ByteBuffer) value);
+    } else if (value instanceof Enum) {
+      return new AttributeValue().withS(((Enum<?>) value).name());
+    }
+    throw new IllegalArgumentException("Unsupported query parameter type: " + (value == null ? "null" : value.getClass().getName()));
+  }
+
+  private static final class Condition {
+    final String text;
+    final String attribute;
+    final String operator;
+
+    static Condition of(final String text) {
+      Matcher matcher = COMPARISON.matcher(text);
+      if (matcher.matches()) {
+        return new Condition(text.trim(), matcher.group(1), matcher.group(2));
+      }
+      matcher = BETWEEN.matcher(text);
+      if (matcher.matches()) {
+        return new Condition(text.trim(), matcher.group(1), "BETWEEN");
+      }
+      matcher = BEGINS_WITH.matcher(text);
+      if (matcher.matches()) {
+        return new Condition(text.trim(), matcher.group(1), "begins_with");
+      }
+      return new Condition(text.trim(), null, null);
+    }
+
+    private Condition(final String text, final String attribute, final String operator) {
+      this.text = text;
+      this.attribute = attribute;
+      this.operator = operator;
+    }
+
+    boolean isEqualityOn(final String name) {
+      return name.equals(attribute) && "=".equals(operator);
+    }
+
+    boolean isSortKeyConditionOn(final String name) {
+      return name.equals(attribute) && operator != null;
+    }
+  }
+
+  private static final class KeyMatch {
+    final SecondaryIndex index;
+    final Condition partition;
+    final Condition sort;
+
+    static KeyMatch of(final SecondaryIndex index, final List<Condition> conditions) {
+      Condition partition = null;
+      for (final Condition condition : conditions) {
+        if (condition.isEqualityOn(index.partitionKey)) {
+          partition = condition;
+          break;
+        }
+      }
+      if (partition == null) {
+        return null;
+      }
+
+      Condition sort = null;
+      if (index.hasSortKey()) {
+        for (final Condition condition : conditions) {
+          if (condition != partition && condition.isSortKeyConditionOn(index.sortKey)) {
+            sort = condition;
+            break;
+          }
+        }
+      }
+      return new KeyMatch(index, partition, sort);
+    }
+
+    private KeyMatch(final SecondaryIndex index, final Condition partition, final Condition sort) {
+      this.index = index;
+      this.partition = partition;
+      this.sort = sort;
+    }
+
+    int score() {
+      return sort == null ? 1 : 2;
+    }
+  }
+}
@@ -0,0 +1,56 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.query;
+
+/**
+ * SecondaryIndex describes the key schema of a global secondary index of a
+ * state table, or of the table's own primary key when {@code name} is
+ * {@code null}. Indexes must project all attributes so that states can be
+ * read from them.
+ */
+public final class SecondaryIndex {
+  public static final String PRIMARY_KEY_ATTRIBUTE = "Id";
+
+  public final String name;
+  public final String partitionKey;
+  public final String sortKey;
+
+  public static SecondaryIndex primaryKey() {
+    return new SecondaryIndex(null, PRIMARY_KEY_ATTRIBUTE, null);
+  }
+
+  public static SecondaryIndex global(final String name, final String partitionKey) {
+    return new SecondaryIndex(name, partitionKey, null);
+  }
+
+  public static SecondaryIndex global(final String name, final String partitionKey, final String sortKey) {
+    return new SecondaryIndex(name, partitionKey, sortKey);
+  }
+
+  private SecondaryIndex(final String name, final String partitionKey, final String sortKey) {
+    if (partitionKey == null || partitionKey.isEmpty()) {
+      throw new IllegalArgumentException("An index must have a partition key.");
+    }
+    this.name = name;
+    this.partitionKey = partitionKey;
+    this.sortKey = sortKey;
+  }
+
+  public boolean hasSortKey() {
+    return sortKey != null;
+  }
+
+  public boolean isPrimaryKey() {
+    return name == null;
+  }
+
+  @Override
+  public String toString() {
+    return "SecondaryIndex[name=" + (isPrimaryKey() ? "<primary key>" : name) + " partitionKey=" + partitionKey + " sortKey=" + sortKey + "]";
+  }
+}
@@ -0,0 +1,76 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.streams;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+
+import io.vlingo.xoom.actors.Stage;
+import io.vlingo.xoom.reactivestreams.PublisherConfiguration;
+import io.vlingo.xoom.reactivestreams.Sink;
+import io.vlingo.xoom.reactivestreams.Stream;
+import io.vlingo.xoom.reactivestreams.StreamPublisher;
+import io.vlingo.xoom.reactivestreams.StreamSubscriber;
+import io.vlingo.xoom.reactivestreams.Streams;
+
+/**
+ * DynamoDBStream flows the elements of a {@link PagedSource} into a
+ * {@link Sink} through a {@code StreamPublisher} and
+ * {@code StreamSubscriber}, so that pages are read only as the sink
+ * demands elements.
+ */
+public class DynamoDBStream implements Stream {
+  private final Stage stage;
+  private final PagedSource<?> source;
+  private long flowElementsRate;
+
+  public DynamoDBStream(final Stage stage, final PagedSource<?> source) {
+    this.stage = stage;
+    this.source = source;
+    this.flowElementsRate = DefaultFlowRate;
+  }
+
+  @Override
+  public void request(final long flowElementsRate) {
+    this.flowElementsRate = flowElementsRate;
+  }
+
+  @Override
+  public <S> void flowInto(final Sink<S> sink) {
+    flowInto(sink, flowElementsRate);
+  }
+
+  @Override
+  public <S> void flowInto(final Sink<S> sink, final long flowElementsRate) {
+    flowInto(sink, flowElementsRate, DefaultProbeInterval);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <S> void flowInto(final Sink<S> sink, final long flowElementsRate, final int probeInterval) {
+    this.flowElementsRate = flowElementsRate;
+
+    final PublisherConfiguration configuration =
+            PublisherConfiguration.with(
+                    probeInterval,
+                    Streams.DefaultMaxThrottle,
+                    Streams.DefaultBufferSize,
+                    Streams.OverflowPolicy.DropCurrent);
+
+    final Publisher<S> publisher = stage.actorFor(Publisher.class, StreamPublisher.class, source, configuration);
+
+    final Subscriber<S> subscriber = stage.actorFor(Subscriber.class, StreamSubscriber.class, sink, flowElementsRate);
+
+    publisher.subscribe(subscriber);
+  }
+
+  @Override
+  public void stop() {
+    source.stop();
+  }
+}
@@ -0,0 +1,39 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.streams;
+
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * PageReader reads one page of items asynchronously, starting after
+ * {@code exclusiveStartKey}, and reports it to a {@link PageListener}.
+ */
+public interface PageReader {
+  /**
+   * Read the page that follows {@code exclusiveStartKey}, or the first page when it is {@code null}.
+   *
+   * @param exclusiveStartKey the {@code Map<String, AttributeValue>} last evaluated key of the previous page
+   * @param listener the PageListener to inform
+   */
+  void readPage(final Map<String, AttributeValue> exclusiveStartKey, final PageListener listener);
+
+  interface PageListener {
+    /**
+     * Informs of a page read, whose {@code lastEvaluatedKey} is {@code null} or empty when it is the last.
+     *
+     * @param items the {@code List<Map<String, AttributeValue>>} items of the page
+     * @param lastEvaluatedKey the {@code Map<String, AttributeValue>} key to read the next page from
+     */
+    void pageRead(final List<Map<String, AttributeValue>> items, final Map<String, AttributeValue> lastEvaluatedKey);
+
+    void pageFailed(final Exception e);
+  }
+}
@@ -0,0 +1,212 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.streams;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import io.vlingo.xoom.actors.Logger;
+import io.vlingo.xoom.common.Completes;
+import io.vlingo.xoom.reactivestreams.Elements;
+import io.vlingo.xoom.reactivestreams.Source;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryScheduler;
+
+/**
+ * PagedSource is a {@link Source} over the pages of one or more
+ * {@link PageReader} instances, such as the segments of a parallel scan.
+ * Each reader has at most one page in flight, and pages are requested only
+ * while fewer than {@code bufferLimit} elements wait to be consumed, so
+ * reading advances with the demand of the subscriber and never holds more
+ * than the buffer plus one page per reader in memory.
+ * <p>
+ * A page that cannot be read is read again through the
+ * {@link RetryScheduler}. Once its retries are spent, or when an item of
+ * a page cannot be mapped, the source ends with a failed outcome rather
+ * than as if every page had been read, and answers the cause as its
+ * {@link #failure()}.
+ *
+ * @param <T> the type of the elements mapped from items
+ */
+public class PagedSource<T> implements Source<T> {
+  public static final int DEFAULT_BUFFER_LIMIT = 1000;
+
+  private final List<Cursor> cursors;
+  private final Function<Map<String, AttributeValue>, T> mapper;
+  private final int bufferLimit;
+  private final Logger logger;
+  private final RetryScheduler retries;
+  private final Queue<T> buffer;
+  private final AtomicInteger buffered;
+  private volatile boolean stopped;
+  private volatile Exception failure;
+
+  public PagedSource(final List<PageReader> readers, final Function<Map<String, AttributeValue>, T> mapper, final int bufferLimit, final Logger logger) {
+    this(readers, mapper, bufferLimit, logger, RetryScheduler.none());
+  }
+
+  public PagedSource(final List<PageReader> readers, final Function<Map<String, AttributeValue>, T> mapper, final int bufferLimit, final Logger logger, final RetryScheduler retries) {
+    this.mapper = mapper;
+    this.bufferLimit = bufferLimit;
+    this.logger = logger;
+    this.retries = retries;
+    this.buffer = new ConcurrentLinkedQueue<>();
+    this.buffered = new AtomicInteger(0);
+    this.cursors = new ArrayList<>(readers.size());
+    for (final PageReader reader : readers) {
+      cursors.add(new Cursor(reader));
+    }
+  }
+
+  @Override
+  public Completes<Elements<T>> next() {
+    return next(bufferLimit);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public Completes<Elements<T>> next(final int maximumElements) {
+    if (stopped) {
+      return Completes.withSuccess(Elements.terminated());
+    }
+
+    final List<T> elements = new ArrayList<>(Math.min(maximumElements, buffered.get()));
+    T element;
+    while (elements.size() < maximumElements && (element = buffer.poll()) != null) {
+      buffered.decrementAndGet();
+      elements.add(element);
+    }
+
+    readAhead();
+
+    if (!elements.isEmpty()) {
+      return Completes.withSuccess(Elements.of((T[]) elements.toArray()));
+    }
+    if (failure != null) {
+      return Completes.withFailure(Elements.terminated());
+    }
+    if (isExhausted()) {
+      return Completes.withSuccess(Elements.terminated());
+    }
+    return Completes.withSuccess(Elements.empty());
+  }
+
+  @Override
+  public Completes<Elements<T>> next(final long index) {
+    return next();
+  }
+
+  @Override
+  public Completes<Elements<T>> next(final long index, final int maximumElements) {
+    return next(maximumElements);
+  }
+
+  @Override
+  public Completes<Boolean> isSlow() {
+    return Completes.withSuccess(false);
+  }
+
+  /**
+   * Terminate the source; no further pages are read.
+   */
+  public void stop() {
+    stopped = true;
+  }
+
+  /**
+   * Answer the cause of the failure that ended the source, or {@code null}.
+   *
+   * @return Exception
+   */
+  public Exception failure() {
+    return failure;
+  }
+
+  private void readAhead() {
+    for (final Cursor cursor : cursors) {
+      if (buffered.get() >= bufferLimit) {
+        return;
+      }
+      cursor.readNextPage();
+    }
+  }
+
+  private boolean isExhausted() {
+    // a page adds its items before it clears its reading flag, so the buffer is checked last
+    for (final Cursor cursor : cursors) {
+      if (cursor.reading.get() || !cursor.finished) {
+        return false;
+      }
+    }
+    return buffer.isEmpty();
+  }
+
+  private void fail(final String message, final Exception e) {
+    logger.error(message + e.getMessage(), e);
+    failure = e;
+  }
+
+  private class Cursor implements PageReader.PageListener {
+    private final PageReader reader;
+    private final AtomicBoolean reading;
+    private final AtomicInteger attempts;
+    private volatile Map<String, AttributeValue> lastEvaluatedKey;
+    private volatile boolean finished;
+
+    Cursor(final PageReader reader) {
+      this.reader = reader;
+      this.reading = new AtomicBoolean(false);
+      this.attempts = new AtomicInteger(0);
+    }
+
+    void readNextPage() {
+      if (!finished && !stopped && reading.compareAndSet(false, true)) {
+        reader.readPage(lastEvaluatedKey, this);
+      }
+    }
+
+    @Override
+    public void pageRead(final List<Map<String, AttributeValue>> items, final Map<String, AttributeValue> lastEvaluatedKey) {
+      try {
+        for (final Map<String, AttributeValue> item : items) {
+          final T element = mapper.apply(item);
+          if (element != null) {
+            buffer.add(element);
+            buffered.incrementAndGet();
+          }
+        }
+        this.lastEvaluatedKey = lastEvaluatedKey;
+        this.finished = lastEvaluatedKey == null || lastEvaluatedKey.isEmpty();
+        attempts.set(0);
+      } catch (Exception e) {
+        fail("Stopped reading pages because an item could not be mapped: ", e);
+        this.finished = true;
+      } finally {
+        reading.set(false);
+      }
+    }
+
+    @Override
+    public void pageFailed(final Exception e) {
+      // the reading flag stays set while the page is read again
+      if (!stopped && retries.retry(attempts.getAndIncrement(), () -> reader.readPage(lastEvaluatedKey, this))) {
+        return;
+      }
+      fail("Stopped reading pages because a page could not be read: ", e);
+      finished = true;
+      reading.set(false);
+    }
+  }
+}
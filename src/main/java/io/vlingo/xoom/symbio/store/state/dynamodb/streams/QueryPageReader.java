@@ -0,0 +1,43 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.streams;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.QueryPageAsyncHandler;
+
+/**
+ * QueryPageReader reads the pages of a {@code Query} against a table or one
+ * of its secondary indexes.
+ */
+public class QueryPageReader implements PageReader {
+  private final AmazonDynamoDBAsync dynamodb;
+  private final QueryRequest request;
+  private final Consumer<ConsumedCapacity> consumedCapacity;
+
+  public QueryPageReader(final AmazonDynamoDBAsync dynamodb, final QueryRequest request) {
+    this(dynamodb, request, consumed -> { });
+  }
+
+  public QueryPageReader(final AmazonDynamoDBAsync dynamodb, final QueryRequest request, final Consumer<ConsumedCapacity> consumedCapacity) {
+    this.dynamodb = dynamodb;
+    this.request = request;
+    this.consumedCapacity = consumedCapacity;
+  }
+
+  @Override
+  public void readPage(final Map<String, AttributeValue> exclusiveStartKey, final PageListener listener) {
+    dynamodb.queryAsync(request.clone().withExclusiveStartKey(exclusiveStartKey), new QueryPageAsyncHandler(listener, consumedCapacity));
+  }
+}
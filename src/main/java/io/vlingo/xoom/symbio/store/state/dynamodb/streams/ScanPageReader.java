@@ -0,0 +1,75 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.streams;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.ScanPageAsyncHandler;
+
+/**
+ * ScanPageReader reads the pages of a {@code Scan}, or of one segment of a
+ * parallel {@code Scan}.
+ */
+public class ScanPageReader implements PageReader {
+  private final AmazonDynamoDBAsync dynamodb;
+  private final ScanRequest request;
+  private final Consumer<ConsumedCapacity> consumedCapacity;
+
+  /**
+   * Answer one ScanPageReader per segment of a parallel scan of {@code request}.
+   *
+   * @param dynamodb the AmazonDynamoDBAsync to scan with
+   * @param request the ScanRequest to scan
+   * @param totalSegments the int number of segments to scan in parallel
+   * @return {@code List<PageReader>}
+   */
+  public static List<PageReader> segmentsOf(final AmazonDynamoDBAsync dynamodb, final ScanRequest request, final int totalSegments) {
+    return segmentsOf(dynamodb, request, totalSegments, consumed -> { });
+  }
+
+  /**
+   * Answer one ScanPageReader per segment of a parallel scan of {@code request},
+   * informing {@code consumedCapacity} of the capacity consumed by each page.
+   *
+   * @param dynamodb the AmazonDynamoDBAsync to scan with
+   * @param request the ScanRequest to scan
+   * @param totalSegments the int number of segments to scan in parallel
+   * @param consumedCapacity the {@code Consumer<ConsumedCapacity>} of the capacity consumed by each page
+   * @return {@code List<PageReader>}
+   */
+  public static List<PageReader> segmentsOf(final AmazonDynamoDBAsync dynamodb, final ScanRequest request, final int totalSegments, final Consumer<ConsumedCapacity> consumedCapacity) {
+    final List<PageReader> segments = new ArrayList<>(totalSegments);
+    for (int segment = 0; segment < totalSegments; ++segment) {
+      segments.add(new ScanPageReader(dynamodb, request.clone().withSegment(segment).withTotalSegments(totalSegments), consumedCapacity));
+    }
+    return segments;
+  }
+
+  public ScanPageReader(final AmazonDynamoDBAsync dynamodb, final ScanRequest request) {
+    this(dynamodb, request, consumed -> { });
+  }
+
+  public ScanPageReader(final AmazonDynamoDBAsync dynamodb, final ScanRequest request, final Consumer<ConsumedCapacity> consumedCapacity) {
+    this.dynamodb = dynamodb;
+    this.request = request;
+    this.consumedCapacity = consumedCapacity;
+  }
+
+  @Override
+  public void readPage(final Map<String, AttributeValue> exclusiveStartKey, final PageListener listener) {
+    dynamodb.scanAsync(request.clone().withExclusiveStartKey(exclusiveStartKey), new ScanPageAsyncHandler(listener, consumedCapacity));
+  }
+}
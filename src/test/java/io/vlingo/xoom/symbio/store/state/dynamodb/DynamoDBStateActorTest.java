@@ -14,9 +14,12 @@ import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsyncClient;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBStreamsAsync;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBStreamsAsyncClientBuilder;
 import com.amazonaws.services.dynamodbv2.local.main.ServerRunner;
 import com.amazonaws.services.dynamodbv2.local.server.DynamoDBProxyServer;
 import com.amazonaws.services.dynamodbv2.model.*;
+import io.vlingo.xoom.actors.Definition;
 import io.vlingo.xoom.actors.World;
 import io.vlingo.xoom.common.Failure;
 import io.vlingo.xoom.common.Success;
@@ -32,13 +35,21 @@ import io.vlingo.xoom.symbio.store.state.Entity1.Entity1BinaryStateAdapter;
 import io.vlingo.xoom.symbio.store.state.Entity1.Entity1TextStateAdapter;
 import io.vlingo.xoom.symbio.store.state.StateStore;
 import io.vlingo.xoom.symbio.store.state.StateTypeStateStoreMap;
+import io.vlingo.xoom.symbio.store.state.dynamodb.DynamoDBStateActor.DynamoDBStateStoreInstantiator;
+import io.vlingo.xoom.symbio.store.state.dynamodb.DynamoDBStateStoreConfiguration.WriteMode;
+import io.vlingo.xoom.symbio.store.state.dynamodb.DynamoDBStreamsDispatcherControlActor.DynamoDBStreamsDispatcherControlInstantiator;
 import io.vlingo.xoom.symbio.store.state.dynamodb.adapters.RecordAdapter;
 import io.vlingo.xoom.symbio.store.state.dynamodb.interests.CreateTableInterest;
+import io.vlingo.xoom.symbio.store.state.dynamodb.journal.EntryJournal;
+import io.vlingo.xoom.symbio.store.state.dynamodb.outbox.DispatchableOutbox;
 import org.junit.*;
+import org.mockito.ArgumentCaptor;
 
 import java.util.*;
 
 import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -50,6 +61,7 @@ public abstract class DynamoDBStateActorTest<RS extends State<?>> {
     private static final AwsClientBuilder.EndpointConfiguration DYNAMODB_ENDPOINT_CONFIGURATION = new AwsClientBuilder.EndpointConfiguration(DYNAMODB_HOST, DYNAMODB_REGION);
     private static final String TABLE_NAME = "xoom_io_vlingo_xoom_symbio_store_state_Entity1";
     private static final String DISPATCHABLE_TABLE_NAME = "xoom_dispatchables";
+    private static final String ENTRY_JOURNAL_TABLE_NAME = "xoom_entries";
     private static DynamoDBProxyServer dynamodbServer;
 
     private StateStore.WriteResultInterest writeResultInterest;
@@ -99,6 +111,15 @@ public abstract class DynamoDBStateActorTest<RS extends State<?>> {
       return new Entity1(oldState.id, oldState.value, oldState.stateVersion + 1);
     }
 
+    protected StateStore stateStoreWith(final DynamoDBStateStoreConfiguration configuration) {
+      return world.actorFor(
+        StateStore.class,
+        Definition.has(
+                DynamoDBStateActor.class,
+                new DynamoDBStateStoreInstantiator<>(dispatchers, dispatcherControl, dynamodb, createTableInterest, recordAdapter(), configuration))
+      );
+    }
+
     protected abstract StateStore stateStoreProtocol(final World world, final List<Dispatcher<Dispatchable<Entry<?>, RS>>> dispatchers, final DispatcherControl dispatcherControl, final AmazonDynamoDBAsync dynamodb, final CreateTableInterest interest);
 
     protected abstract void verifyDispatched(List<Dispatcher<Dispatchable<Entry<?>, RS>>> dispatchers, String id, Dispatchable<Entry<?>, RS> dispatchable);
@@ -142,11 +163,12 @@ public abstract class DynamoDBStateActorTest<RS extends State<?>> {
     public void tearDown() {
         dropTable(TABLE_NAME);
         dropTable(DISPATCHABLE_TABLE_NAME);
+        dropTable(ENTRY_JOURNAL_TABLE_NAME);
     }
 
     @Test
     public void testThatCreatingATextStateActorCreatesTheDispatchableTable() {
-        verify(createTableInterest).createDispatchableTable(dynamodb, DISPATCHABLE_TABLE_NAME);
+        verify(createTableInterest).createDispatchableTable(eq(dynamodb), eq(DISPATCHABLE_TABLE_NAME), anyListOf(AttributeDefinition.class), anyListOf(GlobalSecondaryIndex.class));
     }
 
     @Test
@@ -159,6 +181,36 @@ public abstract class DynamoDBStateActorTest<RS extends State<?>> {
         verify(readResultInterest, timeout(DEFAULT_TIMEOUT)).readResultedIn(eq(Success.of(Result.Success)), eq(currentState.id), eq(currentState), eq(currentState.stateVersion), any(Metadata.class), eq(null));
     }
 
+    @Test
+    public void testThatEventuallyConsistentReadAnswersTheUnhintedObject() {
+        Entity1 currentState = randomState();
+        doWrite(stateStore, currentState.id, currentState, 1, writeResultInterest);
+        verify(writeResultInterest, timeout(DEFAULT_TIMEOUT)).writeResultedIn(Success.of(Result.Success), currentState.id, currentState, currentState.stateVersion, Source.none(), null);
+
+        stateStore.read(currentState.id, Entity1.class, readResultInterest, ReadConsistency.Eventual.hinting("projection"));
+        verify(readResultInterest, timeout(DEFAULT_TIMEOUT)).readResultedIn(eq(Success.of(Result.Success)), eq(currentState.id), eq(currentState), eq(currentState.stateVersion), any(Metadata.class), eq("projection"));
+    }
+
+    @Test
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void testThatReadAllReturnsEveryRequestedState() {
+        Entity1 firstState = randomState();
+        Entity1 secondState = randomState();
+        doWrite(stateStore, firstState.id, firstState, 1, writeResultInterest);
+        doWrite(stateStore, secondState.id, secondState, 1, writeResultInterest);
+        verify(writeResultInterest, timeout(DEFAULT_TIMEOUT)).writeResultedIn(Success.of(Result.Success), firstState.id, firstState, firstState.stateVersion, Source.none(), null);
+        verify(writeResultInterest, timeout(DEFAULT_TIMEOUT)).writeResultedIn(Success.of(Result.Success), secondState.id, secondState, secondState.stateVersion, Source.none(), null);
+
+        stateStore.readAll(Arrays.asList(new StateStore.TypedStateBundle(secondState.id, Entity1.class), new StateStore.TypedStateBundle(firstState.id, Entity1.class)), readResultInterest, null);
+
+        ArgumentCaptor<Collection> bundles = ArgumentCaptor.forClass(Collection.class);
+        verify(readResultInterest, timeout(DEFAULT_TIMEOUT)).readResultedIn(eq(Success.of(Result.Success)), bundles.capture(), eq(null));
+        List<StateStore.TypedStateBundle> states = new ArrayList<>((Collection<StateStore.TypedStateBundle>) bundles.getValue());
+        Assert.assertEquals(2, states.size());
+        Assert.assertEquals(secondState, states.get(0).state);
+        Assert.assertEquals(firstState, states.get(1).state);
+    }
+
     @Test
     public void testThatWritingToATableCallsCreateTableInterest() {
         dropTable(TABLE_NAME);
@@ -227,6 +279,69 @@ public abstract class DynamoDBStateActorTest<RS extends State<?>> {
         verify(writeResultInterest, timeout(DEFAULT_TIMEOUT)).writeResultedIn(Failure.of(new StorageException(Result.ConcurrencyViolation, "")), currentState.id, currentState, currentState.stateVersion, Source.none(), null);
     }
 
+    @Test
+    public void testThatConditionalWriteShouldNotAcceptWritingAnOldDataVersion() {
+        StateStore conditionalStore = stateStoreWith(DynamoDBStateStoreConfiguration.defaults().withWriteMode(WriteMode.Conditional));
+        Entity1 currentState = randomState();
+        Entity1 newState = newFor(currentState);
+
+        doWrite(conditionalStore, newState.id, newState, newState.stateVersion, writeResultInterest);
+        verify(writeResultInterest, timeout(DEFAULT_TIMEOUT)).writeResultedIn(Success.of(Result.Success), newState.id, newState, newState.stateVersion, Source.none(), null);
+
+        doWrite(conditionalStore, currentState.id, currentState, currentState.stateVersion, writeResultInterest);
+        verify(writeResultInterest, timeout(DEFAULT_TIMEOUT)).writeResultedIn(Failure.of(new StorageException(Result.ConcurrencyViolation, "")), currentState.id, currentState, currentState.stateVersion, Source.none(), null);
+    }
+
+    @Test
+    public void testThatTransactionalWriteShouldNotAcceptWritingAnOldDataVersion() {
+        StateStore transactionalStore = stateStoreWith(DynamoDBStateStoreConfiguration.defaults().withWriteMode(WriteMode.Transactional));
+        Entity1 currentState = randomState();
+        Entity1 newState = newFor(currentState);
+
+        doWrite(transactionalStore, newState.id, newState, newState.stateVersion, writeResultInterest);
+        verify(writeResultInterest, timeout(DEFAULT_TIMEOUT)).writeResultedIn(Success.of(Result.Success), newState.id, newState, newState.stateVersion, Source.none(), null);
+
+        RS raw = stateAdapterProvider.asRaw(newState.id, newState, newState.stateVersion);
+        Assert.assertNotNull(dispatchableByState(raw));
+
+        doWrite(transactionalStore, currentState.id, currentState, currentState.stateVersion, writeResultInterest);
+        verify(writeResultInterest, timeout(DEFAULT_TIMEOUT)).writeResultedIn(Failure.of(new StorageException(Result.ConcurrencyViolation, "")), currentState.id, currentState, currentState.stateVersion, Source.none(), null);
+    }
+
+    @Test
+    public void testThatSourcesAreWrittenWithoutAJournalByDefault() {
+        Entity1 currentState = randomState();
+        List<Source<Entity1Written>> sources = Collections.singletonList(new Entity1Written(currentState.id));
+
+        stateStore.write(currentState.id, currentState, currentState.stateVersion, sources, writeResultInterest);
+        verify(writeResultInterest, timeout(DEFAULT_TIMEOUT)).writeResultedIn(Success.of(Result.Success), currentState.id, currentState, currentState.stateVersion, sources, null);
+        verify(createTableInterest, never()).createEntryJournalTable(any(), any(), anyListOf(AttributeDefinition.class), anyListOf(KeySchemaElement.class));
+    }
+
+    @Test
+    public void testThatSourcesAreJournaledWithTheState() {
+        EntryJournal journal = EntryJournal.defaults();
+        createJournalTable(journal);
+        StateStore journalingStore = stateStoreWith(DynamoDBStateStoreConfiguration.defaults().withEntryJournal(journal));
+        verify(createTableInterest, timeout(DEFAULT_TIMEOUT)).createEntryJournalTable(eq(dynamodb), eq(ENTRY_JOURNAL_TABLE_NAME), eq(journal.attributeDefinitions()), eq(journal.keySchema()));
+
+        Entity1 currentState = randomState();
+        List<Source<Entity1Written>> sources = Arrays.asList(new Entity1Written(currentState.id), new Entity1Written(currentState.id));
+
+        journalingStore.write(currentState.id, currentState, currentState.stateVersion, sources, writeResultInterest);
+        verify(writeResultInterest, timeout(DEFAULT_TIMEOUT)).writeResultedIn(Success.of(Result.Success), currentState.id, currentState, currentState.stateVersion, sources, null);
+
+        List<Long> sequences = new ArrayList<>();
+        for (Map<String, AttributeValue> item : dynamoDBSyncClient().scan(new ScanRequest(ENTRY_JOURNAL_TABLE_NAME)).getItems()) {
+            if (!item.get(EntryJournal.SHARD_ATTRIBUTE).getS().startsWith(EntryJournal.CONTROL_SHARD_PREFIX)) {
+                Assert.assertEquals(Entity1Written.class.getName(), item.get(EntryJournal.ENTRY_TYPE_ATTRIBUTE).getS());
+                sequences.add(EntryJournal.sequenceOf(item));
+            }
+        }
+        Collections.sort(sequences);
+        Assert.assertEquals(Arrays.asList(1L, 2L), sequences);
+    }
+
     @Test
     public void testThatDispatchesOnWrite() {
         Entity1 currentState = randomState();
@@ -265,6 +380,50 @@ public abstract class DynamoDBStateActorTest<RS extends State<?>> {
         verifyDispatched(dispatchers, dispatchable.id(), dispatchable);
     }
 
+    @Test
+    public void testThatDispatchUnconfirmedRedispatchesExpiredDispatchables() throws InterruptedException {
+        Entity1 currentState = randomState();
+
+        doWrite(stateStore, currentState.id, currentState, currentState.stateVersion, writeResultInterest);
+        verify(writeResultInterest, timeout(DEFAULT_TIMEOUT)).writeResultedIn(Success.of(Result.Success), currentState.id, currentState, currentState.stateVersion, Source.none(), null);
+
+        RS raw = stateAdapterProvider.asRaw(currentState.id, currentState, currentState.stateVersion);
+        Dispatchable<Entry<?>, RS> dispatchable = dispatchableByState(raw);
+
+        Thread.sleep(1500L); // past the confirmation expiration of the dispatcher control
+
+        dispatcherControl.dispatchUnconfirmed();
+        dispatchers.forEach(dispatcher -> verify(dispatcher, timeout(DEFAULT_TIMEOUT).atLeast(2)).dispatch(dispatchable));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testThatStreamsDispatcherControlDispatchesWrittenDispatchables() {
+        Dispatcher<Dispatchable<Entry<?>, RS>> streamDispatcher = mock(Dispatcher.class);
+        AmazonDynamoDBStreamsAsync streams = AmazonDynamoDBStreamsAsyncClientBuilder.standard()
+                .withCredentials(DYNAMODB_CREDENTIALS)
+                .withEndpointConfiguration(DYNAMODB_ENDPOINT_CONFIGURATION)
+                .build();
+
+        world.actorFor(
+          DispatcherControl.class,
+          Definition.has(
+            DynamoDBStreamsDispatcherControlActor.class,
+            new DynamoDBStreamsDispatcherControlInstantiator<>(Collections.singletonList(streamDispatcher), dynamodb, streams, recordAdapter(), 60_000L, 60_000L,
+                    DynamoDBDispatcherControlConfiguration.defaults()
+                      .withStreamInitialPosition(ShardIteratorType.TRIM_HORIZON)
+                      .withStreamPolling(100L, 100))));
+
+        Entity1 currentState = randomState();
+        doWrite(stateStore, currentState.id, currentState, currentState.stateVersion, writeResultInterest);
+        verify(writeResultInterest, timeout(DEFAULT_TIMEOUT)).writeResultedIn(Success.of(Result.Success), currentState.id, currentState, currentState.stateVersion, Source.none(), null);
+
+        RS raw = stateAdapterProvider.asRaw(currentState.id, currentState, currentState.stateVersion);
+        Dispatchable<Entry<?>, RS> dispatchable = dispatchableByState(raw);
+
+        verify(streamDispatcher, timeout(DEFAULT_TIMEOUT).times(1)).dispatch(dispatchable);
+    }
+
     @Test
     public void testThatConfirmDispatchRemovesRecordFromDynamoDB() {
         Entity1 currentState = randomState();
@@ -312,9 +471,23 @@ public abstract class DynamoDBStateActorTest<RS extends State<?>> {
                 .withAttributeDefinitions(attributeDefinitions)
                 .withProvisionedThroughput(new ProvisionedThroughput(1L, 1L));
 
+        if (DISPATCHABLE_TABLE_NAME.equals(tableName)) {
+            DispatchableOutbox outbox = DispatchableOutbox.defaults();
+            request.withAttributeDefinitions(outbox.attributeDefinitions())
+                   .withGlobalSecondaryIndexes(outbox.createdAtIndex().withProvisionedThroughput(new ProvisionedThroughput(1L, 1L)));
+        }
+
         syncDynamoDb.createTable(request);
     }
 
+    private void createJournalTable(EntryJournal journal) {
+        dynamoDBSyncClient().createTable(new CreateTableRequest()
+                .withTableName(ENTRY_JOURNAL_TABLE_NAME)
+                .withKeySchema(journal.keySchema())
+                .withAttributeDefinitions(journal.attributeDefinitions())
+                .withProvisionedThroughput(new ProvisionedThroughput(1L, 1L)));
+    }
+
     private void dropTable(String tableName) {
         AmazonDynamoDB syncDynamoDb = dynamoDBSyncClient();
 
@@ -344,4 +517,12 @@ public abstract class DynamoDBStateActorTest<RS extends State<?>> {
                 .withCredentials(DYNAMODB_CREDENTIALS)
                 .build();
     }
+
+    public static final class Entity1Written extends Source<Entity1Written> {
+        public final String id;
+
+        public Entity1Written(final String id) {
+            this.id = id;
+        }
+    }
 }
@@ -0,0 +1,214 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import io.vlingo.xoom.actors.Definition;
+import io.vlingo.xoom.actors.World;
+import io.vlingo.xoom.symbio.BaseEntry.TextEntry;
+import io.vlingo.xoom.symbio.Entry;
+import io.vlingo.xoom.symbio.Metadata;
+import io.vlingo.xoom.symbio.store.state.Entity1;
+import io.vlingo.xoom.symbio.store.state.StateStoreEntryReader;
+import io.vlingo.xoom.symbio.store.state.dynamodb.DynamoDBStateStoreEntryReaderActor.DynamoDBStateStoreEntryReaderInstantiator;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryPolicy;
+import io.vlingo.xoom.symbio.store.state.dynamodb.journal.EntryJournal;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.StoreMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class DynamoDBStateStoreEntryReaderActorTest {
+    private static final int TIMEOUT = 2000;
+    private static final String TABLE_NAME = "xoom_entries";
+    private static final String READER_NAME = "reader";
+
+    private final EntryJournal journal = EntryJournal.withShards(4).withGapGrace(60_000L);
+    private World world;
+    private AmazonDynamoDBAsync dynamodb;
+    private List<Map<String, AttributeValue>> journaled;
+    private AtomicBoolean restoreFails;
+    private AtomicBoolean queryFails;
+    private AtomicBoolean putFails;
+    private StateStoreEntryReader<Entry<?>> reader;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        world = World.startWithDefaults("entry-reader-test");
+        dynamodb = mock(AmazonDynamoDBAsync.class);
+        journaled = new CopyOnWriteArrayList<>();
+        restoreFails = new AtomicBoolean(false);
+        queryFails = new AtomicBoolean(false);
+        putFails = new AtomicBoolean(false);
+
+        doAnswer(invocation -> {
+            final GetItemRequest request = (GetItemRequest) invocation.getArguments()[0];
+            final AsyncHandler<GetItemRequest, GetItemResult> handler = (AsyncHandler<GetItemRequest, GetItemResult>) invocation.getArguments()[1];
+            if (restoreFails.get()) {
+                handler.onError(new RuntimeException("unavailable"));
+            } else {
+                handler.onSuccess(request, new GetItemResult());
+            }
+            return null;
+        }).when(dynamodb).getItemAsync(any(GetItemRequest.class), any(AsyncHandler.class));
+
+        doAnswer(invocation -> {
+            final QueryRequest request = (QueryRequest) invocation.getArguments()[0];
+            final AsyncHandler<QueryRequest, QueryResult> handler = (AsyncHandler<QueryRequest, QueryResult>) invocation.getArguments()[1];
+            if (queryFails.get()) {
+                handler.onError(new RuntimeException("unavailable"));
+            } else {
+                handler.onSuccess(request, queryOf(request));
+            }
+            return null;
+        }).when(dynamodb).queryAsync(any(QueryRequest.class), any(AsyncHandler.class));
+
+        doAnswer(invocation -> {
+            final PutItemRequest request = (PutItemRequest) invocation.getArguments()[0];
+            final AsyncHandler<PutItemRequest, PutItemResult> handler = (AsyncHandler<PutItemRequest, PutItemResult>) invocation.getArguments()[1];
+            if (putFails.get()) {
+                handler.onError(new RuntimeException("unavailable"));
+            } else {
+                handler.onSuccess(request, new PutItemResult());
+            }
+            return null;
+        }).when(dynamodb).putItemAsync(any(PutItemRequest.class), any(AsyncHandler.class));
+
+        reader = world.actorFor(
+                StateStoreEntryReader.class,
+                Definition.has(
+                        DynamoDBStateStoreEntryReaderActor.class,
+                        new DynamoDBStateStoreEntryReaderInstantiator<>(READER_NAME, dynamodb, journal, TABLE_NAME, 100, RetryPolicy.with(1, 1L, 5L), new StoreMetrics())));
+    }
+
+    @After
+    public void tearDown() {
+        world.terminate();
+    }
+
+    @Test
+    public void testThatEntriesAreReadInSequenceOrderAndThePositionPersisted() {
+        journal(1, 2, 3, 4, 5, 6);
+
+        assertEquals(Arrays.asList("1", "2", "3", "4"), idsOf(reader.readNext(4).await(TIMEOUT)));
+
+        final ArgumentCaptor<PutItemRequest> put = ArgumentCaptor.forClass(PutItemRequest.class);
+        verify(dynamodb).putItemAsync(put.capture(), any());
+        assertEquals("4", put.getValue().getItem().get(EntryJournal.OFFSET_ATTRIBUTE).getN());
+
+        assertEquals(Arrays.asList("5", "6"), idsOf(reader.readNext(4).await(TIMEOUT)));
+        assertTrue(reader.readNext(4).await(TIMEOUT).isEmpty());
+        assertNull(reader.readNext().await(TIMEOUT));
+        verify(dynamodb, times(2)).putItemAsync(any(PutItemRequest.class), any());
+    }
+
+    @Test
+    public void testThatAMissingSequenceIsNotReadPast() {
+        journal(1, 2, 4, 5, 6, 7);
+
+        assertEquals(Arrays.asList("1", "2"), idsOf(reader.readNext(10).await(TIMEOUT)));
+        assertTrue(reader.readNext(10).await(TIMEOUT).isEmpty());
+
+        journal(3);
+        assertEquals(Arrays.asList("3", "4", "5", "6", "7"), idsOf(reader.readNext(10).await(TIMEOUT)));
+    }
+
+    @Test
+    public void testThatAFailedRestoreFailsTheReadWithoutMovingThePosition() {
+        journal(1, 2);
+        restoreFails.set(true);
+
+        assertNull(reader.readNext(10).await(TIMEOUT));
+        assertNull(reader.seekTo(StateStoreEntryReader.Query).await(TIMEOUT));
+        verify(dynamodb, never()).queryAsync(any(QueryRequest.class), any());
+        verify(dynamodb, never()).putItemAsync(any(PutItemRequest.class), any());
+
+        restoreFails.set(false);
+        assertEquals(Arrays.asList("1", "2"), idsOf(reader.readNext(10).await(TIMEOUT)));
+    }
+
+    @Test
+    public void testThatAFailedQueryOrPutFailsTheReadWithoutMovingThePosition() {
+        journal(1, 2);
+
+        queryFails.set(true);
+        assertNull(reader.readNext(10).await(TIMEOUT));
+
+        queryFails.set(false);
+        putFails.set(true);
+        assertNull(reader.readNext(10).await(TIMEOUT));
+
+        putFails.set(false);
+        assertEquals(Arrays.asList("1", "2"), idsOf(reader.readNext(10).await(TIMEOUT)));
+    }
+
+    @Test
+    public void testThatSeekingMovesToTheSequenceSought() {
+        journal(1, 2, 3, 4);
+
+        assertNull(reader.seekTo("not-a-sequence").await(TIMEOUT));
+        assertEquals("3", reader.seekTo("3").await(TIMEOUT));
+        assertEquals("3", reader.readNext().await(TIMEOUT).id());
+        assertEquals("4", reader.seekTo(StateStoreEntryReader.Query).await(TIMEOUT));
+        assertEquals(Collections.singletonList("2"), idsOf(reader.readNext("2", 1).await(TIMEOUT)));
+    }
+
+    private void journal(final long... sequences) {
+        for (final long sequence : sequences) {
+            final List<Entry<?>> entries = journal.sequenced(Collections.singletonList(
+                    new TextEntry("", Entity1.class, 1, "{\"id\":\"" + sequence + "\"}", 1, Metadata.nullMetadata())), sequence);
+            journaled.add(journal.itemOf(entries.get(0)));
+        }
+    }
+
+    private QueryResult queryOf(final QueryRequest request) {
+        final String shard = request.getExpressionAttributeValues().get(":shard").getS();
+        final long after = Long.parseLong(request.getExpressionAttributeValues().get(":sequence").getN());
+
+        final List<Map<String, AttributeValue>> items = new ArrayList<>();
+        for (final Map<String, AttributeValue> item : journaled) {
+            if (item.get(EntryJournal.SHARD_ATTRIBUTE).getS().equals(shard) && EntryJournal.sequenceOf(item) > after) {
+                items.add(item);
+            }
+        }
+        items.sort((one, other) -> Long.compare(EntryJournal.sequenceOf(one), EntryJournal.sequenceOf(other)));
+        return new QueryResult().withItems(items.size() > request.getLimit() ? items.subList(0, request.getLimit()) : items);
+    }
+
+    private static List<String> idsOf(final List<Entry<?>> entries) {
+        final List<String> ids = new ArrayList<>(entries.size());
+        for (final Entry<?> entry : entries) {
+            ids.add(entry.id());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,81 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.adapters;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import io.vlingo.xoom.symbio.BaseEntry.BinaryEntry;
+import io.vlingo.xoom.symbio.BaseEntry.TextEntry;
+import io.vlingo.xoom.symbio.Entry;
+import io.vlingo.xoom.symbio.Metadata;
+import io.vlingo.xoom.symbio.State.TextState;
+import io.vlingo.xoom.symbio.store.dispatch.Dispatchable;
+import io.vlingo.xoom.symbio.store.state.Entity1;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class EntriesEncodingTest {
+    @Test
+    public void testThatTextAndBinaryEntriesRoundTrip() {
+        final List<Entry<?>> entries = Arrays.asList(
+                new TextEntry("1", Entity1.class, 1, "{\"id\":\"1\"}", 3, Metadata.with("value", "op")),
+                new BinaryEntry("2", Entity1.class, 2, new byte[] { 1, 2, 3 }, 4, Metadata.nullMetadata()));
+
+        final List<Entry<?>> decoded = EntriesEncoding.decode(EntriesEncoding.encode(entries));
+
+        assertEquals(2, decoded.size());
+        final Entry<?> text = decoded.get(0);
+        assertEquals("1", text.id());
+        assertEquals(Entity1.class.getName(), text.typeName());
+        assertEquals(1, text.typeVersion());
+        assertEquals(3, text.entryVersion());
+        assertEquals("{\"id\":\"1\"}", text.entryData());
+        assertEquals("value", text.metadata().value);
+        assertEquals("op", text.metadata().operation);
+
+        final Entry<?> binary = decoded.get(1);
+        assertEquals("2", binary.id());
+        assertEquals(2, binary.typeVersion());
+        assertEquals(4, binary.entryVersion());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) binary.entryData());
+        assertSame(binary, decoded.get(1));
+    }
+
+    @Test
+    public void testThatDispatchableEntriesSurviveTheOutboxItem() {
+        final TextStateRecordAdapter adapter = new TextStateRecordAdapter();
+        final Entry<?> entry = new TextEntry("7", Entity1.class, 1, "{\"id\":\"7\"}", 1, Metadata.nullMetadata());
+        final Dispatchable<Entry<?>, TextState> dispatchable =
+                new Dispatchable<>("Entity1:7", LocalDateTime.now(), new TextState("7", Entity1.class, 1, "{}", 1), Collections.singletonList(entry));
+
+        final Map<String, AttributeValue> item = adapter.marshallDispatchable(dispatchable);
+        final Dispatchable<Entry<?>, TextState> restored = adapter.unmarshallDispatchable(item);
+
+        assertEquals(1, restored.entries().size());
+        assertEquals("7", restored.entries().get(0).id());
+        assertEquals("{\"id\":\"7\"}", restored.entries().get(0).entryData());
+    }
+
+    @Test
+    public void testThatDispatchablesWithoutEntriesHaveNoEntriesAttribute() {
+        final TextStateRecordAdapter adapter = new TextStateRecordAdapter();
+        final Dispatchable<Entry<?>, TextState> dispatchable =
+                new Dispatchable<>("Entity1:8", LocalDateTime.now(), new TextState("8", Entity1.class, 1, "{}", 1), Collections.emptyList());
+
+        final Map<String, AttributeValue> item = adapter.marshallDispatchable(dispatchable);
+
+        assertFalse(item.containsKey("Entries"));
+        assertTrue(adapter.unmarshallDispatchable(item).entries().isEmpty());
+    }
+}
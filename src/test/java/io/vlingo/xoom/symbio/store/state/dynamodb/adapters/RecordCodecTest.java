@@ -0,0 +1,79 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.adapters;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import io.vlingo.xoom.symbio.Entry;
+import io.vlingo.xoom.symbio.Metadata;
+import io.vlingo.xoom.symbio.State.BinaryState;
+import io.vlingo.xoom.symbio.State.TextState;
+import io.vlingo.xoom.symbio.store.dispatch.Dispatchable;
+import io.vlingo.xoom.symbio.store.state.Entity1;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RecordCodecTest {
+    private static final Metadata METADATA = Metadata.with("value", "op");
+
+    @Test
+    public void testThatMessagePackStatesRoundTrip() {
+        final TextStateRecordAdapter adapter = new TextStateRecordAdapter(RecordCodec.messagePack());
+        final TextState state = new TextState("1", Entity1.class, 2, "{\"id\":\"1\",\"value\":5}", 3, METADATA);
+
+        final Map<String, AttributeValue> item = adapter.marshallState(state);
+        assertNotNull(item.get("Metadata").getB());
+
+        final TextState restored = adapter.unmarshallState(item);
+        assertEquals(state.id, restored.id);
+        assertEquals(state.type, restored.type);
+        assertEquals(state.data, restored.data);
+        assertEquals(3, restored.dataVersion);
+        assertEquals("value", restored.metadata.value);
+        assertEquals("op", restored.metadata.operation);
+    }
+
+    @Test
+    public void testThatMessagePackOutboxStatesRoundTrip() {
+        final BinaryStateRecordAdapter adapter = new BinaryStateRecordAdapter(RecordCodec.messagePack());
+        final BinaryState state = new BinaryState("1", Entity1.class, 1, new byte[] { 7, 8, 9 }, 4, METADATA);
+        final Dispatchable<Entry<?>, BinaryState> dispatchable = new Dispatchable<>("Entity1:1", LocalDateTime.now(), state, Collections.emptyList());
+
+        final BinaryState restored = adapter.unmarshallDispatchable(adapter.marshallDispatchable(dispatchable)).state().get();
+
+        assertArrayEquals(new byte[] { 7, 8, 9 }, restored.data);
+        assertEquals(4, restored.dataVersion);
+        assertEquals("op", restored.metadata.operation);
+    }
+
+    @Test
+    public void testThatJsonItemsRemainReadableAfterSwitchingToMessagePack() {
+        final TextState state = new TextState("1", Entity1.class, 1, "{\"id\":\"1\",\"value\":5}", 1, METADATA);
+        final Map<String, AttributeValue> jsonItem = new TextStateRecordAdapter().marshallState(state);
+        assertNotNull(jsonItem.get("Metadata").getS());
+
+        final TextState restored = new TextStateRecordAdapter(RecordCodec.messagePack()).unmarshallState(jsonItem);
+
+        assertEquals("value", restored.metadata.value);
+        assertEquals(state.data, restored.data);
+    }
+
+    @Test
+    public void testThatMessagePackOutboxStatesAreSmallerThanJson() {
+        final TextState state = new TextState("1", Entity1.class, 1, "{\"id\":\"1\",\"value\":5}", 1, METADATA);
+
+        final int json = RecordCodec.json().encodeState(state).getS().getBytes().length;
+        final int messagePack = RecordCodec.messagePack().encodeState(state).getB().remaining();
+
+        assertTrue(messagePack < json);
+    }
+}
@@ -0,0 +1,91 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.adapters;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import io.vlingo.xoom.symbio.State.BinaryState;
+import io.vlingo.xoom.symbio.State.TextState;
+import io.vlingo.xoom.symbio.store.state.Entity1;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.StoreMetrics;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StateCompressionTest {
+    private StoreMetrics metrics;
+    private StateCompression compression;
+
+    @Before
+    public void setUp() {
+        metrics = new StoreMetrics();
+        compression = StateCompression.deflateAbove(1024, metrics);
+    }
+
+    @Test
+    public void testThatLargeTextStatesAreStoredCompressed() {
+        final TextStateRecordAdapter adapter = new TextStateRecordAdapter(RecordCodec.json(), compression);
+        final TextState state = new TextState("1", Entity1.class, 1, repeated("{\"id\":\"1\",\"value\":5}", 200), 1);
+
+        final Map<String, AttributeValue> item = adapter.marshallState(state);
+
+        assertEquals("deflate", item.get("Compression").getS());
+        assertNull(item.get("Data").getS());
+        assertTrue(item.get("Data").getB().remaining() < state.data.length());
+        assertEquals(state.data, adapter.unmarshallState(item).data);
+        assertEquals(1L, metrics.count(StateCompression.COMPRESSED));
+        assertEquals(state.data.length(), metrics.count(StateCompression.BYTES_ORIGINAL));
+        assertEquals(1L, metrics.count(StateCompression.INFLATED));
+    }
+
+    @Test
+    public void testThatSmallStatesAreStoredAsTheyAre() {
+        final TextStateRecordAdapter adapter = new TextStateRecordAdapter(RecordCodec.json(), compression);
+        final TextState state = new TextState("1", Entity1.class, 1, "{\"id\":\"1\",\"value\":5}", 1);
+
+        final Map<String, AttributeValue> item = adapter.marshallState(state);
+
+        assertFalse(item.containsKey("Compression"));
+        assertEquals(state.data, item.get("Data").getS());
+        assertEquals(0L, metrics.count(StateCompression.CANDIDATES));
+    }
+
+    @Test
+    public void testThatIncompressibleBinaryStatesAreStoredAsTheyAre() {
+        final BinaryStateRecordAdapter adapter = new BinaryStateRecordAdapter(RecordCodec.json(), compression);
+        final byte[] data = new byte[4096];
+        new Random(17).nextBytes(data);
+        final BinaryState state = new BinaryState("1", Entity1.class, 1, data, 1);
+
+        final Map<String, AttributeValue> item = adapter.marshallState(state);
+
+        assertFalse(item.containsKey("Compression"));
+        assertArrayEquals(data, adapter.unmarshallState(item).data);
+        assertEquals(1L, metrics.count(StateCompression.CANDIDATES));
+        assertEquals(0L, metrics.count(StateCompression.COMPRESSED));
+    }
+
+    @Test
+    public void testThatCompressedStatesAreReadWithoutCompressionEnabled() {
+        final BinaryState state = new BinaryState("1", Entity1.class, 1, new byte[8192], 1);
+        final Map<String, AttributeValue> item = new BinaryStateRecordAdapter(RecordCodec.json(), compression).marshallState(state);
+
+        assertArrayEquals(new byte[8192], new BinaryStateRecordAdapter().unmarshallState(item).data);
+    }
+
+    private String repeated(final String text, final int times) {
+        final StringBuilder builder = new StringBuilder(text.length() * times);
+        for (int count = 0; count < times; ++count) {
+            builder.append(text);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,83 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.cache;
+
+import io.vlingo.xoom.symbio.State.TextState;
+import io.vlingo.xoom.symbio.store.state.Entity1;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.StoreMetrics;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StateCacheTest {
+    private final StoreMetrics metrics = new StoreMetrics();
+
+    @Test
+    public void testThatWrittenStatesAreServedUntilInvalidated() {
+        final StateCache<TextState> cache = new StateCache<>(10, 1_000_000L, metrics);
+        assertNull(cache.get(Entity1.class, "1"));
+
+        cache.put(Entity1.class, stateOf("1", 1));
+        assertEquals(1, cache.get(Entity1.class, "1").dataVersion);
+
+        cache.invalidate(Entity1.class, "1");
+        assertNull(cache.get(Entity1.class, "1"));
+
+        assertEquals(1L, metrics.count(StateCache.HITS));
+        assertEquals(2L, metrics.count(StateCache.MISSES));
+        assertEquals(0L, cache.bytes());
+    }
+
+    @Test
+    public void testThatAnOlderVersionDoesNotReplaceANewerOne() {
+        final StateCache<TextState> cache = new StateCache<>(10, 1_000_000L, metrics);
+        cache.put(Entity1.class, stateOf("1", 2));
+        cache.put(Entity1.class, stateOf("1", 1));
+
+        assertEquals(2, cache.get(Entity1.class, "1").dataVersion);
+    }
+
+    @Test
+    public void testThatTheLeastRecentlyUsedStateIsEvictedByCount() {
+        final StateCache<TextState> cache = new StateCache<>(2, 1_000_000L, metrics);
+        cache.put(Entity1.class, stateOf("1", 1));
+        cache.put(Entity1.class, stateOf("2", 1));
+        cache.get(Entity1.class, "1");
+        cache.put(Entity1.class, stateOf("3", 1));
+
+        assertNotNull(cache.get(Entity1.class, "1"));
+        assertNull(cache.get(Entity1.class, "2"));
+        assertNotNull(cache.get(Entity1.class, "3"));
+        assertEquals(1L, metrics.count(StateCache.EVICTIONS));
+    }
+
+    @Test
+    public void testThatStatesAreEvictedByBytes() {
+        final StateCache<TextState> cache = new StateCache<>(100, 1_000L, metrics);
+        for (int id = 0; id < 10; ++id) {
+            cache.put(Entity1.class, stateOf(String.valueOf(id), 1));
+        }
+
+        assertTrue(cache.bytes() <= 1_000L);
+        assertTrue(cache.size() < 10);
+        assertNotNull(cache.get(Entity1.class, "9"));
+    }
+
+    @Test
+    public void testThatNoneHoldsNothing() {
+        final StateCache<TextState> cache = StateCache.none();
+        cache.put(Entity1.class, stateOf("1", 1));
+
+        assertFalse(cache.isEnabled());
+        assertNull(cache.get(Entity1.class, "1"));
+    }
+
+    private TextState stateOf(final String id, final int dataVersion) {
+        return new TextState(id, Entity1.class, 1, "{\"id\":\"" + id + "\",\"value\":" + dataVersion + "}", dataVersion);
+    }
+}
@@ -0,0 +1,253 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.capacity;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import io.vlingo.xoom.common.Scheduled;
+import io.vlingo.xoom.common.Scheduler;
+import io.vlingo.xoom.common.Success;
+import io.vlingo.xoom.symbio.Entry;
+import io.vlingo.xoom.symbio.Source;
+import io.vlingo.xoom.symbio.State.TextState;
+import io.vlingo.xoom.symbio.store.Result;
+import io.vlingo.xoom.symbio.store.StorageException;
+import io.vlingo.xoom.symbio.store.dispatch.Dispatchable;
+import io.vlingo.xoom.symbio.store.state.Entity1;
+import io.vlingo.xoom.symbio.store.state.StateStore;
+import io.vlingo.xoom.symbio.store.state.dynamodb.capacity.Demand.OperationClass;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.BatchWriteItemAsyncHandler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryPolicy;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryScheduler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.CapacityAccounting;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.StoreMetrics;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class CapacityLimiterTest {
+    private static final String TABLE_NAME = "xoom_io_vlingo_xoom_symbio_store_state_Entity1";
+    private static final String STATE_TYPE = "io.vlingo.xoom.symbio.store.state.Entity1";
+
+    private AmazonDynamoDBAsync dynamodb;
+    private Scheduler scheduler;
+    private long now;
+    private StoreMetrics metrics;
+    private CapacityAccounting accounting;
+    private CapacityLimiter limiter;
+    private List<String> outcomes;
+    private List<Exception> failures;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        dynamodb = mock(AmazonDynamoDBAsync.class);
+        scheduler = mock(Scheduler.class);
+        now = 1_000_000L;
+        metrics = new StoreMetrics();
+        accounting = new CapacityAccounting();
+        limiter = new CapacityLimiter(dynamodb, scheduler, new RetryScheduler(scheduler, RetryPolicy.with(2, 0L, 0L), metrics), metrics, accounting, () -> now);
+        outcomes = new ArrayList<>();
+        failures = new ArrayList<>();
+
+        doAnswer(invocation -> {
+            DescribeTableRequest request = (DescribeTableRequest) invocation.getArguments()[0];
+            AsyncHandler<DescribeTableRequest, DescribeTableResult> handler = (AsyncHandler<DescribeTableRequest, DescribeTableResult>) invocation.getArguments()[1];
+            handler.onSuccess(request, new DescribeTableResult().withTable(new TableDescription()
+                    .withTableName(TABLE_NAME)
+                    .withProvisionedThroughput(new ProvisionedThroughputDescription().withReadCapacityUnits(20L).withWriteCapacityUnits(10L))));
+            return null;
+        }).when(dynamodb).describeTableAsync(any(DescribeTableRequest.class), any(AsyncHandler.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testThatThrottledRequestsAreResubmittedRatherThanFailed() {
+        final int[] attempts = { 0 };
+        doAnswer(invocation -> {
+            PutItemRequest request = (PutItemRequest) invocation.getArguments()[0];
+            AsyncHandler<PutItemRequest, PutItemResult> handler = (AsyncHandler<PutItemRequest, PutItemResult>) invocation.getArguments()[1];
+            if (attempts[0]++ == 0) {
+                handler.onError(new ProvisionedThroughputExceededException("The level of configured provisioned throughput for the table was exceeded"));
+            } else {
+                handler.onSuccess(request, new PutItemResult().withConsumedCapacity(new ConsumedCapacity().withTableName(TABLE_NAME).withCapacityUnits(1.0)));
+            }
+            return null;
+        }).when(dynamodb).putItemAsync(any(PutItemRequest.class), any(AsyncHandler.class));
+
+        final PutItemRequest request = new PutItemRequest(TABLE_NAME, Collections.singletonMap("Id", new AttributeValue("1")));
+        limiter.submit(STATE_TYPE, Demand.of(request), request, dynamodb::putItemAsync, handler(), result -> Collections.singletonList(result.getConsumedCapacity()));
+
+        // the throttled request backs off, then waits in the emptied bucket
+        assertTrue(outcomes.isEmpty());
+        assertEquals(2, runScheduled());
+
+        assertEquals(Collections.singletonList("success"), outcomes);
+        assertEquals(2, attempts[0]);
+        assertEquals(1L, metrics.count(CapacityLimiter.THROTTLED));
+        assertEquals(1L, metrics.count(RetryScheduler.RETRIES));
+        assertEquals(5L, metrics.gauged(CapacityLimiter.rateNameOf(TABLE_NAME, OperationClass.Write)));
+        verify(dynamodb, times(1)).describeTableAsync(any(DescribeTableRequest.class), any(AsyncHandler.class));
+        assertEquals(1.0, accounting.unitsOf(TABLE_NAME, STATE_TYPE, "PutItem"), 0.001);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testThatThrottledRequestsFailOnceTheirRetriesAreSpent() {
+        final int[] attempts = { 0 };
+        doAnswer(invocation -> {
+            AsyncHandler<PutItemRequest, PutItemResult> handler = (AsyncHandler<PutItemRequest, PutItemResult>) invocation.getArguments()[1];
+            attempts[0]++;
+            handler.onError(new ProvisionedThroughputExceededException("The level of configured provisioned throughput for the table was exceeded"));
+            return null;
+        }).when(dynamodb).putItemAsync(any(PutItemRequest.class), any(AsyncHandler.class));
+
+        final PutItemRequest request = new PutItemRequest(TABLE_NAME, Collections.singletonMap("Id", new AttributeValue("1")));
+        limiter.submit(STATE_TYPE, Demand.of(request), request, dynamodb::putItemAsync, handler(), result -> Collections.singletonList(result.getConsumedCapacity()));
+        runScheduled();
+
+        assertEquals(3, attempts[0]);
+        assertEquals(1, failures.size());
+        assertEquals(Result.Failure, ((StorageException) failures.get(0)).result);
+        assertEquals(3L, metrics.count(CapacityLimiter.THROTTLED));
+        assertEquals(1L, metrics.count(RetryScheduler.RETRIES_EXHAUSTED));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testThatOtherFailuresAreReported() {
+        doAnswer(invocation -> {
+            AsyncHandler<PutItemRequest, PutItemResult> handler = (AsyncHandler<PutItemRequest, PutItemResult>) invocation.getArguments()[1];
+            handler.onError(new IllegalStateException("failed"));
+            return null;
+        }).when(dynamodb).putItemAsync(any(PutItemRequest.class), any(AsyncHandler.class));
+
+        final PutItemRequest request = new PutItemRequest(TABLE_NAME, Collections.singletonMap("Id", new AttributeValue("1")));
+        limiter.submit(STATE_TYPE, Demand.of(request), request, dynamodb::putItemAsync, handler(), result -> Collections.singletonList(result.getConsumedCapacity()));
+
+        assertEquals(Collections.singletonList("failed"), outcomes);
+        assertEquals(0L, metrics.count(CapacityLimiter.THROTTLED));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testThatAnUnlimitedLimiterSubmitsDirectlyAndAccountsForTheCapacity() {
+        doAnswer(invocation -> {
+            PutItemRequest request = (PutItemRequest) invocation.getArguments()[0];
+            AsyncHandler<PutItemRequest, PutItemResult> handler = (AsyncHandler<PutItemRequest, PutItemResult>) invocation.getArguments()[1];
+            handler.onSuccess(request, new PutItemResult().withConsumedCapacity(new ConsumedCapacity().withTableName(TABLE_NAME).withCapacityUnits(2.0)));
+            return null;
+        }).when(dynamodb).putItemAsync(any(PutItemRequest.class), any(AsyncHandler.class));
+
+        final PutItemRequest request = new PutItemRequest(TABLE_NAME, Collections.singletonMap("Id", new AttributeValue("1")));
+        CapacityLimiter.unlimited(accounting).submit(STATE_TYPE, Demand.of(request), request, dynamodb::putItemAsync, handler(), result -> Collections.singletonList(result.getConsumedCapacity()));
+
+        assertEquals(Collections.singletonList("success"), outcomes);
+        assertEquals(2.0, accounting.unitsOf(TABLE_NAME, STATE_TYPE, "PutItem"), 0.001);
+        verify(dynamodb, never()).describeTableAsync(any(DescribeTableRequest.class), any(AsyncHandler.class));
+        verifyZeroInteractions(scheduler);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testThatResubmittedUnprocessedItemsWaitInTheBucket() {
+        final int[] attempts = { 0 };
+        doAnswer(invocation -> {
+            BatchWriteItemRequest request = (BatchWriteItemRequest) invocation.getArguments()[0];
+            AsyncHandler<BatchWriteItemRequest, BatchWriteItemResult> handler = (AsyncHandler<BatchWriteItemRequest, BatchWriteItemResult>) invocation.getArguments()[1];
+            final BatchWriteItemResult result = attempts[0]++ == 0 ?
+                    new BatchWriteItemResult().withUnprocessedItems(writesOf("2")) :
+                    new BatchWriteItemResult();
+            handler.onSuccess(request, result.withConsumedCapacity(new ConsumedCapacity().withTableName(TABLE_NAME).withCapacityUnits(1.0)));
+            return null;
+        }).when(dynamodb).batchWriteItemAsync(any(BatchWriteItemRequest.class), any(AsyncHandler.class));
+
+        final StateStore.WriteResultInterest interest = mock(StateStore.WriteResultInterest.class);
+        final Entity1 state = new Entity1("1", 1);
+        final Dispatchable<Entry<?>, TextState> dispatchable = new Dispatchable<>("Entity1:1", LocalDateTime.now(), new TextState("1", Entity1.class, 1, "{}", 1), Collections.emptyList());
+        final BatchWriteItemAsyncHandler<Entity1, TextState, Object> handler = new BatchWriteItemAsyncHandler<>("1", state, 1, Source.none(), interest, null, dispatchable,
+                Collections.emptyList(), d -> null, limiter, dynamodb, new RetryScheduler(scheduler, RetryPolicy.with(2, 0L, 0L), metrics));
+
+        final BatchWriteItemRequest request = new BatchWriteItemRequest(writesOf("1", "2"));
+        limiter.submit(STATE_TYPE, Demand.of(request), request, dynamodb::batchWriteItemAsync, handler, BatchWriteItemResult::getConsumedCapacity);
+        assertEquals(1, attempts[0]);
+
+        // the unprocessed item is resubmitted after the backoff, then waits for the bucket it emptied
+        assertEquals(2, runScheduled());
+        assertEquals(2, attempts[0]);
+        assertEquals(1L, metrics.count(CapacityLimiter.QUEUED));
+        verify(interest).writeResultedIn(Success.of(Result.Success), "1", state, 1, Source.none(), null);
+        assertEquals(2.0, accounting.unitsOf(TABLE_NAME, STATE_TYPE, "BatchWriteItem"), 0.001);
+    }
+
+    /**
+     * Run the scheduled tasks in turn once their delay has passed, including
+     * those they schedule, answering how many ran.
+     */
+    @SuppressWarnings("rawtypes")
+    private int runScheduled() {
+        int ran = 0;
+        while (true) {
+            final ArgumentCaptor<Scheduled> scheduled = ArgumentCaptor.forClass(Scheduled.class);
+            final ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+            verify(scheduler, atLeast(0)).scheduleOnce(scheduled.capture(), any(), anyLong(), delay.capture());
+            if (ran == scheduled.getAllValues().size()) {
+                return ran;
+            }
+            now += delay.getAllValues().get(ran);
+            scheduled.getAllValues().get(ran++).intervalSignal(null, null);
+        }
+    }
+
+    private static Map<String, List<WriteRequest>> writesOf(final String... ids) {
+        final List<WriteRequest> writes = new ArrayList<>(ids.length);
+        for (final String id : ids) {
+            writes.add(new WriteRequest(new PutRequest(Collections.singletonMap("Id", new AttributeValue(id)))));
+        }
+        return Collections.singletonMap(TABLE_NAME, writes);
+    }
+
+    private AsyncHandler<PutItemRequest, PutItemResult> handler() {
+        return new AsyncHandler<PutItemRequest, PutItemResult>() {
+            @Override
+            public void onError(final Exception e) {
+                outcomes.add(e.getMessage());
+                failures.add(e);
+            }
+
+            @Override
+            public void onSuccess(final PutItemRequest request, final PutItemResult result) {
+                outcomes.add("success");
+            }
+        };
+    }
+}
@@ -0,0 +1,121 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.capacity;
+
+import io.vlingo.xoom.common.Scheduled;
+import io.vlingo.xoom.common.Scheduler;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class TokenBucketTest {
+    private Scheduler scheduler;
+    private long now;
+    private TokenBucket bucket;
+    private List<Integer> admitted;
+
+    @Before
+    public void setUp() {
+        scheduler = mock(Scheduler.class);
+        now = 1_000_000L;
+        bucket = new TokenBucket(scheduler, () -> now);
+        admitted = new ArrayList<>();
+    }
+
+    @Test
+    public void testThatAnUnseededBucketAdmitsEveryRequest() {
+        for (int request = 0; request < 100; ++request) {
+            assertFalse(bucket.acquire(10.0, admit(request)));
+        }
+
+        assertEquals(100, admitted.size());
+        verifyZeroInteractions(scheduler);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testThatRequestsWaitInOrderWhileTheBucketIsEmpty() {
+        bucket.seed(10.0);
+
+        assertFalse(bucket.acquire(6.0, admit(1)));
+        assertFalse(bucket.acquire(6.0, admit(2)));
+        assertTrue(bucket.acquire(1.0, admit(3)));
+        assertTrue(bucket.acquire(1.0, admit(4)));
+        assertEquals(Arrays.asList(1, 2), admitted);
+        assertEquals(2, bucket.waiting());
+
+        // the debt of 2 units is repaid at 10 units a second
+        final ArgumentCaptor<Scheduled> drain = ArgumentCaptor.forClass(Scheduled.class);
+        final ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+        verify(scheduler).scheduleOnce(drain.capture(), any(), anyLong(), delay.capture());
+        assertTrue(delay.getValue() > 200L && delay.getValue() < 250L);
+
+        now += delay.getValue();
+        drain.getValue().intervalSignal(null, null);
+
+        // the first waiting request takes the fraction of a unit accrued, and the next waits again
+        assertEquals(Arrays.asList(1, 2, 3), admitted);
+        assertEquals(1, bucket.waiting());
+        verify(scheduler, times(2)).scheduleOnce(any(Scheduled.class), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    public void testThatThrottlingHalvesTheRateOnceASecond() {
+        bucket.seed(100.0);
+
+        bucket.throttled();
+        bucket.throttled();
+        assertEquals(50.0, bucket.rate(), 0.001);
+
+        now += TokenBucket.ADJUSTMENT_INTERVAL;
+        bucket.throttled();
+        assertEquals(25.0, bucket.rate(), 0.001);
+    }
+
+    @Test
+    public void testThatTheRateRecoversAdditivelyUpToTheProvisionedCapacity() {
+        bucket.seed(100.0);
+        bucket.throttled();
+
+        for (int second = 1; second <= 4; ++second) {
+            now += TokenBucket.ADJUSTMENT_INTERVAL;
+            bucket.acquire(1.0, admit(second));
+            assertEquals(50.0 + second * 10.0, bucket.rate(), 0.001);
+        }
+
+        for (int second = 5; second <= 10; ++second) {
+            now += TokenBucket.ADJUSTMENT_INTERVAL;
+            bucket.acquire(1.0, admit(second));
+        }
+        assertEquals(100.0, bucket.rate(), 0.001);
+    }
+
+    @Test
+    public void testThatConsumedCapacitySettlesTheDemand() {
+        bucket.seed(10.0);
+
+        assertFalse(bucket.acquire(1.0, admit(1)));
+        bucket.settle(9.0);
+
+        assertTrue(bucket.acquire(1.0, admit(2)));
+        assertEquals(Arrays.asList(1), admitted);
+    }
+
+    private Runnable admit(final int request) {
+        return () -> admitted.add(request);
+    }
+}
@@ -0,0 +1,183 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.chunks;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
+import io.vlingo.xoom.symbio.State.TextState;
+import io.vlingo.xoom.symbio.store.state.Entity1;
+import io.vlingo.xoom.symbio.store.state.dynamodb.adapters.TextStateRecordAdapter;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryScheduler;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class StateChunksTest {
+    private static final String STATE_TABLE = "xoom_io_vlingo_xoom_symbio_store_state_Entity1";
+
+    private AmazonDynamoDBAsync dynamodb;
+    private TextStateRecordAdapter recordAdapter;
+    private RetryScheduler retries;
+    private StateChunks chunks;
+    private List<Map<String, List<Map<String, AttributeValue>>>> reassembled;
+
+    @Before
+    public void setUp() {
+        dynamodb = mock(AmazonDynamoDBAsync.class);
+        recordAdapter = new TextStateRecordAdapter();
+        retries = RetryScheduler.none();
+        chunks = new StateChunks(dynamodb, 1024, retries);
+        reassembled = new ArrayList<>();
+    }
+
+    @Test
+    public void testThatSmallStatesAreNotChunked() {
+        final Map<String, AttributeValue> item = recordAdapter.marshallState(stateOf(10, 1));
+
+        assertFalse(chunks.isOversized(item));
+
+        chunks.reassemble(Collections.singletonMap(STATE_TABLE, Collections.singletonList(item)), reassembled::add, e -> fail(e.getMessage()));
+
+        verifyZeroInteractions(dynamodb);
+        assertSame(item, reassembled.get(0).get(STATE_TABLE).get(0));
+    }
+
+    @Test
+    public void testThatLargeStatesAreSplitIntoHeadAndChunks() {
+        final TextState state = stateOf(3000, 2);
+        final Map<String, AttributeValue> item = recordAdapter.marshallState(state);
+        assertTrue(chunks.isOversized(item));
+
+        final List<Map<String, AttributeValue>> items = chunks.split(item, Collections.emptyList());
+
+        final Map<String, AttributeValue> head = items.get(0);
+        assertFalse(head.containsKey("Data"));
+        assertEquals(String.valueOf(items.size() - 1), head.get("ChunkCount").getN());
+        assertTrue(StateChunks.isChunked(head));
+        for (int index = 1; index < items.size(); ++index) {
+            assertTrue(StateChunks.isChunk(items.get(index)));
+            assertEquals("1#chunk-" + (index - 1), items.get(index).get("Id").getS());
+            assertEquals("2", items.get(index).get("DataVersion").getN());
+            assertTrue(items.get(index).get("Data").getB().remaining() <= 1024);
+        }
+        assertEquals(0L, retries.metrics().count(StateChunks.STATES_WRITTEN));
+
+        chunks.written();
+        assertEquals(1L, retries.metrics().count(StateChunks.STATES_WRITTEN));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatStatesTooLargeForOneTransactionAreRejected() {
+        final StateChunks small = new StateChunks(dynamodb, 1, retries);
+
+        small.split(recordAdapter.marshallState(stateOf(200, 1)), Collections.emptyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testThatChunkedStatesAreReassembled() {
+        final TextState state = stateOf(3000, 2);
+        final List<Map<String, AttributeValue>> items = chunks.split(recordAdapter.marshallState(state), Collections.emptyList());
+
+        // a scan answers the head and its chunks alike
+        chunks.reassemble(Collections.singletonMap(STATE_TABLE, items), reassembled::add, e -> fail(e.getMessage()));
+
+        final ArgumentCaptor<BatchGetItemRequest> request = ArgumentCaptor.forClass(BatchGetItemRequest.class);
+        final ArgumentCaptor<AsyncHandler> handler = ArgumentCaptor.forClass(AsyncHandler.class);
+        verify(dynamodb, times(1)).batchGetItemAsync(request.capture(), handler.capture());
+        assertEquals(items.size() - 1, request.getValue().getRequestItems().get(STATE_TABLE).getKeys().size());
+        assertTrue(request.getValue().getRequestItems().get(STATE_TABLE).getConsistentRead());
+
+        final List<Map<String, AttributeValue>> found = new ArrayList<>(items.subList(1, items.size()));
+        Collections.reverse(found);
+        handler.getValue().onSuccess(request.getValue(), new BatchGetItemResult().withResponses(Collections.singletonMap(STATE_TABLE, found)));
+
+        final List<Map<String, AttributeValue>> whole = reassembled.get(0).get(STATE_TABLE);
+        assertEquals(1, whole.size());
+        final TextState restored = recordAdapter.unmarshallState(whole.get(0));
+        assertEquals(state.data, restored.data);
+        assertEquals(2, restored.dataVersion);
+        assertEquals(1L, retries.metrics().count(StateChunks.STATES_READ));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testThatChunksOfAnotherVersionFailTheRead() {
+        final List<Map<String, AttributeValue>> items = chunks.split(recordAdapter.marshallState(stateOf(3000, 2)), Collections.emptyList());
+        final List<Map<String, AttributeValue>> newer = chunks.split(recordAdapter.marshallState(stateOf(3000, 3)), Collections.emptyList());
+        final List<Exception> failures = new ArrayList<>();
+
+        chunks.reassemble(Collections.singletonMap(STATE_TABLE, Collections.singletonList(items.get(0))), reassembled::add, failures::add);
+
+        final ArgumentCaptor<BatchGetItemRequest> request = ArgumentCaptor.forClass(BatchGetItemRequest.class);
+        final ArgumentCaptor<AsyncHandler> handler = ArgumentCaptor.forClass(AsyncHandler.class);
+        verify(dynamodb).batchGetItemAsync(request.capture(), handler.capture());
+        handler.getValue().onSuccess(request.getValue(), new BatchGetItemResult()
+                .withResponses(Collections.singletonMap(STATE_TABLE, newer.subList(1, newer.size()))));
+
+        assertTrue(reassembled.isEmpty());
+        assertEquals(1, failures.size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testThatChunksLeftBehindByAShrunkStateAreDeleted() {
+        final Map<String, AttributeValue> head = chunks.split(recordAdapter.marshallState(stateOf(3000, 2)), Collections.emptyList()).get(0);
+        final int previousChunkCount = StateChunks.chunkCountOf(head);
+        assertTrue(previousChunkCount > 1);
+        assertEquals(0, StateChunks.chunkCountOf(recordAdapter.marshallState(stateOf(10, 1))));
+        assertEquals(0, StateChunks.chunkCountOf(null));
+
+        chunks.deleteStale(STATE_TABLE, Entity1.class.getName(), "1", 3, 1, previousChunkCount);
+
+        final ArgumentCaptor<DeleteItemRequest> request = ArgumentCaptor.forClass(DeleteItemRequest.class);
+        final ArgumentCaptor<AsyncHandler> handler = ArgumentCaptor.forClass(AsyncHandler.class);
+        verify(dynamodb, times(previousChunkCount - 1)).deleteItemAsync(request.capture(), handler.capture());
+        for (int index = 1; index < previousChunkCount; ++index) {
+            final DeleteItemRequest delete = request.getAllValues().get(index - 1);
+            assertEquals(STATE_TABLE, delete.getTableName());
+            assertEquals("1#chunk-" + index, delete.getKey().get("Id").getS());
+            assertEquals("3", delete.getExpressionAttributeValues().get(":version").getN());
+        }
+
+        // a chunk rewritten by a later write is kept
+        handler.getAllValues().get(0).onSuccess(request.getAllValues().get(0), new DeleteItemResult());
+        handler.getAllValues().get(1).onError(new ConditionalCheckFailedException("The conditional request failed"));
+        assertEquals(1L, retries.metrics().count(StateChunks.STALE_DELETED));
+        verify(dynamodb, times(previousChunkCount - 1)).deleteItemAsync(any(DeleteItemRequest.class), any(AsyncHandler.class));
+    }
+
+    @Test
+    public void testThatAStateThatDidNotShrinkDeletesNoChunks() {
+        chunks.deleteStale(STATE_TABLE, Entity1.class.getName(), "1", 3, 3, 3);
+        chunks.deleteStale(STATE_TABLE, Entity1.class.getName(), "1", 3, 0, 0);
+
+        verifyZeroInteractions(dynamodb);
+    }
+
+    private TextState stateOf(final int length, final int dataVersion) {
+        final char[] value = new char[length];
+        Arrays.fill(value, 'x');
+        return new TextState("1", Entity1.class, 1, "{\"id\":\"1\",\"value\":\"" + new String(value) + "\"}", dataVersion);
+    }
+}
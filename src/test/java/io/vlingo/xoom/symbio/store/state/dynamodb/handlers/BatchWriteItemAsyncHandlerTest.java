@@ -0,0 +1,161 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.handlers;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import io.vlingo.xoom.actors.World;
+import io.vlingo.xoom.common.Failure;
+import io.vlingo.xoom.common.Success;
+import io.vlingo.xoom.symbio.Entry;
+import io.vlingo.xoom.symbio.Source;
+import io.vlingo.xoom.symbio.State.TextState;
+import io.vlingo.xoom.symbio.store.Result;
+import io.vlingo.xoom.symbio.store.StorageException;
+import io.vlingo.xoom.symbio.store.dispatch.Dispatchable;
+import io.vlingo.xoom.symbio.store.dispatch.Dispatcher;
+import io.vlingo.xoom.symbio.store.state.Entity1;
+import io.vlingo.xoom.symbio.store.state.StateStore;
+import io.vlingo.xoom.symbio.store.state.dynamodb.capacity.CapacityLimiter;
+import io.vlingo.xoom.symbio.store.state.dynamodb.capacity.Demand;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.CapacityAccounting;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.StoreMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class BatchWriteItemAsyncHandlerTest {
+    private static final int TIMEOUT = 2000;
+    private static final String TABLE_NAME = "xoom_dispatchables";
+
+    private World world;
+    private AmazonDynamoDBAsync dynamodb;
+    private StateStore.WriteResultInterest interest;
+    private Dispatcher<Dispatchable<Entry<?>, TextState>> dispatcher;
+    private StoreMetrics metrics;
+    private CapacityAccounting accounting;
+    private CapacityLimiter capacity;
+    private Entity1 state;
+    private Dispatchable<Entry<?>, TextState> dispatchable;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        world = World.startWithDefaults("batch-write-item-async-handler-test");
+        dynamodb = mock(AmazonDynamoDBAsync.class);
+        interest = mock(StateStore.WriteResultInterest.class);
+        dispatcher = mock(Dispatcher.class);
+        metrics = new StoreMetrics();
+        accounting = new CapacityAccounting();
+        capacity = CapacityLimiter.unlimited(accounting);
+        state = new Entity1("1", 1);
+        dispatchable = new Dispatchable<>("Entity1:1", LocalDateTime.now(), new TextState("1", Entity1.class, 1, "{}", 1), Collections.emptyList());
+    }
+
+    @After
+    public void tearDown() {
+        world.terminate();
+    }
+
+    @Test
+    public void testThatUnprocessedItemsAreResubmittedBeforeReportingSuccess() {
+        BatchWriteItemAsyncHandler<Entity1, TextState, Object> handler = handlerWith(RetryPolicy.with(3, 1L, 5L));
+
+        handler.onSuccess(new BatchWriteItemRequest().withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES), unprocessedResult());
+        final ArgumentCaptor<BatchWriteItemRequest> retry = ArgumentCaptor.forClass(BatchWriteItemRequest.class);
+        verify(dynamodb, timeout(TIMEOUT)).batchWriteItemAsync(retry.capture(), any(AsyncHandler.class));
+        assertEquals(ReturnConsumedCapacity.INDEXES.toString(), retry.getValue().getReturnConsumedCapacity());
+        verify(interest, never()).writeResultedIn(any(), anyString(), any(), anyInt(), any(), any());
+
+        handler.onSuccess(new BatchWriteItemRequest(), new BatchWriteItemResult());
+        verify(interest).writeResultedIn(Success.of(Result.Success), "1", state, 1, Source.none(), null);
+        verify(dispatcher, atLeast(1)).dispatch(dispatchable);
+        assertEquals(1, metrics.count(RetryScheduler.RETRIES));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testThatTheCapacityOfEveryAttemptIsAccounted() {
+        final AtomicInteger attempts = new AtomicInteger(0);
+        doAnswer(invocation -> {
+            final BatchWriteItemRequest request = (BatchWriteItemRequest) invocation.getArguments()[0];
+            final AsyncHandler<BatchWriteItemRequest, BatchWriteItemResult> handler = (AsyncHandler<BatchWriteItemRequest, BatchWriteItemResult>) invocation.getArguments()[1];
+            final BatchWriteItemResult result = attempts.getAndIncrement() == 0 ? unprocessedResult() : new BatchWriteItemResult();
+            handler.onSuccess(request, result.withConsumedCapacity(new ConsumedCapacity().withTableName(TABLE_NAME).withCapacityUnits(2.0)));
+            return null;
+        }).when(dynamodb).batchWriteItemAsync(any(BatchWriteItemRequest.class), any(AsyncHandler.class));
+
+        final BatchWriteItemRequest request = new BatchWriteItemRequest(unprocessedResult().getUnprocessedItems()).withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+        capacity.submit(Entity1.class.getName(), Demand.of(request), request, dynamodb::batchWriteItemAsync, handlerWith(RetryPolicy.with(3, 1L, 5L)), BatchWriteItemResult::getConsumedCapacity);
+
+        verify(interest, timeout(TIMEOUT)).writeResultedIn(Success.of(Result.Success), "1", state, 1, Source.none(), null);
+        assertEquals(2, attempts.get());
+        assertEquals(4.0, accounting.unitsOf(TABLE_NAME, Entity1.class.getName(), "BatchWriteItem"), 0.0);
+    }
+
+    @Test
+    public void testThatExhaustedRetryBudgetFailsTheWrite() {
+        BatchWriteItemAsyncHandler<Entity1, TextState, Object> handler = handlerWith(RetryPolicy.with(1, 1L, 5L));
+
+        handler.onSuccess(new BatchWriteItemRequest(), unprocessedResult());
+        handler.onSuccess(new BatchWriteItemRequest(), unprocessedResult());
+
+        verify(interest).writeResultedIn(Failure.of(new StorageException(Result.Failure, "")), "1", state, 1, Source.none(), null);
+        verify(dispatcher, never()).dispatch(any());
+        assertEquals(1, metrics.count(RetryScheduler.RETRIES));
+        assertEquals(1, metrics.count(RetryScheduler.RETRIES_EXHAUSTED));
+    }
+
+    @Test
+    public void testThatAFailedOutboxWriteOfALandedStateIsRetriedAndThenReportedAsWritten() {
+        final BatchWriteItemRequest outboxRequest = new BatchWriteItemRequest(unprocessedResult().getUnprocessedItems());
+        BatchWriteItemAsyncHandler<Entity1, TextState, Object> handler = new BatchWriteItemAsyncHandler<>("1", state, 1, Source.none(), interest, null, dispatchable,
+                Collections.singletonList(dispatcher), d -> null, capacity, dynamodb, new RetryScheduler(world.stage().scheduler(), RetryPolicy.with(1, 1L, 5L), metrics), outboxRequest);
+
+        handler.onError(new IllegalStateException("unavailable"));
+        verify(dynamodb, timeout(TIMEOUT)).batchWriteItemAsync(eq(outboxRequest), any(AsyncHandler.class));
+        verify(interest, never()).writeResultedIn(any(), anyString(), any(), anyInt(), any(), any());
+
+        handler.onError(new IllegalStateException("unavailable"));
+        verify(interest).writeResultedIn(Success.of(Result.Success), "1", state, 1, Source.none(), null);
+        verify(dispatcher).dispatch(dispatchable);
+        assertEquals(1, metrics.count(BatchWriteItemAsyncHandler.OUTBOX_WRITES_LOST));
+    }
+
+    private BatchWriteItemAsyncHandler<Entity1, TextState, Object> handlerWith(final RetryPolicy policy) {
+        return new BatchWriteItemAsyncHandler<>("1", state, 1, Source.none(), interest, null, dispatchable,
+                Collections.singletonList(dispatcher), d -> null, capacity, dynamodb, new RetryScheduler(world.stage().scheduler(), policy, metrics));
+    }
+
+    private BatchWriteItemResult unprocessedResult() {
+        Map<String, AttributeValue> item = Collections.singletonMap("Id", new AttributeValue().withS("1"));
+        Map<String, List<WriteRequest>> unprocessed = Collections.singletonMap(TABLE_NAME, Collections.singletonList(new WriteRequest(new PutRequest(item))));
+        return new BatchWriteItemResult().withUnprocessedItems(unprocessed);
+    }
+}
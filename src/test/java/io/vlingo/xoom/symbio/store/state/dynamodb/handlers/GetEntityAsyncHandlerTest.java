@@ -0,0 +1,82 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.handlers;
+
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import io.vlingo.xoom.actors.World;
+import io.vlingo.xoom.common.Success;
+import io.vlingo.xoom.symbio.Metadata;
+import io.vlingo.xoom.symbio.State.TextState;
+import io.vlingo.xoom.symbio.StateAdapterProvider;
+import io.vlingo.xoom.symbio.store.Result;
+import io.vlingo.xoom.symbio.store.state.Entity1;
+import io.vlingo.xoom.symbio.store.state.Entity1.Entity1TextStateAdapter;
+import io.vlingo.xoom.symbio.store.state.StateStore;
+import io.vlingo.xoom.symbio.store.state.dynamodb.adapters.TextStateRecordAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class GetEntityAsyncHandlerTest {
+    private World world;
+    private StateAdapterProvider stateAdapterProvider;
+    private TextStateRecordAdapter recordAdapter;
+
+    @Before
+    public void setUp() {
+        world = World.startWithDefaults("get-entity-async-handler-test");
+        stateAdapterProvider = new StateAdapterProvider(world);
+        stateAdapterProvider.registerAdapter(Entity1.class, new Entity1TextStateAdapter());
+        recordAdapter = new TextStateRecordAdapter();
+    }
+
+    @After
+    public void tearDown() {
+        world.terminate();
+    }
+
+    @Test
+    public void testThatEveryJoinedReaderIsAnswered() {
+        final Entity1 entity = new Entity1("123", 5);
+        final TextState raw = stateAdapterProvider.asRaw(entity.id, entity, 1);
+        final StateStore.ReadResultInterest first = mock(StateStore.ReadResultInterest.class);
+        final StateStore.ReadResultInterest second = mock(StateStore.ReadResultInterest.class);
+        final AtomicInteger completions = new AtomicInteger(0);
+
+        final GetEntityAsyncHandler<Entity1, TextState> handler =
+                new GetEntityAsyncHandler<>(entity.id, first, "first", recordAdapter::unmarshallState, stateAdapterProvider, completed -> completions.incrementAndGet());
+        assertTrue(handler.join(second, "second"));
+
+        handler.onSuccess(new GetItemRequest(), new GetItemResult().withItem(recordAdapter.marshallState(raw)));
+
+        verify(first).readResultedIn(eq(Success.of(Result.Success)), eq(entity.id), eq(entity), eq(1), any(Metadata.class), eq("first"));
+        verify(second).readResultedIn(eq(Success.of(Result.Success)), eq(entity.id), eq(entity), eq(1), any(Metadata.class), eq("second"));
+        assertEquals(1, completions.get());
+    }
+
+    @Test
+    public void testThatACompletedReadCannotBeJoined() {
+        final StateStore.ReadResultInterest first = mock(StateStore.ReadResultInterest.class);
+        final StateStore.ReadResultInterest late = mock(StateStore.ReadResultInterest.class);
+
+        final GetEntityAsyncHandler<Entity1, TextState> handler =
+                new GetEntityAsyncHandler<>("123", first, null, recordAdapter::unmarshallState, stateAdapterProvider);
+        handler.onSuccess(new GetItemRequest(), new GetItemResult());
+
+        assertFalse(handler.join(late, null));
+        verifyZeroInteractions(late);
+    }
+}
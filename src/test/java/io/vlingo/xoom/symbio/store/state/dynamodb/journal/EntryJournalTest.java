@@ -0,0 +1,81 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.journal;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import io.vlingo.xoom.symbio.BaseEntry.BinaryEntry;
+import io.vlingo.xoom.symbio.BaseEntry.TextEntry;
+import io.vlingo.xoom.symbio.Entry;
+import io.vlingo.xoom.symbio.Metadata;
+import io.vlingo.xoom.symbio.store.state.Entity1;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class EntryJournalTest {
+    private final EntryJournal journal = EntryJournal.withShards(4);
+
+    @Test
+    public void testThatEntriesAreIdentifiedByConsecutiveSequences() {
+        final List<Entry<?>> entries = journal.sequenced(Arrays.asList(
+                new TextEntry("", Entity1.class, 1, "{\"id\":\"1\"}", 1, Metadata.nullMetadata()),
+                new BinaryEntry("", Entity1.class, 1, new byte[] { 1, 2 }, 2, Metadata.nullMetadata())), 41L);
+
+        assertEquals("41", entries.get(0).id());
+        assertEquals("42", entries.get(1).id());
+        assertEquals(2, entries.get(1).entryVersion());
+    }
+
+    @Test
+    public void testThatEntriesAreSpreadOverShardsBySequence() {
+        assertEquals("1", journal.shardOf(41L));
+        assertEquals("2", journal.shardOf(42L));
+        assertEquals("0", journal.shardOf(44L));
+    }
+
+    @Test
+    public void testThatJournalItemsRoundTrip() {
+        final Entry<?> entry = journal.sequenced(Arrays.asList(
+                new TextEntry("", Entity1.class, 2, "{\"id\":\"1\"}", 3, Metadata.with("value", "op"))), 7L).get(0);
+
+        final Map<String, AttributeValue> item = journal.itemOf(entry);
+        assertEquals("3", item.get(EntryJournal.SHARD_ATTRIBUTE).getS());
+        assertEquals(7L, EntryJournal.sequenceOf(item));
+
+        final Entry<?> restored = journal.entryOf(item);
+        assertEquals("7", restored.id());
+        assertEquals(entry.typeName(), restored.typeName());
+        assertEquals(2, restored.typeVersion());
+        assertEquals(3, restored.entryVersion());
+        assertEquals("{\"id\":\"1\"}", restored.entryData());
+        assertEquals("op", restored.metadata().operation);
+    }
+
+    @Test
+    public void testThatShardsAreQueriedAfterASequence() {
+        final QueryRequest query = journal.queryAfter("xoom_entries", 2, 100L, 50);
+
+        assertEquals("2", query.getExpressionAttributeValues().get(":shard").getS());
+        assertEquals("100", query.getExpressionAttributeValues().get(":sequence").getN());
+        assertEquals(Integer.valueOf(50), query.getLimit());
+        assertTrue(query.getConsistentRead());
+    }
+
+    @Test
+    public void testThatControlItemsAreNotInAnyShard() {
+        final Map<String, AttributeValue> offset = EntryJournal.offsetItemOf("projection", 12L);
+
+        assertTrue(offset.get(EntryJournal.SHARD_ATTRIBUTE).getS().startsWith(EntryJournal.CONTROL_SHARD_PREFIX));
+        assertEquals("12", offset.get(EntryJournal.OFFSET_ATTRIBUTE).getN());
+    }
+}
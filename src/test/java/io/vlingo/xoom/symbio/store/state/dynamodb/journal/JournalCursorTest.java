@@ -0,0 +1,153 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.journal;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import io.vlingo.xoom.symbio.BaseEntry.TextEntry;
+import io.vlingo.xoom.symbio.Entry;
+import io.vlingo.xoom.symbio.Metadata;
+import io.vlingo.xoom.symbio.store.state.Entity1;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JournalCursorTest {
+    private final EntryJournal journal = EntryJournal.withShards(4).withGapGrace(1000L);
+
+    @Test
+    public void testThatAdvanceStopsAtTheLastKeyOfATruncatedPage() {
+        final JournalCursor cursor = JournalCursor.after(journal, 0L);
+
+        final List<Long> read = sequencesOf(cursor.advance(Arrays.asList(
+                pageOf(4, 8, 12),
+                truncatedPageOf(1, 5),
+                pageOf(2, 6, 10),
+                pageOf(3, 7, 11)), 100, 0L));
+
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), read);
+        assertEquals(6L, cursor.position());
+        assertEquals(8L, cursor.offsetOf(0) + journal.shards());
+    }
+
+    @Test
+    public void testThatAdvanceAnswersAtMostTheMaximumItems() {
+        final JournalCursor cursor = JournalCursor.after(journal, 0L);
+
+        final List<Long> read = sequencesOf(cursor.advance(Arrays.asList(
+                pageOf(4), pageOf(1), pageOf(2), pageOf(3)), 2, 0L));
+
+        assertEquals(Arrays.asList(1L, 2L), read);
+        assertEquals(3L, cursor.position());
+    }
+
+    @Test
+    public void testThatAMissingSequenceIsWaitedOutBeforeReadingPastIt() {
+        final JournalCursor cursor = JournalCursor.after(journal, 0L);
+
+        // sequence 5 is allocated but not yet written
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L), sequencesOf(cursor.advance(Arrays.asList(
+                pageOf(4, 8), pageOf(1, 9), pageOf(2, 6), pageOf(3, 7)), 100, 0L)));
+
+        assertTrue(cursor.advance(Arrays.asList(
+                pageOf(8), pageOf(9), pageOf(6), pageOf(7)), 100, 500L).isEmpty());
+        assertEquals(5L, cursor.position());
+
+        assertEquals(Arrays.asList(6L, 7L, 8L, 9L), sequencesOf(cursor.advance(Arrays.asList(
+                pageOf(8), pageOf(9), pageOf(6), pageOf(7)), 100, 1000L)));
+        assertEquals(10L, cursor.position());
+    }
+
+    @Test
+    public void testThatALateEntryIsReadRatherThanSkipped() {
+        final JournalCursor cursor = JournalCursor.after(journal, 0L);
+
+        cursor.advance(Arrays.asList(pageOf(4, 8), pageOf(1, 9), pageOf(2, 6), pageOf(3, 7)), 100, 0L);
+
+        assertEquals(Arrays.asList(5L, 6L, 7L, 8L, 9L), sequencesOf(cursor.advance(Arrays.asList(
+                pageOf(8), pageOf(5, 9), pageOf(6), pageOf(7)), 100, 500L)));
+    }
+
+    @Test
+    public void testThatACopySkippingGapsReadsPastMissingSequences() {
+        final JournalCursor cursor = JournalCursor.after(journal, 0L).skippingGaps();
+
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 9L), sequencesOf(cursor.advance(Arrays.asList(
+                pageOf(4), pageOf(1, 9), pageOf(2), pageOf(3)), 100, 0L)));
+    }
+
+    @Test
+    public void testThatShardedSequencesAreReadFromTheFirstOfEachCounter() {
+        final EntryJournal sharded = EntryJournal.withShards(4).withShardedSequences();
+        final JournalCursor cursor = JournalCursor.after(sharded, 0L);
+
+        assertEquals(sharded.sequenceOf(0, 1L), cursor.position());
+        for (int shard = 0; shard < sharded.shards(); ++shard) {
+            assertEquals(sharded.sequenceOf(shard, 0L), cursor.offsetOf(shard));
+        }
+
+        // shard 1 lags the others, which is not a gap
+        assertEquals(Arrays.asList(4L, 6L, 7L, 8L, 10L, 11L), sequencesOf(cursor.advance(Arrays.asList(
+                pageOf(4, 8), pageOf(), pageOf(6, 10), pageOf(7, 11)), 100, 0L)));
+        assertEquals(Collections.singletonList(5L), sequencesOf(cursor.advance(Arrays.asList(
+                pageOf(), pageOf(5), pageOf(), pageOf()), 100, 0L)));
+    }
+
+    @Test
+    public void testThatTheCursorIsRestoredFromItsItem() {
+        final JournalCursor cursor = JournalCursor.after(journal, 0L);
+        cursor.advance(Arrays.asList(pageOf(4), pageOf(1, 5), pageOf(2), pageOf(3)), 100, 0L);
+
+        final Map<String, AttributeValue> item = cursor.itemOf("reader");
+        assertEquals("5", item.get(EntryJournal.OFFSET_ATTRIBUTE).getN());
+
+        final JournalCursor restored = JournalCursor.of(journal, item);
+        for (int shard = 0; shard < journal.shards(); ++shard) {
+            assertEquals(cursor.offsetOf(shard), restored.offsetOf(shard));
+        }
+
+        final JournalCursor legacy = JournalCursor.of(journal, EntryJournal.offsetItemOf("reader", 5L));
+        assertEquals(6L, legacy.position());
+        assertEquals(1L, JournalCursor.of(journal, null).position());
+    }
+
+    private QueryResult pageOf(final long... sequences) {
+        final List<Map<String, AttributeValue>> items = new ArrayList<>(sequences.length);
+        for (final long sequence : sequences) {
+            items.add(itemOf(sequence));
+        }
+        return new QueryResult().withItems(items);
+    }
+
+    private QueryResult truncatedPageOf(final long... sequences) {
+        final QueryResult page = pageOf(sequences);
+        final Map<String, AttributeValue> last = page.getItems().get(sequences.length - 1);
+        return page.withLastEvaluatedKey(Collections.singletonMap(EntryJournal.SEQUENCE_ATTRIBUTE, last.get(EntryJournal.SEQUENCE_ATTRIBUTE)));
+    }
+
+    private Map<String, AttributeValue> itemOf(final long sequence) {
+        final List<Entry<?>> entries = journal.sequenced(Collections.singletonList(
+                new TextEntry("", Entity1.class, 1, "{\"id\":\"" + sequence + "\"}", 1, Metadata.nullMetadata())), sequence);
+        return journal.itemOf(entries.get(0));
+    }
+
+    private static List<Long> sequencesOf(final List<Map<String, AttributeValue>> items) {
+        final List<Long> sequences = new ArrayList<>(items.size());
+        for (final Map<String, AttributeValue> item : items) {
+            sequences.add(EntryJournal.sequenceOf(item));
+        }
+        return sequences;
+    }
+}
@@ -0,0 +1,139 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.journal;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import io.vlingo.xoom.symbio.BaseEntry.TextEntry;
+import io.vlingo.xoom.symbio.Entry;
+import io.vlingo.xoom.symbio.Metadata;
+import io.vlingo.xoom.symbio.store.state.Entity1;
+import io.vlingo.xoom.symbio.store.state.dynamodb.streams.PageReader.PageListener;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class JournalPageReaderTest {
+    private static final String TABLE_NAME = "xoom_entries";
+
+    private final EntryJournal journal = EntryJournal.withShards(4);
+    private AmazonDynamoDBAsync dynamodb;
+    private List<Map<String, AttributeValue>> journaled;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        dynamodb = mock(AmazonDynamoDBAsync.class);
+        journaled = new ArrayList<>();
+
+        // sequences 3 and 9 were never written
+        for (long sequence = 1; sequence <= 30; ++sequence) {
+            if (sequence != 3 && sequence != 9) {
+                journaled.add(itemOf(sequence));
+            }
+        }
+
+        doAnswer(invocation -> {
+            QueryRequest request = (QueryRequest) invocation.getArguments()[0];
+            AsyncHandler<QueryRequest, QueryResult> handler = (AsyncHandler<QueryRequest, QueryResult>) invocation.getArguments()[1];
+            handler.onSuccess(request, queryOf(request));
+            return null;
+        }).when(dynamodb).queryAsync(any(QueryRequest.class), any(AsyncHandler.class));
+    }
+
+    @Test
+    public void testThatPagesAnswerEntriesInSequenceOrder() {
+        final JournalPageReader reader = new JournalPageReader(dynamodb, journal, TABLE_NAME, JournalCursor.after(journal, 0L), 8);
+
+        final List<Long> sequences = new ArrayList<>();
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        int pages = 0;
+        do {
+            final Page page = new Page();
+            reader.readPage(lastEvaluatedKey, page);
+            assertNull(page.failure);
+            for (final Map<String, AttributeValue> item : page.items) {
+                sequences.add(EntryJournal.sequenceOf(item));
+            }
+            lastEvaluatedKey = page.lastEvaluatedKey;
+            ++pages;
+        } while (lastEvaluatedKey != null);
+
+        final List<Long> expected = new ArrayList<>();
+        for (final Map<String, AttributeValue> item : journaled) {
+            expected.add(EntryJournal.sequenceOf(item));
+        }
+        assertEquals(expected, sequences);
+        assertTrue(pages > 1);
+        verify(dynamodb, times(pages * journal.shards())).queryAsync(any(QueryRequest.class), any(AsyncHandler.class));
+    }
+
+    @Test
+    public void testThatPagesStartAfterTheSequenceSought() {
+        final JournalPageReader reader = new JournalPageReader(dynamodb, journal, TABLE_NAME, JournalCursor.after(journal, 20L), 100);
+        final Page page = new Page();
+
+        reader.readPage(null, page);
+
+        assertEquals(10, page.items.size());
+        assertEquals(21L, EntryJournal.sequenceOf(page.items.get(0)));
+        assertNull(page.lastEvaluatedKey);
+    }
+
+    private Map<String, AttributeValue> itemOf(final long sequence) {
+        final List<Entry<?>> entries = journal.sequenced(Collections.singletonList(
+                new TextEntry("", Entity1.class, 1, "{\"id\":\"" + sequence + "\"}", 1, Metadata.nullMetadata())), sequence);
+        return journal.itemOf(entries.get(0));
+    }
+
+    private QueryResult queryOf(final QueryRequest request) {
+        final String shard = request.getExpressionAttributeValues().get(":shard").getS();
+        final long after = Long.parseLong(request.getExpressionAttributeValues().get(":sequence").getN());
+
+        final List<Map<String, AttributeValue>> items = new ArrayList<>();
+        for (final Map<String, AttributeValue> item : journaled) {
+            if (item.get(EntryJournal.SHARD_ATTRIBUTE).getS().equals(shard) && EntryJournal.sequenceOf(item) > after) {
+                if (items.size() == request.getLimit()) {
+                    final Map<String, AttributeValue> last = items.get(items.size() - 1);
+                    return new QueryResult().withItems(items)
+                            .withLastEvaluatedKey(Collections.singletonMap(EntryJournal.SEQUENCE_ATTRIBUTE, last.get(EntryJournal.SEQUENCE_ATTRIBUTE)));
+                }
+                items.add(item);
+            }
+        }
+        return new QueryResult().withItems(items);
+    }
+
+    private static class Page implements PageListener {
+        private List<Map<String, AttributeValue>> items;
+        private Map<String, AttributeValue> lastEvaluatedKey;
+        private Exception failure;
+
+        @Override
+        public void pageRead(final List<Map<String, AttributeValue>> items, final Map<String, AttributeValue> lastEvaluatedKey) {
+            this.items = items;
+            this.lastEvaluatedKey = lastEvaluatedKey;
+        }
+
+        @Override
+        public void pageFailed(final Exception e) {
+            this.failure = e;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.journal;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class LeasedSequenceAllocatorTest {
+    private static final String TABLE_NAME = "xoom_entries";
+    private static final int LEASE_SIZE = 50;
+    private static final int MAX_COUNT = 5;
+    private static final int WRITERS = 8;
+    private static final int ALLOCATIONS = 200;
+
+    private AmazonDynamoDBAsync dynamodb;
+    private ExecutorService io;
+    private ExecutorService writers;
+    private Map<String, Long> counters;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        dynamodb = mock(AmazonDynamoDBAsync.class);
+        io = Executors.newFixedThreadPool(4);
+        writers = Executors.newFixedThreadPool(WRITERS);
+        counters = new HashMap<>();
+
+        doAnswer(invocation -> {
+            GetItemRequest request = (GetItemRequest) invocation.getArguments()[0];
+            AsyncHandler<GetItemRequest, GetItemResult> handler = (AsyncHandler<GetItemRequest, GetItemResult>) invocation.getArguments()[1];
+            io.execute(() -> {
+                Long last = counterOf(request.getKey());
+                handler.onSuccess(request, new GetItemResult().withItem(last == null ? null
+                        : Collections.singletonMap(EntryJournal.LAST_SEQUENCE_ATTRIBUTE, new AttributeValue().withN(String.valueOf(last)))));
+            });
+            return null;
+        }).when(dynamodb).getItemAsync(any(GetItemRequest.class), any(AsyncHandler.class));
+
+        doAnswer(invocation -> {
+            UpdateItemRequest request = (UpdateItemRequest) invocation.getArguments()[0];
+            AsyncHandler<UpdateItemRequest, UpdateItemResult> handler = (AsyncHandler<UpdateItemRequest, UpdateItemResult>) invocation.getArguments()[1];
+            io.execute(() -> {
+                if (leaseCounter(request)) {
+                    handler.onSuccess(request, new UpdateItemResult());
+                } else {
+                    handler.onError(new ConditionalCheckFailedException("The conditional request failed"));
+                }
+            });
+            return null;
+        }).when(dynamodb).updateItemAsync(any(UpdateItemRequest.class), any(AsyncHandler.class));
+    }
+
+    @After
+    public void tearDown() {
+        writers.shutdownNow();
+        io.shutdownNow();
+    }
+
+    @Test
+    public void testThatConcurrentWritersAllocateUniqueIncreasingSequences() throws Exception {
+        final List<SequenceAllocator> nodes = new ArrayList<>();
+        for (int node = 0; node < 3; ++node) {
+            nodes.add(new LeasedSequenceAllocator(dynamodb, TABLE_NAME, EntryJournal.SEQUENCE_COUNTER_NAME, LEASE_SIZE, EntryJournal.defaults().sequenceLeaseMillis()));
+        }
+
+        final List<List<long[]>> allocations = allocateConcurrently(nodes);
+
+        final Set<Long> sequences = new HashSet<>();
+        long allocated = 0L;
+        for (final List<long[]> writer : allocations) {
+            long previous = 0L;
+            for (final long[] allocation : writer) {
+                assertTrue("sequences of a writer increase", allocation[0] > previous);
+                for (long sequence = allocation[0]; sequence < allocation[0] + allocation[1]; ++sequence) {
+                    assertTrue("sequence " + sequence + " allocated once", sequences.add(sequence));
+                }
+                previous = allocation[0] + allocation[1] - 1;
+                allocated += allocation[1];
+            }
+        }
+
+        final long leased = counters.get(EntryJournal.SEQUENCE_COUNTER_NAME);
+        assertEquals(sequences.size(), allocated);
+        assertTrue(Collections.max(sequences) <= leased);
+
+        // gaps are left only at the end of each lease: at most one allocation short, or unused by its node
+        final long leases = leased / LEASE_SIZE;
+        final long gaps = leased - allocated;
+        assertTrue("gaps " + gaps + " bounded", gaps <= leases * (MAX_COUNT - 1) + nodes.size() * LEASE_SIZE);
+    }
+
+    @Test
+    public void testThatShardedSequencesAllocateWithinTheirShard() throws Exception {
+        final EntryJournal journal = EntryJournal.withShards(4).withSequenceLeases(LEASE_SIZE).withShardedSequences();
+        final List<SequenceAllocator> nodes = new ArrayList<>();
+        for (int node = 0; node < 2; ++node) {
+            nodes.add(SequenceAllocator.of(dynamodb, TABLE_NAME, journal));
+        }
+
+        final List<List<long[]>> allocations = allocateConcurrently(nodes);
+
+        final Set<Long> sequences = new HashSet<>();
+        for (final List<long[]> writer : allocations) {
+            for (final long[] allocation : writer) {
+                final String shard = journal.shardOf(allocation[0]);
+                for (int index = 0; index < allocation[1]; ++index) {
+                    final long sequence = allocation[0] + index * journal.sequenceStride();
+                    assertEquals(shard, journal.shardOf(sequence));
+                    assertTrue("sequence " + sequence + " allocated once", sequences.add(sequence));
+                }
+            }
+        }
+        assertEquals(4, counters.size());
+    }
+
+    @Test
+    public void testThatAReaderReadsEveryEntryOfConcurrentAllocators() throws Exception {
+        final EntryJournal journal = EntryJournal.withShards(4).withSequenceLeases(1000).withGapGrace(400L);
+        final SequenceAllocator slowNode = SequenceAllocator.of(dynamodb, TABLE_NAME, journal);
+        final SequenceAllocator fastNode = SequenceAllocator.of(dynamodb, TABLE_NAME, journal);
+        final Set<Long> written = new ConcurrentSkipListSet<>();
+
+        // the slow node writes from an older lease than the fast node, for longer than the gap grace
+        final List<Future<?>> writes = new ArrayList<>();
+        writes.add(writers.submit(() -> write(slowNode, journal, written, 60, 10L)));
+        for (int writer = 1; writer < 4; ++writer) {
+            writes.add(writers.submit(() -> write(fastNode, journal, written, ALLOCATIONS, 1L)));
+        }
+
+        final JournalCursor cursor = JournalCursor.after(journal, 0L);
+        final List<Long> read = new ArrayList<>();
+        long caughtUpAt = 0L;
+        while (caughtUpAt == 0L || System.currentTimeMillis() - caughtUpAt < 2 * journal.gapGraceMillis()) {
+            final List<QueryResult> pages = new ArrayList<>(journal.shards());
+            for (int shard = 0; shard < journal.shards(); ++shard) {
+                pages.add(pageOf(journal, written, shard, cursor.offsetOf(shard), 100));
+            }
+            final List<Map<String, AttributeValue>> items = cursor.advance(pages, 100, System.currentTimeMillis());
+            for (final Map<String, AttributeValue> item : items) {
+                read.add(EntryJournal.sequenceOf(item));
+            }
+            if (caughtUpAt == 0L && items.isEmpty() && allDone(writes)) {
+                caughtUpAt = System.currentTimeMillis();
+            }
+            Thread.sleep(5L);
+        }
+        for (final Future<?> write : writes) {
+            write.get();
+        }
+
+        assertEquals(new ArrayList<>(written), read.stream().sorted().collect(Collectors.toList()));
+        for (int shard = 0; shard < journal.shards(); ++shard) {
+            long previous = 0L;
+            for (final long sequence : read) {
+                if (journal.shardIndexOf(sequence) == shard) {
+                    assertTrue("shard " + shard + " read in order", sequence > previous);
+                    previous = sequence;
+                }
+            }
+        }
+    }
+
+    private Void write(final SequenceAllocator node, final EntryJournal journal, final Set<Long> written, final int allocations, final long pauseMillis) throws Exception {
+        final Random random = new Random();
+        for (int allocation = 0; allocation < allocations; ++allocation) {
+            final int count = 1 + random.nextInt(MAX_COUNT);
+            final CompletableFuture<Long> first = new CompletableFuture<>();
+            node.allocate(count, first::complete, first::completeExceptionally);
+            final long firstSequence = first.get(5, TimeUnit.SECONDS);
+            Thread.sleep(random.nextInt((int) pauseMillis + 1)); // the write of the entries
+            for (int index = 0; index < count; ++index) {
+                written.add(firstSequence + (long) index * journal.sequenceStride());
+            }
+            Thread.sleep(pauseMillis);
+        }
+        return null;
+    }
+
+    private static QueryResult pageOf(final EntryJournal journal, final Set<Long> written, final int shard, final long after, final int limit) {
+        final List<Map<String, AttributeValue>> items = new ArrayList<>();
+        for (final long sequence : written) {
+            if (sequence > after && journal.shardIndexOf(sequence) == shard) {
+                final Map<String, AttributeValue> item = new HashMap<>(2);
+                item.put(EntryJournal.SHARD_ATTRIBUTE, new AttributeValue().withS(journal.shardOf(sequence)));
+                item.put(EntryJournal.SEQUENCE_ATTRIBUTE, new AttributeValue().withN(String.valueOf(sequence)));
+                items.add(item);
+                if (items.size() == limit) {
+                    return new QueryResult().withItems(items).withLastEvaluatedKey(item);
+                }
+            }
+        }
+        return new QueryResult().withItems(items);
+    }
+
+    private static boolean allDone(final List<Future<?>> writes) {
+        for (final Future<?> write : writes) {
+            if (!write.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Answer the allocations of each writer as {@code [first, count]},
+     * in the order the writer made them.
+     */
+    private List<List<long[]>> allocateConcurrently(final List<SequenceAllocator> nodes) throws Exception {
+        final List<Future<List<long[]>>> writes = new ArrayList<>();
+        for (int writer = 0; writer < WRITERS; ++writer) {
+            final SequenceAllocator node = nodes.get(writer % nodes.size());
+            final int seed = writer;
+            writes.add(writers.submit(() -> {
+                final List<long[]> allocations = new ArrayList<>(ALLOCATIONS);
+                for (int allocation = 0; allocation < ALLOCATIONS; ++allocation) {
+                    final int count = 1 + (seed + allocation) % MAX_COUNT;
+                    final CompletableFuture<Long> first = new CompletableFuture<>();
+                    node.allocate(count, first::complete, first::completeExceptionally);
+                    allocations.add(new long[] { first.get(5, TimeUnit.SECONDS), count });
+                }
+                return allocations;
+            }));
+        }
+
+        final List<List<long[]>> allocations = new ArrayList<>(WRITERS);
+        for (final Future<List<long[]>> write : writes) {
+            allocations.add(write.get(30, TimeUnit.SECONDS));
+        }
+        return allocations;
+    }
+
+    private synchronized Long counterOf(final Map<String, AttributeValue> key) {
+        return counters.get(counterNameOf(key));
+    }
+
+    private synchronized boolean leaseCounter(final UpdateItemRequest request) {
+        final String counterName = counterNameOf(request.getKey());
+        final long last = Long.parseLong(request.getExpressionAttributeValues().get(":last").getN());
+        final Long current = counters.get(counterName);
+        if (current != null && current != last) {
+            return false;
+        }
+        counters.put(counterName, Long.parseLong(request.getExpressionAttributeValues().get(":end").getN()));
+        return true;
+    }
+
+    private String counterNameOf(final Map<String, AttributeValue> key) {
+        return key.get(EntryJournal.SHARD_ATTRIBUTE).getS().substring(EntryJournal.CONTROL_SHARD_PREFIX.length());
+    }
+}
@@ -0,0 +1,59 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.metrics;
+
+import com.amazonaws.services.dynamodbv2.model.Capacity;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CapacityAccountingTest {
+    private static final String TABLE_NAME = "xoom_io_vlingo_xoom_symbio_store_state_Entity1";
+    private static final String OUTBOX_TABLE_NAME = "xoom_dispatchables";
+
+    @Test
+    public void testThatIndexUnitsAreAccountedApartFromTheTable() {
+        final CapacityAccounting accounting = new CapacityAccounting();
+
+        accounting.record("Entity1", "PutItem", new ConsumedCapacity()
+                .withTableName(TABLE_NAME)
+                .withCapacityUnits(3.0)
+                .withTable(new Capacity().withCapacityUnits(2.0))
+                .withGlobalSecondaryIndexes(Collections.singletonMap("byName", new Capacity().withCapacityUnits(1.0))));
+
+        assertEquals(2.0, accounting.unitsOf(TABLE_NAME, "Entity1", "PutItem"), 0.001);
+        assertEquals(1.0, accounting.unitsOf(TABLE_NAME + "/byName", "Entity1", "PutItem"), 0.001);
+        assertEquals(3.0, accounting.total(), 0.001);
+    }
+
+    @Test
+    public void testThatTheSnapshotSumsByTableStateTypeAndOperation() {
+        final CapacityAccounting accounting = new CapacityAccounting();
+
+        accounting.record("Entity1", "BatchWriteItem", Arrays.asList(
+                new ConsumedCapacity().withTableName(TABLE_NAME).withCapacityUnits(1.0),
+                new ConsumedCapacity().withTableName(OUTBOX_TABLE_NAME).withCapacityUnits(2.0),
+                null));
+        accounting.record("Entity1", "GetItem", new ConsumedCapacity().withTableName(TABLE_NAME).withCapacityUnits(0.5));
+        accounting.record(CapacityAccounting.NO_STATE_TYPE, "DeleteItem", new ConsumedCapacity().withTableName(OUTBOX_TABLE_NAME).withCapacityUnits(1.0));
+
+        final Map<String, Double> snapshot = accounting.snapshot();
+        assertEquals(1.5, snapshot.get(CapacityAccounting.TABLE_PREFIX + TABLE_NAME), 0.001);
+        assertEquals(3.0, snapshot.get(CapacityAccounting.TABLE_PREFIX + OUTBOX_TABLE_NAME), 0.001);
+        assertEquals(3.5, snapshot.get(CapacityAccounting.STATE_TYPE_PREFIX + "Entity1"), 0.001);
+        assertEquals(1.0, snapshot.get(CapacityAccounting.STATE_TYPE_PREFIX + CapacityAccounting.NO_STATE_TYPE), 0.001);
+        assertEquals(3.0, snapshot.get(CapacityAccounting.OPERATION_PREFIX + "BatchWriteItem"), 0.001);
+        assertEquals(0.5, snapshot.get(CapacityAccounting.OPERATION_PREFIX + "GetItem"), 0.001);
+        assertEquals(4.5, accounting.total(), 0.001);
+    }
+}
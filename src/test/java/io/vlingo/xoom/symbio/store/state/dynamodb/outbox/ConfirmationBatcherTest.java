@@ -0,0 +1,154 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.outbox;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.DeleteRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import io.vlingo.xoom.actors.World;
+import io.vlingo.xoom.symbio.store.Result;
+import io.vlingo.xoom.symbio.store.dispatch.ConfirmDispatchedResultInterest;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.ConfirmDispatchablesAsyncHandler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryPolicy;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryScheduler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.StoreMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class ConfirmationBatcherTest {
+    private static final int TIMEOUT = 2000;
+    private static final String TABLE_NAME = "dispatchables";
+
+    private World world;
+    private AmazonDynamoDBAsync dynamodb;
+    private StoreMetrics metrics;
+
+    @Before
+    public void setUp() {
+        world = World.startWithDefaults("confirmation-batcher-test");
+        dynamodb = mock(AmazonDynamoDBAsync.class);
+        metrics = new StoreMetrics();
+    }
+
+    @After
+    public void tearDown() {
+        world.terminate();
+    }
+
+    @Test
+    public void testThatAFullBatchIsDeletedWithOneBatchWriteItem() {
+        ConfirmationBatcher batcher = batcherOf(3);
+        ConfirmDispatchedResultInterest interest = mock(ConfirmDispatchedResultInterest.class);
+
+        assertFalse(batcher.confirm("1", interest));
+        assertTrue(batcher.isFirst());
+        assertFalse(batcher.confirm("2", interest));
+        assertFalse(batcher.isFirst());
+        assertTrue(batcher.confirm("3", interest));
+
+        batcher.flush();
+        assertTrue(batcher.isEmpty());
+
+        ArgumentCaptor<BatchWriteItemRequest> request = ArgumentCaptor.forClass(BatchWriteItemRequest.class);
+        verify(dynamodb, times(1)).batchWriteItemAsync(request.capture(), any(ConfirmDispatchablesAsyncHandler.class));
+        assertEquals(3, request.getValue().getRequestItems().get(TABLE_NAME).size());
+        assertEquals(1L, metrics.count(ConfirmationBatcher.BATCHES));
+        assertEquals(3L, metrics.count(ConfirmationBatcher.CONFIRMATIONS));
+    }
+
+    @Test
+    public void testThatRepeatedConfirmationsShareOneDelete() {
+        ConfirmationBatcher batcher = batcherOf(25);
+        ConfirmDispatchedResultInterest first = mock(ConfirmDispatchedResultInterest.class);
+        ConfirmDispatchedResultInterest second = mock(ConfirmDispatchedResultInterest.class);
+
+        batcher.confirm("1", first);
+        batcher.confirm("1", second);
+        batcher.flush();
+
+        ArgumentCaptor<BatchWriteItemRequest> request = ArgumentCaptor.forClass(BatchWriteItemRequest.class);
+        ArgumentCaptor<ConfirmDispatchablesAsyncHandler> handler = ArgumentCaptor.forClass(ConfirmDispatchablesAsyncHandler.class);
+        verify(dynamodb).batchWriteItemAsync(request.capture(), handler.capture());
+        assertEquals(1, request.getValue().getRequestItems().get(TABLE_NAME).size());
+
+        handler.getValue().onSuccess(request.getValue(), new BatchWriteItemResult().withUnprocessedItems(Collections.emptyMap()));
+        verify(first).confirmDispatchedResultedIn(Result.Success, "1");
+        verify(second).confirmDispatchedResultedIn(Result.Success, "1");
+    }
+
+    @Test
+    public void testThatUnprocessedDeletesAreRetriedAndAnsweredIndividually() {
+        ConfirmationBatcher batcher = batcherOf(25);
+        ConfirmDispatchedResultInterest interest = mock(ConfirmDispatchedResultInterest.class);
+
+        batcher.confirm("1", interest);
+        batcher.confirm("2", interest);
+        batcher.flush();
+
+        ArgumentCaptor<BatchWriteItemRequest> request = ArgumentCaptor.forClass(BatchWriteItemRequest.class);
+        ArgumentCaptor<ConfirmDispatchablesAsyncHandler> handler = ArgumentCaptor.forClass(ConfirmDispatchablesAsyncHandler.class);
+        verify(dynamodb).batchWriteItemAsync(request.capture(), handler.capture());
+
+        handler.getValue().onSuccess(request.getValue(), new BatchWriteItemResult().withUnprocessedItems(unprocessed("2")));
+        verify(interest).confirmDispatchedResultedIn(Result.Success, "1");
+        verify(interest, never()).confirmDispatchedResultedIn(Result.Success, "2");
+
+        verify(dynamodb, timeout(TIMEOUT).times(2)).batchWriteItemAsync(request.capture(), eq(handler.getValue()));
+        assertEquals(1, request.getValue().getRequestItems().get(TABLE_NAME).size());
+
+        handler.getValue().onSuccess(request.getValue(), new BatchWriteItemResult().withUnprocessedItems(Collections.emptyMap()));
+        verify(interest).confirmDispatchedResultedIn(Result.Success, "2");
+    }
+
+    @Test
+    public void testThatAFailedBatchFailsEveryConfirmation() {
+        ConfirmationBatcher batcher = batcherOf(25);
+        ConfirmDispatchedResultInterest interest = mock(ConfirmDispatchedResultInterest.class);
+
+        batcher.confirm("1", interest);
+        batcher.confirm("2", interest);
+        batcher.flush();
+
+        ArgumentCaptor<ConfirmDispatchablesAsyncHandler> handler = ArgumentCaptor.forClass(ConfirmDispatchablesAsyncHandler.class);
+        verify(dynamodb).batchWriteItemAsync(any(BatchWriteItemRequest.class), handler.capture());
+
+        handler.getValue().onError(new RuntimeException("unavailable"));
+        verify(interest).confirmDispatchedResultedIn(Result.Failure, "1");
+        verify(interest).confirmDispatchedResultedIn(Result.Failure, "2");
+    }
+
+    private ConfirmationBatcher batcherOf(final int batchSize) {
+        return new ConfirmationBatcher(dynamodb, TABLE_NAME, ConfirmationBatcherTest::keyOf, batchSize,
+                new RetryScheduler(world.stage().scheduler(), RetryPolicy.with(3, 1L, 5L), metrics));
+    }
+
+    private Map<String, List<WriteRequest>> unprocessed(final String dispatchId) {
+        return Collections.singletonMap(TABLE_NAME,
+                Collections.singletonList(new WriteRequest().withDeleteRequest(new DeleteRequest(keyOf(dispatchId)))));
+    }
+
+    private static Map<String, AttributeValue> keyOf(final String dispatchId) {
+        return Collections.singletonMap("Id", new AttributeValue().withS(dispatchId));
+    }
+}
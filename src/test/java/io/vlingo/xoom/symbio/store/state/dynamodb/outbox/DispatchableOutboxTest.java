@@ -0,0 +1,59 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.outbox;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import io.vlingo.xoom.symbio.Entry;
+import io.vlingo.xoom.symbio.State.TextState;
+import io.vlingo.xoom.symbio.store.dispatch.Dispatchable;
+import io.vlingo.xoom.symbio.store.state.Entity1;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DispatchableOutboxTest {
+    private final DispatchableOutbox outbox = DispatchableOutbox.withShards(4);
+
+    @Test
+    public void testThatDispatchablesAreWrittenWithShardAndCreationTime() {
+        final LocalDateTime createdOn = LocalDateTime.now();
+        final Dispatchable<Entry<?>, TextState> dispatchable =
+                new Dispatchable<>("Entity1:123", createdOn, new TextState("123", Entity1.class, 1, "{}", 1), Collections.emptyList());
+
+        final Map<String, AttributeValue> item = outbox.itemOf(Collections.singletonMap("Id", new AttributeValue().withS(dispatchable.id())), dispatchable);
+
+        assertEquals(String.valueOf(outbox.shardOf(dispatchable.id())), item.get(DispatchableOutbox.SHARD_ATTRIBUTE).getN());
+        assertEquals(String.valueOf(DispatchableOutbox.millisOf(createdOn)), item.get(DispatchableOutbox.CREATED_AT_MILLIS_ATTRIBUTE).getN());
+        assertEquals(dispatchable.id(), item.get("Id").getS());
+    }
+
+    @Test
+    public void testThatEveryShardIsQueriedForTheExpiredRange() {
+        final List<QueryRequest> queries = outbox.expiredQueriesFor("xoom_dispatchables", 1_000L);
+
+        assertEquals(4, queries.size());
+        for (int shard = 0; shard < queries.size(); ++shard) {
+            final QueryRequest query = queries.get(shard);
+            assertEquals(DispatchableOutbox.CREATED_AT_INDEX, query.getIndexName());
+            assertEquals(String.valueOf(shard), query.getExpressionAttributeValues().get(":shard").getN());
+            assertEquals("1000", query.getExpressionAttributeValues().get(":expiredAt").getN());
+        }
+    }
+
+    @Test
+    public void testThatControlItemsAreNotTakenForDispatchables() {
+        assertTrue(DispatchableOutbox.isControlItem(Collections.singletonMap("Id", new AttributeValue().withS(DispatchableOutbox.CONTROL_ID_PREFIX + "stream-checkpoint:default:shard-1"))));
+        assertFalse(DispatchableOutbox.isControlItem(Collections.singletonMap("Id", new AttributeValue().withS("Entity1:123"))));
+    }
+}
@@ -0,0 +1,122 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.outbox;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.ScanPageAsyncHandler;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class OutboxBackfillTest {
+    private static final String TABLE_NAME = "dispatchables";
+
+    private AmazonDynamoDBAsync dynamodb;
+    private DispatchableOutbox outbox;
+    private List<Long> completions;
+    private List<Exception> failures;
+    private OutboxBackfill backfill;
+
+    @Before
+    public void setUp() {
+        dynamodb = mock(AmazonDynamoDBAsync.class);
+        outbox = DispatchableOutbox.withShards(4);
+        completions = new ArrayList<>();
+        failures = new ArrayList<>();
+        backfill = new OutboxBackfill(dynamodb, TABLE_NAME, outbox, 2, completions::add, failures::add);
+    }
+
+    @Test
+    public void testThatDispatchablesLackingOutboxAttributesAreUpdated() {
+        final LocalDateTime createdOn = LocalDateTime.now();
+        assertTrue(backfill.start());
+        assertFalse(backfill.start());
+
+        final ArgumentCaptor<ScanRequest> scan = ArgumentCaptor.forClass(ScanRequest.class);
+        final ArgumentCaptor<ScanPageAsyncHandler> scanHandler = ArgumentCaptor.forClass(ScanPageAsyncHandler.class);
+        verify(dynamodb).scanAsync(scan.capture(), scanHandler.capture());
+        assertNull(scan.getValue().getExclusiveStartKey());
+        assertEquals(Integer.valueOf(2), scan.getValue().getLimit());
+
+        backfill.pageRead(Arrays.asList(dispatchableOf("1", createdOn), controlItem()), keyOf("1"));
+
+        final ArgumentCaptor<UpdateItemRequest> update = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        final ArgumentCaptor<AsyncHandler<UpdateItemRequest, UpdateItemResult>> updateHandler = handlerCaptor();
+        verify(dynamodb, times(1)).updateItemAsync(update.capture(), updateHandler.capture());
+        final Map<String, AttributeValue> values = update.getValue().getExpressionAttributeValues();
+        assertEquals(String.valueOf(outbox.shardOf("1")), values.get(":shard").getN());
+        assertEquals(String.valueOf(DispatchableOutbox.millisOf(createdOn)), values.get(":createdAt").getN());
+
+        updateHandler.getValue().onSuccess(update.getValue(), new UpdateItemResult());
+        verify(dynamodb, times(2)).scanAsync(scan.capture(), any(ScanPageAsyncHandler.class));
+        assertEquals(keyOf("1"), scan.getValue().getExclusiveStartKey());
+
+        backfill.pageRead(Collections.singletonList(dispatchableOf("2", createdOn)), null);
+        verify(dynamodb, times(2)).updateItemAsync(update.capture(), updateHandler.capture());
+        updateHandler.getValue().onError(new ConditionalCheckFailedException("confirmed"));
+
+        assertEquals(Collections.singletonList(1L), completions);
+        assertTrue(failures.isEmpty());
+        assertTrue(backfill.start());
+    }
+
+    @Test
+    public void testThatAFailedUpdateFailsTheBackfill() {
+        backfill.start();
+        backfill.pageRead(Arrays.asList(dispatchableOf("1", LocalDateTime.now()), dispatchableOf("2", LocalDateTime.now())), keyOf("2"));
+
+        final ArgumentCaptor<AsyncHandler<UpdateItemRequest, UpdateItemResult>> updateHandler = handlerCaptor();
+        verify(dynamodb, times(2)).updateItemAsync(any(UpdateItemRequest.class), updateHandler.capture());
+        updateHandler.getAllValues().get(0).onError(new RuntimeException("unavailable"));
+        updateHandler.getAllValues().get(1).onSuccess(new UpdateItemRequest(), new UpdateItemResult());
+
+        assertEquals(1, failures.size());
+        assertTrue(completions.isEmpty());
+        verify(dynamodb, times(1)).scanAsync(any(ScanRequest.class), any(ScanPageAsyncHandler.class));
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private ArgumentCaptor<AsyncHandler<UpdateItemRequest, UpdateItemResult>> handlerCaptor() {
+        return (ArgumentCaptor) ArgumentCaptor.forClass(AsyncHandler.class);
+    }
+
+    private Map<String, AttributeValue> dispatchableOf(final String id, final LocalDateTime createdOn) {
+        final Map<String, AttributeValue> item = new HashMap<>(keyOf(id));
+        item.put("CreatedAt", new AttributeValue().withS(createdOn.toString()));
+        return item;
+    }
+
+    private Map<String, AttributeValue> controlItem() {
+        return keyOf(DispatchableOutbox.CONTROL_ID_PREFIX + "redispatch-sweep:default");
+    }
+
+    private static Map<String, AttributeValue> keyOf(final String id) {
+        return Collections.singletonMap("Id", new AttributeValue().withS(id));
+    }
+}
@@ -0,0 +1,268 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.outbox;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndexDescription;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import io.vlingo.xoom.actors.World;
+import io.vlingo.xoom.symbio.Entry;
+import io.vlingo.xoom.symbio.State.TextState;
+import io.vlingo.xoom.symbio.store.dispatch.Dispatchable;
+import io.vlingo.xoom.symbio.store.state.Entity1;
+import io.vlingo.xoom.symbio.store.state.dynamodb.adapters.TextStateRecordAdapter;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.DescribeIndexesAsyncHandler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.DispatchAsyncHandler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryPolicy;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryScheduler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.StoreMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class RedispatchSweepTest {
+    private static final int TIMEOUT = 2000;
+    private static final String TABLE_NAME = "dispatchables";
+    private static final long EXPIRED_AT_MILLIS = 1_000_000L;
+
+    private World world;
+    private AmazonDynamoDBAsync dynamodb;
+    private TextStateRecordAdapter recordAdapter;
+    private StoreMetrics metrics;
+    private List<String> dispatched;
+
+    @Before
+    public void setUp() {
+        world = World.startWithDefaults("redispatch-sweep-test");
+        dynamodb = mock(AmazonDynamoDBAsync.class);
+        recordAdapter = new TextStateRecordAdapter();
+        metrics = new StoreMetrics();
+        dispatched = new CopyOnWriteArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        world.terminate();
+    }
+
+    @Test
+    public void testThatPagesAreReadByLastEvaluatedKeyThroughEveryShard() {
+        final RedispatchSweep<TextState> sweep = sweepOf(1_000, "");
+        assertTrue(sweep.start(EXPIRED_AT_MILLIS));
+        assertFalse(sweep.start(EXPIRED_AT_MILLIS));
+        verifiedIndex(true);
+        resumedFrom(null);
+
+        QueryRequest query = queried(1);
+        assertEquals("0", query.getExpressionAttributeValues().get(":shard").getN());
+        assertEquals(String.valueOf(EXPIRED_AT_MILLIS), query.getExpressionAttributeValues().get(":expiredAt").getN());
+        assertEquals(Integer.valueOf(2), query.getLimit());
+        assertNull(query.getExclusiveStartKey());
+
+        answer(query, Arrays.asList(itemOf("1"), itemOf("2")), keyOf("2"));
+        assertEquals(Arrays.asList("Entity1:1", "Entity1:2"), dispatched);
+        final ArgumentCaptor<PutItemRequest> cursor = ArgumentCaptor.forClass(PutItemRequest.class);
+        verify(dynamodb).putItemAsync(cursor.capture(), any());
+        assertEquals("0", cursor.getValue().getItem().get("SweepShard").getN());
+        assertEquals(keyOf("2"), cursor.getValue().getItem().get("LastKey").getM());
+
+        query = queried(2);
+        assertEquals("0", query.getExpressionAttributeValues().get(":shard").getN());
+        assertEquals(keyOf("2"), query.getExclusiveStartKey());
+
+        for (int shard = 0; shard < 4; ++shard) {
+            query = queried(shard + 2);
+            assertEquals(String.valueOf(shard), query.getExpressionAttributeValues().get(":shard").getN());
+            answer(query, Collections.emptyList(), null);
+        }
+
+        final ArgumentCaptor<AsyncHandler<DeleteItemRequest, DeleteItemResult>> deleted = handlerCaptor();
+        verify(dynamodb, timeout(TIMEOUT)).deleteItemAsync(any(DeleteItemRequest.class), deleted.capture());
+        assertTrue(sweep.isRunning());
+        deleted.getValue().onSuccess(new DeleteItemRequest(), new DeleteItemResult());
+
+        assertFalse(sweep.isRunning());
+        assertEquals(1L, metrics.count(RedispatchSweep.SWEEPS));
+        assertEquals(2L, metrics.count(RedispatchSweep.ITEMS));
+    }
+
+    @Test
+    public void testThatPagesArePacedByTheItemBudget() {
+        final RedispatchSweep<TextState> sweep = sweepOf(4, "");
+        sweep.start(EXPIRED_AT_MILLIS);
+        verifiedIndex(true);
+        resumedFrom(null);
+
+        final long answeredAt = System.currentTimeMillis();
+        answer(queried(1), Arrays.asList(itemOf("1"), itemOf("2")), keyOf("2"));
+
+        queried(2);
+        final long pacedMillis = System.currentTimeMillis() - answeredAt;
+        assertTrue("paced for " + pacedMillis + " ms", pacedMillis >= 400L);
+    }
+
+    @Test
+    public void testThatAnInterruptedSweepResumesFromItsCursor() {
+        final RedispatchSweep<TextState> sweep = sweepOf(1_000, "");
+        sweep.start(EXPIRED_AT_MILLIS);
+        verifiedIndex(true);
+
+        final Map<String, AttributeValue> cursor = new HashMap<>();
+        cursor.put("ExpiredAtMillis", new AttributeValue().withN("1234"));
+        cursor.put("SweepShard", new AttributeValue().withN("2"));
+        cursor.put("LastKey", new AttributeValue().withM(keyOf("7")));
+        resumedFrom(cursor);
+
+        final QueryRequest query = queried(1);
+        assertEquals("2", query.getExpressionAttributeValues().get(":shard").getN());
+        assertEquals("1234", query.getExpressionAttributeValues().get(":expiredAt").getN());
+        assertEquals(keyOf("7"), query.getExclusiveStartKey());
+    }
+
+    @Test
+    @SuppressWarnings("rawtypes")
+    public void testThatAFailedPageIsRetriedThenPausesTheSweep() {
+        final RedispatchSweep<TextState> sweep = sweepOf(1_000, "");
+        sweep.start(EXPIRED_AT_MILLIS);
+        verifiedIndex(true);
+        resumedFrom(null);
+
+        final ArgumentCaptor<DispatchAsyncHandler> handler = ArgumentCaptor.forClass(DispatchAsyncHandler.class);
+        for (int attempt = 1; attempt <= 3; ++attempt) {
+            verify(dynamodb, timeout(TIMEOUT).times(attempt)).queryAsync(any(QueryRequest.class), handler.capture());
+            assertTrue(sweep.isRunning());
+            handler.getValue().onError(new RuntimeException("unavailable"));
+        }
+
+        assertFalse(sweep.isRunning());
+        assertEquals(3L, metrics.count(RedispatchSweep.ERRORS));
+        assertEquals(2L, metrics.count(RetryScheduler.RETRIES));
+        verify(dynamodb, never()).deleteItemAsync(any(DeleteItemRequest.class), any());
+    }
+
+    @Test
+    public void testThatUnreadableAndUndispatchableItemsAreSkipped() {
+        final RedispatchSweep<TextState> sweep = sweepOf(1_000, "Entity1:2");
+        sweep.start(EXPIRED_AT_MILLIS);
+        verifiedIndex(true);
+        resumedFrom(null);
+
+        answer(queried(1), Arrays.asList(itemOf("1"), itemOf("2"), keyOf("3"), itemOf("4")), keyOf("4"));
+
+        assertEquals(Arrays.asList("Entity1:1", "Entity1:4"), dispatched);
+        assertEquals(1L, metrics.count(RedispatchSweep.SKIPPED));
+        assertEquals(1L, metrics.count(StateReferences.UNREADABLE));
+        assertEquals(keyOf("4"), queried(2).getExclusiveStartKey());
+    }
+
+    @Test
+    public void testThatASweepOfATableWithoutTheIndexFails() {
+        final RedispatchSweep<TextState> sweep = sweepOf(1_000, "");
+        sweep.start(EXPIRED_AT_MILLIS);
+        verifiedIndex(false);
+
+        assertFalse(sweep.isRunning());
+        assertEquals(1L, metrics.count(RedispatchSweep.ERRORS));
+        verify(dynamodb, never()).getItemAsync(any(GetItemRequest.class), any());
+
+        assertTrue(sweep.start(EXPIRED_AT_MILLIS));
+        verify(dynamodb, times(2)).describeTableAsync(any(DescribeTableRequest.class), any(DescribeIndexesAsyncHandler.class));
+    }
+
+    private RedispatchSweep<TextState> sweepOf(final int itemsPerSecond, final String undispatchableId) {
+        final RetryScheduler retries = new RetryScheduler(world.stage().scheduler(), RetryPolicy.with(2, 1L, 5L), metrics);
+        return new RedispatchSweep<>(
+                dynamodb,
+                TABLE_NAME,
+                "test",
+                DispatchableOutbox.withShards(4),
+                itemsPerSecond,
+                2,
+                new StateReferences<>(dynamodb, recordAdapter, retries),
+                dispatchable -> {
+                    if (dispatchable.id().equals(undispatchableId)) {
+                        throw new IllegalStateException("undispatchable");
+                    }
+                    dispatched.add(dispatchable.id());
+                    return null;
+                },
+                world.stage().scheduler(),
+                retries,
+                world.defaultLogger());
+    }
+
+    private void verifiedIndex(final boolean present) {
+        final ArgumentCaptor<DescribeIndexesAsyncHandler> handler = ArgumentCaptor.forClass(DescribeIndexesAsyncHandler.class);
+        verify(dynamodb).describeTableAsync(any(DescribeTableRequest.class), handler.capture());
+        final TableDescription table = new TableDescription().withTableName(TABLE_NAME);
+        if (present) {
+            table.withGlobalSecondaryIndexes(new GlobalSecondaryIndexDescription().withIndexName(DispatchableOutbox.CREATED_AT_INDEX));
+        }
+        handler.getValue().onSuccess(new DescribeTableRequest(TABLE_NAME), new DescribeTableResult().withTable(table));
+    }
+
+    private void resumedFrom(final Map<String, AttributeValue> cursor) {
+        final ArgumentCaptor<AsyncHandler<GetItemRequest, GetItemResult>> handler = handlerCaptor();
+        verify(dynamodb).getItemAsync(any(GetItemRequest.class), handler.capture());
+        handler.getValue().onSuccess(new GetItemRequest(), new GetItemResult().withItem(cursor));
+    }
+
+    private QueryRequest queried(final int times) {
+        final ArgumentCaptor<QueryRequest> query = ArgumentCaptor.forClass(QueryRequest.class);
+        verify(dynamodb, timeout(TIMEOUT).times(times)).queryAsync(query.capture(), any(DispatchAsyncHandler.class));
+        return query.getValue();
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void answer(final QueryRequest query, final List<Map<String, AttributeValue>> items, final Map<String, AttributeValue> lastEvaluatedKey) {
+        final ArgumentCaptor<DispatchAsyncHandler> handler = ArgumentCaptor.forClass(DispatchAsyncHandler.class);
+        verify(dynamodb, atLeastOnce()).queryAsync(any(QueryRequest.class), handler.capture());
+        handler.getValue().onSuccess(query, new QueryResult().withItems(items).withLastEvaluatedKey(lastEvaluatedKey));
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private <Q, R> ArgumentCaptor<AsyncHandler<Q, R>> handlerCaptor() {
+        return (ArgumentCaptor) ArgumentCaptor.forClass(AsyncHandler.class);
+    }
+
+    private Map<String, AttributeValue> itemOf(final String id) {
+        final TextState state = new TextState(id, Entity1.class, 1, "{\"id\":\"" + id + "\",\"value\":1}", 1);
+        return recordAdapter.marshallDispatchable(new Dispatchable<Entry<?>, TextState>("Entity1:" + id, LocalDateTime.now(), state, Collections.emptyList()));
+    }
+
+    private static Map<String, AttributeValue> keyOf(final String id) {
+        return Collections.singletonMap("Id", new AttributeValue().withS(id));
+    }
+}
@@ -0,0 +1,168 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.outbox;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import io.vlingo.xoom.actors.Logger;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.CapacityAccounting;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.StoreMetrics;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class ShardLeasesTest {
+    private static final String TABLE_NAME = "xoom_dispatchables";
+
+    private AmazonDynamoDBAsync dynamodb;
+    private StoreMetrics metrics;
+    private List<Map<String, AttributeValue>> leaseItems;
+    private long now;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        dynamodb = mock(AmazonDynamoDBAsync.class);
+        metrics = new StoreMetrics();
+        leaseItems = new ArrayList<>();
+        now = 1_000_000L;
+
+        doAnswer(invocation -> {
+            BatchGetItemRequest request = (BatchGetItemRequest) invocation.getArguments()[0];
+            AsyncHandler<BatchGetItemRequest, BatchGetItemResult> handler = (AsyncHandler<BatchGetItemRequest, BatchGetItemResult>) invocation.getArguments()[1];
+            handler.onSuccess(request, new BatchGetItemResult().withResponses(Collections.singletonMap(TABLE_NAME, leaseItems)));
+            return null;
+        }).when(dynamodb).batchGetItemAsync(any(BatchGetItemRequest.class), any(AsyncHandler.class));
+
+        doAnswer(invocation -> {
+            PutItemRequest request = (PutItemRequest) invocation.getArguments()[0];
+            AsyncHandler<PutItemRequest, PutItemResult> handler = (AsyncHandler<PutItemRequest, PutItemResult>) invocation.getArguments()[1];
+            handler.onSuccess(request, new PutItemResult());
+            return null;
+        }).when(dynamodb).putItemAsync(any(PutItemRequest.class), any(AsyncHandler.class));
+    }
+
+    @Test
+    public void testThatALoneOwnerAcquiresEveryShard() {
+        ShardLeases leases = leasesOf("node-a");
+
+        leases.tick();
+
+        verify(dynamodb, times(4)).putItemAsync(any(PutItemRequest.class), any(AsyncHandler.class));
+        for (int shard = 0; shard < 4; ++shard) {
+            assertTrue(leases.owns(shard));
+        }
+        assertEquals(4L, metrics.count(ShardLeases.ACQUIRED));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testThatAJoiningOwnerStealsTowardItsFairShare() {
+        for (int shard = 0; shard < 4; ++shard) {
+            leaseItems.add(leaseOf(shard, "node-b", 7L));
+        }
+        ShardLeases leases = leasesOf("node-a");
+
+        leases.tick();
+
+        ArgumentCaptor<PutItemRequest> request = ArgumentCaptor.forClass(PutItemRequest.class);
+        verify(dynamodb, times(1)).putItemAsync(request.capture(), any(AsyncHandler.class));
+        assertEquals("node-a", request.getValue().getItem().get("LeaseOwner").getS());
+        assertEquals("8", request.getValue().getItem().get("LeaseCounter").getN());
+        assertEquals("7", request.getValue().getExpressionAttributeValues().get(":counter").getN());
+        assertEquals(1, leases.ownedShards().size());
+        assertEquals(1L, metrics.count(ShardLeases.STOLEN));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testThatALostRenewalStopsSweepingTheShard() {
+        ShardLeases leases = leasesOf("node-a");
+        leases.tick();
+        assertTrue(leases.owns(0));
+
+        doAnswer(invocation -> {
+            AsyncHandler<UpdateItemRequest, UpdateItemResult> handler = (AsyncHandler<UpdateItemRequest, UpdateItemResult>) invocation.getArguments()[1];
+            handler.onError(new ConditionalCheckFailedException("taken"));
+            return null;
+        }).when(dynamodb).updateItemAsync(any(UpdateItemRequest.class), any(AsyncHandler.class));
+        for (int shard = 0; shard < 4; ++shard) {
+            leaseItems.add(leaseOf(shard, shard < 2 ? "node-b" : "node-c", 1L));
+        }
+
+        leases.tick();
+
+        assertTrue(leases.ownedShards().isEmpty());
+        assertEquals(4L, metrics.count(ShardLeases.LOST));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testThatALeaseThatCannotBeRenewedIsDroppedBeforeItExpires() {
+        ShardLeases leases = leasesOf("node-a");
+        leases.tick();
+
+        doAnswer(invocation -> {
+            AsyncHandler<UpdateItemRequest, UpdateItemResult> handler = (AsyncHandler<UpdateItemRequest, UpdateItemResult>) invocation.getArguments()[1];
+            handler.onError(new IllegalStateException("unavailable"));
+            return null;
+        }).when(dynamodb).updateItemAsync(any(UpdateItemRequest.class), any(AsyncHandler.class));
+        for (int shard = 0; shard < 4; ++shard) {
+            leaseItems.add(leaseOf(shard, "node-a", 0L));
+        }
+
+        now += 3_000L;
+        leases.tick();
+        now += 3_000L;
+        leases.tick();
+        assertEquals(4, leases.ownedShards().size());
+        assertEquals(0L, metrics.count(ShardLeases.EXPIRED));
+
+        // other owners consider the leases expired 10 seconds after they last saw them renewed
+        now += 1_500L;
+        assertFalse(leases.owns(0));
+        assertTrue(leases.ownedShards().isEmpty());
+        assertEquals(4L, metrics.count(ShardLeases.EXPIRED));
+        assertEquals(0L, metrics.count(ShardLeases.LOST));
+
+        leases.tick();
+        verify(dynamodb, times(8)).updateItemAsync(any(UpdateItemRequest.class), any(AsyncHandler.class));
+    }
+
+    private ShardLeases leasesOf(final String owner) {
+        return new ShardLeases(dynamodb, TABLE_NAME, owner, 4, 10_000L, metrics, mock(Logger.class), new CapacityAccounting(), () -> now);
+    }
+
+    private Map<String, AttributeValue> leaseOf(final int shard, final String owner, final long counter) {
+        Map<String, AttributeValue> lease = new HashMap<>();
+        lease.put("Id", new AttributeValue().withS(DispatchableOutbox.CONTROL_ID_PREFIX + "lease:" + shard));
+        lease.put("LeaseOwner", new AttributeValue().withS(owner));
+        lease.put("LeaseCounter", new AttributeValue().withN(String.valueOf(counter)));
+        return lease;
+    }
+}
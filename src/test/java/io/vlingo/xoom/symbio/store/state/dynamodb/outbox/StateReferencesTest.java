@@ -0,0 +1,119 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.outbox;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import io.vlingo.xoom.symbio.Entry;
+import io.vlingo.xoom.symbio.State.TextState;
+import io.vlingo.xoom.symbio.store.dispatch.Dispatchable;
+import io.vlingo.xoom.symbio.store.state.Entity1;
+import io.vlingo.xoom.symbio.store.state.dynamodb.adapters.TextStateRecordAdapter;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryScheduler;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class StateReferencesTest {
+    private static final String STATE_TABLE = "xoom_io_vlingo_xoom_symbio_store_state_Entity1";
+
+    private AmazonDynamoDBAsync dynamodb;
+    private TextStateRecordAdapter recordAdapter;
+    private RetryScheduler retries;
+    private StateReferences<TextState> references;
+    private List<List<Dispatchable<Entry<?>, TextState>>> resolved;
+
+    @Before
+    public void setUp() {
+        dynamodb = mock(AmazonDynamoDBAsync.class);
+        recordAdapter = new TextStateRecordAdapter();
+        retries = RetryScheduler.none();
+        references = new StateReferences<>(dynamodb, recordAdapter, retries);
+        resolved = new ArrayList<>();
+    }
+
+    @Test
+    public void testThatEmbeddedStatesAreAnsweredWithoutReading() {
+        final Map<String, AttributeValue> item = recordAdapter.marshallDispatchable(dispatchableOf("1", 3, true));
+
+        references.resolve(Collections.singletonList(item), resolved::add, e -> fail(e.getMessage()));
+
+        verifyZeroInteractions(dynamodb);
+        assertEquals(1, resolved.size());
+        assertEquals(3, resolved.get(0).get(0).state().get().dataVersion);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testThatReferencedStatesAreReadInOneBatch() {
+        final List<Map<String, AttributeValue>> items = Arrays.asList(referenceItemOf("1", 3), referenceItemOf("2", 1));
+
+        references.resolve(items, resolved::add, e -> fail(e.getMessage()));
+
+        final ArgumentCaptor<BatchGetItemRequest> request = ArgumentCaptor.forClass(BatchGetItemRequest.class);
+        final ArgumentCaptor<AsyncHandler> handler = ArgumentCaptor.forClass(AsyncHandler.class);
+        verify(dynamodb, times(1)).batchGetItemAsync(request.capture(), handler.capture());
+        assertEquals(2, request.getValue().getRequestItems().get(STATE_TABLE).getKeys().size());
+        assertTrue(request.getValue().getRequestItems().get(STATE_TABLE).getConsistentRead());
+        assertTrue(resolved.isEmpty());
+
+        handler.getValue().onSuccess(request.getValue(), new BatchGetItemResult()
+                .withResponses(Collections.singletonMap(STATE_TABLE, Arrays.asList(recordAdapter.marshallState(stateOf("1", 4)), recordAdapter.marshallState(stateOf("2", 1)))))
+                .withUnprocessedKeys(Collections.emptyMap()));
+
+        assertEquals(1, resolved.size());
+        final List<Dispatchable<Entry<?>, TextState>> dispatchables = resolved.get(0);
+        assertEquals("Entity1:1", dispatchables.get(0).id());
+        assertEquals(4, dispatchables.get(0).state().get().dataVersion);
+        assertEquals("Entity1:2", dispatchables.get(1).id());
+        assertEquals(1, dispatchables.get(1).state().get().dataVersion);
+        assertEquals(2L, retries.metrics().count(StateReferences.RESOLVED));
+        assertEquals(1L, retries.metrics().count(StateReferences.STALE));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testThatMissingStatesAreAnsweredAsNull() {
+        references.resolve(Collections.singletonList(referenceItemOf("1", 3)), resolved::add, e -> fail(e.getMessage()));
+
+        final ArgumentCaptor<BatchGetItemRequest> request = ArgumentCaptor.forClass(BatchGetItemRequest.class);
+        final ArgumentCaptor<AsyncHandler> handler = ArgumentCaptor.forClass(AsyncHandler.class);
+        verify(dynamodb).batchGetItemAsync(request.capture(), handler.capture());
+        handler.getValue().onSuccess(request.getValue(), new BatchGetItemResult()
+                .withResponses(Collections.singletonMap(STATE_TABLE, Collections.singletonList(recordAdapter.marshallState(stateOf("1", 2))))));
+
+        assertNull(resolved.get(0).get(0));
+        assertEquals(1L, retries.metrics().count(StateReferences.MISSING));
+    }
+
+    private Map<String, AttributeValue> referenceItemOf(final String id, final int dataVersion) {
+        final Map<String, AttributeValue> item = recordAdapter.marshallDispatchable(dispatchableOf(id, dataVersion, false));
+        return StateReferences.itemOf(item, STATE_TABLE, stateOf(id, dataVersion));
+    }
+
+    private Dispatchable<Entry<?>, TextState> dispatchableOf(final String id, final int dataVersion, final boolean embedded) {
+        return new Dispatchable<>("Entity1:" + id, LocalDateTime.now(), embedded ? stateOf(id, dataVersion) : null, Collections.emptyList());
+    }
+
+    private TextState stateOf(final String id, final int dataVersion) {
+        return new TextState(id, Entity1.class, 1, "{\"id\":\"" + id + "\",\"value\":" + dataVersion + "}", dataVersion);
+    }
+}
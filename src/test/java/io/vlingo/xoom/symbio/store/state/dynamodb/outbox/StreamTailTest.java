@@ -0,0 +1,308 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.outbox;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBStreamsAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.DescribeStreamRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeStreamResult;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.GetRecordsRequest;
+import com.amazonaws.services.dynamodbv2.model.GetRecordsResult;
+import com.amazonaws.services.dynamodbv2.model.GetShardIteratorRequest;
+import com.amazonaws.services.dynamodbv2.model.GetShardIteratorResult;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.Shard;
+import com.amazonaws.services.dynamodbv2.model.ShardIteratorType;
+import com.amazonaws.services.dynamodbv2.model.StreamDescription;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import io.vlingo.xoom.actors.World;
+import io.vlingo.xoom.symbio.Entry;
+import io.vlingo.xoom.symbio.State.TextState;
+import io.vlingo.xoom.symbio.store.dispatch.Dispatchable;
+import io.vlingo.xoom.symbio.store.state.Entity1;
+import io.vlingo.xoom.symbio.store.state.dynamodb.adapters.TextStateRecordAdapter;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryPolicy;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryScheduler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.StoreMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class StreamTailTest {
+    private static final int TIMEOUT = 2000;
+    private static final String TABLE_NAME = "dispatchables";
+    private static final String SHARD_ID = "shard-1";
+
+    private World world;
+    private AmazonDynamoDBAsync dynamodb;
+    private AmazonDynamoDBStreamsAsync streams;
+    private TextStateRecordAdapter recordAdapter;
+    private StoreMetrics metrics;
+    private List<String> dispatched;
+    private AtomicBoolean owned;
+
+    @Before
+    public void setUp() {
+        world = World.startWithDefaults("stream-tail-test");
+        dynamodb = mock(AmazonDynamoDBAsync.class);
+        streams = mock(AmazonDynamoDBStreamsAsync.class);
+        recordAdapter = new TextStateRecordAdapter();
+        metrics = new StoreMetrics();
+        dispatched = new CopyOnWriteArrayList<>();
+        owned = new AtomicBoolean(true);
+    }
+
+    @After
+    public void tearDown() {
+        world.terminate();
+    }
+
+    @Test
+    public void testThatAnUndispatchableRecordIsSkippedOnceItsRetriesAreSpent() {
+        final StreamTail<TextState> tail = tailOf("Entity1:1");
+        openShard(tail);
+
+        answerRecords(1, recordOf("1"), recordOf("2"));
+        assertTrue(dispatched.isEmpty());
+
+        final GetShardIteratorRequest retry = positioned(2);
+        assertEquals(ShardIteratorType.AT_SEQUENCE_NUMBER.toString(), retry.getShardIteratorType());
+        assertEquals("1", retry.getSequenceNumber());
+        answerIterator();
+        answerRecords(2, recordOf("1"), recordOf("2"));
+
+        assertEquals(Collections.singletonList("Entity1:2"), dispatched);
+        assertEquals(1L, metrics.count(StreamTail.SKIPPED));
+        assertEquals(2L, metrics.count(StreamTail.ERRORS));
+
+        final ArgumentCaptor<PutItemRequest> checkpoint = ArgumentCaptor.forClass(PutItemRequest.class);
+        verify(dynamodb).putItemAsync(checkpoint.capture(), any());
+        assertEquals("2", checkpoint.getValue().getItem().get("SequenceNumber").getS());
+        verify(streams, timeout(TIMEOUT).times(3)).getRecordsAsync(any(GetRecordsRequest.class), any());
+    }
+
+    @Test
+    public void testThatOnlyOwnedShardsAreRead() {
+        owned.set(false);
+        final StreamTail<TextState> tail = tailOf("");
+        describe(tail);
+
+        verify(dynamodb, never()).getItemAsync(any(GetItemRequest.class), any());
+        assertEquals(0, tail.shardsBeingRead());
+    }
+
+    @Test
+    public void testThatAShardIsClosedOnceItsOwnershipIsLost() {
+        final StreamTail<TextState> tail = tailOf("");
+        openShard(tail);
+        assertEquals(1, tail.shardsBeingRead());
+
+        owned.set(false);
+        answerRecords(1, recordOf("1"));
+
+        assertEquals(Collections.singletonList("Entity1:1"), dispatched);
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (tail.shardsBeingRead() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        assertEquals(0, tail.shardsBeingRead());
+        verify(streams, times(1)).getRecordsAsync(any(GetRecordsRequest.class), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testThatAChildShardOpensOnceItsParentEndedOnAnotherOwner() {
+        final String parentId = SHARD_ID;
+        final String childId = "shard-2";
+        final int parentShard = Math.floorMod(parentId.hashCode(), 4);
+        final int childShard = Math.floorMod(childId.hashCode(), 4);
+        assertNotEquals(parentShard, childShard);
+
+        // the checkpoints of both owners are kept in the one dispatchables table
+        final Map<String, Map<String, AttributeValue>> table = new ConcurrentHashMap<>();
+        doAnswer(invocation -> {
+            final GetItemRequest request = (GetItemRequest) invocation.getArguments()[0];
+            ((AsyncHandler<GetItemRequest, GetItemResult>) invocation.getArguments()[1])
+                    .onSuccess(request, new GetItemResult().withItem(table.get(request.getKey().get("Id").getS())));
+            return null;
+        }).when(dynamodb).getItemAsync(any(GetItemRequest.class), any(AsyncHandler.class));
+        doAnswer(invocation -> {
+            final PutItemRequest request = (PutItemRequest) invocation.getArguments()[0];
+            table.put(request.getItem().get("Id").getS(), request.getItem());
+            ((AsyncHandler<PutItemRequest, PutItemResult>) invocation.getArguments()[1]).onSuccess(request, new PutItemResult());
+            return null;
+        }).when(dynamodb).putItemAsync(any(PutItemRequest.class), any(AsyncHandler.class));
+        doAnswer(invocation -> {
+            ((AsyncHandler<DescribeTableRequest, DescribeTableResult>) invocation.getArguments()[1]).onSuccess(new DescribeTableRequest(TABLE_NAME),
+                    new DescribeTableResult().withTable(new TableDescription().withLatestStreamArn("stream")));
+            return null;
+        }).when(dynamodb).describeTableAsync(any(DescribeTableRequest.class), any(AsyncHandler.class));
+        doAnswer(invocation -> {
+            ((AsyncHandler<DescribeStreamRequest, DescribeStreamResult>) invocation.getArguments()[1]).onSuccess(new DescribeStreamRequest(),
+                    new DescribeStreamResult().withStreamDescription(new StreamDescription().withShards(
+                            new Shard().withShardId(parentId),
+                            new Shard().withShardId(childId).withParentShardId(parentId))));
+            return null;
+        }).when(streams).describeStreamAsync(any(DescribeStreamRequest.class), any(AsyncHandler.class));
+        doAnswer(invocation -> {
+            final GetShardIteratorRequest request = (GetShardIteratorRequest) invocation.getArguments()[0];
+            ((AsyncHandler<GetShardIteratorRequest, GetShardIteratorResult>) invocation.getArguments()[1])
+                    .onSuccess(request, new GetShardIteratorResult().withShardIterator(request.getShardId()));
+            return null;
+        }).when(streams).getShardIteratorAsync(any(GetShardIteratorRequest.class), any(AsyncHandler.class));
+        final AtomicBoolean parentEnds = new AtomicBoolean(false);
+        doAnswer(invocation -> {
+            final GetRecordsRequest request = (GetRecordsRequest) invocation.getArguments()[0];
+            // the parent has no next iterator once it has ended
+            final boolean ended = request.getShardIterator().equals(parentId) && parentEnds.get();
+            ((AsyncHandler<GetRecordsRequest, GetRecordsResult>) invocation.getArguments()[1])
+                    .onSuccess(request, new GetRecordsResult().withRecords(Collections.emptyList()).withNextShardIterator(ended ? null : request.getShardIterator()));
+            return null;
+        }).when(streams).getRecordsAsync(any(GetRecordsRequest.class), any(AsyncHandler.class));
+
+        final StreamTail<TextState> parentOwner = tailOf("", shard -> shard == parentShard);
+        final StreamTail<TextState> childOwner = tailOf("", shard -> shard == childShard);
+
+        parentOwner.discover();
+        childOwner.discover();
+        assertEquals(1, parentOwner.shardsBeingRead());
+        assertEquals(0, childOwner.shardsBeingRead());
+        verify(streams, never()).getShardIteratorAsync(argThat(shardIs(childId)), any(AsyncHandler.class));
+
+        parentEnds.set(true);
+        final String parentCheckpointId = DispatchableOutbox.CONTROL_ID_PREFIX + "stream-checkpoint:test:" + parentId;
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!table.containsKey(parentCheckpointId) && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        assertTrue(table.get(parentCheckpointId).containsKey("ShardEnd"));
+        assertEquals(0, parentOwner.shardsBeingRead());
+
+        childOwner.discover();
+        verify(streams, timeout(TIMEOUT)).getShardIteratorAsync(argThat(shardIs(childId)), any(AsyncHandler.class));
+        verify(streams, times(1)).getShardIteratorAsync(argThat(shardIs(parentId)), any(AsyncHandler.class));
+        assertEquals(1, childOwner.shardsBeingRead());
+    }
+
+    private StreamTail<TextState> tailOf(final String undispatchableId) {
+        return tailOf(undispatchableId, shard -> owned.get());
+    }
+
+    private StreamTail<TextState> tailOf(final String undispatchableId, final ShardOwnership ownership) {
+        final RetryScheduler retries = new RetryScheduler(world.stage().scheduler(), RetryPolicy.with(1, 1L, 5L), metrics);
+        return new StreamTail<>(
+                dynamodb,
+                streams,
+                TABLE_NAME,
+                "test",
+                ShardIteratorType.TRIM_HORIZON,
+                1L,
+                100,
+                new StateReferences<>(dynamodb, recordAdapter, retries),
+                dispatchable -> {
+                    if (dispatchable.id().equals(undispatchableId)) {
+                        throw new IllegalStateException("undispatchable");
+                    }
+                    dispatched.add(dispatchable.id());
+                    return null;
+                },
+                world.stage().scheduler(),
+                retries,
+                world.defaultLogger(),
+                ownership,
+                4);
+    }
+
+    private static ArgumentMatcher<GetShardIteratorRequest> shardIs(final String shardId) {
+        return new ArgumentMatcher<GetShardIteratorRequest>() {
+            @Override
+            public boolean matches(final Object request) {
+                return shardId.equals(((GetShardIteratorRequest) request).getShardId());
+            }
+        };
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void describe(final StreamTail<TextState> tail) {
+        tail.discover();
+
+        final ArgumentCaptor<AsyncHandler> table = ArgumentCaptor.forClass(AsyncHandler.class);
+        verify(dynamodb).describeTableAsync(any(DescribeTableRequest.class), table.capture());
+        table.getValue().onSuccess(new DescribeTableRequest(TABLE_NAME),
+                new DescribeTableResult().withTable(new TableDescription().withLatestStreamArn("stream")));
+
+        final ArgumentCaptor<AsyncHandler> stream = ArgumentCaptor.forClass(AsyncHandler.class);
+        verify(streams).describeStreamAsync(any(DescribeStreamRequest.class), stream.capture());
+        stream.getValue().onSuccess(new DescribeStreamRequest(),
+                new DescribeStreamResult().withStreamDescription(new StreamDescription().withShards(new Shard().withShardId(SHARD_ID))));
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void openShard(final StreamTail<TextState> tail) {
+        describe(tail);
+
+        final ArgumentCaptor<AsyncHandler> checkpoint = ArgumentCaptor.forClass(AsyncHandler.class);
+        verify(dynamodb).getItemAsync(any(GetItemRequest.class), checkpoint.capture());
+        checkpoint.getValue().onSuccess(new GetItemRequest(), new GetItemResult());
+
+        assertEquals(ShardIteratorType.TRIM_HORIZON.toString(), positioned(1).getShardIteratorType());
+        answerIterator();
+    }
+
+    private GetShardIteratorRequest positioned(final int times) {
+        final ArgumentCaptor<GetShardIteratorRequest> request = ArgumentCaptor.forClass(GetShardIteratorRequest.class);
+        verify(streams, timeout(TIMEOUT).times(times)).getShardIteratorAsync(request.capture(), any());
+        return request.getValue();
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void answerIterator() {
+        final ArgumentCaptor<AsyncHandler> handler = ArgumentCaptor.forClass(AsyncHandler.class);
+        verify(streams, atLeastOnce()).getShardIteratorAsync(any(GetShardIteratorRequest.class), handler.capture());
+        handler.getValue().onSuccess(new GetShardIteratorRequest(), new GetShardIteratorResult().withShardIterator("iterator"));
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void answerRecords(final int times, final Record... records) {
+        final ArgumentCaptor<AsyncHandler> handler = ArgumentCaptor.forClass(AsyncHandler.class);
+        verify(streams, timeout(TIMEOUT).times(times)).getRecordsAsync(any(GetRecordsRequest.class), handler.capture());
+        handler.getValue().onSuccess(new GetRecordsRequest(), new GetRecordsResult().withRecords(Arrays.asList(records)).withNextShardIterator("next"));
+    }
+
+    private Record recordOf(final String id) {
+        final TextState state = new TextState(id, Entity1.class, 1, "{\"id\":\"" + id + "\",\"value\":1}", 1);
+        final Dispatchable<Entry<?>, TextState> dispatchable = new Dispatchable<>("Entity1:" + id, LocalDateTime.now(), state, Collections.emptyList());
+        return new Record().withDynamodb(new StreamRecord().withSequenceNumber(id).withNewImage(recordAdapter.marshallDispatchable(dispatchable)));
+    }
+}
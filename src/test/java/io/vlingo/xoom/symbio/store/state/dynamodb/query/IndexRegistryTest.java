@@ -0,0 +1,88 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.query;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
+import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+import io.vlingo.xoom.symbio.store.state.Entity1;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class IndexRegistryTest {
+    private final IndexRegistry registry = IndexRegistry.empty()
+            .withAttribute(Entity1.class, "Value", ScalarAttributeType.N, (Entity1 e) -> e.value)
+            .withAttribute(Entity1.class, "Owner", ScalarAttributeType.S, (Entity1 e) -> e.value > 0 ? "positive" : null)
+            .withIndex(Entity1.class, SecondaryIndex.global("ByOwnerAndValue", "Owner", "Value"));
+
+    @Test
+    public void testThatAttributesAreExtractedFromTheState() {
+        final Map<String, AttributeValue> attributes = registry.attributesOf(new Entity1("123", 42));
+
+        assertEquals(2, attributes.size());
+        assertEquals(new AttributeValue().withN("42"), attributes.get("Value"));
+        assertEquals(new AttributeValue().withS("positive"), attributes.get("Owner"));
+    }
+
+    @Test
+    public void testThatNullAttributesAreNotWritten() {
+        final Map<String, AttributeValue> attributes = registry.attributesOf(new Entity1("123", -1));
+
+        assertEquals(1, attributes.size());
+        assertFalse(attributes.containsKey("Owner"));
+    }
+
+    @Test
+    public void testThatIndexesFeedTableCreation() {
+        final List<AttributeDefinition> definitions = registry.attributeDefinitionsOf(Entity1.class);
+        assertEquals(3, definitions.size());
+        assertEquals(new AttributeDefinition("Id", ScalarAttributeType.S), definitions.get(0));
+        assertEquals(new AttributeDefinition("Owner", ScalarAttributeType.S), definitions.get(1));
+        assertEquals(new AttributeDefinition("Value", ScalarAttributeType.N), definitions.get(2));
+
+        final List<GlobalSecondaryIndex> indexes = registry.globalSecondaryIndexesOf(Entity1.class);
+        assertEquals(1, indexes.size());
+        assertEquals("ByOwnerAndValue", indexes.get(0).getIndexName());
+        assertEquals(KeyType.HASH.toString(), indexes.get(0).getKeySchema().get(0).getKeyType());
+        assertEquals(KeyType.RANGE.toString(), indexes.get(0).getKeySchema().get(1).getKeyType());
+        assertEquals(ProjectionType.ALL.toString(), indexes.get(0).getProjection().getProjectionType());
+    }
+
+    @Test
+    public void testThatIndexesFeedTheQueryPlanner() {
+        assertEquals(1, registry.indexesOf(Entity1.class).size());
+        assertTrue(registry.indexesOf(String.class).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatIndexKeysMustBeDeclaredAttributes() {
+        registry.withIndex(Entity1.class, SecondaryIndex.global("ByStatus", "Status"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatRecordAttributesCannotBeExtracted() {
+        registry.withAttribute(Entity1.class, "Data", ScalarAttributeType.S, (Entity1 e) -> e.id);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatChunkAttributesCannotBeExtracted() {
+        registry.withAttribute(Entity1.class, "ChunkOf", ScalarAttributeType.S, (Entity1 e) -> e.id);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatTheCompressionAttributeCannotBeExtracted() {
+        registry.withAttribute(Entity1.class, "Compression", ScalarAttributeType.S, (Entity1 e) -> e.id);
+    }
+}
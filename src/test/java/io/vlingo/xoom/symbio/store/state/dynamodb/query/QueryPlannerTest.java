@@ -0,0 +1,95 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.query;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import io.vlingo.xoom.symbio.store.ListQueryExpression;
+import io.vlingo.xoom.symbio.store.MapQueryExpression;
+import io.vlingo.xoom.symbio.store.state.Entity1;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class QueryPlannerTest {
+    private static final String TABLE_NAME = "xoom_io_vlingo_xoom_symbio_store_state_Entity1";
+    private static final List<SecondaryIndex> INDEXES = Arrays.asList(
+            SecondaryIndex.global("ByOwner", "Owner"),
+            SecondaryIndex.global("ByOwnerAndValue", "Owner", "Value"));
+
+    private final QueryPlanner planner = new QueryPlanner();
+
+    @Test
+    public void testThatEqualityOnIdQueriesThePrimaryKey() {
+        final QueryPlan plan = planner.plan(TABLE_NAME, MapQueryExpression.using(Entity1.class, "Id = :id", Collections.singletonMap("id", "123")), INDEXES);
+
+        assertFalse(plan.isScan());
+        assertTrue(plan.index.isPrimaryKey());
+        assertNull(plan.queryRequest.getIndexName());
+        assertEquals("#n0 = :id", plan.queryRequest.getKeyConditionExpression());
+        assertEquals("Id", plan.queryRequest.getExpressionAttributeNames().get("#n0"));
+        assertEquals(new AttributeValue().withS("123"), plan.queryRequest.getExpressionAttributeValues().get(":id"));
+        assertNull(plan.queryRequest.getFilterExpression());
+    }
+
+    @Test
+    public void testThatSortKeyConditionPrefersTheCompositeIndex() {
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put(":owner", "alice");
+        parameters.put("low", 10);
+        parameters.put("high", 20);
+        parameters.put("status", "open");
+
+        final QueryPlan plan = planner.plan(TABLE_NAME, MapQueryExpression.using(Entity1.class, "Owner = :owner AND Value BETWEEN :low AND :high AND Status = :status", parameters), INDEXES);
+
+        assertFalse(plan.isScan());
+        assertEquals("ByOwnerAndValue", plan.queryRequest.getIndexName());
+        assertEquals("#n0 = :owner AND #n1 BETWEEN :low AND :high", plan.queryRequest.getKeyConditionExpression());
+        assertEquals("#n2 = :status", plan.queryRequest.getFilterExpression());
+        assertEquals("Status", plan.queryRequest.getExpressionAttributeNames().get("#n2"));
+        assertEquals(new AttributeValue().withN("10"), plan.queryRequest.getExpressionAttributeValues().get(":low"));
+        assertEquals(4, plan.queryRequest.getExpressionAttributeValues().size());
+    }
+
+    @Test
+    public void testThatListParametersAreBoundInOrder() {
+        final QueryPlan plan = planner.plan(TABLE_NAME, ListQueryExpression.using(Entity1.class, "Owner = ? AND begins_with(Name, ?)", Arrays.asList("alice", "A")), INDEXES);
+
+        assertFalse(plan.isScan());
+        assertEquals("ByOwner", plan.queryRequest.getIndexName());
+        assertEquals("#n0 = :p0", plan.queryRequest.getKeyConditionExpression());
+        assertEquals("begins_with(#n1, :p1)", plan.queryRequest.getFilterExpression());
+    }
+
+    @Test
+    public void testThatNonIndexedAttributeFallsBackToScan() {
+        final QueryPlan plan = planner.plan(TABLE_NAME, MapQueryExpression.using(Entity1.class, "Status = :status", Collections.singletonMap("status", "open")), INDEXES);
+
+        assertTrue(plan.isScan());
+        assertEquals(TABLE_NAME, plan.scanRequest.getTableName());
+        assertEquals("#n0 = :status", plan.scanRequest.getFilterExpression());
+        assertEquals("Status", plan.scanRequest.getExpressionAttributeNames().get("#n0"));
+    }
+
+    @Test
+    public void testThatDisjunctionFallsBackToScan() {
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put("owner", "alice");
+        parameters.put("id", "123");
+
+        final QueryPlan plan = planner.plan(TABLE_NAME, MapQueryExpression.using(Entity1.class, "Owner = :owner OR Id = :id", parameters), Collections.emptyList());
+
+        assertTrue(plan.isScan());
+        assertEquals("#n0 = :owner OR #n1 = :id", plan.scanRequest.getFilterExpression());
+    }
+}
@@ -0,0 +1,132 @@
+// Copyright © 2012-2023 VLINGO LABS. All rights reserved.
+//
+// This Source Code Form is subject to the terms of the
+// Mozilla Public License, v. 2.0. If a copy of the MPL
+// was not distributed with this file, You can obtain
+// one at https://mozilla.org/MPL/2.0/.
+
+package io.vlingo.xoom.symbio.store.state.dynamodb.streams;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import io.vlingo.xoom.actors.Logger;
+import io.vlingo.xoom.common.Completes;
+import io.vlingo.xoom.common.Scheduled;
+import io.vlingo.xoom.common.Scheduler;
+import io.vlingo.xoom.reactivestreams.Elements;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryPolicy;
+import io.vlingo.xoom.symbio.store.state.dynamodb.handlers.RetryScheduler;
+import io.vlingo.xoom.symbio.store.state.dynamodb.metrics.StoreMetrics;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class PagedSourceTest {
+    private Scheduler scheduler;
+    private StoreMetrics metrics;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        scheduler = mock(Scheduler.class);
+        metrics = new StoreMetrics();
+        // retries run at once
+        doAnswer(invocation -> {
+            ((Scheduled<Object>) invocation.getArguments()[0]).intervalSignal(null, invocation.getArguments()[1]);
+            return null;
+        }).when(scheduler).scheduleOnce(any(Scheduled.class), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    public void testThatEveryPageIsReadBeforeTheSourceTerminates() {
+        final PagedSource<String> source = sourceOf(new FakeReader(Arrays.asList(page("1", "2"), page("3")), 0), RetryPolicy.none());
+
+        final List<String> read = readAll(source);
+
+        assertEquals(Arrays.asList("1", "2", "3"), read);
+        assertNull(source.failure());
+    }
+
+    @Test
+    public void testThatAFailedPageIsReadAgain() {
+        final PagedSource<String> source = sourceOf(new FakeReader(Arrays.asList(page("1"), page("2")), 2), RetryPolicy.with(3, 1L, 5L));
+
+        assertEquals(Arrays.asList("1", "2"), readAll(source));
+        assertNull(source.failure());
+        assertEquals(2L, metrics.count(RetryScheduler.RETRIES));
+    }
+
+    @Test
+    public void testThatAPageFailingBeyondItsRetriesFailsTheSource() {
+        final PagedSource<String> source = sourceOf(new FakeReader(Arrays.asList(page("1"), page("2")), 5), RetryPolicy.with(2, 1L, 5L));
+
+        Completes<Elements<String>> next = source.next();
+        for (int attempt = 0; attempt < 10 && !next.hasFailed() && !next.outcome().isTerminated(); ++attempt) {
+            next = source.next();
+        }
+
+        assertTrue(next.hasFailed());
+        assertNotNull(source.failure());
+    }
+
+    private PagedSource<String> sourceOf(final PageReader reader, final RetryPolicy policy) {
+        return new PagedSource<>(Collections.singletonList(reader), item -> item.get("Id").getS(), 10, mock(Logger.class), new RetryScheduler(scheduler, policy, metrics));
+    }
+
+    private List<String> readAll(final PagedSource<String> source) {
+        final List<String> read = new ArrayList<>();
+        for (int attempt = 0; attempt < 10; ++attempt) {
+            final Elements<String> elements = source.next().outcome();
+            if (elements.isTerminated()) {
+                return read;
+            }
+            read.addAll(Arrays.asList(elements.values));
+        }
+        fail("The source did not terminate: " + read);
+        return read;
+    }
+
+    private static List<Map<String, AttributeValue>> page(final String... ids) {
+        final List<Map<String, AttributeValue>> items = new ArrayList<>();
+        for (final String id : ids) {
+            items.add(Collections.singletonMap("Id", new AttributeValue().withS(id)));
+        }
+        return items;
+    }
+
+    /**
+     * Answers its pages at once, failing the second page {@code failures} times first.
+     */
+    private static class FakeReader implements PageReader {
+        private final List<List<Map<String, AttributeValue>>> pages;
+        private int failures;
+
+        FakeReader(final List<List<Map<String, AttributeValue>>> pages, final int failures) {
+            this.pages = pages;
+            this.failures = failures;
+        }
+
+        @Override
+        public void readPage(final Map<String, AttributeValue> exclusiveStartKey, final PageListener listener) {
+            final int index = exclusiveStartKey == null ? 0 : Integer.parseInt(exclusiveStartKey.get("Page").getN());
+            if (index == 1 && failures > 0) {
+                --failures;
+                listener.pageFailed(new IllegalStateException("unavailable"));
+                return;
+            }
+            final Map<String, AttributeValue> next = index + 1 < pages.size() ?
+                    Collections.singletonMap("Page", new AttributeValue().withN(String.valueOf(index + 1))) :
+                    null;
+            listener.pageRead(pages.get(index), next);
+        }
+    }
+}